@@ -0,0 +1,86 @@
+package org.antlr.works.benchmark;
+
+import org.antlr.works.grammar.antlr.GrammarResult;
+import org.antlr.works.grammar.engine.GrammarEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * Measures the creation of the ANTLR grammars and their analysis. The ANTLR engine keeps
+ * the grammars as long as the signature of the text does not change, so each invocation
+ * uses a new engine (created, like the editor does, before the measure).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalysisBenchmark {
+
+    @Param({BenchmarkGrammars.MANTRA, BenchmarkGrammars.VSQL, BenchmarkGrammars.EXPR})
+    public String grammar;
+
+    @Param({"1", "8"})
+    public int scale;
+
+    private String text;
+    private GrammarEngine engine;
+    private GrammarEngine createdEngine;
+
+    @Setup(Level.Trial)
+    public void setupText() throws Exception {
+        text = BenchmarkGrammars.getText(grammar, scale);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupEngines() throws Exception {
+        engine = BenchmarkGrammars.createEngine(text);
+
+        createdEngine = BenchmarkGrammars.createEngine(text);
+        createdEngine.getANTLRGrammarEngine().createGrammars();
+    }
+
+    @Benchmark
+    public GrammarEngine createGrammars() throws Exception {
+        engine.getANTLRGrammarEngine().createGrammars();
+        return engine;
+    }
+
+    @Benchmark
+    public GrammarResult analyze() throws Exception {
+        return createdEngine.getANTLRGrammarEngine().analyze();
+    }
+
+}
@@ -0,0 +1,222 @@
+package org.antlr.works.benchmark;
+
+import org.antlr.Tool;
+import org.antlr.works.ate.syntax.generic.ATESyntaxEngineDelegate;
+import org.antlr.works.ate.syntax.generic.ATESyntaxLexer;
+import org.antlr.works.ate.syntax.misc.ATEToken;
+import org.antlr.works.grammar.element.ElementRule;
+import org.antlr.works.grammar.engine.GrammarEngine;
+import org.antlr.works.grammar.engine.GrammarEngineDelegate;
+import org.antlr.works.grammar.engine.GrammarEngineImpl;
+import org.antlr.works.utils.Console;
+import org.antlr.works.utils.ConsoleHelper;
+import org.antlr.xjlib.foundation.XJUtils;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * The grammars used by the benchmarks: the grammars of the unit tests (test/.../files) and
+ * synthetic grammars made of several copies of their parser rules.
+ */
+public class BenchmarkGrammars {
+
+    public static final String PREFIX = "/org/antlr/works/test/files/";
+
+    public static final String MANTRA = "mantra";
+    public static final String VSQL = "vsql";
+    public static final String EXPR = "expr";
+
+    public static String getPath(String name) {
+        if(name.equals(MANTRA))
+            return PREFIX+"mantra/mantra.g";
+        if(name.equals(VSQL))
+            return PREFIX+"sd/vsql/vsql.g";
+        if(name.equals(EXPR))
+            return PREFIX+"sd/expr/expr.g";
+        throw new IllegalArgumentException("Unknown grammar "+name);
+    }
+
+    /**
+     * Returns the text of the grammar with the specified name (mantra, vsql or expr)
+     * scaled by the specified factor.
+     */
+    public static String getText(String name, int scale) throws IOException {
+        String text = XJUtils.getStringFromFile(BenchmarkGrammars.class.getResource(getPath(name)).getFile());
+        return scale(text, scale);
+    }
+
+    /**
+     * Appends scale-1 copies of the parser rules to the grammar. The rules of copy n are
+     * renamed with the suffix "_n", including their references and their $ attributes,
+     * so each copy is a new valid set of rules that ANTLR analyzes like the original one.
+     */
+    public static String scale(String text, int scale) {
+        if(scale <= 1)
+            return text;
+
+        GrammarEngine engine = createEngine(text);
+        Set<String> names = new HashSet<String>();
+        for(ElementRule rule : engine.getRules()) {
+            if(!rule.lexer)
+                names.add(rule.name);
+        }
+
+        List<ATEToken> tokens = engine.getTokens();
+        StringBuilder sb = new StringBuilder(text);
+        for(int copy=1; copy<scale; copy++) {
+            for(ElementRule rule : engine.getRules()) {
+                if(rule.lexer)
+                    continue;
+
+                sb.append("\n\n");
+                int position = rule.getStartIndex();
+                for(int index=rule.start.index; index<=rule.end.index; index++) {
+                    ATEToken token = tokens.get(index);
+                    sb.append(text, position, token.start);
+                    sb.append(token.getAttribute());
+                    if(isRuleName(token, names))
+                        sb.append('_').append(copy);
+                    position = token.end;
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isRuleName(ATEToken token, Set<String> names) {
+        switch(token.type) {
+            case ATESyntaxLexer.TOKEN_SINGLE_QUOTE_STRING:
+            case ATESyntaxLexer.TOKEN_DOUBLE_QUOTE_STRING:
+            case ATESyntaxLexer.TOKEN_SINGLE_COMMENT:
+            case ATESyntaxLexer.TOKEN_COMPLEX_COMMENT:
+                return false;
+        }
+        String name = token.getAttribute();
+        if(name.startsWith("$"))
+            name = name.substring(1);
+        return names.contains(name);
+    }
+
+    /** Creates an engine and parses the grammar the same way the editor does */
+    public static GrammarEngine createEngine(String text) {
+        ConsoleHelper.setCurrent(new QuietConsole());
+
+        GrammarEngine engine = new GrammarEngineImpl(new EngineDelegate(text));
+        engine.getSyntaxEngine().setDelegate(new SyntaxEngineDelegate(text));
+        engine.getSyntaxEngine().processSyntax();
+        engine.parserCompleted();
+        engine.updateAll();
+        return engine;
+    }
+
+    private static class EngineDelegate implements GrammarEngineDelegate {
+
+        private final String text;
+
+        public EngineDelegate(String text) {
+            this.text = text;
+        }
+
+        public String getGrammarFileName() {
+            return null;
+        }
+
+        public String getGrammarText() {
+            return text;
+        }
+
+        public String getTokenVocabFile(String name) {
+            return null;
+        }
+
+        public Tool getANTLRTool() {
+            return null;
+        }
+
+        public void reportError(String error) {
+        }
+
+        public void reportError(Exception e) {
+        }
+
+        public void gotoToRule(String grammar, String name) {
+        }
+
+        public void engineAnalyzeCompleted() {
+        }
+    }
+
+    private static class SyntaxEngineDelegate implements ATESyntaxEngineDelegate {
+
+        private final String text;
+
+        public SyntaxEngineDelegate(String text) {
+            this.text = text;
+        }
+
+        public void ateEngineBeforeParsing() {
+        }
+
+        public void ateEngineAfterParsing() {
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    /** The warnings of ANTLR would otherwise be part of the measure */
+    public static class QuietConsole implements Console {
+
+        public void setMode(int mode) {
+        }
+
+        public void println(String s) {
+        }
+
+        public void println(String s, int level) {
+        }
+
+        public void println(Throwable e) {
+        }
+
+        public void print(String string, int level) {
+        }
+
+        public void print(Throwable e) {
+        }
+    }
+}
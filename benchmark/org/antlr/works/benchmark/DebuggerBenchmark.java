@@ -0,0 +1,210 @@
+package org.antlr.works.benchmark;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+import org.antlr.works.debugger.DebuggerTab;
+import org.antlr.works.debugger.events.*;
+import org.antlr.works.debugger.input.DBInputProcessorToken;
+import org.antlr.works.debugger.tivo.DBEventFileStore;
+import org.antlr.works.debugger.tivo.DBEventMemoryStore;
+import org.antlr.works.debugger.tivo.DBEventStore;
+import org.antlr.works.debugger.tivo.DBPlayer;
+import org.antlr.works.debugger.tivo.DBPlayerContextInfo;
+import org.antlr.works.debugger.tivo.DBPlayerSnapshot;
+import org.antlr.works.debugger.tree.DBParseTreeModel;
+import org.antlr.works.utils.Console;
+import org.antlr.works.utils.TextPane;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * Measures the replay of a recorded debugging session from its first event: the player,
+ * the input tokens processor and the parse tree model. The panels of the debugger are
+ * not created so the measure does not depend on Swing.
+ *
+ * The events are generated to look like the ones of a parser recognizing a list of
+ * statements: each statement is a rule with a decision, a lookahead and a few tokens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DebuggerBenchmark {
+
+    private static final String GRAMMAR_FILE_NAME = "benchmark.g";
+    private static final int TOKENS_PER_STATEMENT = 4;
+
+    @Param({"1000", "20000"})
+    public int statements;
+
+    @Param({"memory", "file"})
+    public String store;
+
+    private DBEventStore events;
+    private BenchmarkDebuggerTab tab;
+    private DBPlayer player;
+
+    @Setup(Level.Trial)
+    public void setupEvents() throws Exception {
+        events = store.equals("file") ? DBEventFileStore.createTemporary() : new DBEventMemoryStore();
+        record(events, statements);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupPlayer() {
+        tab = new BenchmarkDebuggerTab();
+        player = new DBPlayer(tab);
+        player.setInputBuffer(new DBInputProcessorToken(tab, new TextPane()));
+        player.resetPlayEvents(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        events.close();
+    }
+
+    @Benchmark
+    public DBParseTreeModel playEvents() {
+        player.playEvents(events, events.size(), true);
+        return tab.getParseTreeModel();
+    }
+
+    private static void record(List<DBEvent> events, int statements) {
+        int tokenIndex = 0;
+        int line = 1;
+        events.add(new DBEventEnterRule(GRAMMAR_FILE_NAME, "prog"));
+        for(int s=0; s<statements; s++) {
+            events.add(new DBEventLocation(2, 5));
+            events.add(new DBEventEnterDecision(1));
+            events.add(new DBEventLT(1, createToken(tokenIndex, line, 0)));
+            events.add(new DBEventExitDecision(1));
+            events.add(new DBEventEnterSubRule(1));
+            events.add(new DBEventEnterAlt(1));
+
+            events.add(new DBEventEnterRule(GRAMMAR_FILE_NAME, "stat"));
+            events.add(new DBEventEnterAlt(1));
+            for(int t=0; t<TOKENS_PER_STATEMENT; t++) {
+                events.add(new DBEventLocation(5, 9+t*4));
+                events.add(new DBEventLT(1, createToken(tokenIndex, line, t*2)));
+                events.add(new DBEventConsumeToken(createToken(tokenIndex, line, t*2)));
+                tokenIndex++;
+                if(t < TOKENS_PER_STATEMENT-1) {
+                    events.add(new DBEventConsumeHiddenToken(createHiddenToken(tokenIndex, line, t*2+1)));
+                    tokenIndex++;
+                }
+            }
+            events.add(new DBEventLocation(6, 1));
+            events.add(new DBEventExitRule(GRAMMAR_FILE_NAME, "stat"));
+            events.add(new DBEventExitSubRule(1));
+            line++;
+        }
+        events.add(new DBEventExitRule(GRAMMAR_FILE_NAME, "prog"));
+    }
+
+    private static Token createToken(int index, int line, int pos) {
+        CommonToken token = new CommonToken(4, "id"+index);
+        token.setTokenIndex(index);
+        token.setLine(line);
+        token.setCharPositionInLine(pos);
+        return token;
+    }
+
+    private static Token createHiddenToken(int index, int line, int pos) {
+        CommonToken token = new CommonToken(5, " ");
+        token.setChannel(Token.HIDDEN_CHANNEL);
+        token.setTokenIndex(index);
+        token.setLine(line);
+        token.setCharPositionInLine(pos);
+        return token;
+    }
+
+    /** The debugger tab without its panels: the events only update the parse tree model */
+    private static class BenchmarkDebuggerTab extends DebuggerTab {
+
+        public BenchmarkDebuggerTab() {
+            super(null);
+            parseTreeModel = new DBParseTreeModel(this);
+        }
+
+        public DBParseTreeModel getParseTreeModel() {
+            return parseTreeModel;
+        }
+
+        @Override
+        public Console getConsole() {
+            return new BenchmarkGrammars.QuietConsole();
+        }
+
+        @Override
+        public void resetGUI() {
+            parseTreeModel.clear();
+        }
+
+        @Override
+        public void addEvent(List<DBEvent> events, int index, DBPlayerContextInfo info) {
+        }
+
+        @Override
+        public void playerCreateSnapshot(DBPlayerSnapshot snapshot) {
+            snapshot.setState(parseTreeModel, parseTreeModel.createSnapshot());
+        }
+
+        @Override
+        public void playerRestoreSnapshot(DBPlayerSnapshot snapshot) {
+            parseTreeModel.restoreSnapshot(snapshot.getState(parseTreeModel));
+        }
+
+        @Override
+        public void playerPushRule(DBEventEnterRule rule) {
+            parseTreeModel.pushRule(rule.name);
+        }
+
+        @Override
+        public void playerPopRule(DBEventExitRule rule) {
+            parseTreeModel.popRule();
+        }
+
+        @Override
+        public void resetGrammarLocation() {
+        }
+
+        @Override
+        public void setGrammarLocation(DBEventLocation location) {
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package org.antlr.works.benchmark;
+
+import org.antlr.works.ate.syntax.misc.ATEToken;
+import org.antlr.works.grammar.engine.GrammarEngine;
+import org.antlr.works.grammar.syntax.GrammarSyntaxLexer;
+import org.antlr.works.grammar.syntax.GrammarSyntaxParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * Measures the work done by the editor each time the text changes: the lexer, the parser
+ * and the update of the grammar properties (duplicate rules, undefined references, etc).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EditorBenchmark {
+
+    @Param({BenchmarkGrammars.MANTRA, BenchmarkGrammars.VSQL, BenchmarkGrammars.EXPR})
+    public String grammar;
+
+    @Param({"1", "8"})
+    public int scale;
+
+    private String text;
+    private List<ATEToken> tokens;
+    private GrammarEngine engine;
+
+    @Setup
+    public void setup() throws Exception {
+        text = BenchmarkGrammars.getText(grammar, scale);
+
+        GrammarSyntaxLexer lexer = new GrammarSyntaxLexer();
+        lexer.tokenize(text);
+        tokens = lexer.getTokens();
+
+        engine = BenchmarkGrammars.createEngine(text);
+    }
+
+    @Benchmark
+    public List<ATEToken> tokenize() {
+        GrammarSyntaxLexer lexer = new GrammarSyntaxLexer();
+        lexer.tokenize(text);
+        return lexer.getTokens();
+    }
+
+    @Benchmark
+    public GrammarSyntaxParser parseTokens() {
+        GrammarSyntaxParser parser = new GrammarSyntaxParser();
+        parser.parse(tokens);
+        return parser;
+    }
+
+    @Benchmark
+    public GrammarEngine updateAll() {
+        // The parser did not report scoped changes, so all the properties are rebuilt
+        engine.parserCompleted();
+        engine.updateAll();
+        return engine;
+    }
+
+}
@@ -0,0 +1,104 @@
+package org.antlr.works.benchmark;
+
+import org.antlr.analysis.NFAState;
+import org.antlr.tool.Grammar;
+import org.antlr.works.grammar.antlr.ANTLRGrammarEngine;
+import org.antlr.works.grammar.element.ElementRule;
+import org.antlr.works.grammar.engine.GrammarEngine;
+import org.antlr.works.visualization.fa.FAFactory;
+import org.antlr.works.visualization.fa.FAState;
+import org.antlr.works.visualization.graphics.GRenderer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * Measures the creation of the syntax diagrams of all the parser rules: the
+ * optimized NFA of each rule and the graph rendered from it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class VisualizationBenchmark {
+
+    @Param({BenchmarkGrammars.MANTRA, BenchmarkGrammars.VSQL, BenchmarkGrammars.EXPR})
+    public String grammar;
+
+    @Param({"1", "8"})
+    public int scale;
+
+    private final List<Grammar> grammars = new ArrayList<Grammar>();
+    private final List<NFAState> startStates = new ArrayList<NFAState>();
+
+    @Setup
+    public void setup() throws Exception {
+        GrammarEngine engine = BenchmarkGrammars.createEngine(BenchmarkGrammars.getText(grammar, scale));
+        ANTLRGrammarEngine antlrEngine = engine.getANTLRGrammarEngine();
+        antlrEngine.createGrammars();
+
+        for(ElementRule rule : engine.getRules()) {
+            if(rule.lexer)
+                continue;
+
+            NFAState state = antlrEngine.getRuleStartState(rule.name);
+            if(state == null)
+                continue;
+
+            grammars.add(antlrEngine.getGrammarForRule(rule.name));
+            startStates.add(state);
+        }
+    }
+
+    @Benchmark
+    public void buildNFA(Blackhole bh) {
+        for(int index=0; index<startStates.size(); index++) {
+            bh.consume(new FAFactory(grammars.get(index)).buildNFA(startStates.get(index), true));
+        }
+    }
+
+    @Benchmark
+    public void buildAndRender(Blackhole bh) {
+        GRenderer renderer = new GRenderer();
+        for(int index=0; index<startStates.size(); index++) {
+            FAState state = new FAFactory(grammars.get(index)).buildNFA(startStates.get(index), true);
+            bh.consume(renderer.render(state));
+        }
+    }
+
+}
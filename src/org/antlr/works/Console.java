@@ -6,14 +6,18 @@ import org.antlr.works.grammar.engine.GrammarEngine;
 import org.antlr.works.grammar.engine.GrammarEngineDelegate;
 import org.antlr.works.grammar.engine.GrammarEngineImpl;
 import org.antlr.works.grammar.syntax.GrammarSyntaxEngine;
+import org.antlr.works.prefs.AWPrefs;
 import org.antlr.works.utils.ConsoleHelper;
 import org.antlr.works.visualization.SDGenerator;
+import org.antlr.works.visualization.graphics.GDiskCache;
 import org.antlr.works.visualization.serializable.SEncoder;
 import org.antlr.works.visualization.serializable.SXMLEncoder;
 import org.antlr.xjlib.foundation.XJUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
 
 /*
 
@@ -48,10 +52,13 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 public class Console {
 
-    private String file;
+    private List<String> files = new ArrayList<String>();
     private String outputDirectory;
     private String outputFile;
     private boolean verbose;
+    private int threads;
+    private GDiskCache diskCache;
+    private String commonDirectory;
 
     public static void main(String[] args) throws Exception {
         if(args.length == 0) {
@@ -68,10 +75,14 @@ public class Console {
     private static void printUsage() {
         StringBuilder sb = new StringBuilder();
         sb.append("Usage: java -cp antlrworks.jar org.antlr.works.Console [args]\n");
-        sb.append(" -f grammarFile : ").append("specify the input grammar file (*.g)\n");
+        sb.append(" -f grammarFile : ").append("specify an input grammar file (*.g). Can be repeated\n");
+        sb.append(" -d grammarDir : ").append("specify a directory containing the input grammar files (*.g). Can be repeated\n");
         sb.append(" -sd format : ").append("specify the format of the syntax diagram output file. For EPS, use 'eps'. For bitmap, use either 'png' or any available extensions\n");
         sb.append(" -serialize outputFile : ").append("serialize all the syntax diagram of the specified files");
-        sb.append(" -o outputDir : ").append("specify the output directory\n");
+        sb.append(" -o outputDir : ").append("specify the output directory. With several grammars, each grammar gets its own sub-directory (its path relative to the directory containing all the grammars)\n");
+        sb.append(" -threads count : ").append("specify the number of threads rendering the rules (default is the number of processors)\n");
+        sb.append(" -cache cacheDir : ").append("specify the directory of the syntax diagram cache (default is the one of the preferences)\n");
+        sb.append(" -nocache : ").append("do not use the syntax diagram cache\n");
         sb.append(" -verbose : ").append("prints the operations\n");
         System.out.println(sb.toString());
     }
@@ -81,7 +92,8 @@ public class Console {
     }
 
     private void process(String args[]) throws Exception {
-        readArguments(args);
+        if(!readArguments(args))
+            return;
 
         String sdFormat = getArgumentValue(args, "-sd");
         if(sdFormat != null) {
@@ -94,29 +106,72 @@ public class Console {
         }
     }
 
-    private void readArguments(String args[]) {
-        file = getArgumentValue(args, "-f");
-        if(file == null) {
-            System.err.println("File not specified (-f)");
-            return;
+    private boolean readArguments(String args[]) {
+        for(String file : getArgumentValues(args, "-f")) {
+            files.add(new File(file).getAbsolutePath());
+        }
+        for(String dir : getArgumentValues(args, "-d")) {
+            addGrammarFiles(new File(dir).getAbsoluteFile());
+        }
+        if(files.isEmpty()) {
+            System.err.println("File not specified (-f or -d)");
+            return false;
         }
-        file = new File(file).getAbsolutePath();
 
         outputDirectory = getArgumentValue(args, "-o");
         if(outputDirectory == null && hasArgument(args, "-sd")) {
             System.err.println("Output directory not specified (-o)");
-            return;
+            return false;
         }
 
         outputFile = getArgumentValue(args, "-serialize");
         if(outputFile == null && hasArgument(args, "-serialize")) {
             System.err.println("Output file not specified (-serialize)");
-            return;
+            return false;
         }
         String v = getArgumentValue(args, "-verbose");
         if(v != null) {
             verbose = true;
         }
+
+        threads = Runtime.getRuntime().availableProcessors();
+        String t = getArgumentValue(args, "-threads");
+        if(t != null) {
+            try {
+                threads = Math.max(1, Integer.parseInt(t));
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid number of threads (-threads): "+t);
+                return false;
+            }
+        }
+
+        if(!hasArgument(args, "-nocache")) {
+            String cacheDirectory = getArgumentValue(args, "-cache");
+            if(cacheDirectory == null) {
+                diskCache = GDiskCache.getShared();
+            } else {
+                diskCache = GDiskCache.create(new File(cacheDirectory), AWPrefs.getSDCacheSize()*1024L*1024L);
+            }
+            if(verbose && diskCache != null) System.out.println("Using the syntax diagram cache "+diskCache.getDirectory());
+        }
+        return true;
+    }
+
+    private void addGrammarFiles(File dir) {
+        File[] children = dir.listFiles();
+        if(children == null) {
+            System.err.println("Cannot read the directory "+dir);
+            return;
+        }
+
+        Arrays.sort(children);
+        for(File child : children) {
+            if(child.isDirectory()) {
+                addGrammarFiles(child);
+            } else if(child.getName().endsWith(".g")) {
+                files.add(child.getPath());
+            }
+        }
     }
 
     private void generateSyntaxDiagrams(String format) throws Exception {
@@ -127,30 +182,125 @@ public class Console {
         processSyntaxDiagram(new SerializePSDDelegate());
     }
 
+    /**
+     * Each grammar is created once, then the rules of all the grammars are rendered by
+     * a pool of threads. Each thread uses its own SDGenerator (and thus its own GContext
+     * and GRenderer): only the grammars are shared and they are only read.
+     */
     private void processSyntaxDiagram(ProcessSyntaxDiagramDelegate delegate) throws Exception {
-        GrammarEngine engine = new GrammarEngineImpl(new EngineDelegate());
-        GrammarSyntaxEngine syntaxEngine = engine.getSyntaxEngine();
+        long start = System.currentTimeMillis();
 
-        syntaxEngine.setDelegate(new SyntaxDelegate());
-        syntaxEngine.processSyntax();
+        delegate.beginProcess();
 
-        engine.parserCompleted();
-        
-        SDGenerator gen = new SDGenerator(engine);
+        List<ConsoleGrammar> grammars = new ArrayList<ConsoleGrammar>();
+        for(String file : files) {
+            ConsoleGrammar grammar = new ConsoleGrammar(file);
+            if(grammar.create()) {
+                grammars.add(grammar);
+            }
+        }
 
-        delegate.beginProcess();
-        for(String name : engine.getRuleNames()) {
-            delegate.processRule(name, gen);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<RuleResult> results = new ArrayList<RuleResult>();
+        try {
+            List<Future<RuleResult>> futures = new ArrayList<Future<RuleResult>>();
+            for(ConsoleGrammar grammar : grammars) {
+                for(String name : grammar.engine.getRuleNames()) {
+                    futures.add(executor.submit(new RuleTask(grammar, name, delegate)));
+                }
+            }
+            for(Future<RuleResult> future : futures) {
+                results.add(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        delegate.endProcess(results);
+
+        printSummary(grammars, results, System.currentTimeMillis()-start);
+    }
+
+    private void printSummary(List<ConsoleGrammar> grammars, List<RuleResult> results, long time) {
+        int failures = 0;
+        for(RuleResult result : results) {
+            result.grammar.renderTime += result.time;
+            if(result.error != null) {
+                failures++;
+            }
+        }
+
+        System.out.println("Grammar timings (creation, rendering of the rules):");
+        for(ConsoleGrammar grammar : grammars) {
+            System.out.println("  "+grammar.file+": "+grammar.createTime+" ms, "+grammar.renderTime+" ms for "
+                    +grammar.engine.getRuleNames().size()+" rules");
+        }
+
+        List<RuleResult> sorted = new ArrayList<RuleResult>(results);
+        Collections.sort(sorted, new Comparator<RuleResult>() {
+            public int compare(RuleResult r1, RuleResult r2) {
+                return r1.time < r2.time ? 1 : (r1.time == r2.time ? 0 : -1);
+            }
+        });
+        // All the rules in verbose mode, the slowest ones otherwise
+        int count = verbose ? sorted.size() : Math.min(10, sorted.size());
+        System.out.println("Rule timings"+(verbose ? ":" : " (slowest "+count+"):"));
+        for(RuleResult result : sorted.subList(0, count)) {
+            System.out.println("  "+result.grammar.getName()+"."+result.name+": "+result.time+" ms");
+        }
+
+        System.out.println(results.size()+" rules of "+grammars.size()+" grammars processed in "+time+" ms using "
+                +threads+" threads"+(failures > 0 ? " ("+failures+" failed)" : ""));
+    }
+
+    private class RuleTask implements Callable<RuleResult> {
+
+        private final ConsoleGrammar grammar;
+        private final String name;
+        private final ProcessSyntaxDiagramDelegate delegate;
+
+        public RuleTask(ConsoleGrammar grammar, String name, ProcessSyntaxDiagramDelegate delegate) {
+            this.grammar = grammar;
+            this.name = name;
+            this.delegate = delegate;
+        }
+
+        public RuleResult call() {
+            RuleResult result = new RuleResult(grammar, name);
+            long start = System.currentTimeMillis();
+            try {
+                result.output = delegate.processRule(grammar, name, grammar.getGenerator());
+            } catch (Throwable e) {
+                result.error = e;
+                System.err.println("Cannot process rule "+name+" of "+grammar.file+": "+e);
+                if(verbose) e.printStackTrace();
+            }
+            result.time = System.currentTimeMillis()-start;
+            return result;
+        }
+    }
+
+    private static class RuleResult {
+
+        public final ConsoleGrammar grammar;
+        public final String name;
+        public String output;
+        public Throwable error;
+        public long time;
+
+        public RuleResult(ConsoleGrammar grammar, String name) {
+            this.grammar = grammar;
+            this.name = name;
         }
-        delegate.endProcess();
     }
 
     private interface ProcessSyntaxDiagramDelegate {
 
         void beginProcess();
-        void endProcess() throws Exception;
+        void endProcess(List<RuleResult> results) throws Exception;
 
-        void processRule(String name, SDGenerator gen) throws Exception;
+        /** Called concurrently by the threads: returns the output to keep for endProcess() */
+        String processRule(ConsoleGrammar grammar, String name, SDGenerator gen) throws Exception;
 
     }
 
@@ -167,44 +317,71 @@ public class Console {
             new File(outputDirectory).mkdirs();
         }
 
-        public void endProcess() throws IOException {
+        public void endProcess(List<RuleResult> results) throws IOException {
             if(verbose) System.out.println("Done");
         }
 
-        public void processRule(String name, SDGenerator gen) throws Exception {
+        public String processRule(ConsoleGrammar grammar, String name, SDGenerator gen) throws Exception {
             if(verbose) System.out.println("Generate rule "+name);
 
-            String file = XJUtils.concatPath(outputDirectory, name+"."+format);
+            String file = XJUtils.concatPath(getOutputDirectory(grammar), name+"."+format);
             if(format.equals("eps")) {
                 gen.renderRuleToEPSFile(name, file);
             } else {
                 gen.renderRuleToBitmapFile(name, format, file);
             }
+            return null;
+        }
+
+        /** With several grammars, the diagrams of each grammar go in their own directory. The directory
+         * is the path of the grammar relative to the directory containing all the grammars, so grammars
+         * having the same name in different directories do not overwrite each other's diagrams.
+         */
+        private String getOutputDirectory(ConsoleGrammar grammar) {
+            if(files.size() == 1)
+                return outputDirectory;
+
+            String dir = XJUtils.concatPath(outputDirectory, getRelativeName(grammar.file));
+            new File(dir).mkdirs();
+            return dir;
         }
     }
 
     private class SerializePSDDelegate implements ProcessSyntaxDiagramDelegate {
 
-        private StringBuilder content;
-
         public void beginProcess() {
             if(verbose) System.out.println("Begin");
             new File(XJUtils.getPathByDeletingLastComponent(outputFile)).mkdirs();
-            content = new StringBuilder();
         }
 
-        public void endProcess() throws IOException {
+        public void endProcess(List<RuleResult> results) throws IOException {
+            // The results are in the order of the grammars and of their rules
+            StringBuilder content = new StringBuilder();
+            for(RuleResult result : results) {
+                if(result.output == null) continue;
+                content.append("\n\n------").append(result.name).append("------\n\n");
+                content.append(result.output);
+            }
             XJUtils.writeStringToFile(content.toString(), outputFile);
             if(verbose) System.out.println("Done");
         }
 
-        public void processRule(String name, SDGenerator gen) throws Exception {
+        public String processRule(ConsoleGrammar grammar, String name, SDGenerator gen) throws Exception {
             if(verbose) System.out.println("Generate rule "+name);
             SEncoder encoder = new SXMLEncoder();
             gen.serializeRule(name, encoder);
-            content.append("\n\n------").append(name).append("------\n\n");
-            content.append(encoder.toString());
+            return encoder.toString();
+        }
+    }
+
+    private static List<String> getArgumentValues(String[] args, String name) {
+        List<String> values = new ArrayList<String>();
+        for (int i = 0; i+1 < args.length; i++) {
+            if (args[i].equals(name)) {
+                values.add(args[i+1]);
+            }
         }
+        return values;
     }
 
     private static String getArgumentValue(String[] args, String name) {
@@ -230,20 +407,118 @@ public class Console {
         return false;
     }
 
-    private String getGrammarText() {
-        try {
-            return XJUtils.getStringFromFile(file);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
+    /** Returns the path of the file relative to the directory containing all the files, without its extension */
+    private synchronized String getRelativeName(String file) {
+        if(commonDirectory == null) {
+            commonDirectory = getCommonDirectory(files);
+        }
+
+        String name = file;
+        if(commonDirectory.length() > 0 && file.startsWith(commonDirectory)) {
+            name = file.substring(commonDirectory.length());
+        }
+        // Without a common directory (i.e. different roots), keep the path without its root
+        name = name.replace(':', '_');
+        while(name.startsWith(File.separator)) {
+            name = name.substring(File.separator.length());
+        }
+        return XJUtils.getPathByDeletingPathExtension(name);
+    }
+
+    /** Returns the deepest directory containing all the files or an empty string if there is none */
+    private static String getCommonDirectory(List<String> files) {
+        String common = null;
+        for(String file : files) {
+            String dir = new File(file).getParent();
+            if(dir == null)
+                return "";
+            if(common == null) {
+                common = dir;
+                continue;
+            }
+            while(!dir.equals(common) && !dir.startsWith(common.endsWith(File.separator) ? common : common+File.separator)) {
+                common = new File(common).getParent();
+                if(common == null)
+                    return "";
+            }
+        }
+        return common == null ? "" : common;
+    }
+
+    /** A grammar file of the batch: its text is read once and its grammars created once */
+    private class ConsoleGrammar {
+
+        public final String file;
+        public final GrammarEngine engine;
+        public long createTime;
+        public long renderTime;
+
+        private String text;
+        private final ThreadLocal<SDGenerator> generators = new ThreadLocal<SDGenerator>() {
+            @Override
+            protected SDGenerator initialValue() {
+                SDGenerator generator = new SDGenerator(engine);
+                generator.setDiskCache(diskCache, file);
+                return generator;
+            }
+        };
+
+        public ConsoleGrammar(String file) {
+            this.file = file;
+            this.engine = new GrammarEngineImpl(new EngineDelegate(this));
+        }
+
+        public String getName() {
+            return XJUtils.getPathByDeletingPathExtension(XJUtils.getLastPathComponent(file));
+        }
+
+        public String getText() {
+            if(text == null) {
+                try {
+                    text = XJUtils.getStringFromFile(file);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            return text;
+        }
+
+        public boolean create() {
+            if(verbose) System.out.println("Create grammar "+file);
+
+            long start = System.currentTimeMillis();
+            try {
+                GrammarSyntaxEngine syntaxEngine = engine.getSyntaxEngine();
+
+                syntaxEngine.setDelegate(new SyntaxDelegate(this));
+                syntaxEngine.processSyntax();
+
+                engine.parserCompleted();
+                engine.getANTLRGrammarEngine().createGrammars();
+            } catch (Exception e) {
+                System.err.println("Cannot create the grammar "+file+": "+e);
+                return false;
+            } finally {
+                createTime = System.currentTimeMillis()-start;
+            }
+            return true;
+        }
+
+        public SDGenerator getGenerator() {
+            return generators.get();
         }
     }
 
     public class SyntaxDelegate implements ATESyntaxEngineDelegate {
 
+        private final ConsoleGrammar grammar;
+
+        public SyntaxDelegate(ConsoleGrammar grammar) {
+            this.grammar = grammar;
+        }
 
         public String getText() {
-            return getGrammarText();
+            return grammar.getText();
         }
 
         public void ateEngineBeforeParsing() {
@@ -256,13 +531,19 @@ public class Console {
     }
 
     private class EngineDelegate implements GrammarEngineDelegate {
-        
+
+        private final ConsoleGrammar grammar;
+
+        public EngineDelegate(ConsoleGrammar grammar) {
+            this.grammar = grammar;
+        }
+
         public void engineAnalyzeCompleted() {
             // ignored
         }
 
         public String getOutputPath() {
-            return XJUtils.concatPath(XJUtils.getPathByDeletingLastComponent(file), "output");
+            return XJUtils.concatPath(XJUtils.getPathByDeletingLastComponent(grammar.file), "output");
         }
 
         public Tool getANTLRTool() {
@@ -272,11 +553,11 @@ public class Console {
         }
 
         public String getGrammarFileName() {
-            return XJUtils.getLastPathComponent(file);
+            return XJUtils.getLastPathComponent(grammar.file);
         }
 
         public String getGrammarText() {
-            return Console.this.getGrammarText();
+            return grammar.getText();
         }
 
         public String getTokenVocabFile(String name) {
@@ -1,5 +1,6 @@
 package org.antlr.works.ate;
 
+import org.antlr.works.ate.syntax.misc.ATETaskScheduler;
 import org.antlr.works.ate.syntax.misc.ATEThread;
 
 import javax.swing.text.BadLocationException;
@@ -209,6 +210,7 @@ public abstract class ATEOverlayManager {
         private Graphics2D g2d;
 
         private UnderlyingRenderingThread() {
+            setPriority(ATETaskScheduler.Priority.EDITOR);
             start();
         }
 
@@ -8,6 +8,7 @@ import org.antlr.works.ate.swing.ATEAutoIndentation;
 import org.antlr.works.ate.swing.ATEKeyBindings;
 import org.antlr.works.ate.syntax.generic.ATESyntaxEngine;
 import org.antlr.works.ate.syntax.generic.ATESyntaxEngineDelegate;
+import org.antlr.works.ate.syntax.generic.ATESyntaxParseService;
 import org.antlr.works.ate.syntax.misc.ATELine;
 import org.antlr.works.ate.syntax.misc.ATEToken;
 import org.antlr.xjlib.appkit.frame.XJFrame;
@@ -76,6 +77,7 @@ public class ATEPanel extends JPanel implements XJSmoothScrolling.ScrollingDeleg
     protected ATEAnalysisManager analysisManager;
 
     protected ATESyntaxEngine engine;
+    protected ATESyntaxParseService parseService;
     protected ATEAutoIndentation autoIndent;
 
     protected TextPaneListener textPaneListener;
@@ -83,6 +85,14 @@ public class ATEPanel extends JPanel implements XJSmoothScrolling.ScrollingDeleg
     protected boolean syntaxColoring = false;
     protected int caretPosition;
 
+    /** Pending edit of the text that has not been parsed yet. If the edit
+     * cannot be described by a single range, the whole text is parsed again.
+     */
+    protected boolean editPending = false;
+    protected boolean editRangeValid = false;
+    protected int editOffset;
+    protected int editLength;
+
     protected CaretListener cl;
     protected MouseListener ml;
     protected MouseMotionListener mml;
@@ -110,9 +120,13 @@ public class ATEPanel extends JPanel implements XJSmoothScrolling.ScrollingDeleg
     }
 
     public void setParserEngine(ATESyntaxEngine engine) {
+        if(parseService != null)
+            parseService.close();
+
         this.engine = engine;
         this.engine.setDelegate(this);
         this.engine.refreshColoring();
+        this.parseService = new ATESyntaxParseService(engine);
     }
 
     public ATESyntaxEngine getParserEngine() {
@@ -378,8 +392,12 @@ public class ATEPanel extends JPanel implements XJSmoothScrolling.ScrollingDeleg
             ateEngineBeforeParsing();
 
             textPane.setText(normalizeText(text));
-            if(engine != null)
+            if(engine != null) {
+                // Any parsing in progress is about the previous text
+                parseService.invalidate();
                 engine.processSyntax();
+            }
+            editPending = false;
 
             textPane.setCaretPosition(0);
             textPane.moveCaretPosition(0);
@@ -508,9 +526,33 @@ public class ATEPanel extends JPanel implements XJSmoothScrolling.ScrollingDeleg
         return gutter;
     }
 
+    /** Submits the text to the parse service: the engine lexes and parses it in the
+     * background and calls ateEngineAfterParsing() in the event thread once the
+     * result is published.
+     */
     public void parse() {
-        if(engine != null)
-            engine.process();
+        if(engine != null) {
+            ateEngineBeforeParsing();
+            parseService.submit(getText(), editPending && editRangeValid, editOffset, editLength);
+        }
+        editPending = false;
+    }
+
+    protected void recordEdit(int offset, int length) {
+        if(editPending) {
+            // More than one edit since the last parsing
+            editRangeValid = false;
+        } else {
+            editPending = true;
+            editRangeValid = true;
+            editOffset = offset;
+            editLength = length;
+        }
+    }
+
+    protected void invalidateEdit() {
+        editPending = true;
+        editRangeValid = false;
     }
 
     public String getText() {
@@ -563,6 +605,11 @@ public class ATEPanel extends JPanel implements XJSmoothScrolling.ScrollingDeleg
     }
 
     public void close() {
+        if(parseService != null) {
+            parseService.close();
+            parseService = null;
+        }
+
         textPane.removeCaretListener(cl);
         textPane.removeMouseListener(ml);
         textPane.removeMouseMotionListener(mml);
@@ -604,7 +651,12 @@ public class ATEPanel extends JPanel implements XJSmoothScrolling.ScrollingDeleg
         }
 
         public void changeUpdate(int offset, int length, boolean insert) {
-            if(isEnable()) {
+            if(!isEnable()) {
+                // The change is not recorded: the next parsing has to process the whole text
+                invalidateEdit();
+            } else {
+                recordEdit(offset, length);
+
                 if(delegate != null)
                     delegate.ateChangeUpdate(offset, length, insert);
 
@@ -3,12 +3,18 @@ package org.antlr.works.ate.swing;
 import org.antlr.works.ate.ATEPanel;
 import org.antlr.works.ate.ATETextPane;
 import org.antlr.works.ate.ATEUtilities;
+import org.antlr.works.ate.syntax.generic.ATEStylePalette;
+import org.antlr.works.ate.syntax.generic.ATEStyleRuns;
 import org.antlr.works.ate.syntax.generic.ATESyntaxEngine;
-import org.antlr.works.ate.syntax.misc.ATEToken;
 
 import javax.swing.text.*;
 import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /*
 
@@ -55,7 +61,11 @@ public class ATERenderingView extends PlainView {
     private ATERenderingViewDelegate delegate;
     private ATEPanel textEditor;
     private ATETextPane textPane;
-    private List<ATEToken> tokens;
+    /** Maximum number of lines whose glyphs are kept in cache */
+    public static final int LINE_CACHE_SIZE = 1024;
+
+    /** Lines longer than this are not cached */
+    private static final int MAX_CACHED_LINE_LENGTH = 4096;
 
     private DisplayOperation displayOp = new DisplayOperation();
     private final ModelToViewOperation modelToViewOp = new ModelToViewOperation();
@@ -64,6 +74,26 @@ public class ATERenderingView extends PlainView {
     private Graphics currentGraphics;
     private Color savedColor;
 
+    /** Fonts derived from DEFAULT_FONT indexed by style (plain, bold, italic) */
+    private final Font[] derivedFonts = new Font[3];
+    private Font derivedBaseFont;
+
+    /** Fonts and colors of each style of the palette of the engine */
+    private Font[] styleFonts = new Font[0];
+    private Color[] styleColors = new Color[0];
+    private ATEStylePalette stylePalette;
+    private int stylePaletteVersion = -1;
+
+    /** Glyphs of the recently painted lines, by content and styles of the line */
+    private final Map<String,LineGlyphs> lineCache = new LinkedHashMap<String, LineGlyphs>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LineGlyphs> eldest) {
+            return size() > LINE_CACHE_SIZE;
+        }
+    };
+    private FontRenderContext lineCacheContext;
+    private int lineCacheTabSize;
+
     public ATERenderingView(Element elem, ATEPanel textEditor) {
         super(elem);
         this.textEditor = textEditor;
@@ -113,7 +143,173 @@ public class ATERenderingView extends PlainView {
             }
         }
 
-        super.drawLine(lineIndex, g, x, y);
+        if(!drawCachedLine(lineIndex, g, x, y)) {
+            super.drawLine(lineIndex, g, x, y);
+        }
+    }
+
+    /**
+     * Draws the line using the glyphs computed the last time a line with the same content
+     * and the same styles was drawn. Returns false if the line cannot be drawn this way, for example
+     * if a token of the delegate is located on the line.
+     */
+    private boolean drawCachedLine(int lineIndex, Graphics g, int x, int y) {
+        if(!(g instanceof Graphics2D) || textEditor == null || !textEditor.isSyntaxColoring())
+            return false;
+
+        final ATESyntaxEngine engine = textEditor.getParserEngine();
+        final ATEStyleRuns runs = engine.getStyleRuns();
+        if(runs == null)
+            return false;
+
+        final Element line = getElement().getElement(lineIndex);
+        final int p0 = line.getStartOffset();
+        final int p1 = Math.min(line.getEndOffset()-1, getDocument().getLength());
+        if(p1-p0 > MAX_CACHED_LINE_LENGTH)
+            return false;
+
+        if(delegate != null) {
+            final ATERenderingToken[] tokens = delegate.getTokens();
+            if(tokens != null) {
+                for(ATERenderingToken t : tokens) {
+                    if(t.index >= p0 && t.index <= p1)
+                        return false;
+                }
+            }
+        }
+
+        this.currentGraphics = g;
+        final Graphics2D g2d = (Graphics2D)g;
+        updateStyles(engine.getStylePalette());
+        final FontRenderContext frc = g2d.getFontRenderContext();
+        if(!frc.equals(lineCacheContext) || getTabSize() != lineCacheTabSize) {
+            lineCache.clear();
+            lineCacheContext = frc;
+            lineCacheTabSize = getTabSize();
+        }
+
+        final Segment text = getLineBuffer();
+        try {
+            getDocument().getText(p0, p1-p0, text);
+        } catch (BadLocationException e) {
+            return false;
+        }
+
+        // The key is made of the characters of the line followed by the position and style of each run
+        final StringBuilder key = new StringBuilder(text.count+16);
+        key.append(text.array, text.offset, text.count);
+        key.append('\u0000');
+        final int first = runs.findFirstRunOfLine(lineIndex, p0);
+        for(int run = first; run < runs.getRunCount() && runs.getStart(run) < p1; run++) {
+            key.append((char)(Math.max(runs.getStart(run), p0)-p0));
+            key.append((char)(Math.min(runs.getEnd(run), p1)-p0));
+            key.append((char)runs.getStyle(run));
+        }
+
+        final String k = key.toString();
+        LineGlyphs glyphs = lineCache.get(k);
+        if(glyphs == null || glyphs.x != x) {
+            glyphs = createLineGlyphs(g2d, text, x, p0, p1, runs, first);
+            lineCache.put(k, glyphs);
+        }
+
+        save(g);
+        for(int i=0; i<glyphs.vectors.length; i++) {
+            g2d.setColor(glyphs.colors[i]);
+            g2d.drawGlyphVector(glyphs.vectors[i], glyphs.positions[i], y);
+        }
+        restore(g);
+        return true;
+    }
+
+    private LineGlyphs createLineGlyphs(Graphics2D g, Segment text, int x, int p0, int p1, ATEStyleRuns runs, int first) {
+        final List<GlyphVector> vectors = new ArrayList<GlyphVector>();
+        final List<Color> colors = new ArrayList<Color>();
+        final List<Integer> positions = new ArrayList<Integer>();
+
+        int p = p0;
+        int cx = x;
+        for(int run = first; p < p1; run++) {
+            int start, end, style;
+            if(run < runs.getRunCount() && runs.getStart(run) < p1) {
+                start = Math.max(runs.getStart(run), p0);
+                end = Math.min(runs.getEnd(run), p1);
+                style = runs.getStyle(run);
+            } else {
+                start = end = p1;
+                style = ATEStylePalette.DEFAULT_STYLE;
+            }
+
+            // Fill any non-contiguous token with the default style
+            if(start > p) {
+                cx = layoutPortion(g, text, cx, p0, p, start, ATEStylePalette.DEFAULT_STYLE, vectors, colors, positions);
+            }
+            if(end > start) {
+                cx = layoutPortion(g, text, cx, p0, start, end, style, vectors, colors, positions);
+            }
+            p = Math.max(p, end);
+        }
+
+        LineGlyphs glyphs = new LineGlyphs();
+        glyphs.x = x;
+        glyphs.vectors = vectors.toArray(new GlyphVector[vectors.size()]);
+        glyphs.colors = colors.toArray(new Color[colors.size()]);
+        glyphs.positions = new int[positions.size()];
+        for(int i=0; i<glyphs.positions.length; i++) {
+            glyphs.positions[i] = positions.get(i);
+        }
+        return glyphs;
+    }
+
+    /** Lays out the characters between start and end the same way Utilities.drawTabbedText() draws them */
+    private int layoutPortion(Graphics2D g, Segment text, int x, int p0, int start, int end, int style,
+                              List<GlyphVector> vectors, List<Color> colors, List<Integer> positions)
+    {
+        final Font font = styleFonts[style];
+        final FontMetrics fm = g.getFontMetrics(font);
+        final char[] chars = text.array;
+        final int offset = text.offset-p0;
+
+        int segmentStart = start;
+        for(int i = start; i <= end; i++) {
+            if(i < end && chars[offset+i] != '\t')
+                continue;
+
+            if(i > segmentStart) {
+                final int length = i-segmentStart;
+                vectors.add(font.createGlyphVector(g.getFontRenderContext(), new String(chars, offset+segmentStart, length)));
+                colors.add(styleColors[style]);
+                positions.add(x);
+                x += fm.charsWidth(chars, offset+segmentStart, length);
+            }
+            if(i < end) {
+                x = (int) nextTabStop(x, i);
+            }
+            segmentStart = i+1;
+        }
+        return x;
+    }
+
+    /** Updates the fonts and colors of the styles if the palette or the font changed */
+    private void updateStyles(ATEStylePalette palette) {
+        final Font base = DEFAULT_FONT;
+        if(palette == stylePalette && palette.getVersion() == stylePaletteVersion && base == derivedBaseFont)
+            return;
+
+        synchronized(palette) {
+            stylePalette = palette;
+            stylePaletteVersion = palette.getVersion();
+            final int count = palette.getStyleCount();
+            styleFonts = new Font[count];
+            styleColors = new Color[count];
+            for(int style=0; style<count; style++) {
+                final AttributeSet attribute = palette.getAttribute(style);
+                styleFonts[style] = attribute == null ? getDerivedFont(Font.PLAIN) : getFontForAttribute(attribute);
+                final Color c = attribute == null ? null : StyleConstants.getForeground(attribute);
+                styleColors[style] = c == null ? Color.black : c;
+            }
+        }
+        lineCache.clear();
     }
 
     /**
@@ -271,29 +467,35 @@ public class ATERenderingView extends PlainView {
             return super.drawUnselectedText(g, x, y, p0, p1);
         }
 
-        // Note: the tokens are not contiguous (e.g. white spaces are ignored)
+        // Note: the runs are not contiguous (e.g. white spaces and tokens without style are not runs)
         final Document doc = getDocument();
         final ATESyntaxEngine engine = textEditor.getParserEngine();
-        tokens = engine.getTokens();
+        final ATEStyleRuns runs = engine.getStyleRuns();
+        if(runs == null) {
+            // The text has not been parsed yet
+            return super.drawUnselectedText(g, x, y, p0, p1);
+        }
+
+        final ATEStylePalette palette = engine.getStylePalette();
         int p = p0;
-        final int start = findStartingTokenIndex(p0, 0, tokens.size(), 0);
-        for (int i = start; i < tokens.size(); i++) {
-            ATEToken t = tokens.get(i);
-            AttributeSet attribute = engine.getAttributeForToken(t);
-            if(t.start >= p0 && t.start <= p1) {
-                // Fill any non-contiguous token with default color
-                if(t.start > p) {
-                    x = action.renderTextPortion(g, x, y, p, t.start, p1, doc, null);
+        for (int i = runs.findFirstRun(p0); i < runs.getRunCount(); i++) {
+            final int start = runs.getStart(i);
+            final int end = runs.getEnd(i);
+            if(start > p1)
+                break;
+
+            final AttributeSet attribute = palette.getAttribute(runs.getStyle(i));
+            if(start >= p0) {
+                // Fill any non-contiguous run with default color
+                if(start > p) {
+                    x = action.renderTextPortion(g, x, y, p, start, p1, doc, null);
                 }
 
-                x = action.renderTextPortion(g, x, y, t.start, t.end, p1, doc, attribute);
-                p = t.end;
-            } else if(t.end >= p0 && t.start < p0) {
-                x = action.renderTextPortion(g, x, y, p0, t.end, p1, doc, attribute);
-                p = t.end;
-            } else if(t.start > p1) {
-                break;
+                x = action.renderTextPortion(g, x, y, start, end, p1, doc, attribute);
+            } else {
+                x = action.renderTextPortion(g, x, y, p0, end, p1, doc, attribute);
             }
+            p = end;
         }
 
         // Fill any remaining range with default color
@@ -304,30 +506,6 @@ public class ATERenderingView extends PlainView {
         return x;
     }
 
-    /** This method finds the first token that is located in the line index p0
-     *
-     * @param p0
-     * @param low
-     * @param high
-     * @param candidate
-     * @return The index of the first token on line p0
-     */
-    private int findStartingTokenIndex(int p0, int low, int high, int candidate) {
-        if(Math.abs(high-low) <= 1)
-            return Math.min(candidate, low);
-
-        final int middle = low + (high-low) / 2;
-        final ATEToken t = tokens.get(middle);
-        if(p0 >= t.startLineIndex && p0 <= t.endLineIndex) {
-            return findStartingTokenIndex(p0, low, middle, middle);
-        } else {
-            if(t.startLineIndex < p0)
-                return findStartingTokenIndex(p0, middle, high, candidate);
-            else
-                return findStartingTokenIndex(p0, low, middle, candidate);
-        }
-    }
-
     /** This method applies an AttributeSet to a Graphics context
      *
      * @param g The graphic context
@@ -336,7 +514,7 @@ public class ATERenderingView extends PlainView {
     protected void applyAttribute(Graphics g, AttributeSet attribute) {
         if(attribute == null) {
             g.setColor(Color.black);
-            g.setFont(DEFAULT_FONT);
+            g.setFont(getDerivedFont(Font.PLAIN));
             return;
         }
 
@@ -355,12 +533,25 @@ public class ATERenderingView extends PlainView {
      * @return The font given the specified attributes
      */
     protected Font getFontForAttribute(AttributeSet attribute) {
-        Font f = DEFAULT_FONT;
-        if(StyleConstants.isBold(attribute))
-            f = f.deriveFont(Font.BOLD);
+        // Note: deriveFont(int) replaces the style, so italic takes precedence over bold
         if(StyleConstants.isItalic(attribute))
-            f = f.deriveFont(Font.ITALIC);
-        return f;
+            return getDerivedFont(Font.ITALIC);
+        if(StyleConstants.isBold(attribute))
+            return getDerivedFont(Font.BOLD);
+        return getDerivedFont(Font.PLAIN);
+    }
+
+    /** Returns DEFAULT_FONT with the specified style (plain, bold or italic). The fonts are
+     * derived only once for each default font.
+     */
+    private Font getDerivedFont(int style) {
+        if(derivedBaseFont != DEFAULT_FONT) {
+            derivedBaseFont = DEFAULT_FONT;
+            derivedFonts[Font.PLAIN] = DEFAULT_FONT;
+            derivedFonts[Font.BOLD] = DEFAULT_FONT == null ? null : DEFAULT_FONT.deriveFont(Font.BOLD);
+            derivedFonts[Font.ITALIC] = DEFAULT_FONT == null ? null : DEFAULT_FONT.deriveFont(Font.ITALIC);
+        }
+        return derivedFonts[style];
     }
 
     protected void save(Graphics g) {
@@ -516,4 +707,12 @@ public class ATERenderingView extends PlainView {
         }
     }
 
+    /** The glyphs of a line: each vector is drawn at its x position with its color */
+    private static class LineGlyphs {
+        int x;
+        GlyphVector[] vectors;
+        Color[] colors;
+        int[] positions;
+    }
+
 }
@@ -0,0 +1,91 @@
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package org.antlr.works.ate.syntax.generic;
+
+import javax.swing.text.AttributeSet;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Gives a small integer to each attribute set used by a syntax engine so the style of
+ * the tokens can be stored in primitive arrays (see ATEStyleRuns). The style 0 is the
+ * default style (no attribute).
+ *
+ * The attribute sets are identified by reference: their content can be modified (i.e. when
+ * the colors are changed in the preferences), in which case the version is incremented so
+ * the views can update the fonts and colors they derived from them.
+ */
+public class ATEStylePalette {
+
+    public static final int DEFAULT_STYLE = 0;
+
+    private final List<AttributeSet> attributes = new ArrayList<AttributeSet>();
+    private final Map<AttributeSet,Integer> styles = new IdentityHashMap<AttributeSet, Integer>();
+    private int version = 0;
+
+    public ATEStylePalette() {
+        attributes.add(null);
+    }
+
+    public synchronized int getStyle(AttributeSet attribute) {
+        if(attribute == null)
+            return DEFAULT_STYLE;
+
+        Integer style = styles.get(attribute);
+        if(style == null) {
+            style = attributes.size();
+            attributes.add(attribute);
+            styles.put(attribute, style);
+            version++;
+        }
+        return style;
+    }
+
+    public synchronized AttributeSet getAttribute(int style) {
+        return attributes.get(style);
+    }
+
+    public synchronized int getStyleCount() {
+        return attributes.size();
+    }
+
+    /** Returns a number that changes each time a style is added or modified */
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    /** Must be called when the content of the attribute sets is modified */
+    public synchronized void invalidate() {
+        version++;
+    }
+}
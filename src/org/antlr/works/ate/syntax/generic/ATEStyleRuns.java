@@ -0,0 +1,141 @@
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package org.antlr.works.ate.syntax.generic;
+
+import org.antlr.works.ate.syntax.misc.ATEToken;
+
+import java.util.List;
+
+/** The style of each portion of a text, computed once after the parsing so the text
+ * can be painted without asking the engine for the attribute of each token.
+ *
+ * A run is a token that has a style other than the default one. The runs are stored in
+ * primitive arrays sorted by position, with the index of the first run of each line.
+ */
+public class ATEStyleRuns {
+
+    private final int[] starts;
+    private final int[] ends;
+    private final short[] styles;
+    private final int count;
+
+    private final int[] lineStarts;
+    private final int[] lineFirstRuns;
+
+    public ATEStyleRuns(String text, List<ATEToken> tokens, ATESyntaxEngine engine) {
+        ATEStylePalette palette = engine.getStylePalette();
+
+        int[] runStarts = new int[tokens.size()];
+        int[] runEnds = new int[tokens.size()];
+        short[] runStyles = new short[tokens.size()];
+        int n = 0;
+        for(ATEToken token : tokens) {
+            int style = palette.getStyle(engine.getAttributeForToken(token));
+            if(style == ATEStylePalette.DEFAULT_STYLE || token.end <= token.start)
+                continue;
+
+            runStarts[n] = token.start;
+            runEnds[n] = token.end;
+            runStyles[n] = (short)style;
+            n++;
+        }
+        starts = runStarts;
+        ends = runEnds;
+        styles = runStyles;
+        count = n;
+
+        int lines = 1;
+        for(int i=0; i<text.length(); i++) {
+            if(text.charAt(i) == '\n') lines++;
+        }
+        lineStarts = new int[lines];
+        lineFirstRuns = new int[lines];
+        int line = 1;
+        for(int i=0; i<text.length(); i++) {
+            if(text.charAt(i) == '\n') lineStarts[line++] = i+1;
+        }
+
+        // First run ending after the start of each line
+        int run = 0;
+        for(line = 0; line<lines; line++) {
+            while(run < count && ends[run] <= lineStarts[line]) {
+                run++;
+            }
+            lineFirstRuns[line] = run;
+        }
+    }
+
+    public int getRunCount() {
+        return count;
+    }
+
+    public int getStart(int run) {
+        return starts[run];
+    }
+
+    public int getEnd(int run) {
+        return ends[run];
+    }
+
+    public int getStyle(int run) {
+        return styles[run];
+    }
+
+    public int getLineCount() {
+        return lineStarts.length;
+    }
+
+    /** Returns the index of the first run ending after the position */
+    public int findFirstRun(int position) {
+        int low = 0;
+        int high = count;
+        while(low < high) {
+            int middle = (low+high) >>> 1;
+            if(ends[middle] <= position)
+                low = middle+1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /** Returns the index of the first run of the line starting at this position. The line
+     * table is used if the text of the runs has a line at this index starting at this position
+     * (i.e. the runs are up to date with the displayed text).
+     */
+    public int findFirstRunOfLine(int lineIndex, int lineStart) {
+        if(lineIndex < lineStarts.length && lineStarts[lineIndex] == lineStart)
+            return lineFirstRuns[lineIndex];
+        else
+            return findFirstRun(lineStart);
+    }
+}
@@ -39,6 +39,7 @@ import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -46,10 +47,22 @@ public abstract class ATESyntaxEngine {
 
     protected ATESyntaxEngineDelegate delegate;
 
+    /** The lexer and the parser modify their tokens and elements in place from one parsing
+     * to the next: they are never published, only copies of their state are (see ATESyntaxResult).
+     */
     protected ATESyntaxLexer lexer;
     protected ATESyntaxParser parser;
 
-    protected List<ATEToken> tokens;
+    /** The parser returned by getParser() until the first result is published */
+    private final ATESyntaxParser emptyParser;
+
+    /** The result of the last parsing, replaced as a whole */
+    private volatile ATESyntaxResult result;
+    /** Version of the text tokenized by the lexer, -1 if the text is not a submitted snapshot */
+    private int lexedVersion = -1;
+
+    protected final ATEStylePalette stylePalette = new ATEStylePalette();
+
     protected SimpleAttributeSet commentAttr;
     protected SimpleAttributeSet stringAttr;
     protected SimpleAttributeSet keywordAttr;
@@ -57,41 +70,64 @@ public abstract class ATESyntaxEngine {
     public ATESyntaxEngine() {
         lexer = createLexer();
         parser = createParser();
+        emptyParser = createParser();
         stringAttr = new SimpleAttributeSet();
         keywordAttr = new SimpleAttributeSet();
         commentAttr = new SimpleAttributeSet();
     }
 
-    public void close() {
-        parser.close();
-        parser = null;
+    public synchronized void close() {
+        if(parser != null) {
+            parser.close();
+            parser = null;
+        }
         lexer.close();
         lexer = null;
         delegate = null;
+        result = null;
     }
 
     public void setDelegate(ATESyntaxEngineDelegate delegate) {
         this.delegate = delegate;
     }
 
-    public synchronized List<ATEToken> getTokens() {
-        return tokens;
+    public ATESyntaxResult getResult() {
+        return result;
+    }
+
+    public List<ATEToken> getTokens() {
+        ATESyntaxResult r = result;
+        return r == null ? null : r.getTokens();
+    }
+
+    public List<ATELine> getLines() {
+        ATESyntaxResult r = result;
+        return r == null ? Collections.<ATELine>emptyList() : r.getLines();
     }
 
-    public synchronized List<ATELine> getLines() {
-        return lexer.getLines();
+    public int getMaxLines() {
+        ATESyntaxResult r = result;
+        return r == null ? 0 : r.getMaxLines();
     }
 
-    public synchronized int getMaxLines() {
-        return lexer.getLineNumber();
+    public ATEStylePalette getStylePalette() {
+        return stylePalette;
+    }
+
+    /** Returns the style runs of the last published result or null if the text has not been parsed */
+    public ATEStyleRuns getStyleRuns() {
+        ATESyntaxResult r = result;
+        return r == null ? null : r.getStyleRuns();
     }
 
     public ATESyntaxLexer getLexer() {
         return lexer;
     }
 
+    /** Returns the parser of the last published result: its elements are never modified by a later parsing */
     public ATESyntaxParser getParser() {
-        return parser;
+        ATESyntaxResult r = result;
+        return r == null ? emptyParser : r.getParser();
     }
 
     public ATESyntaxLexer createLexer() {
@@ -103,6 +139,9 @@ public abstract class ATESyntaxEngine {
         return null;
     }
 
+    /** Returns the attribute of the token. The attribute is computed once for each token
+     * after the parsing (see ATEStyleRuns): it must only depend on the token and the parser.
+     */
     public AttributeSet getAttributeForToken(ATEToken token) {
         AttributeSet attr = null;
         switch(token.type) {
@@ -123,15 +162,96 @@ public abstract class ATESyntaxEngine {
         return attr;
     }
 
-    public void processSyntax() {
+    /** Lexes and parses the text in the current thread and publishes the result */
+    public synchronized void processSyntax() {
         // First run the lexer
-        lexer.tokenize(delegate.getText());
-        tokens = new ArrayList<ATEToken>(lexer.getTokens());
+        String text = delegate.getText();
+        lexedVersion = -1;
+        lexer.tokenize(text);
+        result = parseTokens(-1, text);
+    }
 
-        // And then the parser if it exists
-        if(parser != null) {
-            parser.parse(tokens);
+    /** Same as processSyntax() but only lexes again the part of the text
+     * affected by an edit of length characters at offset (length is negative
+     * if the characters have been removed).
+     */
+    public synchronized void processSyntax(int offset, int length) {
+        String text = delegate.getText();
+        lexedVersion = -1;
+        lexer.tokenize(text, offset, length);
+        result = parseTokens(-1, text);
+    }
+
+    protected ATESyntaxResult parseTokens(int version, String text) {
+        List<ATEToken> tokens;
+        ATESyntaxParser published = null;
+        if(parser != null && parser.isIncremental()) {
+            // The parser re-uses the elements and the tokens of the lexer: publish a snapshot of them
+            if(lexer.isIncremental()) {
+                parser.parse(lexer.getTokens(), lexer.getFirstModifiedToken(), lexer.getLastModifiedToken(), lexer.getTokenDelta());
+            } else {
+                parser.parse(lexer.getTokens());
+            }
+            tokens = copyTokens(lexer.getTokens());
+            published = parser.createSnapshot(tokens);
+        } else {
+            // Otherwise a new parser parses the copies of the tokens
+            tokens = copyTokens(lexer.getTokens());
+            if(parser != null) {
+                published = createParser();
+                published.parse(tokens);
+            }
+        }
+
+        List<ATELine> lines = new ArrayList<ATELine>(lexer.getLines().size());
+        for(ATELine line : lexer.getLines()) {
+            lines.add(new ATELine(line.position));
+        }
+
+        return new ATESyntaxResult(version, text, tokens, lines, lexer.getLineNumber(), published,
+                new ATEStyleRuns(text, tokens, this));
+    }
+
+    private static List<ATEToken> copyTokens(List<ATEToken> tokens) {
+        List<ATEToken> copies = new ArrayList<ATEToken>(tokens.size());
+        for(ATEToken token : tokens) {
+            copies.add(token.copy());
         }
+        return copies;
+    }
+
+    /** Lexes and parses a snapshot of the text. This method is invoked by the parse service
+     * in its own thread and the result is published later in the event thread. As with
+     * processSyntax(int, int), only the tokens and the rules affected by the edit are lexed
+     * and parsed again. Returns null if the snapshot is obsolete before the lexing.
+     */
+    public synchronized ATESyntaxResult parse(ATESyntaxSnapshot snapshot, ATESyntaxParseService service) {
+        if(lexer == null || service.isObsolete(snapshot))
+            return null;
+
+        // The edit can only be applied to the text it has been made on
+        final int base = lexedVersion;
+        lexedVersion = -1;
+        if(snapshot.isEditValid() && snapshot.getBaseVersion() == base) {
+            lexer.tokenize(snapshot.getText(), snapshot.getEditOffset(), snapshot.getEditLength());
+        } else {
+            lexer.tokenize(snapshot.getText());
+        }
+        lexedVersion = snapshot.getVersion();
+
+        // The parser is not interrupted even if the snapshot becomes obsolete: it has
+        // to stay in sync with the tokens of the lexer for the next incremental parsing.
+        // Only copies of the tokens and of the elements are published.
+        return parseTokens(snapshot.getVersion(), snapshot.getText());
+    }
+
+    /** Publishes the result of the parsing of a snapshot. Must be invoked in the event thread. */
+    public void publish(ATESyntaxResult result) {
+        if(delegate == null)
+            return;
+
+        this.result = result;
+        delegate.ateEngineAfterParsing();
     }
 
     public void process() {
@@ -140,6 +260,12 @@ public abstract class ATESyntaxEngine {
         delegate.ateEngineAfterParsing();
     }
 
+    public void process(int offset, int length) {
+        delegate.ateEngineBeforeParsing();
+        processSyntax(offset, length);
+        delegate.ateEngineAfterParsing();
+    }
+
     public void applyCommentAttribute(SimpleAttributeSet commentAttr) {
         StyleConstants.setForeground(commentAttr, Color.lightGray);
         StyleConstants.setItalic(commentAttr, true);
@@ -159,6 +285,7 @@ public abstract class ATESyntaxEngine {
         applyCommentAttribute(commentAttr);
         applyStringAttribute(stringAttr);
         applyKeywordAttribute(keywordAttr);
+        stylePalette.invalidate();
     }
 
     /** Returns the set of keyword for the language.
@@ -37,6 +37,10 @@ import org.antlr.works.ate.syntax.misc.ATEToken;
 import java.util.ArrayList;
 import java.util.List;
 
+/** The lexer of the editor. The lists of tokens and lines are new for each tokenization but an
+ * incremental tokenization re-uses and modifies in place the tokens and the lines of the previous
+ * one: they must never be published. The engine publishes copies of them (see ATESyntaxEngine).
+ */
 public class ATESyntaxLexer {
 
     public static final int TOKEN_SINGLE_QUOTE_STRING = 1;
@@ -66,6 +70,15 @@ public class ATESyntaxLexer {
     /** True if the current character is a control character (that is preceeded by a \) */
     protected boolean controlCharacter;
 
+    /** Range of tokens (in the previous list of tokens) that have been replaced during
+     * the last incremental tokenization. The tokens after this range have been shifted by
+     * tokenDelta in the new list.
+     */
+    protected boolean incremental;
+    protected int firstModifiedToken;
+    protected int lastModifiedToken;
+    protected int tokenDelta;
+
     /** c0 and c1 are character cache for quick access to the current
      * character (c0) and the next character (c1)
      */
@@ -94,55 +107,220 @@ public class ATESyntaxLexer {
         return lineNumber;
     }
 
+    /** Returns true if the last tokenization was incremental, in which case
+     * the range of modified tokens is available
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public int getFirstModifiedToken() {
+        return firstModifiedToken;
+    }
+
+    public int getLastModifiedToken() {
+        return lastModifiedToken;
+    }
+
+    public int getTokenDelta() {
+        return tokenDelta;
+    }
+
     public void tokenize(String text) {
         this.text = text;
 
         position = -1;
         lineNumber = 0;
-        lines.clear();
+        lineIndex = 0;
+        lines = new ArrayList<ATELine>();
         lines.add(new ATELine(0));
 
-        tokens.clear();
+        tokens = new ArrayList<ATEToken>();
+        incremental = false;
         tokenize();
     }
 
-    protected void tokenize() {
+    /** Tokenizes the text after an edit of the previous text. Only the tokens around
+     * the edited range are lexed again: the lexer restarts at a token boundary before
+     * the edit and stops as soon as the new tokens match the previous ones; the remaining
+     * previous tokens (and lines) are then shifted in place instead of being lexed again.
+     *
+     * @param text The new text
+     * @param offset The offset of the edit
+     * @param length The number of characters inserted (or removed if negative)
+     */
+    public void tokenize(String text, int offset, int length) {
+        final String oldText = this.text;
+        final List<ATEToken> oldTokens = tokens;
+        final List<ATELine> oldLines = lines;
+
+        final int oldEditEnd = offset + Math.max(0, -length);
+        final int newEditEnd = offset + Math.max(0, length);
+
+        if(oldText == null || oldTokens.isEmpty() || offset < 0 || oldEditEnd > oldText.length()
+                || text.length() != oldText.length() + length)
+        {
+            // The previous state cannot be used: tokenize everything
+            tokenize(text);
+            return;
+        }
+
+        // Find the token where the lexer can safely restart
+        int restart = Math.max(0, getFirstTokenAffectedByEdit(oldTokens, offset) - 1);
+        while(restart > 0 && !isTokenBoundary(oldText, oldTokens.get(restart).start)) {
+            restart--;
+        }
+        final int restartPosition = restart == 0 ? 0 : oldTokens.get(restart).start;
+
+        this.text = text;
+
+        // Keep the lines and tokens located before the restart position
+        lines = new ArrayList<ATELine>(oldLines.size());
+        for(ATELine line : oldLines) {
+            if(line.position > restartPosition) break;
+            lines.add(line);
+        }
+        lineNumber = lines.size()-1;
+        lineIndex = lines.get(lineNumber).position;
+
+        tokens = new ArrayList<ATEToken>(oldTokens.size());
+        for(int index=0; index<restart; index++) {
+            ATEToken token = oldTokens.get(index);
+            token.reuse(text);
+            tokens.add(token);
+        }
+
+        position = restartPosition - 1;
+
+        // Until the token streams match again, all the tokens after the restart are modified
+        incremental = true;
+        firstModifiedToken = restart;
+        lastModifiedToken = oldTokens.size()-1;
+
+        int oldIndex = restart;
         while(nextCharacter()) {
-            ATEToken token = customMatch();
-
-            if(token != null) {
-                // custom match matched something
-            } else if(c0 == '\'')
-                token = matchSingleQuoteString();
-            else if(c0 == '\"')
-                token = matchDoubleQuoteString();
-            else if(c0 == '/' && c1 == '/')
-                token = matchSingleComment();
-            else if(c0 == '/' && c1 == '*')
-                token = matchComplexComment();
-            else if(isLetter())
-                token = matchID();
-            else if(c0 == '(')
-                token = createNewToken(TOKEN_LPAREN);
-            else if(c0 == ')')
-                token = createNewToken(TOKEN_RPAREN);
-            else if(c0 == '{')
-                token = createNewToken(TOKEN_LCURLY);
-            else if(c0 == '}')
-                token = createNewToken(TOKEN_RCURLY);
-            else if(c0 == '[')
-                token = createNewToken(TOKEN_LBRACK);
-            else if(c0 == ']')
-                token = createNewToken(TOKEN_RBRACK);
-            else if(c0 == ':')
-                token = createNewToken(TOKEN_COLON);
-            else if(c0 == ';')
-                token = createNewToken(TOKEN_SEMI);
-            else if(!isWhitespace())
-                token = createNewToken(TOKEN_CHAR);
+            ATEToken token = matchToken();
+            if(token == null) continue;
 
             addToken(token);
+
+            if(token.start <= newEditEnd || !isTokenBoundary(text, token.start)) continue;
+
+            // Look for the same token in the previous token stream
+            final int oldStart = token.start - length;
+            while(oldIndex < oldTokens.size() && oldTokens.get(oldIndex).start < oldStart) {
+                oldIndex++;
+            }
+            if(oldIndex == oldTokens.size()) continue;
+
+            ATEToken oldToken = oldTokens.get(oldIndex);
+            if(oldToken.start == oldStart && oldToken.end == token.end - length
+                    && oldToken.getLexerType() == token.type)
+            {
+                // The token streams match again: shift the remaining previous tokens
+                lastModifiedToken = oldIndex;
+                shiftTokensAfterEdit(oldTokens, oldIndex+1, oldLines, length);
+                break;
+            }
+        }
+        tokenDelta = tokens.size() - oldTokens.size();
+    }
+
+    /** Returns the index of the first token whose lexing can be affected by an edit
+     * at offset, taking into account the characters the lexer looks ahead.
+     */
+    protected int getFirstTokenAffectedByEdit(List<ATEToken> tokens, int offset) {
+        int low = 0;
+        int high = tokens.size();
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(tokens.get(mid).end + 2 < offset)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /** Returns true if the lexer can start matching a token at index. By default,
+     * an index preceded by an escape character is not a boundary.
+     */
+    protected boolean isTokenBoundary(String text, int index) {
+        return index == 0 || text.charAt(index-1) != '\\';
+    }
+
+    /** Moves the previous tokens and lines located after the edit to the new lists. They are
+     * modified in place: this is only possible because they have never been published.
+     */
+    private void shiftTokensAfterEdit(List<ATEToken> oldTokens, int fromIndex, List<ATELine> oldLines, int length) {
+        // Append the previous lines located after the current position
+        final int oldPosition = position - length;
+        final int newLineCount = lines.size();
+        int oldLine = oldLines.size();
+        while(oldLine > 0 && oldLines.get(oldLine-1).position > oldPosition+1) {
+            oldLine--;
         }
+        final int lineDelta = newLineCount - oldLine;
+        for(int index=oldLine; index<oldLines.size(); index++) {
+            ATELine line = oldLines.get(index);
+            line.position += length;
+            lines.add(line);
+        }
+
+        for(int index=fromIndex; index<oldTokens.size(); index++) {
+            ATEToken token = oldTokens.get(index);
+            token.shift(length, lineDelta, text);
+            token.startLineIndex = lines.get(token.startLineNumber).position;
+            token.endLineIndex = lines.get(token.endLineNumber).position;
+            addToken(token);
+        }
+
+        position = text.length();
+        lineNumber = lines.size()-1;
+        lineIndex = lines.get(lineNumber).position;
+    }
+
+    protected void tokenize() {
+        while(nextCharacter()) {
+            addToken(matchToken());
+        }
+    }
+
+    protected ATEToken matchToken() {
+        ATEToken token = customMatch();
+
+        if(token != null) {
+            // custom match matched something
+        } else if(c0 == '\'')
+            token = matchSingleQuoteString();
+        else if(c0 == '\"')
+            token = matchDoubleQuoteString();
+        else if(c0 == '/' && c1 == '/')
+            token = matchSingleComment();
+        else if(c0 == '/' && c1 == '*')
+            token = matchComplexComment();
+        else if(isLetter())
+            token = matchID();
+        else if(c0 == '(')
+            token = createNewToken(TOKEN_LPAREN);
+        else if(c0 == ')')
+            token = createNewToken(TOKEN_RPAREN);
+        else if(c0 == '{')
+            token = createNewToken(TOKEN_LCURLY);
+        else if(c0 == '}')
+            token = createNewToken(TOKEN_RCURLY);
+        else if(c0 == '[')
+            token = createNewToken(TOKEN_LBRACK);
+        else if(c0 == ']')
+            token = createNewToken(TOKEN_RBRACK);
+        else if(c0 == ':')
+            token = createNewToken(TOKEN_COLON);
+        else if(c0 == ';')
+            token = createNewToken(TOKEN_SEMI);
+        else if(!isWhitespace())
+            token = createNewToken(TOKEN_CHAR);
+
+        return token;
     }
 
     protected ATEToken customMatch() {
@@ -0,0 +1,140 @@
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package org.antlr.works.ate.syntax.generic;
+
+import javax.swing.*;
+
+/** Parses the text of an editor in a background thread so the event thread never lexes
+ * or parses. Each change of the text is submitted as a snapshot tagged with a version:
+ * a snapshot not yet parsed when a newer one is submitted is merged with it, and the
+ * result of a parsing is dropped if a newer version has been submitted in the meantime.
+ * The result of the latest version is then published by the engine in the event thread.
+ */
+public class ATESyntaxParseService implements Runnable {
+
+    private final ATESyntaxEngine engine;
+    private final Thread thread;
+
+    /** Version of the last snapshot submitted */
+    private int version;
+    /** Snapshot submitted but not yet taken by the parsing thread */
+    private ATESyntaxSnapshot pending;
+    private boolean running = true;
+
+    public ATESyntaxParseService(ATESyntaxEngine engine) {
+        this.engine = engine;
+
+        thread = new Thread(this);
+        thread.setName(getClass().getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void close() {
+        running = false;
+        version++;
+        pending = null;
+        notifyAll();
+    }
+
+    /** Submits a new version of the text.
+     *
+     * @param text The text
+     * @param editValid True if the text differs from the previously submitted text by the edit
+     * @param editOffset The offset of the edit
+     * @param editLength The number of characters inserted (or removed if negative)
+     */
+    public synchronized void submit(String text, boolean editValid, int editOffset, int editLength) {
+        ATESyntaxSnapshot snapshot = new ATESyntaxSnapshot(version+1, version, text, editValid, editOffset, editLength);
+        version++;
+
+        if(pending != null) {
+            snapshot = pending.merge(snapshot);
+        }
+        pending = snapshot;
+        notifyAll();
+    }
+
+    /** Makes the snapshots submitted so far obsolete, for example because the text
+     * has been parsed synchronously.
+     */
+    public synchronized void invalidate() {
+        version++;
+        pending = null;
+    }
+
+    public synchronized boolean isObsolete(ATESyntaxSnapshot snapshot) {
+        return snapshot.getVersion() != version;
+    }
+
+    private synchronized ATESyntaxSnapshot take() throws InterruptedException {
+        while(running && pending == null) {
+            wait();
+        }
+        ATESyntaxSnapshot snapshot = pending;
+        pending = null;
+        return snapshot;
+    }
+
+    public void run() {
+        while(true) {
+            final ATESyntaxSnapshot snapshot;
+            try {
+                snapshot = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if(snapshot == null) {
+                // Closed
+                return;
+            }
+
+            try {
+                final ATESyntaxResult result = engine.parse(snapshot, this);
+                if(result == null) continue;
+
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        // A newer version may have been submitted since the parsing ended
+                        if(!isObsolete(snapshot)) {
+                            engine.publish(result);
+                        }
+                    }
+                });
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+}
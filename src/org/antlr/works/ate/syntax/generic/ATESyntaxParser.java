@@ -40,6 +40,7 @@ public abstract class ATESyntaxParser {
     private List<ATEToken> tokens;
     private Stack<Integer> marks = new Stack<Integer>();
     private int position;
+    private int lookahead;
 
     private ATEToken t0;
     private ATEToken t1;
@@ -55,11 +56,46 @@ public abstract class ATESyntaxParser {
     }
 
     public void parse(List<ATEToken> tokens) {
+        // The tokens can be re-used from a previous parsing
+        for(ATEToken token : tokens) {
+            token.resetParsing();
+        }
+        reset(tokens, -1);
+        parseTokens();
+    }
+
+    /** Parses the tokens after an edit of the text: the tokens of the previous list
+     * from firstModifiedToken to lastModifiedToken (inclusive) have been replaced and the
+     * tokens after them have been shifted by tokenDelta. By default, all the tokens
+     * are parsed again.
+     */
+    public void parse(List<ATEToken> tokens, int firstModifiedToken, int lastModifiedToken, int tokenDelta) {
+        parse(tokens);
+    }
+
+    /** Returns true if this parser keeps its elements from one parsing to the next and only parses
+     * again the modified part of the tokens (see parse(List, int, int, int)). The engine then
+     * publishes a snapshot of the parser instead of the parser itself (see createSnapshot()).
+     */
+    public boolean isIncremental() {
+        return false;
+    }
+
+    /** Returns a copy of this parser and of its elements for the specified copies of the tokens
+     * it has parsed. The copy is never modified by the subsequent parsings of this parser.
+     * Must be implemented by the incremental parsers.
+     */
+    public ATESyntaxParser createSnapshot(List<ATEToken> tokens) {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Sets the tokens to parse and moves the parser to the specified token index */
+    protected void reset(List<ATEToken> tokens, int index) {
         this.tokens = tokens;
         marks.clear();
-        position = -1;
+        position = index;
+        lookahead = index;
         clearTokenCache();
-        parseTokens();
     }
 
     public abstract void parseTokens();
@@ -72,6 +108,11 @@ public abstract class ATESyntaxParser {
         return position;
     }
 
+    /** Returns the index of the farthest token read or reached since the parser has been reset */
+    public int getLookahead() {
+        return lookahead;
+    }
+
     public void mark() {
         marks.push(position);
     }
@@ -89,6 +130,8 @@ public abstract class ATESyntaxParser {
 
     public boolean nextToken() {
         position++;
+        if(position > lookahead)
+            lookahead = position;
         clearTokenCache();
         return position<tokens.size();
     }
@@ -122,6 +165,8 @@ public abstract class ATESyntaxParser {
     }
 
     public ATEToken getToken(int index) {
+        if(position+index > lookahead)
+            lookahead = position+index;
         if(position+index >= 0 && position+index < tokens.size())
             return tokens.get(position+index);
         else
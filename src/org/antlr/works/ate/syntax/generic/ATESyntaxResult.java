@@ -0,0 +1,95 @@
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package org.antlr.works.ate.syntax.generic;
+
+import org.antlr.works.ate.syntax.misc.ATELine;
+import org.antlr.works.ate.syntax.misc.ATEToken;
+
+import java.util.Collections;
+import java.util.List;
+
+/** The tokens, the lines, the parser and the style runs of a version of the text. The engine publishes
+ * a result as a whole so the editor never sees the tokens of one version with the elements
+ * of another one. The tokens, the lines and the parser are copies of the state of the lexer and
+ * of the parser of the engine: the parsing of the next versions never modifies them.
+ */
+public class ATESyntaxResult {
+
+    private final int version;
+    private final String text;
+    private final List<ATEToken> tokens;
+    private final List<ATELine> lines;
+    private final int maxLines;
+    private final ATESyntaxParser parser;
+    private final ATEStyleRuns styleRuns;
+
+    public ATESyntaxResult(int version, String text, List<ATEToken> tokens, List<ATELine> lines,
+                           int maxLines, ATESyntaxParser parser, ATEStyleRuns styleRuns)
+    {
+        this.version = version;
+        this.text = text;
+        this.tokens = Collections.unmodifiableList(tokens);
+        this.lines = Collections.unmodifiableList(lines);
+        this.maxLines = maxLines;
+        this.parser = parser;
+        this.styleRuns = styleRuns;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public List<ATEToken> getTokens() {
+        return tokens;
+    }
+
+    public List<ATELine> getLines() {
+        return lines;
+    }
+
+    public int getMaxLines() {
+        return maxLines;
+    }
+
+    public ATESyntaxParser getParser() {
+        return parser;
+    }
+
+    public ATEStyleRuns getStyleRuns() {
+        return styleRuns;
+    }
+}
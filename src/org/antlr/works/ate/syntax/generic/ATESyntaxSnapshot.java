@@ -0,0 +1,115 @@
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package org.antlr.works.ate.syntax.generic;
+
+/** A version of the text to parse and the edit that produced it from the previous
+ * version. A snapshot is immutable: the text is copied from the document when the
+ * snapshot is created so it can be parsed in another thread.
+ */
+public class ATESyntaxSnapshot {
+
+    private final int version;
+    private final int baseVersion;
+    private final String text;
+
+    private final boolean editValid;
+    private final int editOffset;
+    private final int editLength;
+
+    /**
+     * @param version The version of the text
+     * @param baseVersion The version of the text the edit applies to
+     * @param text The text
+     * @param editValid True if the text is the base text modified by the edit
+     * @param editOffset The offset of the edit
+     * @param editLength The number of characters inserted (or removed if negative)
+     */
+    public ATESyntaxSnapshot(int version, int baseVersion, String text, boolean editValid, int editOffset, int editLength) {
+        this.version = version;
+        this.baseVersion = baseVersion;
+        this.text = text;
+        this.editValid = editValid;
+        this.editOffset = editOffset;
+        this.editLength = editLength;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getBaseVersion() {
+        return baseVersion;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isEditValid() {
+        return editValid;
+    }
+
+    public int getEditOffset() {
+        return editOffset;
+    }
+
+    public int getEditLength() {
+        return editLength;
+    }
+
+    /** Returns the snapshot of the next version of the text as if it were made by a single
+     * edit of the base text of this snapshot. The edits can be merged if they insert (or
+     * remove) contiguous characters, as when typing (or deleting) some text.
+     */
+    public ATESyntaxSnapshot merge(ATESyntaxSnapshot next) {
+        boolean valid = false;
+        int offset = editOffset;
+        int length = editLength + next.editLength;
+        if(editValid && next.editValid) {
+            if(editLength > 0 && next.editLength > 0) {
+                // Characters typed one after the other
+                valid = next.editOffset == editOffset + editLength;
+            } else if(editLength < 0 && next.editLength < 0) {
+                if(next.editOffset == editOffset) {
+                    // Characters deleted forward
+                    valid = true;
+                } else if(next.editOffset - next.editLength == editOffset) {
+                    // Characters deleted backward
+                    valid = true;
+                    offset = next.editOffset;
+                }
+            }
+        }
+        return new ATESyntaxSnapshot(next.version, baseVersion, next.text, valid, offset, length);
+    }
+}
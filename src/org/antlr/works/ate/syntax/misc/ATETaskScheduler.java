@@ -0,0 +1,307 @@
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package org.antlr.works.ate.syntax.misc;
+
+import java.util.*;
+
+/**
+ * Runs the background tasks of all the windows on a small pool of threads.
+ *
+ * Each task is identified by a key. Scheduling a task whose key is already waiting replaces
+ * it and restarts its delay (the task is debounced and the requests are coalesced). A task
+ * scheduled while the task with the same key is running is executed after it: two tasks with
+ * the same key never run at the same time. When several tasks are due, the ones with the
+ * highest priority are executed first.
+ */
+public class ATETaskScheduler {
+
+    public enum Priority {
+        /** Feedback displayed in the editor (i.e. underlining) */
+        EDITOR,
+        /** Diagrams and other views of the grammar */
+        DIAGRAM,
+        /** Long computations such as the analysis of the grammar */
+        ANALYSIS
+    }
+
+    private static ATETaskScheduler shared;
+
+    private final int poolSize;
+    private final List<Thread> workers = new ArrayList<Thread>();
+
+    private final Map<Object,Task> tasks = new HashMap<Object, Task>();
+    private final PriorityQueue<Task> delayed = new PriorityQueue<Task>(16, new Comparator<Task>() {
+        public int compare(Task t1, Task t2) {
+            return compareLong(t1.deadline, t2.deadline);
+        }
+    });
+    private final PriorityQueue<Task> ready = new PriorityQueue<Task>(16, new Comparator<Task>() {
+        public int compare(Task t1, Task t2) {
+            int c = t1.priority.compareTo(t2.priority);
+            if(c == 0) c = compareLong(t1.deadline, t2.deadline);
+            if(c == 0) c = compareLong(t1.sequence, t2.sequence);
+            return c;
+        }
+    });
+    private long sequence = 0;
+    private boolean shutdown = false;
+
+    private long executedCount = 0;
+    private long totalLatency = 0;
+    private long maxLatency = 0;
+    private long totalDuration = 0;
+
+    public static synchronized ATETaskScheduler getShared() {
+        if(shared == null) {
+            shared = new ATETaskScheduler(Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
+        }
+        return shared;
+    }
+
+    public ATETaskScheduler(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * Schedules the task to run after the delay (in ms). Any task with the same key
+     * not yet started is replaced by this one.
+     */
+    public synchronized void schedule(Object key, Priority priority, long delay, Runnable runnable) {
+        if(shutdown)
+            return;
+
+        long deadline = System.nanoTime()+Math.max(0, delay)*1000000L;
+
+        Task task = tasks.get(key);
+        if(task == null) {
+            task = new Task(key);
+            tasks.put(key, task);
+        } else if(task.running) {
+            // Run it again as soon as the current execution is completed
+            task.next = runnable;
+            task.nextPriority = priority;
+            task.nextDeadline = deadline;
+            return;
+        } else {
+            delayed.remove(task);
+            ready.remove(task);
+        }
+
+        enqueue(task, runnable, priority, deadline);
+    }
+
+    /**
+     * Cancels the task with this key if it is not yet started. Returns true if a task was cancelled.
+     */
+    public synchronized boolean cancel(Object key) {
+        Task task = tasks.get(key);
+        if(task == null)
+            return false;
+
+        if(task.running) {
+            boolean cancelled = task.next != null;
+            task.next = null;
+            return cancelled;
+        }
+
+        delayed.remove(task);
+        ready.remove(task);
+        tasks.remove(key);
+        return true;
+    }
+
+    public synchronized boolean isScheduled(Object key) {
+        Task task = tasks.get(key);
+        return task != null && (!task.running || task.next != null);
+    }
+
+    /** Stops the threads of the pool. The scheduled tasks are not executed. */
+    public synchronized void shutdown() {
+        shutdown = true;
+        tasks.clear();
+        delayed.clear();
+        ready.clear();
+        notifyAll();
+    }
+
+    /**
+     * Waits until no task is waiting or running. Returns false if the timeout (in ms) elapsed before.
+     */
+    public synchronized boolean awaitIdle(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime()+timeout*1000000L;
+        while(!tasks.isEmpty()) {
+            long ms = (deadline-System.nanoTime())/1000000L;
+            if(ms <= 0)
+                return false;
+            wait(ms);
+        }
+        return true;
+    }
+
+    /** Returns the number of tasks waiting to be executed */
+    public synchronized int getQueueDepth() {
+        return delayed.size()+ready.size();
+    }
+
+    /** Returns the number of tasks due but waiting for a thread of the pool */
+    public synchronized int getReadyQueueDepth() {
+        return ready.size();
+    }
+
+    public synchronized long getExecutedCount() {
+        return executedCount;
+    }
+
+    /** Returns the average time (in ms) between the moment a task is due and its start */
+    public synchronized double getAverageLatency() {
+        return executedCount == 0 ? 0 : totalLatency/1e6/executedCount;
+    }
+
+    /** Returns the longest time (in ms) a task waited after being due */
+    public synchronized double getMaxLatency() {
+        return maxLatency/1e6;
+    }
+
+    /** Returns the average time (in ms) spent executing a task */
+    public synchronized double getAverageDuration() {
+        return executedCount == 0 ? 0 : totalDuration/1e6/executedCount;
+    }
+
+    private void enqueue(Task task, Runnable runnable, Priority priority, long deadline) {
+        task.runnable = runnable;
+        task.priority = priority;
+        task.deadline = deadline;
+        task.sequence = sequence++;
+        if(deadline <= System.nanoTime()) {
+            ready.add(task);
+        } else {
+            delayed.add(task);
+        }
+
+        if(workers.size() < poolSize && workers.size() < tasks.size()) {
+            Thread worker = new Thread(new Worker(), "ANTLRWorks Tasks "+(workers.size()+1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Returns the next task to execute, waiting until one is due.
+     */
+    private synchronized Task take() {
+        while(!shutdown) {
+            long now = System.nanoTime();
+            while(!delayed.isEmpty() && delayed.peek().deadline <= now) {
+                ready.add(delayed.poll());
+            }
+
+            Task task = ready.poll();
+            if(task != null) {
+                task.running = true;
+                long latency = Math.max(0, now-task.deadline);
+                totalLatency += latency;
+                maxLatency = Math.max(maxLatency, latency);
+                return task;
+            }
+
+            try {
+                if(delayed.isEmpty()) {
+                    wait();
+                } else {
+                    long ms = (delayed.peek().deadline-now)/1000000L;
+                    wait(Math.max(1, ms));
+                }
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+        return null;
+    }
+
+    private synchronized void completed(Task task, long duration) {
+        executedCount++;
+        totalDuration += duration;
+
+        task.running = false;
+        if(task.next == null || shutdown) {
+            tasks.remove(task.key);
+            notifyAll();
+        } else {
+            Runnable next = task.next;
+            task.next = null;
+            enqueue(task, next, task.nextPriority, task.nextDeadline);
+        }
+    }
+
+    private static int compareLong(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    private static class Task {
+
+        final Object key;
+
+        Runnable runnable;
+        Priority priority;
+        long deadline;
+        long sequence;
+        boolean running;
+
+        /** Task scheduled while this one is running */
+        Runnable next;
+        Priority nextPriority;
+        long nextDeadline;
+
+        public Task(Object key) {
+            this.key = key;
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        public void run() {
+            Task task;
+            while((task = take()) != null) {
+                long start = System.nanoTime();
+                try {
+                    task.runnable.run();
+                } catch(Throwable t) {
+                    t.printStackTrace();
+                } finally {
+                    completed(task, System.nanoTime()-start);
+                }
+            }
+        }
+    }
+}
@@ -31,16 +31,20 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package org.antlr.works.ate.syntax.misc;
 
+/**
+ * A background task woken up by awakeThread(). The task doesn't own a thread anymore: each
+ * awakening schedules it in the shared ATETaskScheduler, using this object as the key, so
+ * the awakenings received during the threshold are coalesced in a single execution.
+ */
 public abstract class ATEThread implements Runnable {
 
-    protected int threadSleep = 100;
+    protected int threadSleep = Integer.MAX_VALUE;
     protected int threshold = 0;
     protected int default_threshold = 250;
     protected boolean running = false;
     protected boolean run = false;
-    protected Thread thread = null;
-    protected boolean asleep = false;
     protected boolean skip = false;
+    protected ATETaskScheduler.Priority priority = ATETaskScheduler.Priority.DIAGRAM;
 
     public ATEThread() {
     }
@@ -49,6 +53,10 @@ public abstract class ATEThread implements Runnable {
         this.default_threshold = threshold;
     }
 
+    public synchronized void setPriority(ATETaskScheduler.Priority priority) {
+        this.priority = priority;
+    }
+
     public synchronized void setRunning(boolean flag) {
         running = flag;
     }
@@ -62,6 +70,7 @@ public abstract class ATEThread implements Runnable {
         start_();
     }
 
+    /** Starts a task executed every 'threadSleep' ms in addition to the awakenings */
     protected synchronized void start(int threadSleep) {
         this.threadSleep = threadSleep;
         start_();
@@ -70,14 +79,14 @@ public abstract class ATEThread implements Runnable {
     private void start_() {
         if(!run) {
             run = true;
-            thread = new Thread(this);
-            thread.setName(getClass().toString());
-            thread.start();
+            running = true;
+            schedulePeriodic();
         }
     }
 
     public synchronized void skip() {
         skip = true;
+        getScheduler().cancel(this);
     }
 
     private synchronized void resetSkip() {
@@ -87,12 +96,12 @@ public abstract class ATEThread implements Runnable {
     public synchronized void stop() {
         threshold = 0;
         run = false;
-        thread.interrupt();
+        running = false;
+        getScheduler().cancel(this);
     }
 
-    /** Interrupt the thread if it is sleeping. If threshold > 0, the thread will sleep an
-     * additionnal 'threshold' ms until no other awakeThread() is called
-     * before trying to compute something.
+    /** Schedules the task. If threshold > 0, the task is executed after 'threshold' ms
+     * without any other call to awakeThread().
      */
     public synchronized void awakeThread() {
         awakeThread(default_threshold);
@@ -101,14 +110,18 @@ public abstract class ATEThread implements Runnable {
     public synchronized void awakeThread(int threshold) {
         resetSkip();
         this.threshold = threshold;
-        if(asleep)
-            thread.interrupt();
+        if(run)
+            getScheduler().schedule(this, priority, threshold, this);
     }
 
     public boolean cancel() {
         return !run;
     }
 
+    protected ATETaskScheduler getScheduler() {
+        return ATETaskScheduler.getShared();
+    }
+
     protected abstract void threadRun() throws Exception;
 
     public void threadReportException(Exception e) {
@@ -116,45 +129,39 @@ public abstract class ATEThread implements Runnable {
     }
 
     public boolean threadSleep(int ms) {
-        boolean interrupted = false;
-        asleep = true;
         try {
             Thread.sleep(ms);
         } catch (InterruptedException e) {
-            interrupted = true;
+            return true;
         }
-        asleep = false;
-        return interrupted;
+        return false;
     }
 
-    public void run() {
-        setRunning(true);
-        while(run) {
-            if(threadSleep(threadSleep)) {
-                // Sleep interrupted. If threshold is > 0, then wait
-                // this amount of time and loop until the thread is not
-                // anymore interrupted.
-                if(threshold>0) {
-                    while(threadSleep(threshold)) {
-                    }
-                }
-            }
+    private synchronized void schedulePeriodic() {
+        // An awakening already scheduled takes precedence
+        if(run && threadSleep != Integer.MAX_VALUE && !getScheduler().isScheduled(this))
+            getScheduler().schedule(this, priority, threadSleep, this);
+    }
 
+    /** Executed by the scheduler */
+    public void run() {
+        synchronized(this) {
             if(!run)
-                break;
-
+                return;
             if(skip) {
-                resetSkip();
-                continue;
+                skip = false;
+                schedulePeriodic();
+                return;
             }
+        }
 
-            try {
-                threadRun();
-            } catch(Exception e) {
-                threadReportException(e);
-            }
+        try {
+            threadRun();
+        } catch(Exception e) {
+            threadReportException(e);
         }
-        setRunning(false);
+
+        schedulePeriodic();
     }
 
 }
@@ -31,9 +31,10 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package org.antlr.works.ate.syntax.misc;
 
-public class ATEToken implements Comparable {
+public class ATEToken implements Comparable, Cloneable {
 
     public int type;
+    protected int lexerType; // type assigned by the lexer (the parser can change type later)
 
     public int startLineNumber; // starting line number
     public int endLineNumber; // ending line number
@@ -60,6 +61,7 @@ public class ATEToken implements Comparable {
                     String text)
     {
         this.type = type;
+        this.lexerType = type;
 
         this.start = start;
         this.end = end;
@@ -77,6 +79,43 @@ public class ATEToken implements Comparable {
         return text;
     }
 
+    public int getLexerType() {
+        return lexerType;
+    }
+
+    /** Returns a copy of this token, including the type and the scope assigned by the parser */
+    public ATEToken copy() {
+        try {
+            return (ATEToken) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e.toString());
+        }
+    }
+
+    /** Prepares this token to be re-used by the lexer for a new version of the text */
+    public void reuse(String text) {
+        this.text = text;
+        this.modified = false;
+    }
+
+    /** Discards the type and scope assigned by the parser */
+    public void resetParsing() {
+        this.type = lexerType;
+        this.scope = null;
+    }
+
+    /** Moves this token by delta characters and lineDelta lines. Used by the lexer
+     * to re-use a token located after an edited portion of the text. Note that the
+     * line indexes are not modified: the lexer is responsible for updating them.
+     */
+    public void shift(int delta, int lineDelta, String text) {
+        reuse(text);
+        start += delta;
+        end += delta;
+        startLineNumber += lineDelta;
+        endLineNumber += lineDelta;
+    }
+
     public String getAttribute() {
         return attribute;
     }
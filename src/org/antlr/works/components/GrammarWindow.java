@@ -5,6 +5,7 @@ import org.antlr.works.ate.ATEPanel;
 import org.antlr.works.ate.ATEPanelDelegate;
 import org.antlr.works.ate.ATETextPane;
 import org.antlr.works.ate.syntax.misc.ATELine;
+import org.antlr.works.ate.syntax.misc.ATETaskScheduler;
 import org.antlr.works.ate.syntax.misc.ATEThread;
 import org.antlr.works.ate.syntax.misc.ATEToken;
 import org.antlr.works.debugger.DebuggerTab;
@@ -27,6 +28,7 @@ import org.antlr.works.grammar.element.Jumpable;
 import org.antlr.works.grammar.engine.GrammarEngine;
 import org.antlr.works.grammar.engine.GrammarEngineDelegate;
 import org.antlr.works.grammar.engine.GrammarEngineImpl;
+import org.antlr.works.grammar.syntax.GrammarSyntaxChanges;
 import org.antlr.works.interpreter.InterpreterTab;
 import org.antlr.works.menu.*;
 import org.antlr.works.prefs.AWPrefs;
@@ -771,8 +773,8 @@ public class GrammarWindow
      * to update the syntax diagram and the rule information to reflect any error detected.
      */
     public void engineAnalyzeCompleted() {
-        // Clear graphic cache because we have to redraw each rule again
-        syntaxDiagramTab.clearCacheGraphs();
+        // The errors of the rules might have changed: check the graphs in cache before using them again
+        syntaxDiagramTab.invalidateCacheGraphs();
         editorRules.refreshRules();
 
         // Try to update the graph first and if they cannot be updated (i.e. the cache is empty), draw them again.
@@ -1168,27 +1170,34 @@ public class GrammarWindow
     }
 
     private void afterParseOperations() {
-        editorPersistence.restore();
-
+        // The grammar engine is updated with the snapshot of the parser published by the last parsing
         grammarEngine.parserCompleted();
         grammarEngine.updateAll();
+        editorPersistence.restore();
 
-        interpreterTab.setRules(getNaturalRules());
-        editorRules.parserDidParse();
-        decisionDFAEngine.reset();
-        decisionDFAEngine.refreshMenu();
+        final GrammarSyntaxChanges changes = grammarEngine.getSyntaxChanges();
+        syntaxDiagramTab.setText(getText(), getFileName());
 
-        // Make sure to invoke the ideas after Rules
-        // has completely updated its list (which should
-        // be done inside rules.parserDidParse())
-        editorIdeas.display(getCaretPosition());
+        // The components are updated in the event thread
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                interpreterTab.setRules(getNaturalRules());
+                editorRules.parserDidParse(changes);
+                decisionDFAEngine.reset();
+                decisionDFAEngine.refreshMenu();
+
+                // Make sure to invoke the ideas after Rules
+                // has completely updated its list (which should
+                // be done inside rules.parserDidParse())
+                editorIdeas.display(getCaretPosition());
 
-        syntaxDiagramTab.setText(getText(), getFileName());
-        updateVisualization(false);
+                updateVisualization(false);
 
-        // Damage the window and repaint it
-        textEditor.damage();
-        textEditor.repaint();
+                // Damage the window and repaint it
+                textEditor.damage();
+                textEditor.repaint();
+            }
+        });
     }
 
     public void changeDone() {
@@ -1485,6 +1494,15 @@ public class GrammarWindow
         progress.display();
     }
 
+    public void setProgress(int value, int max) {
+        if(progress == null)
+            return;
+
+        progress.setIndeterminate(false);
+        progress.setProgressMax(max);
+        progress.setProgress(value);
+    }
+
     public void hideProgress() {
         progress.close();
     }
@@ -1541,11 +1559,13 @@ public class GrammarWindow
     }
 
     /** This class is used to perform after parsing operations in another
-     * thread than the main event thread.
+     * thread than the main event thread. They run with the editor priority
+     * because they update the rules, the ideas and the errors of the editor.
      */
     protected class AfterParseOperations extends ATEThread {
 
         public AfterParseOperations() {
+            setPriority(ATETaskScheduler.Priority.EDITOR);
             start();
         }
 
@@ -109,6 +109,7 @@ public class GrammarWindowMenu implements XJMenuItemDelegate {
     public static final int MI_DEBUG = 82;
     public static final int MI_DEBUG_AGAIN = 83;
     public static final int MI_DEBUG_REMOTE = 84;
+    public static final int MI_DEBUG_EVENTS_FILE = 85;
     public static final int MI_DEBUG_SHOW_INPUT_TOKENS = 86;
     public static final int MI_EDIT_TEST_RIG = 87;
 
@@ -124,6 +125,8 @@ public class GrammarWindowMenu implements XJMenuItemDelegate {
     public static final int MI_EXPORT_ALL_AS_EPS = 113;
     public static final int MI_EXPORT_AS_DOT = 114;
     public static final int MI_EXPORT_EVENT = 115;
+    public static final int MI_EXPORT_EVENT_FILE = 116;
+    public static final int MI_EXPORT_EVENT_CSV = 117;
 
     public static final int MI_PRIVATE_UNREGISTER = 200;
     public static final int MI_SERIALIZE_SD = 201;
@@ -173,6 +176,8 @@ public class GrammarWindowMenu implements XJMenuItemDelegate {
         XJMenu exportMenu = new XJMenu();
         exportMenu.setTitle(resourceBundle.getString("menu.title.exportEvents"));
         exportMenu.addItem(new XJMenuItem(resourceBundle.getString("menu.item.asText"), MI_EXPORT_EVENT, this));
+        exportMenu.addItem(new XJMenuItem(resourceBundle.getString("menu.item.asCSV"), MI_EXPORT_EVENT_CSV, this));
+        exportMenu.addItem(new XJMenuItem(resourceBundle.getString("menu.item.asEventsFile"), MI_EXPORT_EVENT_FILE, this));
 
         menu.insertItemAfter(exportMenu, XJMainMenuBar.MI_SAVEAS);
 
@@ -224,6 +229,7 @@ public class GrammarWindowMenu implements XJMenuItemDelegate {
         menu.addItem(new XJMenuItem(resourceBundle.getString("menu.item.debug"), KeyEvent.VK_D, MI_DEBUG, this));
         menu.addItem(new XJMenuItem(resourceBundle.getString("menu.item.debugAgain"), KeyEvent.VK_D, XJMenuItem.getKeyModifier() | Event.SHIFT_MASK, MI_DEBUG_AGAIN, this));
         menu.addItem(new XJMenuItem(resourceBundle.getString("menu.item.debugRemote"), MI_DEBUG_REMOTE, this));
+        menu.addItem(new XJMenuItem(resourceBundle.getString("menu.item.debugEventsFile"), MI_DEBUG_EVENTS_FILE, this));
         menu.addSeparator();
         menu.addItem(new XJMenuItem(resourceBundle.getString("menu.item.showInputTokens"), MI_DEBUG_SHOW_INPUT_TOKENS, this));
         menu.addSeparator();
@@ -536,6 +542,7 @@ public class GrammarWindowMenu implements XJMenuItemDelegate {
             case MI_RUN:
             case MI_DEBUG:
             case MI_DEBUG_REMOTE:
+            case MI_DEBUG_EVENTS_FILE:
                 item.setEnabled(!isDebuggerRunning());
                 break;
 
@@ -783,6 +790,10 @@ public class GrammarWindowMenu implements XJMenuItemDelegate {
                 debugMenu.debugRemote();
                 break;
 
+            case MI_DEBUG_EVENTS_FILE:
+                debugMenu.debugEventsFile();
+                break;
+
             case MI_DEBUG_SHOW_INPUT_TOKENS:
                 debugMenu.toggleInputTokens();
                 window.refreshMainMenuBar();
@@ -830,6 +841,14 @@ public class GrammarWindowMenu implements XJMenuItemDelegate {
             case MI_EXPORT_EVENT:
                 actionExport.exportEventsAsTextFile();
                 break;
+
+            case MI_EXPORT_EVENT_CSV:
+                actionExport.exportEventsAsCSVFile();
+                break;
+
+            case MI_EXPORT_EVENT_FILE:
+                actionExport.exportEventsAsFile();
+                break;
         }
     }
 
@@ -9,7 +9,11 @@ import org.antlr.works.utils.Utils;
 import org.antlr.xjlib.foundation.XJSystem;
 import org.antlr.xjlib.foundation.XJUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
@@ -65,6 +69,19 @@ public class DebuggerEngine {
     }
 
     public static String getClassPath(String outputPath) {
+        String classPath = getUnquotedClassPath(outputPath);
+
+        // On Mac OS X, quoting the path works fine except within IntelliJ when
+        // AW is working as a plugin. Without quoting, it works everywhere in Mac
+        // OS X so I decided to quote only on Windows.
+        if(XJSystem.isWindows())
+            return Utils.quotePath(classPath);
+        else
+            return classPath;
+    }
+
+    /** Returns the class path as it is used in process (i.e. not passed to a command line) */
+    public static String getUnquotedClassPath(String outputPath) {
         String appPath = IDE.getApplicationPath();
 
         // Need to include the path of the application in order to be able
@@ -81,13 +98,7 @@ public class DebuggerEngine {
 
         classPath += File.pathSeparatorChar+".";
 
-        // On Mac OS X, quoting the path works fine except within IntelliJ when
-        // AW is working as a plugin. Without quoting, it works everywhere in Mac
-        // OS X so I decided to quote only on Windows.
-        if(XJSystem.isWindows())
-            return Utils.quotePath(classPath);
-        else
-            return classPath;
+        return classPath;
     }
 
     public static String runANTLR(Console console, String file, String libPath, String outputPath, StreamWatcherDelegate delegate) {
@@ -174,6 +185,14 @@ public class DebuggerEngine {
     }
 
     public static String compileFiles(Console console, String[] files, String outputFileDir, StreamWatcherDelegate delegate) {
+        if(AWPrefs.getDebugInProcess()) {
+            Object compiler = getSystemJavaCompiler();
+            if(compiler != null)
+                return compileFilesInProcess(console, compiler, files, outputFileDir, delegate);
+
+            IDE.debugVerbose(console, DebuggerEngine.class, "No system Java compiler available, using "+AWPrefs.getCompiler());
+        }
+
         String error = null;
 
         int result = 0;
@@ -250,4 +269,55 @@ public class DebuggerEngine {
         return error;
     }
 
+    /** Returns the compiler of the running JVM (javax.tools.JavaCompiler) or null if the JVM
+     * doesn't provide one (Java 5 or a JRE without the compiler). Reflection is used because
+     * AW is built for Java 5.
+     */
+    public static Object getSystemJavaCompiler() {
+        try {
+            Class<?> provider = Class.forName("javax.tools.ToolProvider");
+            return provider.getMethod("getSystemJavaCompiler").invoke(null);
+        } catch (Exception e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    /** Compiles all the files with a single invocation of the compiler of the running JVM */
+    public static String compileFilesInProcess(Console console, Object compiler, String[] files, String outputFileDir, StreamWatcherDelegate delegate) {
+        String[] args = new String[4+files.length];
+        args[0] = "-classpath";
+        args[1] = getUnquotedClassPath(outputFileDir);
+        args[2] = "-d";
+        args[3] = outputFileDir;
+        System.arraycopy(files, 0, args, 4, files.length);
+
+        IDE.debugVerbose(console, DebuggerEngine.class, "Compile in process: "+Utils.toString(args));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int result;
+        try {
+            Method run = Class.forName("javax.tools.Tool").getMethod("run",
+                    InputStream.class, OutputStream.class, OutputStream.class, String[].class);
+            result = (Integer) run.invoke(compiler, new Object[] { null, output, output, args });
+        } catch (InvocationTargetException e) {
+            return "Compiler exception:\n"+e.getTargetException().toString();
+        } catch (Exception e) {
+            return "Compiler exception:\n"+e.toString();
+        }
+
+        if(delegate != null) {
+            for(String line : output.toString().split("\\r?\\n")) {
+                if(line.length() > 0)
+                    delegate.streamWatcherDidReceiveString(line+"\n");
+            }
+        }
+
+        if(result != 0)
+            return "Compiler failed with result code "+result;
+        else
+            return null;
+    }
+
 }
@@ -45,6 +45,7 @@ import org.antlr.works.debugger.panels.*;
 import org.antlr.works.debugger.remote.DBRemoteConnectDialog;
 import org.antlr.works.debugger.tivo.DBPlayer;
 import org.antlr.works.debugger.tivo.DBPlayerContextInfo;
+import org.antlr.works.debugger.tivo.DBPlayerSnapshot;
 import org.antlr.works.debugger.tivo.DBRecorder;
 import org.antlr.works.debugger.tree.DBASTModel;
 import org.antlr.works.debugger.tree.DBASTPanel;
@@ -68,10 +69,13 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class DebuggerTab extends GrammarWindowTab implements DetachablePanelDelegate {
 
@@ -117,6 +121,7 @@ public class DebuggerTab extends GrammarWindowTab implements DetachablePanelDele
     protected long dateOfModificationOnDisk = 0;
 
     private boolean closing = false;
+    private final AtomicBoolean statusInfoPending = new AtomicBoolean();
     private String startRule;
 
     private DebuggerDelegate delegate;
@@ -432,8 +437,8 @@ public class DebuggerTab extends GrammarWindowTab implements DetachablePanelDele
         return startRule;
     }
 
-    public String getEventsAsString() {
-        return eventsPanel.getEventsAsString();
+    public DBEventsExporter createEventsExporter(int format) {
+        return eventsPanel.createExporter(format);
     }
 
     public int getNumberOfEvents() {
@@ -503,6 +508,29 @@ public class DebuggerTab extends GrammarWindowTab implements DetachablePanelDele
         return true;
     }
 
+    /** Replays the events saved in the file without the remote parser */
+    public boolean debuggerOpenEvents(File file) {
+        queryGrammarBreakpoints();
+        rootGrammarName = delegate.getGrammarName();
+        inputPanel.prepareForGrammar(delegate.getGrammarEngine());
+        player.setInputBuffer(inputPanel.getInputBuffer());
+
+        try {
+            recorder.openEvents(file);
+        } catch (IOException e) {
+            XJAlert.display(getWindowContainer(), "Error", "Cannot open the debugger events: "+file+"\nError: "+e);
+            return false;
+        }
+
+        connectionSuccess();
+        recorder.goToStart();
+        return true;
+    }
+
+    public void saveEvents(File file) throws IOException {
+        recorder.saveEvents(file);
+    }
+
     public void showEditTestRig() {
         local.showEditTestRig();
     }
@@ -559,15 +587,29 @@ public class DebuggerTab extends GrammarWindowTab implements DetachablePanelDele
         astPanel.clear();
     }
 
-    public void addEvent(DBEvent event, DBPlayerContextInfo info) {
-        eventsPanel.addEvent(event, info);
+    public void addEvent(List<DBEvent> events, int index, DBPlayerContextInfo info) {
+        eventsPanel.addEvent(events, index, info);
     }
 
-    public void playEvents(List events, int lastEventPosition, boolean reset) {
+    public void playEvents(List<DBEvent> events, int lastEventPosition, boolean reset) {
         player.playEvents(events, lastEventPosition, reset);
         breaksOnEvent();
     }
 
+    public void playerCreateSnapshot(DBPlayerSnapshot snapshot) {
+        snapshot.setState(stackPanel, stackPanel.createSnapshot());
+        snapshot.setState(eventsPanel, eventsPanel.createSnapshot());
+        snapshot.setState(parseTreeModel, parseTreeModel.createSnapshot());
+        snapshot.setState(astModel, astModel.createSnapshot());
+    }
+
+    public void playerRestoreSnapshot(DBPlayerSnapshot snapshot) {
+        stackPanel.restoreSnapshot(snapshot.getState(stackPanel));
+        eventsPanel.restoreSnapshot(snapshot.getState(eventsPanel));
+        parseTreePanel.restoreSnapshot(snapshot.getState(parseTreeModel));
+        astPanel.restoreSnapshot(snapshot.getState(astModel));
+    }
+
     public void playerSetLocation(DBEventLocation location) {
         parseTreeModel.setLocation(location);
     }
@@ -631,13 +673,26 @@ public class DebuggerTab extends GrammarWindowTab implements DetachablePanelDele
     public void recorderStatusDidChange() {
         if(closing) return;
 
+        // Coalesce the changes notified by the recorder until the status is updated
+        if(!statusInfoPending.compareAndSet(false, true)) return;
+
         SwingUtilities.invokeLater(new Runnable() {
             public void run() {
+                statusInfoPending.set(false);
                 updateStatusInfo();
             }
         });
     }
 
+    /** Returns the number of events received per second from the remote parser */
+    public int getEventsPerSecond() {
+        return recorder.getEventsPerSecond();
+    }
+
+    public long getReceivedEventsCount() {
+        return recorder.getReceivedEventsCount();
+    }
+
     public void recorderDidStop() {
         if(closing) return;
 
@@ -34,6 +34,7 @@ package org.antlr.works.debugger.input;
 import org.antlr.runtime.Token;
 import org.antlr.works.debugger.DebuggerTab;
 import org.antlr.works.debugger.events.DBEventLocation;
+import org.antlr.works.debugger.tivo.DBPlayerSnapshot;
 import org.antlr.works.dialog.AWPrefsDialog;
 import org.antlr.works.prefs.AWPrefs;
 import org.antlr.works.utils.TextPane;
@@ -47,27 +48,58 @@ import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.geom.Area;
 import java.awt.geom.GeneralPath;
-import java.util.*;
+import java.util.Arrays;
+import java.util.BitSet;
 
 public class DBInputProcessorToken implements DBInputProcessor, TextPaneDelegate, XJNotificationObserver {
 
     public static final Color HIGHLIGHTED_COLOR = new Color(0, 0.5f, 1, 0.4f);
     public static final Color INPUT_BREAKPOINT_COLOR = new Color(1, 0.2f, 0, 0.5f);
 
+    protected static final int INITIAL_CAPACITY = 256;
+
+    /** Value of consumeFlavors for a token which has not been consumed */
+    protected static final byte NOT_CONSUMED = 0;
+
     protected DebuggerTab debuggerTab;
     protected TextPane textPane;
     protected int mouseIndex = -1;
 
-    protected LinkedList<Integer> inputTokenIndexes = new LinkedList<Integer>();
-    protected Map<Integer,DBInputTextTokenInfo> indexToTokenInfoMap = new HashMap<Integer, DBInputTextTokenInfo>();
-    protected Map<Integer,AttributeSet> indexToConsumeAttributeMap = new HashMap<Integer, AttributeSet>();
-    protected Set<Integer> lookaheadTokenIndexes = new HashSet<Integer>();
+    /** The tables below are indexed by token index (tokens are numbered from 0 by the
+     * token stream so the tables are dense)
+     */
+    protected DBInputTextTokenInfo[] tokenInfos = new DBInputTextTokenInfo[INITIAL_CAPACITY];
+    protected byte[] consumeFlavors = new byte[INITIAL_CAPACITY];
+    protected BitSet lookaheadTokenIndexes = new BitSet();
+
+    /** Upper bound (exclusive) of the token indexes received */
+    protected int tokenIndexBound = 0;
+
+    /** Indexes of the received tokens, sorted - used to render the tokens */
+    protected int[] inputTokenIndexes = new int[INITIAL_CAPACITY];
+    protected int inputTokenCount = 0;
+
+    /** The tokens as they are rendered in the text pane: index of each token
+     * and its start in the text, sorted by position. The tokens are contiguous: a token
+     * ends where the next one starts. Used to find a token from a position in the text.
+     */
+    protected int[] renderedTokenIndexes = new int[0];
+    protected int[] renderedTokenStarts = new int[0];
+    protected int renderedTokenCount = 0;
+    protected int renderedTextLength = 0;
+
+    /** Outline of the rendered tokens, created when painted. Valid as long as
+     * the text is not rendered again and the text pane width does not change.
+     */
+    protected Shape[] tokenBoxes = new Shape[0];
+    protected int tokenBoxesWidth = -1;
 
     /** Current token index */
     protected int currentTokenIndex;
@@ -80,7 +112,7 @@ public class DBInputProcessorToken implements DBInputProcessor, TextPaneDelegate
     protected int locationCharInLine;
 
     /** Input breakpoints */
-    protected Set<Integer> inputBreakpointIndexes = new HashSet<Integer>();
+    protected BitSet inputBreakpointIndexes = new BitSet();
 
     protected SimpleAttributeSet attributeNonConsumed;
     protected SimpleAttributeSet attributeConsume;
@@ -133,14 +165,8 @@ public class DBInputProcessorToken implements DBInputProcessor, TextPaneDelegate
         if(ignoreToken(token))
             return;
 
-        SimpleAttributeSet attr = null;
-        switch(flavor) {
-            case TOKEN_NORMAL: attr = attributeConsume; break;
-            case TOKEN_HIDDEN: attr = attributeConsumeHidden; break;
-            case TOKEN_DEAD: attr = attributeConsumeDead; break;
-        }
         addToken(token);
-        addConsumeAttribute(token, attr);
+        addConsumeFlavor(token, flavor);
         removeTokenLT(token);
     }
 
@@ -165,16 +191,23 @@ public class DBInputProcessorToken implements DBInputProcessor, TextPaneDelegate
         return ct.getText().equals("\r") && t.getText().equals("\n");
     }
 
-    public void addConsumeAttribute(Token token, AttributeSet attribute) {
-        indexToConsumeAttributeMap.put(token.getTokenIndex(), attribute);
+    public void addConsumeFlavor(Token token, int flavor) {
+        int index = token.getTokenIndex();
+        if(index < 0)
+            return;
+
+        ensureTokenCapacity(index);
+        consumeFlavors[index] = (byte)flavor;
     }
 
     public void addTokenLT(Token token) {
-        lookaheadTokenIndexes.add(token.getTokenIndex());
+        if(token.getTokenIndex() >= 0)
+            lookaheadTokenIndexes.set(token.getTokenIndex());
     }
 
     public void removeTokenLT(Token token) {
-        lookaheadTokenIndexes.remove(Integer.valueOf(token.getTokenIndex()));
+        if(token.getTokenIndex() >= 0)
+            lookaheadTokenIndexes.clear(token.getTokenIndex());
     }
 
     public void removeAllLT() {
@@ -192,10 +225,15 @@ public class DBInputProcessorToken implements DBInputProcessor, TextPaneDelegate
         currentTokenIndex = -1;
         currentTokenIndexInText = 0;
 
-        inputTokenIndexes.clear();
-        indexToTokenInfoMap.clear();
-        indexToConsumeAttributeMap.clear();
+        Arrays.fill(tokenInfos, null);
+        Arrays.fill(consumeFlavors, NOT_CONSUMED);
         lookaheadTokenIndexes.clear();
+        tokenIndexBound = 0;
+        inputTokenCount = 0;
+
+        renderedTokenCount = 0;
+        renderedTextLength = 0;
+        invalidateTokenBoxes();
     }
 
     public void rewindAll() {
@@ -208,14 +246,32 @@ public class DBInputProcessorToken implements DBInputProcessor, TextPaneDelegate
         /** Remove any consume and lookahead attribute for any token with index
          * greater than start
          */
-        for (Integer idx : inputTokenIndexes) {
-            if (idx >= start) {
-                indexToConsumeAttributeMap.remove(idx);
-                lookaheadTokenIndexes.remove(idx);
-            }
+        int from = Math.max(start, 0);
+        if(from < tokenIndexBound) {
+            Arrays.fill(consumeFlavors, from, tokenIndexBound, NOT_CONSUMED);
+            lookaheadTokenIndexes.clear(from, tokenIndexBound);
         }
     }
 
+    public DBPlayerSnapshot.State createSnapshot() {
+        return new Snapshot();
+    }
+
+    /** Restore the attributes of the tokens as they were when the snapshot was taken.
+     * Like rewind(), the tokens received since then are kept so they are still displayed.
+     */
+    public void restoreSnapshot(DBPlayerSnapshot.State state) {
+        Snapshot snapshot = (Snapshot)state;
+
+        currentTokenIndex = snapshot.currentTokenIndex;
+        locationEvent = snapshot.locationEvent;
+
+        Arrays.fill(consumeFlavors, NOT_CONSUMED);
+        System.arraycopy(snapshot.consumeFlavors, 0, consumeFlavors, 0, snapshot.consumeFlavors.length);
+
+        lookaheadTokenIndexes = (BitSet)snapshot.lookaheadTokenIndexes.clone();
+    }
+
     public void addToken(Token token) {
         int index = token.getTokenIndex();
         if(index == -1) {
@@ -224,32 +280,54 @@ public class DBInputProcessorToken implements DBInputProcessor, TextPaneDelegate
         }
 
         currentTokenIndex = index;
+        ensureTokenCapacity(index);
 
-        /** Insert the index into the list of sorted indexes - used to render the token */
-
-        if(!indexToTokenInfoMap.containsKey(index)) {
-            if(inputTokenIndexes.isEmpty())
-                inputTokenIndexes.add((Integer)index);
-            else {
-                for(int i=inputTokenIndexes.size()-1; i >= 0; i--) {
-                    Integer n = inputTokenIndexes.get(i);
-                    if(n < index) {
-                        inputTokenIndexes.add(i+1, (Integer)index);
-                        break;
-                    }
-                }
+        /** Insert the index into the list of sorted indexes - used to render the token.
+         * The tokens are almost always received in order so the index is usually appended.
+         */
+
+        if(tokenInfos[index] == null) {
+            if(inputTokenCount == inputTokenIndexes.length) {
+                inputTokenIndexes = grow(inputTokenIndexes, inputTokenCount+1);
+            }
+            int position = inputTokenCount;
+            if(position > 0 && inputTokenIndexes[position-1] > index) {
+                position = -Arrays.binarySearch(inputTokenIndexes, 0, inputTokenCount, index)-1;
+                System.arraycopy(inputTokenIndexes, position, inputTokenIndexes, position+1, inputTokenCount-position);
             }
+            inputTokenIndexes[position] = index;
+            inputTokenCount++;
         }
 
-        /** Add the token even if it is already in the map because its position or attribute
+        /** Add the token even if it is already in the table because its position or attribute
          * may have changed
          */
 
-        indexToTokenInfoMap.put(index, new DBInputTextTokenInfo(token, locationEvent));
+        tokenInfos[index] = new DBInputTextTokenInfo(token, locationEvent);
+    }
+
+    protected void ensureTokenCapacity(int index) {
+        if(index >= tokenInfos.length) {
+            int capacity = Math.max(index+1, tokenInfos.length*2);
+            DBInputTextTokenInfo[] infos = new DBInputTextTokenInfo[capacity];
+            System.arraycopy(tokenInfos, 0, infos, 0, tokenInfos.length);
+            tokenInfos = infos;
+
+            byte[] flavors = new byte[capacity];
+            System.arraycopy(consumeFlavors, 0, flavors, 0, consumeFlavors.length);
+            consumeFlavors = flavors;
+        }
+        tokenIndexBound = Math.max(tokenIndexBound, index+1);
+    }
+
+    protected static int[] grow(int[] array, int minCapacity) {
+        int[] a = new int[Math.max(minCapacity, array.length*2)];
+        System.arraycopy(array, 0, a, 0, array.length);
+        return a;
     }
 
     public Token getCurrentToken() {
-        DBInputTextTokenInfo info = indexToTokenInfoMap.get(getCurrentTokenIndex());
+        DBInputTextTokenInfo info = getTokenInfoAtTokenIndex(getCurrentTokenIndex());
         if(info == null)
             return null;
         else
@@ -258,15 +336,29 @@ public class DBInputProcessorToken implements DBInputProcessor, TextPaneDelegate
 
     public String renderTokensText() {
         currentTokenIndexInText = 0;
+
+        if(renderedTokenIndexes.length < inputTokenCount) {
+            renderedTokenIndexes = new int[inputTokenIndexes.length];
+            renderedTokenStarts = new int[inputTokenIndexes.length];
+        }
+
         StringBuilder text = new StringBuilder();
-        for (Integer idx : inputTokenIndexes) {
-            DBInputTextTokenInfo info = indexToTokenInfoMap.get(idx);
+        for(int i=0; i<inputTokenCount; i++) {
+            int idx = inputTokenIndexes[i];
+            DBInputTextTokenInfo info = tokenInfos[idx];
             info.setStart(text.length());
             text.append(info.getText());
 
+            renderedTokenIndexes[i] = idx;
+            renderedTokenStarts[i] = info.start;
+
             if (idx == getCurrentTokenIndex())
                 currentTokenIndexInText = info.start;
         }
+        renderedTokenCount = inputTokenCount;
+        renderedTextLength = text.length();
+        invalidateTokenBoxes();
+
         return text.toString();
     }
 
@@ -275,20 +367,36 @@ public class DBInputProcessorToken implements DBInputProcessor, TextPaneDelegate
 
         String text = renderTokensText();
         textPane.setText(text);
-        textPane.getStyledDocument().setCharacterAttributes(0, text.length(), SimpleAttributeSet.EMPTY, true);
-
-        /** Apply the style for each token */
-        for (Integer idx : inputTokenIndexes) {
-            DBInputTextTokenInfo info = indexToTokenInfoMap.get(idx);
-            AttributeSet attribute = indexToConsumeAttributeMap.get(idx);
-            if (attribute == null)
-                attribute = attributeNonConsumed;
+        StyledDocument doc = textPane.getStyledDocument();
+        doc.setCharacterAttributes(0, text.length(), SimpleAttributeSet.EMPTY, true);
+
+        /** Apply the style for each run of tokens with the same style */
+        int runStart = 0;
+        AttributeSet runAttribute = null;
+        for (int i=0; i<renderedTokenCount; i++) {
+            AttributeSet attribute = getTokenAttribute(renderedTokenIndexes[i]);
+            if(attribute != runAttribute) {
+                int start = renderedTokenStarts[i];
+                if(runAttribute != null && start > runStart)
+                    doc.setCharacterAttributes(runStart, start-runStart, runAttribute, true);
+                runStart = start;
+                runAttribute = attribute;
+            }
+        }
+        if(runAttribute != null && renderedTextLength > runStart)
+            doc.setCharacterAttributes(runStart, renderedTextLength-runStart, runAttribute, true);
+    }
 
-            /** LT attribute override the other */
-            if (lookaheadTokenIndexes.contains(idx))
-                attribute = attributeLookahead;
+    protected AttributeSet getTokenAttribute(int index) {
+        /** LT attribute override the other */
+        if (lookaheadTokenIndexes.get(index))
+            return attributeLookahead;
 
-            textPane.getStyledDocument().setCharacterAttributes(info.start, info.end, attribute, true);
+        switch(consumeFlavors[index]) {
+            case TOKEN_NORMAL: return attributeConsume;
+            case TOKEN_HIDDEN: return attributeConsumeHidden;
+            case TOKEN_DEAD: return attributeConsumeDead;
+            default: return attributeNonConsumed;
         }
     }
 
@@ -330,64 +438,137 @@ public class DBInputProcessorToken implements DBInputProcessor, TextPaneDelegate
         StyleConstants.setItalic(attributeLookahead, true);
     }
 
+    /** Only the tokens in the painted area are drawn */
     public void textPaneDidPaint(Graphics g) {
-        for (DBInputTextTokenInfo info : indexToTokenInfoMap.values()) {
+        if(renderedTokenCount == 0)
+            return;
+
+        if(tokenBoxesWidth != textPane.getWidth()) {
+            // the text has been laid out again
+            invalidateTokenBoxes();
+            tokenBoxesWidth = textPane.getWidth();
+        }
+
+        Rectangle clip = g.getClipBounds();
+        if(clip == null)
+            clip = textPane.getVisibleRect();
+
+        int first = 0;
+        int last = renderedTokenCount-1;
+        int start = textPane.viewToModel(new Point(0, clip.y));
+        int end = textPane.viewToModel(new Point(textPane.getWidth(), clip.y+clip.height));
+        if(start >= 0 && end >= 0) {
+            first = Math.max(0, getRenderedPositionAt(start));
+            last = getRenderedPositionAt(end);
+        }
+
+        int mousePosition = mouseIndex == -1 ? -1 : getRenderedPositionAt(mouseIndex);
+
+        Graphics2D g2d = (Graphics2D) g;
+        for (int i=first; i<=last; i++) {
             if (drawTokensBox)
-                drawToken(info, (Graphics2D) g, Color.red, false);
+                drawTokenBox(i, g2d, Color.red, false);
 
-            if (inputBreakpointIndexes.contains(Integer.valueOf(info.token.getTokenIndex())))
-                drawToken(info, (Graphics2D) g, INPUT_BREAKPOINT_COLOR, true);
-            else if (mouseIndex >= info.start && mouseIndex < info.end)
-                drawToken(info, (Graphics2D) g, HIGHLIGHTED_COLOR, true);
+            if (inputBreakpointIndexes.get(renderedTokenIndexes[i]))
+                drawTokenBox(i, g2d, INPUT_BREAKPOINT_COLOR, true);
+            else if (i == mousePosition && mouseIndex < getRenderedTokenEnd(i))
+                drawTokenBox(i, g2d, HIGHLIGHTED_COLOR, true);
         }
     }
 
-    public void drawToken(DBInputTextTokenInfo info, Graphics2D g, Color c, boolean fill) {
+    public void drawTokenBox(int position, Graphics2D g, Color c, boolean fill) {
+        Shape box = getTokenBox(position);
+        if(box == null)
+            return;
+
         g.setColor(c);
+        if(fill)
+            g.fill(box);
+        else
+            g.draw(box);
+    }
+
+    protected Shape getTokenBox(int position) {
+        if(tokenBoxes.length < renderedTokenCount)
+            tokenBoxes = new Shape[renderedTokenIndexes.length];
+
+        Shape box = tokenBoxes[position];
+        if(box == null) {
+            box = createTokenBox(renderedTokenStarts[position], getRenderedTokenEnd(position));
+            tokenBoxes[position] = box;
+        }
+        return box;
+    }
+
+    protected Shape createTokenBox(int start, int end) {
         try {
-            Rectangle r1 = textPane.modelToView(info.start);
-            Rectangle r2 = textPane.modelToView(info.end);
+            Rectangle r1 = textPane.modelToView(start);
+            Rectangle r2 = textPane.modelToView(end);
 
             if(r2.y > r1.y) {
                 // token spans more than one line
                 GeneralPath gp = new GeneralPath();
                 Area area = new Area();
-                for(int index=info.start; index<info.end; index++) {
+                for(int index=start; index<end; index++) {
                     Rectangle r = textPane.modelToView(index);
                     // compute the width of the index
                     r.width = Math.max(0,textPane.modelToView(index+1).x - r.x);
                     area.add(new Area(r));
                 }
                 gp.append(area, true);
-                if(fill)
-                    g.fill(gp);
-                else
-                    g.draw(gp);
+                return gp;
             } else {
-                if(fill)
-                    g.fillRect(r1.x, r1.y, r2.x-r1.x, r1.height);
-                else
-                    g.drawRect(r1.x, r1.y, r2.x-r1.x, r1.height);
+                return new Rectangle(r1.x, r1.y, r2.x-r1.x, r1.height);
             }
         } catch (BadLocationException e) {
             // Ignore exception
+            return null;
+        }
+    }
+
+    protected void invalidateTokenBoxes() {
+        Arrays.fill(tokenBoxes, null);
+    }
+
+    /** Returns the position in the rendered tokens of the last token starting at
+     * or before the specified position in the text (-1 if none)
+     */
+    protected int getRenderedPositionAt(int textIndex) {
+        int position = Arrays.binarySearch(renderedTokenStarts, 0, renderedTokenCount, textIndex);
+        if(position < 0) {
+            return -position-2;
+        }
+        // several tokens can start at the same position if some are empty: take the last one
+        while(position+1 < renderedTokenCount && renderedTokenStarts[position+1] == textIndex) {
+            position++;
         }
+        return position;
+    }
+
+    protected int getRenderedTokenEnd(int position) {
+        if(position+1 < renderedTokenCount)
+            return renderedTokenStarts[position+1];
+        else
+            return renderedTextLength;
     }
 
     public DBInputTextTokenInfo getTokenInfoAtTokenIndex(int index) {
-        return indexToTokenInfoMap.get(index);
+        if(index < 0 || index >= tokenInfos.length)
+            return null;
+        else
+            return tokenInfos[index];
     }
 
     public DBInputTextTokenInfo getTokenInfoAtPositionIndex(int index) {
-        for (DBInputTextTokenInfo info : indexToTokenInfoMap.values()) {
-            if (index >= info.start && index < info.end)
-                return info;
-        }
-        return null;
+        int position = getRenderedPositionAt(index);
+        if(position < 0 || index >= getRenderedTokenEnd(position))
+            return null;
+        else
+            return tokenInfos[renderedTokenIndexes[position]];
     }
 
     public boolean isBreakpointAtToken(Token token) {
-        return inputBreakpointIndexes.contains(Integer.valueOf(token.getTokenIndex()));
+        return token.getTokenIndex() >= 0 && inputBreakpointIndexes.get(token.getTokenIndex());
     }
 
     /** This method highlights the token at the specified index
@@ -415,18 +596,34 @@ public class DBInputProcessorToken implements DBInputProcessor, TextPaneDelegate
     }
 
     public DBInputTextTokenInfo getTokenInfoForToken(Token t) {
-        for (DBInputTextTokenInfo info : indexToTokenInfoMap.values()) {
-            // FIX AW-61 - compare also the token type to avoid selecting the wrong one (e.g. imaginary)
-            if (info.token.getTokenIndex() == t.getTokenIndex() &&
-                    info.token.getType() == t.getType())
-                return info;
-        }
-        return null;
+        DBInputTextTokenInfo info = getTokenInfoAtTokenIndex(t.getTokenIndex());
+        // FIX AW-61 - compare also the token type to avoid selecting the wrong one (e.g. imaginary)
+        if (info != null && info.token.getType() == t.getType())
+            return info;
+        else
+            return null;
     }
 
     public void notificationFire(Object source, String name) {
         if(name.equals(AWPrefsDialog.NOTIF_PREFS_APPLIED)) {
             createTextAttributes();
+            invalidateTokenBoxes();
+        }
+    }
+
+    protected class Snapshot implements DBPlayerSnapshot.State {
+
+        public int currentTokenIndex = DBInputProcessorToken.this.currentTokenIndex;
+        public DBEventLocation locationEvent = DBInputProcessorToken.this.locationEvent;
+        public byte[] consumeFlavors = new byte[tokenIndexBound];
+        public BitSet lookaheadTokenIndexes = (BitSet)DBInputProcessorToken.this.lookaheadTokenIndexes.clone();
+
+        public Snapshot() {
+            System.arraycopy(DBInputProcessorToken.this.consumeFlavors, 0, consumeFlavors, 0, consumeFlavors.length);
+        }
+
+        public int getSize() {
+            return consumeFlavors.length + lookaheadTokenIndexes.cardinality();
         }
     }
 
@@ -445,11 +642,9 @@ public class DBInputProcessorToken implements DBInputProcessor, TextPaneDelegate
             if(e.getButton() == MouseEvent.BUTTON1 && !shiftKey) {
                 debuggerTab.selectToken(info.token, info.getLocation());
             } else {
-                Integer index = info.token.getTokenIndex();
-                if(inputBreakpointIndexes.contains(index))
-                    inputBreakpointIndexes.remove(index);
-                else
-                    inputBreakpointIndexes.add(index);
+                int index = info.token.getTokenIndex();
+                if(index >= 0)
+                    inputBreakpointIndexes.flip(index);
             }
         }
 
@@ -3,6 +3,7 @@ package org.antlr.works.debugger.input;
 import org.antlr.runtime.Token;
 import org.antlr.works.debugger.DebuggerTab;
 import org.antlr.works.debugger.events.DBEventLocation;
+import org.antlr.works.debugger.tivo.DBPlayerSnapshot;
 import org.antlr.works.debugger.tree.DBTreeNode;
 import org.antlr.works.debugger.tree.DBTreeToken;
 import org.antlr.works.dialog.AWPrefsDialog;
@@ -13,6 +14,7 @@ import org.antlr.xjlib.foundation.notification.XJNotificationObserver;
 
 import java.awt.*;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 /*
 
@@ -123,6 +125,26 @@ public class DBInputProcessorTree implements DBInputProcessor, XJNotificationObs
         lastNode = currentNode;
     }
 
+    public DBPlayerSnapshot.State createSnapshot() {
+        return new Snapshot();
+    }
+
+    /** Restore the colors of the nodes as they were when the snapshot was taken. Like
+     * rewindAll(), the nodes received since then are kept so they are still displayed.
+     */
+    public void restoreSnapshot(DBPlayerSnapshot.State state) {
+        Snapshot snapshot = (Snapshot)state;
+
+        applyColor(nonConsumedColor);
+        for (Map.Entry<InputTreeNode,Color> entry : snapshot.colors.entrySet()) {
+            entry.getKey().setColor(entry.getValue());
+        }
+
+        currentNode = snapshot.currentNode;
+        lastNode = snapshot.lastNode;
+        location = snapshot.location;
+    }
+
     public void LT(Token token) {
         InputTreeNode node = processToken(token);
         if(node != null) {
@@ -248,6 +270,25 @@ public class DBInputProcessorTree implements DBInputProcessor, XJNotificationObs
 
     }
     
+    protected class Snapshot implements DBPlayerSnapshot.State {
+
+        public InputTreeNode currentNode = DBInputProcessorTree.this.currentNode;
+        public InputTreeNode lastNode = DBInputProcessorTree.this.lastNode;
+        public DBEventLocation location = DBInputProcessorTree.this.location;
+        public Map<InputTreeNode,Color> colors = new IdentityHashMap<InputTreeNode, Color>();
+
+        public Snapshot() {
+            for (NodeInfo info : nodeInfoForToken.values()) {
+                if (info.node != null)
+                    colors.put(info.node, info.node.getTokenColor());
+            }
+        }
+
+        public int getSize() {
+            return colors.size();
+        }
+    }
+
     public class InputTreeNode extends DBTreeNode {
 
         public boolean breakpoint = false;
@@ -262,6 +303,11 @@ public class DBInputProcessorTree implements DBInputProcessor, XJNotificationObs
             treePanel.getGraphView().repaintNode(this);
         }
 
+        /** Returns the color of the token regardless of the breakpoint */
+        public Color getTokenColor() {
+            return super.getColor();
+        }
+
         public Color getColor() {
             if(breakpoint)
                 return Color.red;
@@ -59,6 +59,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -90,6 +91,10 @@ public class DBLocal implements Runnable, XJDialogProgressDelegate, StreamWatche
     protected String lastStartRule;
 
     protected Process remoteParserProcess;
+    protected DBLocalRunner remoteParserRunner;
+
+    /** The files are compiled all at once when everything has been generated */
+    protected Set<String> filesToCompile = new LinkedHashSet<String>();
 
     protected boolean cancelled;
     protected int options;
@@ -144,6 +149,8 @@ public class DBLocal implements Runnable, XJDialogProgressDelegate, StreamWatche
     public void forceStop() {
         if(remoteParserProcess != null)
             remoteParserProcess.destroy();
+        if(remoteParserRunner != null)
+            remoteParserRunner.stop();
     }
 
     public synchronized void cancel() {
@@ -217,11 +224,13 @@ public class DBLocal implements Runnable, XJDialogProgressDelegate, StreamWatche
 
     public void run() {
         resetErrors();
+        filesToCompile.clear();
 
         if(prepare()) {
             if(optionBuild()) generateAndCompileGrammar();
             if(!cancelled() && !optionAgain()) askUserForInputText();
             if(!cancelled() && !AWPrefs.TEST_RIG_MODE_CLASS.equals(testTemplateMode)) generateAndCompileGlueCode(optionBuild());
+            if(!cancelled()) compilePendingFiles();
             if(!cancelled()) generateInputText();
             if(!cancelled()) launchRemoteParser();
         }
@@ -374,7 +383,6 @@ public class DBLocal implements Runnable, XJDialogProgressDelegate, StreamWatche
         if(cancelled())
             return;
 
-        progress.setInfo("Compiling...");
         progress.setProgress(3);
         compileGrammar();
     }
@@ -413,7 +421,9 @@ public class DBLocal implements Runnable, XJDialogProgressDelegate, StreamWatche
     protected void compileGrammar() {
         XJUtils.deleteDirectory(outputFileDir);
         new File(outputFileDir).mkdirs();
-        compileFiles(grammarGeneratedFiles.toArray(new String[grammarGeneratedFiles.size()]));
+        for(String file : grammarGeneratedFiles) {
+            addFileToCompile(file);
+        }
     }
 
     protected void generateAndCompileGlueCode(boolean build) {
@@ -546,15 +556,33 @@ public class DBLocal implements Runnable, XJDialogProgressDelegate, StreamWatche
             String lexerName = XJUtils.concatPath(codeGenerator.getOutputPath(), (isTreeGrammar ? (getLexerName()+"Lexer.java") : (getLexerName()+".java")));
             String parserName = XJUtils.concatPath(codeGenerator.getOutputPath(), (isTreeGrammar ? (debuggerTab.getDelegate().getTokenVocab()+"Parser.java") :
                     (debuggerTab.getDelegate().getGrammarEngine().getGeneratedClassName(ElementGrammarName.PARSER)+".java")));
-            compileFiles(new String[] { lexerName});
-            compileFiles(new String[] { parserName});
-            compileFiles(new String[] { fileRemoteParser});
+            addFileToCompile(lexerName);
+            addFileToCompile(parserName);
+            addFileToCompile(fileRemoteParser);
         } catch (Exception e) {
             debuggerTab.getConsole().println(e);
             reportError("Error :\n"+e.toString());
         }
     }
 
+    /** The same file can be added by the grammar and the glue code: the absolute path
+     * makes sure the compiler gets it only once
+     */
+    protected void addFileToCompile(String file) {
+        filesToCompile.add(new File(file).getAbsolutePath());
+    }
+
+    protected void compilePendingFiles() {
+        if(filesToCompile.isEmpty())
+            return;
+
+        if(progress != null)
+            progress.setInfo("Compiling...");
+
+        compileFiles(filesToCompile.toArray(new String[filesToCompile.size()]));
+        filesToCompile.clear();
+    }
+
     protected void compileFiles(String[] files) {
         String error = DebuggerEngine.compileFiles(debuggerTab.getConsole(), files, outputFileDir, this);
         if(error != null)
@@ -619,6 +647,12 @@ public class DBLocal implements Runnable, XJDialogProgressDelegate, StreamWatche
         if(!checkForLaunch())
             return false;
 
+        remoteParserProcess = null;
+        remoteParserRunner = null;
+
+        if(AWPrefs.getDebugInProcess() && launchRemoteParserInProcess())
+            return true;
+
         String classPath = DebuggerEngine.getClassPath(outputFileDir);
         IDE.debugVerbose(debuggerTab.getConsole(), getClass(), "Launch with path: "+classPath);
 
@@ -651,6 +685,33 @@ public class DBLocal implements Runnable, XJDialogProgressDelegate, StreamWatche
         return true;
     }
 
+    /** Runs the test rig in a thread of AW. Returns false if it cannot be loaded so the
+     * caller can fork a JVM instead.
+     */
+    protected boolean launchRemoteParserInProcess() {
+        String classPath = DebuggerEngine.getUnquotedClassPath(outputFileDir);
+        IDE.debugVerbose(debuggerTab.getConsole(), getClass(), "Launch in process with path: "+classPath);
+
+        String classNameToRun = remoteParserClassName;
+        if (AWPrefs.TEST_RIG_MODE_CLASS.equals(testTemplateMode)) {
+            classNameToRun = testTemplateClass;
+        }
+
+        DBLocalRunner runner = new DBLocalRunner();
+        try {
+            runner.launch(classNameToRun, classPath, debuggerTab.getOutputPanel());
+        } catch (Exception e) {
+            debuggerTab.getConsole().println("Cannot launch the remote parser in process, launching a new JVM: "+e, Console.LEVEL_WARNING);
+            return false;
+        } catch (LinkageError e) {
+            debuggerTab.getConsole().println("Cannot launch the remote parser in process, launching a new JVM: "+e, Console.LEVEL_WARNING);
+            return false;
+        }
+
+        remoteParserRunner = runner;
+        return true;
+    }
+
     public void streamWatcherDidStart() {
     }
 
@@ -0,0 +1,377 @@
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.antlr.works.debugger.local;
+
+import org.antlr.works.utils.StreamWatcherDelegate;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.Permission;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Runs the test rig inside AW instead of forking a JVM. The classes are loaded by
+ * their own class loader, so they don't see the classes of AW and a new class loader
+ * picks up the classes compiled for each debugging session. The rig still talks to
+ * the debugger using the local socket.
+ *
+ * The threads of the rig belong to their own thread group: the output they write
+ * to the standard output and error is sent to the delegate and a call to System.exit()
+ * only ends the rig.
+ *
+ * This changes the state of the whole VM while a rig runs: a security manager guards
+ * System.exit(), System.out and System.err are replaced and the threads of a rig that
+ * doesn't end when interrupted are killed with Thread.stop(). The security manager and
+ * the streams are restored when the last rig ends, whatever the way it ends.
+ */
+public class DBLocalRunner {
+
+    /** Time given to the threads of the rig to end once interrupted before they are stopped */
+    protected static final long STOP_TIMEOUT = 2000;
+
+    /** Number of rigs using the guard and the router, and what they replaced */
+    protected static int guardUsers;
+    protected static SecurityManager previousSecurityManager;
+    protected static PrintStream previousOut;
+    protected static PrintStream previousErr;
+
+    protected Thread thread;
+    protected RigThreadGroup group;
+
+    /** Loads the class and runs its main method in a new thread.
+     * Throws an exception if the class or its main method cannot be loaded or if the
+     * rig cannot be guarded: in this case, the caller should fork a JVM instead.
+     */
+    public void launch(String className, String classPath, StreamWatcherDelegate delegate) throws Exception {
+        acquireGuard();
+
+        // Until the thread of the rig is started, the guard is released here on failure
+        boolean started = false;
+        URLClassLoader loader = null;
+        try {
+            loader = createClassLoader(classPath);
+            // Make sure the ANTLR runtime is available to the rig (it comes from the class path
+            // and not from AW)
+            loader.loadClass("org.antlr.runtime.debug.DebugEventSocketProxy");
+            final Method main = loader.loadClass(className).getMethod("main", String[].class);
+            final URLClassLoader rigLoader = loader;
+
+            group = new RigThreadGroup(delegate);
+            thread = new Thread(group, new Runnable() {
+                public void run() {
+                    try {
+                        main.invoke(null, new Object[] { new String[0] });
+                    } catch (InvocationTargetException e) {
+                        if(!(e.getTargetException() instanceof ExitException))
+                            e.getTargetException().printStackTrace();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        System.out.flush();
+                        System.err.flush();
+                        close(rigLoader);
+                        releaseGuard();
+                    }
+                }
+            }, className);
+            thread.setContextClassLoader(loader);
+            thread.setDaemon(true);
+            thread.start();
+            started = true;
+        } finally {
+            if(!started) {
+                close(loader);
+                releaseGuard();
+            }
+        }
+    }
+
+    public boolean isAlive() {
+        return thread != null && thread.isAlive();
+    }
+
+    /** The rig cannot be destroyed like a process: interrupt its threads so the
+     * blocking socket operations end and stop the ones still running after a while.
+     */
+    public void stop() {
+        final RigThreadGroup g = group;
+        if(g == null)
+            return;
+
+        g.interrupt();
+        Thread stopper = new Thread(new Runnable() {
+            public void run() {
+                g.stopAfter(STOP_TIMEOUT);
+            }
+        }, "Test Rig Stopper");
+        stopper.setDaemon(true);
+        stopper.start();
+    }
+
+    protected URLClassLoader createClassLoader(String classPath) throws IOException {
+        List<URL> urls = new ArrayList<URL>();
+        for(String path : classPath.split(File.pathSeparator)) {
+            if(path.length() > 0)
+                urls.add(new File(path).toURI().toURL());
+        }
+        // The parent is the extensions class loader: the classes of AW are not visible
+        return new URLClassLoader(urls.toArray(new URL[urls.size()]), ClassLoader.getSystemClassLoader().getParent());
+    }
+
+    /** Releases the jar files opened by the loader (only possible starting with Java 7) */
+    protected static void close(ClassLoader loader) {
+        if(loader instanceof Closeable) {
+            try {
+                ((Closeable)loader).close();
+            } catch (IOException e) {
+                // Ignore exception
+            }
+        }
+    }
+
+    /** Installs the exit guard and the stream router for a new rig. Throws an exception
+     * if the guard cannot be installed (i.e. the VM doesn't allow a security manager to be set):
+     * in this case, nothing is changed.
+     */
+    protected static synchronized void acquireGuard() {
+        if(guardUsers == 0) {
+            SecurityManager current = System.getSecurityManager();
+            System.setSecurityManager(new ExitGuard(current));
+            previousSecurityManager = current;
+
+            previousOut = System.out;
+            previousErr = System.err;
+            System.setOut(new PrintStream(new StreamRouter(previousOut, false), true));
+            System.setErr(new PrintStream(new StreamRouter(previousErr, true), true));
+        }
+        guardUsers++;
+    }
+
+    /** Restores the security manager and the streams once the last rig has ended */
+    protected static synchronized void releaseGuard() {
+        if(guardUsers == 0 || --guardUsers > 0)
+            return;
+
+        System.setOut(previousOut);
+        System.setErr(previousErr);
+        previousOut = null;
+        previousErr = null;
+
+        System.setSecurityManager(previousSecurityManager);
+        previousSecurityManager = null;
+    }
+
+    /** Returns the group of the rig running the current thread or null if the thread
+     * doesn't belong to a rig.
+     */
+    protected static RigThreadGroup getCurrentRig() {
+        ThreadGroup g = Thread.currentThread().getThreadGroup();
+        while(g != null) {
+            if(g instanceof RigThreadGroup)
+                return (RigThreadGroup)g;
+            g = g.getParent();
+        }
+        return null;
+    }
+
+    /** The threads of a rig and the lines they are writing to the standard output and error */
+    protected static class RigThreadGroup extends ThreadGroup {
+
+        protected final StreamWatcherDelegate delegate;
+        protected final StringBuilder outLine = new StringBuilder();
+        protected final StringBuilder errLine = new StringBuilder();
+
+        /** Set while a thread sends a line to the delegate: what the delegate writes goes to the original stream */
+        protected static final ThreadLocal<Boolean> delivering = new ThreadLocal<Boolean>();
+
+        public RigThreadGroup(StreamWatcherDelegate delegate) {
+            super("Test Rig");
+            this.delegate = delegate;
+            setDaemon(true);
+        }
+
+        @Override
+        public void uncaughtException(Thread t, Throwable e) {
+            // A thread of the rig that called System.exit() ends silently
+            if(!(e instanceof ExitException))
+                super.uncaughtException(t, e);
+        }
+
+        public void write(boolean error, String s) {
+            StringBuilder line = error ? errLine : outLine;
+            synchronized(line) {
+                int start = 0;
+                int end;
+                while((end = s.indexOf('\n', start)) >= 0) {
+                    line.append(s, start, end+1);
+                    deliver(line.toString());
+                    line.setLength(0);
+                    start = end+1;
+                }
+                line.append(s, start, s.length());
+            }
+        }
+
+        public void flush(boolean error) {
+            StringBuilder line = error ? errLine : outLine;
+            synchronized(line) {
+                if(line.length() > 0) {
+                    deliver(line.toString());
+                    line.setLength(0);
+                }
+            }
+        }
+
+        protected void deliver(String s) {
+            delivering.set(Boolean.TRUE);
+            try {
+                delegate.streamWatcherDidReceiveString(s);
+            } finally {
+                delivering.remove();
+            }
+        }
+
+        /** Waits for the threads of the group to end and stops the remaining ones */
+        @SuppressWarnings("deprecation")
+        public void stopAfter(long timeout) {
+            long deadline = System.currentTimeMillis()+timeout;
+            while(activeCount() > 0 && System.currentTimeMillis() < deadline) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            Thread[] threads = new Thread[activeCount()+1];
+            int count = enumerate(threads);
+            for(int i=0; i<count; i++) {
+                try {
+                    threads[i].stop();
+                } catch (RuntimeException e) {
+                    // Not supported by this VM: the thread is left running
+                }
+            }
+        }
+    }
+
+    /** Thrown in a thread of the rig instead of exiting the VM */
+    protected static class ExitException extends SecurityException {
+
+        public ExitException(int status) {
+            super("Test rig exited with status "+status);
+        }
+    }
+
+    /** Prevents the threads of a rig from exiting the VM. The other checks are forwarded
+     * to the security manager installed before, if any.
+     */
+    protected static class ExitGuard extends SecurityManager {
+
+        protected final SecurityManager parent;
+
+        public ExitGuard(SecurityManager parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public void checkExit(int status) {
+            if(getCurrentRig() != null)
+                throw new ExitException(status);
+            if(parent != null)
+                parent.checkExit(status);
+        }
+
+        @Override
+        public void checkPermission(Permission perm) {
+            if(parent != null)
+                parent.checkPermission(perm);
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+            if(parent != null)
+                parent.checkPermission(perm, context);
+        }
+    }
+
+    /** Installed as the standard output and error while rigs run: sends what the threads
+     * of a rig write to the delegate of the rig and everything else to the original stream.
+     */
+    protected static class StreamRouter extends OutputStream {
+
+        protected final PrintStream original;
+        protected final boolean error;
+
+        public StreamRouter(PrintStream original, boolean error) {
+            this.original = original;
+            this.error = error;
+        }
+
+        protected static RigThreadGroup getTarget() {
+            return RigThreadGroup.delivering.get() == null ? getCurrentRig() : null;
+        }
+
+        @Override
+        public void write(int b) {
+            RigThreadGroup rig = getTarget();
+            if(rig == null)
+                original.write(b);
+            else
+                rig.write(error, String.valueOf((char)b));
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            RigThreadGroup rig = getTarget();
+            if(rig == null)
+                original.write(b, off, len);
+            else
+                rig.write(error, new String(b, off, len));
+        }
+
+        @Override
+        public void flush() {
+            RigThreadGroup rig = getTarget();
+            if(rig == null)
+                original.flush();
+            else
+                rig.flush(error);
+        }
+    }
+}
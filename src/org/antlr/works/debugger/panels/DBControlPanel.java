@@ -264,6 +264,12 @@ public class DBControlPanel extends JPanel {
 
         info.append(status);
 
+        if(debuggerTab.getRecorder().getStatus() == DBRecorder.STATUS_RUNNING) {
+            info.append(" (");
+            info.append(debuggerTab.getEventsPerSecond());
+            info.append(" events/s)");
+        }
+
         DBPlayerContextInfo context = debuggerTab.getPlayer().getContextInfo();
         if(context.isBacktracking()) {
             info.append(" (backtrack ");
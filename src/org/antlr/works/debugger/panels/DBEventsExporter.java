@@ -0,0 +1,246 @@
+package org.antlr.works.debugger.panels;
+
+import org.antlr.works.debugger.events.DBEvent;
+import org.antlr.works.debugger.tivo.DBPlayerContextInfo;
+import org.antlr.xjlib.appkit.utils.XJAlert;
+import org.antlr.xjlib.appkit.utils.XJDialogProgress;
+import org.antlr.xjlib.appkit.utils.XJDialogProgressDelegate;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.*;
+import java.util.List;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * Writes the events displayed by the events panel to a file, as text (one tab-separated line per
+ * event) or CSV. The events are formatted and written by chunks of CHUNK_SIZE events so the
+ * whole log is never held in memory. The context of each event is computed while the events
+ * are written, the same way the player computes it.
+ */
+public class DBEventsExporter implements Runnable, XJDialogProgressDelegate {
+
+    public static final int FORMAT_TEXT = 0;
+    public static final int FORMAT_CSV = 1;
+
+    /** Number of events formatted before being written */
+    public static final int CHUNK_SIZE = 1024;
+
+    private final List<DBEvent> events;
+    private final int count;
+    private final int format;
+
+    private volatile boolean cancelled = false;
+    private volatile int exported = 0;
+
+    private File file;
+    private Container parent;
+    private XJDialogProgress progress;
+    private Exception error;
+
+    public DBEventsExporter(List<DBEvent> events, int count, int format) {
+        this.events = events;
+        this.count = events == null ? 0 : count;
+        this.format = format;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /** Returns the number of events written */
+    public int getExported() {
+        return exported;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Writes the events. Returns false if the export has been cancelled. */
+    public boolean export(Writer writer) throws IOException {
+        DBPlayerContextInfo info = new DBPlayerContextInfo();
+        StringBuilder sb = new StringBuilder();
+        appendHeader(sb);
+
+        for(int index=0; index<count; index++) {
+            if(cancelled)
+                return false;
+
+            DBEvent event = events.get(index);
+            try {
+                info.play(event);
+            } catch(Exception e) {
+                // The player ignores the events it cannot play
+            }
+            appendEvent(sb, index, event, info);
+
+            if((index+1) % CHUNK_SIZE == 0) {
+                writer.write(sb.toString());
+                sb.setLength(0);
+                exported = index+1;
+            }
+        }
+        writer.write(sb.toString());
+        writer.flush();
+        exported = count;
+        return true;
+    }
+
+    /** Exports the events to the file in a background thread, displaying the progress in a dialog */
+    public void exportInThread(Container parent, File file) {
+        this.parent = parent;
+        this.file = file;
+
+        progress = new XJDialogProgress(parent);
+        progress.setInfo("Exporting events...");
+        progress.setCancellable(true);
+        progress.setProgress(0);
+        progress.setProgressMax(count);
+        progress.setDelegate(this);
+        progress.display();
+
+        new Thread(this).start();
+    }
+
+    public void dialogDidCancel() {
+        cancel();
+    }
+
+    public void run() {
+        error = null;
+        boolean completed = false;
+        Timer timer = new Timer(250, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                progress.setProgress(exported);
+            }
+        });
+        timer.start();
+        try {
+            Writer writer = new BufferedWriter(new FileWriter(file));
+            try {
+                completed = export(writer);
+            } finally {
+                writer.close();
+            }
+        } catch (Exception e) {
+            error = e;
+        }
+        timer.stop();
+
+        final boolean success = completed && error == null;
+        if(!success) {
+            file.delete();
+        }
+
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                progress.close();
+                if(error != null) {
+                    XJAlert.display(parent, "Error", "Cannot export the events to file: "+file+"\nError: "+error);
+                }
+            }
+        });
+    }
+
+    private void appendHeader(StringBuilder sb) {
+        if(format == FORMAT_CSV) {
+            sb.append("#,Event,Subrule,Decision,Mark,Backtrack\n");
+        } else {
+            sb.append("#\tEvent\tSubrule\tDecision\tMark\tBacktrack\n");
+        }
+    }
+
+    private void appendEvent(StringBuilder sb, int index, DBEvent event, DBPlayerContextInfo info) {
+        if(format == FORMAT_CSV) {
+            sb.append(index);
+            sb.append(',');
+            appendCSV(sb, String.valueOf(event));
+            sb.append(',');
+            appendCSV(sb, info.getSubrule());
+            sb.append(',');
+            appendCSV(sb, info.getDecision());
+            sb.append(',');
+            appendCSV(sb, info.getMark());
+            sb.append(',');
+            appendCSV(sb, info.getBacktrack());
+        } else {
+            sb.append(index);
+            sb.append(":\t");
+            sb.append(event);
+            sb.append('\t');
+            appendText(sb, info.getSubrule());
+            sb.append('\t');
+            appendText(sb, info.getDecision());
+            sb.append('\t');
+            appendText(sb, info.getMark());
+            sb.append('\t');
+            appendText(sb, info.getBacktrack());
+        }
+        sb.append('\n');
+    }
+
+    private void appendText(StringBuilder sb, int value) {
+        if(value == -1)
+            sb.append('-');
+        else
+            sb.append(value);
+    }
+
+    private void appendCSV(StringBuilder sb, int value) {
+        if(value != -1)
+            sb.append(value);
+    }
+
+    private void appendCSV(StringBuilder sb, String value) {
+        if(value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1 && value.indexOf('\r') == -1) {
+            sb.append(value);
+            return;
+        }
+
+        sb.append('"');
+        for(int i=0; i<value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '"')
+                sb.append('"');
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+}
@@ -3,6 +3,7 @@ package org.antlr.works.debugger.panels;
 import org.antlr.works.debugger.DebuggerTab;
 import org.antlr.works.debugger.events.DBEvent;
 import org.antlr.works.debugger.tivo.DBPlayerContextInfo;
+import org.antlr.works.debugger.tivo.DBPlayerSnapshot;
 import org.antlr.works.utils.DetachablePanel;
 import org.antlr.xjlib.appkit.swing.XJTable;
 import org.antlr.xjlib.appkit.swing.XJTableView;
@@ -87,6 +88,17 @@ public class DBEventsPanel extends DetachablePanel {
         eventTableDataModel.clear();
     }
 
+    /** The events panel only grows while the events are played: its snapshot
+     * is the number of events it displays.
+     */
+    public DBPlayerSnapshot.State createSnapshot() {
+        return new Snapshot(eventTableDataModel.getRowCount());
+    }
+
+    public void restoreSnapshot(DBPlayerSnapshot.State state) {
+        eventTableDataModel.truncate(((Snapshot)state).count);
+    }
+
     public void updateOnBreakEvent() {
         eventTableDataModel.update();
 
@@ -97,46 +109,116 @@ public class DBEventsPanel extends DetachablePanel {
         });
     }
 
-    public void addEvent(DBEvent event, DBPlayerContextInfo info) {
-        eventTableDataModel.add(event, info);
+    public void addEvent(List<DBEvent> events, int index, DBPlayerContextInfo info) {
+        eventTableDataModel.add(events, index, info);
+    }
+
+    /** Returns an exporter of the events displayed by the panel */
+    public DBEventsExporter createExporter(int format) {
+        return new DBEventsExporter(eventTableDataModel.events, eventTableDataModel.getRowCount(), format);
     }
 
-    public String getEventsAsString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(eventTableDataModel.getHeadersAsString());
-        sb.append("\n");
-
-        List<EventTableDataModel.EventInfo> events = eventTableDataModel.events;
-        for(int i=0; i<events.size(); i++) {
-            sb.append(i);
-            sb.append(":\t");
-            sb.append(events.get(i).toString());
-            sb.append("\n");
+    protected static class Snapshot implements DBPlayerSnapshot.State {
+
+        public int count;
+
+        public Snapshot(int count) {
+            this.count = count;
+        }
+
+        public int getSize() {
+            return 1;
         }
-        return sb.toString();
     }
 
+    /**
+     * The rows of the table are the events played, read from the recorded events when
+     * displayed. The context of an event (subrule, decision, etc) is not kept for each row:
+     * it is computed again from the closest checkpoint, a copy of the context taken every
+     * CHECKPOINT_INTERVAL events.
+     */
     public class EventTableDataModel extends AbstractTableModel {
 
-        protected List<EventInfo> events = new ArrayList<EventInfo>();
+        /** Number of events between two copies of the context */
+        public static final int CHECKPOINT_INTERVAL = 256;
+
+        protected List<DBEvent> events;
+        protected int count = 0;
 
-        public void add(DBEvent event, DBPlayerContextInfo info) {
-            events.add(new EventInfo(event, info));
+        /** The checkpoint at index n is the context before the event n*CHECKPOINT_INTERVAL */
+        protected final List<DBPlayerContextInfo> checkpoints = new ArrayList<DBPlayerContextInfo>();
+
+        /** Context after the event at cursorRow, used to compute the context of the following rows */
+        protected final DBPlayerContextInfo cursor = new DBPlayerContextInfo();
+        protected int cursorRow = -1;
+
+        public EventTableDataModel() {
+            checkpoints.add(new DBPlayerContextInfo());
+        }
+
+        public void add(List<DBEvent> recordedEvents, int index, DBPlayerContextInfo info) {
+            if(recordedEvents != events || index != count) {
+                // The rows are always the events played from the beginning of the recorded events
+                events = recordedEvents;
+                truncate(index);
+            }
+            count = index+1;
+            if(count % CHECKPOINT_INTERVAL == 0 && checkpoints.size() == count / CHECKPOINT_INTERVAL) {
+                checkpoints.add(info.copy());
+            }
         }
 
         public void clear() {
-            events.clear();
+            events = null;
+            count = 0;
+            checkpoints.subList(1, checkpoints.size()).clear();
+            resetCursor();
             fireTableDataChanged();
             infoTableView.autoresizeColumns();
         }
 
+        public void truncate(int count) {
+            if(count < this.count) {
+                this.count = count;
+                checkpoints.subList(count / CHECKPOINT_INTERVAL + 1, checkpoints.size()).clear();
+                if(cursorRow >= count) {
+                    resetCursor();
+                }
+            }
+            fireTableDataChanged();
+        }
+
         public void update() {
             fireTableDataChanged();
             infoTableView.autoresizeColumns();
         }
 
+        private void resetCursor() {
+            cursor.clear();
+            cursorRow = -1;
+        }
+
+        /** Returns the context after the event at the specified row */
+        public DBPlayerContextInfo getContextInfo(int row) {
+            int checkpoint = Math.min(row / CHECKPOINT_INTERVAL, checkpoints.size()-1);
+            int checkpointRow = checkpoint * CHECKPOINT_INTERVAL;
+            if(cursorRow > row || cursorRow < checkpointRow-1) {
+                cursor.set(checkpoints.get(checkpoint));
+                cursorRow = checkpointRow-1;
+            }
+            while(cursorRow < row) {
+                cursorRow++;
+                try {
+                    cursor.play(events.get(cursorRow));
+                } catch(Exception e) {
+                    // The player ignores the events it cannot play
+                }
+            }
+            return cursor;
+        }
+
         public int getRowCount() {
-            return events.size();
+            return count;
         }
 
         public int getColumnCount() {
@@ -168,74 +250,19 @@ public class DBEventsPanel extends DetachablePanel {
         }
 
         public Object getValueAt(int rowIndex, int columnIndex) {
-            EventInfo info = events.get(rowIndex);
             switch(columnIndex) {
                 case INFO_COLUMN_COUNT: return String.valueOf(rowIndex);
-                case INFO_COLUMN_EVENT: return info.event;
-                case INFO_COLUMN_SUBRULE: return info.getSubrule();
-                case INFO_COLUMN_DECISION: return info.getDecision();
-                case INFO_COLUMN_MARK: return info.getMark();
-                case INFO_COLUMN_BACKTRACK: return info.getBacktrack();
+                case INFO_COLUMN_EVENT: return events.get(rowIndex);
+                case INFO_COLUMN_SUBRULE: return getValue(getContextInfo(rowIndex).getSubrule());
+                case INFO_COLUMN_DECISION: return getValue(getContextInfo(rowIndex).getDecision());
+                case INFO_COLUMN_MARK: return getValue(getContextInfo(rowIndex).getMark());
+                case INFO_COLUMN_BACKTRACK: return getValue(getContextInfo(rowIndex).getBacktrack());
             }
             return null;
         }
 
-        public String getHeadersAsString() {
-            return "#\tEvent\tSubrule\tDecision\tMark\tBacktrack";
-        }
-
-        public class EventInfo {
-
-            public DBEvent event;
-            public int subrule;
-            public int decision;
-            public int mark;
-            public int backtrack;
-
-            public EventInfo(DBEvent event, DBPlayerContextInfo info) {
-                this.event = event;
-                this.subrule = info.getSubrule();
-                this.decision = info.getDecision();
-                this.mark = info.getMark();
-                this.backtrack = info.getBacktrack();
-            }
-
-            public Object getSubrule() {
-                return subrule==-1?null:String.valueOf(subrule);
-            }
-
-            public Object getDecision() {
-                return decision==-1?null:String.valueOf(decision);
-            }
-
-            public Object getMark() {
-                return mark==-1?null:String.valueOf(mark);
-            }
-
-            public Object getBacktrack() {
-                return backtrack==-1?null:String.valueOf(backtrack);
-            }
-
-            public String getTextForExport(int value) {
-                if(value == -1)
-                    return "-";
-                else
-                    return String.valueOf(value);
-            }
-
-            public String toString() {
-                StringBuilder sb = new StringBuilder();
-                sb.append(event.toString());
-                sb.append("\t");
-                sb.append(getTextForExport(subrule));
-                sb.append("\t");
-                sb.append(getTextForExport(decision));
-                sb.append("\t");
-                sb.append(getTextForExport(mark));
-                sb.append("\t");
-                sb.append(getTextForExport(backtrack));
-                return sb.toString();
-            }
+        private Object getValue(int value) {
+            return value==-1?null:String.valueOf(value);
         }
     }
 
@@ -2,6 +2,7 @@ package org.antlr.works.debugger.panels;
 
 import org.antlr.works.debugger.DebuggerTab;
 import org.antlr.works.debugger.events.DBEventEnterRule;
+import org.antlr.works.debugger.tivo.DBPlayerSnapshot;
 import org.antlr.works.utils.DetachablePanel;
 import org.antlr.xjlib.appkit.swing.XJTable;
 import org.antlr.xjlib.appkit.swing.XJTableView;
@@ -78,6 +79,17 @@ public class DBStackPanel extends DetachablePanel {
         ruleTableDataModel.clear();
     }
 
+    public DBPlayerSnapshot.State createSnapshot() {
+        return new Snapshot();
+    }
+
+    public void restoreSnapshot(DBPlayerSnapshot.State state) {
+        clear();
+        for (DBEventEnterRule rule : ((Snapshot)state).rules) {
+            pushRule(rule);
+        }
+    }
+
     public void updateOnBreakEvent() {
         ruleTableDataModel.update();
 
@@ -106,6 +118,15 @@ public class DBStackPanel extends DetachablePanel {
         }
     }
 
+    protected class Snapshot implements DBPlayerSnapshot.State {
+
+        public java.util.List<DBEventEnterRule> rules = new ArrayList<DBEventEnterRule>(DBStackPanel.this.rules);
+
+        public int getSize() {
+            return rules.size();
+        }
+    }
+
     public class RuleTableDataModel extends AbstractTableModel {
 
         protected java.util.List<String> rules = new ArrayList<String>();
@@ -0,0 +1,476 @@
+package org.antlr.works.debugger.tivo;
+
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.debug.RemoteDebugEventSocketListener;
+import org.antlr.works.debugger.events.*;
+import org.antlr.works.debugger.tree.DBTreeToken;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * Encodes the debugger events into compact binary records and decodes them back. A record
+ * starts with the type of the event followed by its fields: integers are encoded as variable
+ * length integers and the names (rules, grammars, exceptions) are interned: a name is written
+ * only the first time it is encoded and then referenced by its number.
+ *
+ * Note: a codec must decode the records it (or the codec which created them) encoded
+ * because the interned names are only known by this codec.
+ */
+public class DBEventCodec {
+
+    public static final byte[] MAGIC = { 'A', 'W', 'D', 'B' };
+    public static final int VERSION = 1;
+
+    private static final int TOKEN_NULL = 0;
+    private static final int TOKEN_COMMON = 1;
+    private static final int TOKEN_TREE = 2;
+
+    /** References to known names are encoded as their number plus NAME_FIRST_ID */
+    private static final int NAME_NULL = 0;
+    private static final int NAME_NEW = 1;
+    private static final int NAME_FIRST_ID = 2;
+
+    private final Map<String,Integer> nameIds = new HashMap<String, Integer>();
+    private final List<String> names = new ArrayList<String>();
+
+    public static void writeHeader(Output out) {
+        for(byte b : MAGIC) {
+            out.write(b);
+        }
+        out.writeInt(VERSION);
+    }
+
+    public static void readHeader(Input in) throws IOException {
+        for(byte b : MAGIC) {
+            if(in.read() != b)
+                throw new IOException("Not a debugger events file");
+        }
+        int version = readInt(in);
+        if(version != VERSION)
+            throw new IOException("Unsupported debugger events file version "+version);
+    }
+
+    public void encode(DBEvent event, Output out) {
+        out.write(event.getEventType());
+        writeName(out, event.getGrammarName());
+
+        switch(event.getEventType()) {
+            case DBEvent.LOCATION: {
+                DBEventLocation e = (DBEventLocation)event;
+                out.writeInt(e.line);
+                out.writeInt(e.pos);
+                break;
+            }
+            case DBEvent.CONSUME_TOKEN:
+                writeToken(out, ((DBEventConsumeToken)event).token);
+                break;
+            case DBEvent.CONSUME_HIDDEN_TOKEN:
+                writeToken(out, ((DBEventConsumeHiddenToken)event).token);
+                break;
+            case DBEvent.LT: {
+                DBEventLT e = (DBEventLT)event;
+                out.writeInt(e.index);
+                writeToken(out, e.token);
+                break;
+            }
+            case DBEvent.ENTER_RULE: {
+                DBEventEnterRule e = (DBEventEnterRule)event;
+                writeName(out, e.grammarFileName);
+                writeName(out, e.name);
+                break;
+            }
+            case DBEvent.EXIT_RULE: {
+                DBEventExitRule e = (DBEventExitRule)event;
+                writeName(out, e.grammarFileName);
+                writeName(out, e.name);
+                break;
+            }
+            case DBEvent.ENTER_SUBRULE:
+                out.writeInt(((DBEventEnterSubRule)event).decision);
+                break;
+            case DBEvent.EXIT_SUBRULE:
+                out.writeInt(((DBEventExitSubRule)event).decision);
+                break;
+            case DBEvent.ENTER_DECISION:
+                out.writeInt(((DBEventEnterDecision)event).decision);
+                break;
+            case DBEvent.EXIT_DECISION:
+                out.writeInt(((DBEventExitDecision)event).decision);
+                break;
+            case DBEvent.ENTER_ALT:
+                out.writeInt(((DBEventEnterAlt)event).alt);
+                break;
+            case DBEvent.MARK:
+                out.writeInt(((DBEventMark)event).id);
+                break;
+            case DBEvent.REWIND:
+                out.writeInt(((DBEventRewind)event).id);
+                break;
+            case DBEvent.BEGIN_BACKTRACK:
+                out.writeInt(((DBEventBeginBacktrack)event).level);
+                break;
+            case DBEvent.END_BACKTRACK: {
+                DBEventEndBacktrack e = (DBEventEndBacktrack)event;
+                out.writeInt(e.level);
+                out.write(e.successful?1:0);
+                break;
+            }
+            case DBEvent.RECOGNITION_EXCEPTION: {
+                /** Same information as the one sent by the remote parser */
+                RecognitionException e = ((DBEventRecognitionException)event).e;
+                writeName(out, e.getClass().getName());
+                out.writeInt(e.index);
+                out.writeInt(e.line);
+                out.writeInt(e.charPositionInLine);
+                break;
+            }
+            case DBEvent.NIL_NODE:
+                out.writeInt(((DBEventNilNode)event).id);
+                break;
+            case DBEvent.ERROR_NODE: {
+                DBEventErrorNode e = (DBEventErrorNode)event;
+                out.writeInt(e.id);
+                out.writeString(e.text);
+                out.writeInt(e.type);
+                break;
+            }
+            case DBEvent.CREATE_NODE: {
+                DBEventCreateNode e = (DBEventCreateNode)event;
+                out.writeInt(e.id);
+                out.writeInt(e.tokenIndex);
+                out.writeString(e.text);
+                out.writeInt(e.type);
+                break;
+            }
+            case DBEvent.BECOME_ROOT: {
+                DBEventBecomeRoot e = (DBEventBecomeRoot)event;
+                out.writeInt(e.newRootID);
+                out.writeInt(e.oldRootID);
+                break;
+            }
+            case DBEvent.ADD_CHILD: {
+                DBEventAddChild e = (DBEventAddChild)event;
+                out.writeInt(e.rootID);
+                out.writeInt(e.childID);
+                break;
+            }
+            case DBEvent.SET_TOKEN_BOUNDARIES: {
+                DBEventSetTokenBoundaries e = (DBEventSetTokenBoundaries)event;
+                out.writeInt(e.id);
+                out.writeInt(e.startIndex);
+                out.writeInt(e.stopIndex);
+                break;
+            }
+        }
+    }
+
+    public DBEvent decode(Input in) throws IOException {
+        int type = in.read();
+        String grammarName = readName(in);
+
+        DBEvent event;
+        switch(type) {
+            case DBEvent.LOCATION:
+                event = new DBEventLocation(readInt(in), readInt(in));
+                break;
+            case DBEvent.CONSUME_TOKEN:
+                event = new DBEventConsumeToken(readToken(in));
+                break;
+            case DBEvent.CONSUME_HIDDEN_TOKEN:
+                event = new DBEventConsumeHiddenToken(readToken(in));
+                break;
+            case DBEvent.LT:
+                event = new DBEventLT(readInt(in), readToken(in));
+                break;
+            case DBEvent.ENTER_RULE:
+                event = new DBEventEnterRule(readName(in), readName(in));
+                break;
+            case DBEvent.EXIT_RULE:
+                event = new DBEventExitRule(readName(in), readName(in));
+                break;
+            case DBEvent.ENTER_SUBRULE:
+                event = new DBEventEnterSubRule(readInt(in));
+                break;
+            case DBEvent.EXIT_SUBRULE:
+                event = new DBEventExitSubRule(readInt(in));
+                break;
+            case DBEvent.ENTER_DECISION:
+                event = new DBEventEnterDecision(readInt(in));
+                break;
+            case DBEvent.EXIT_DECISION:
+                event = new DBEventExitDecision(readInt(in));
+                break;
+            case DBEvent.ENTER_ALT:
+                event = new DBEventEnterAlt(readInt(in));
+                break;
+            case DBEvent.MARK:
+                event = new DBEventMark(readInt(in));
+                break;
+            case DBEvent.REWIND:
+                event = new DBEventRewind(readInt(in));
+                break;
+            case DBEvent.BEGIN_BACKTRACK:
+                event = new DBEventBeginBacktrack(readInt(in));
+                break;
+            case DBEvent.END_BACKTRACK:
+                event = new DBEventEndBacktrack(readInt(in), in.read() == 1);
+                break;
+            case DBEvent.RECOGNITION_EXCEPTION:
+                event = new DBEventRecognitionException(readException(in));
+                break;
+            case DBEvent.NIL_NODE:
+                event = new DBEventNilNode(readInt(in));
+                break;
+            case DBEvent.ERROR_NODE:
+                event = new DBEventErrorNode(readInt(in), readString(in), readInt(in));
+                break;
+            case DBEvent.CREATE_NODE: {
+                int id = readInt(in);
+                int tokenIndex = readInt(in);
+                String text = readString(in);
+                int tokenType = readInt(in);
+                if(tokenIndex == -1)
+                    event = new DBEventCreateNode(id, text, tokenType);
+                else
+                    event = new DBEventCreateNode(id, tokenIndex);
+                break;
+            }
+            case DBEvent.BECOME_ROOT:
+                event = new DBEventBecomeRoot(readInt(in), readInt(in));
+                break;
+            case DBEvent.ADD_CHILD:
+                event = new DBEventAddChild(readInt(in), readInt(in));
+                break;
+            case DBEvent.SET_TOKEN_BOUNDARIES:
+                event = new DBEventSetTokenBoundaries(readInt(in), readInt(in), readInt(in));
+                break;
+            case DBEvent.BEGIN_RESYNC:
+            case DBEvent.END_RESYNC:
+            case DBEvent.COMMENCE:
+            case DBEvent.TERMINATE:
+                event = new DBEvent(type);
+                break;
+            default:
+                throw new IOException("Unknown debugger event type "+type);
+        }
+
+        event.setGrammarName(grammarName);
+        return event;
+    }
+
+    private void writeName(Output out, String name) {
+        if(name == null) {
+            out.writeInt(NAME_NULL);
+            return;
+        }
+
+        Integer id = nameIds.get(name);
+        if(id == null) {
+            /** The number is written with the name so the record can be decoded again */
+            id = addName(name);
+            out.writeInt(NAME_NEW);
+            out.writeInt(id);
+            out.writeString(name);
+        } else {
+            out.writeInt(id+NAME_FIRST_ID);
+        }
+    }
+
+    private String readName(Input in) throws IOException {
+        int n = readInt(in);
+        if(n == NAME_NULL)
+            return null;
+
+        if(n == NAME_NEW) {
+            int id = readInt(in);
+            String name = readString(in);
+            if(id == names.size())
+                addName(name);
+            else if(id > names.size())
+                throw new IOException("Invalid name number "+id);
+            return name;
+        }
+
+        int id = n-NAME_FIRST_ID;
+        if(id < 0 || id >= names.size())
+            throw new IOException("Invalid name number "+id);
+        return names.get(id);
+    }
+
+    private int addName(String name) {
+        int id = names.size();
+        names.add(name);
+        nameIds.put(name, id);
+        return id;
+    }
+
+    private void writeToken(Output out, Token token) {
+        if(token == null) {
+            out.write(TOKEN_NULL);
+        } else if(token instanceof DBTreeToken) {
+            RemoteDebugEventSocketListener.ProxyTree tree = ((DBTreeToken)token).tree;
+            out.write(TOKEN_TREE);
+            out.writeInt(tree.ID);
+            out.writeInt(tree.type);
+            out.writeInt(tree.line);
+            out.writeInt(tree.charPos);
+            out.writeInt(tree.tokenIndex);
+            out.writeString(tree.text);
+        } else {
+            out.write(TOKEN_COMMON);
+            out.writeInt(token.getTokenIndex());
+            out.writeInt(token.getType());
+            out.writeInt(token.getChannel());
+            out.writeInt(token.getLine());
+            out.writeInt(token.getCharPositionInLine());
+            out.writeString(token.getText());
+        }
+    }
+
+    private Token readToken(Input in) throws IOException {
+        switch(in.read()) {
+            case TOKEN_NULL:
+                return null;
+            case TOKEN_TREE:
+                return new DBTreeToken(new RemoteDebugEventSocketListener.ProxyTree(readInt(in), readInt(in),
+                        readInt(in), readInt(in), readInt(in), readString(in)));
+            case TOKEN_COMMON:
+                return new RemoteDebugEventSocketListener.ProxyToken(readInt(in), readInt(in),
+                        readInt(in), readInt(in), readInt(in), readString(in));
+        }
+        throw new IOException("Invalid token");
+    }
+
+    /** The exception is created like RemoteDebugEventSocketListener does it */
+    private RecognitionException readException(Input in) throws IOException {
+        String className = readName(in);
+        RecognitionException e;
+        try {
+            e = (RecognitionException)Class.forName(className).newInstance();
+        } catch (Exception ex) {
+            e = new RecognitionException();
+        }
+        e.index = readInt(in);
+        e.line = readInt(in);
+        e.charPositionInLine = readInt(in);
+        return e;
+    }
+
+    public static int readInt(Input in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.read();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0 && shift < 35);
+        // Zigzag decoding
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static String readString(Input in) throws IOException {
+        int length = readInt(in);
+        if(length == -1)
+            return null;
+        if(length < 0)
+            throw new IOException("Invalid string length "+length);
+
+        byte[] bytes = new byte[length];
+        for(int index=0; index<length; index++) {
+            bytes[index] = (byte)in.read();
+        }
+        return new String(bytes, "UTF-8");
+    }
+
+    /** Source of the bytes of the records. Returns an unsigned byte. */
+    public interface Input {
+        public int read() throws IOException;
+    }
+
+    /** Growable buffer receiving the bytes of the records */
+    public static class Output {
+
+        public byte[] bytes = new byte[256];
+        public int length;
+
+        public void reset() {
+            length = 0;
+        }
+
+        public void write(int b) {
+            if(length == bytes.length) {
+                byte[] newBytes = new byte[bytes.length*2];
+                System.arraycopy(bytes, 0, newBytes, 0, length);
+                bytes = newBytes;
+            }
+            bytes[length++] = (byte)b;
+        }
+
+        /** Writes a variable length integer: small values (positive or negative) use only one byte */
+        public void writeInt(int value) {
+            // Zigzag encoding
+            int v = (value << 1) ^ (value >> 31);
+            while((v & ~0x7F) != 0) {
+                write((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            write(v);
+        }
+
+        public void writeString(String s) {
+            if(s == null) {
+                writeInt(-1);
+                return;
+            }
+
+            byte[] b;
+            try {
+                b = s.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                b = s.getBytes();
+            }
+            writeInt(b.length);
+            for(byte c : b) {
+                write(c);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,263 @@
+package org.antlr.works.debugger.tivo;
+
+import org.antlr.works.debugger.events.DBEvent;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * Stores the events as binary records (see DBEventCodec) appended to a memory-mapped file.
+ * Only the offset of each record is kept in memory: the events are decoded each time they
+ * are requested. A long debugging session therefore doesn't exhaust the heap.
+ *
+ * The file has the same format as a saved session: a session is opened by mapping
+ * the saved file and reading its records once to build the offsets.
+ */
+public class DBEventFileStore extends DBEventStore {
+
+    public static final String EXTENSION = "awevents";
+
+    /** Size of each region of the file mapped in memory */
+    private static final int SEGMENT_SIZE = 1 << 24;
+
+    private final File file;
+    private final boolean temporary;
+    private final boolean readOnly;
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+
+    private final DBEventCodec codec = new DBEventCodec();
+    private final DBEventCodec.Output output = new DBEventCodec.Output();
+
+    private long[] offsets = new long[1024];
+    private int count;
+    private long length;
+
+    /** Creates an empty store using a temporary file deleted when the store is closed */
+    public static DBEventFileStore createTemporary() throws IOException {
+        File file = File.createTempFile("antlrworks", ".events");
+        file.deleteOnExit();
+        return new DBEventFileStore(file, true, false);
+    }
+
+    /** Opens (read-only) the events saved in the specified file */
+    public static DBEventFileStore open(File file) throws IOException {
+        DBEventFileStore store = new DBEventFileStore(file, false, true);
+        try {
+            store.readOffsets();
+        } catch (IOException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private DBEventFileStore(File file, boolean temporary, boolean readOnly) throws IOException {
+        this.file = file;
+        this.temporary = temporary;
+        this.readOnly = readOnly;
+
+        raf = new RandomAccessFile(file, readOnly?"r":"rw");
+        channel = raf.getChannel();
+
+        if(readOnly) {
+            length = channel.size();
+        } else {
+            raf.setLength(0);
+            DBEventCodec.writeHeader(output);
+            write(0, output.bytes, output.length);
+            length = output.length;
+        }
+    }
+
+    public synchronized boolean add(DBEvent event) {
+        if(readOnly)
+            throw new UnsupportedOperationException("The events of a saved session cannot be modified");
+
+        output.reset();
+        codec.encode(event, output);
+        try {
+            write(length, output.bytes, output.length);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        addOffset(length);
+        length += output.length;
+        return true;
+    }
+
+    public synchronized DBEvent get(int index) {
+        if(index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("Index: "+index+", Size: "+count);
+
+        try {
+            return codec.decode(new Cursor(offsets[index]));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** The records are copied as-is because the file has the format of a saved session */
+    public synchronized void save(File target) throws IOException {
+        for(MappedByteBuffer segment : segments) {
+            if(!readOnly)
+                segment.force();
+        }
+
+        FileChannel out = new FileOutputStream(target).getChannel();
+        try {
+            long position = 0;
+            while(position < length) {
+                position += channel.transferTo(position, length-position, out);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public synchronized void close() {
+        // A mapped file cannot be deleted on some platforms (i.e. Windows) until it is unmapped
+        for(MappedByteBuffer segment : segments) {
+            unmap(segment);
+        }
+        segments.clear();
+        try {
+            channel.close();
+            raf.close();
+        } catch (IOException e) {
+            // Ignore exception
+        }
+        if(temporary && !file.delete()) {
+            // The segments could not be unmapped: they are unmapped when they are garbage collected
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Unmaps the buffer if the VM supports it. The buffer must not be used afterward.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if(cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // Not supported by this VM
+        }
+    }
+
+    private void readOffsets() throws IOException {
+        Cursor cursor = new Cursor(0);
+        DBEventCodec.readHeader(cursor);
+        while(cursor.position < length) {
+            addOffset(cursor.position);
+            codec.decode(cursor);
+        }
+    }
+
+    private void addOffset(long offset) {
+        if(count == offsets.length) {
+            long[] newOffsets = new long[offsets.length*2];
+            System.arraycopy(offsets, 0, newOffsets, 0, count);
+            offsets = newOffsets;
+        }
+        offsets[count++] = offset;
+    }
+
+    private void write(long position, byte[] bytes, int size) throws IOException {
+        int offset = 0;
+        while(offset < size) {
+            ByteBuffer segment = getSegment((int)(position/SEGMENT_SIZE)).duplicate();
+            segment.position((int)(position%SEGMENT_SIZE));
+            int n = Math.min(size-offset, segment.remaining());
+            segment.put(bytes, offset, n);
+            offset += n;
+            position += n;
+        }
+    }
+
+    private MappedByteBuffer getSegment(int index) throws IOException {
+        while(segments.size() <= index) {
+            long position = (long)segments.size()*SEGMENT_SIZE;
+            if(readOnly) {
+                long size = Math.min(SEGMENT_SIZE, length-position);
+                segments.add(channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+            } else {
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_SIZE));
+            }
+        }
+        return segments.get(index);
+    }
+
+    private class Cursor implements DBEventCodec.Input {
+
+        public long position;
+
+        public Cursor(long position) {
+            this.position = position;
+        }
+
+        public int read() throws IOException {
+            if(position >= length)
+                throw new EOFException();
+
+            int b = getSegment((int)(position/SEGMENT_SIZE)).get((int)(position%SEGMENT_SIZE));
+            position++;
+            return b & 0xFF;
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+package org.antlr.works.debugger.tivo;
+
+import org.antlr.works.debugger.events.DBEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/** A bounded ring buffer between the thread reading the remote parser socket
+ * (the only producer) and the recorder ingestion thread (the only consumer).
+ * Neither side takes a lock: each one only writes its own counter. A side that
+ * cannot make progress (full or empty buffer) spins for a short while, then parks
+ * until the other side unparks it after having moved its counter.
+ */
+public class DBEventQueue {
+
+    private static final int SPINS = 100;
+
+    private final DBEvent[] buffer;
+    private final int mask;
+
+    /** Number of events taken by the consumer */
+    private final AtomicLong head = new AtomicLong();
+    /** Number of events put by the producer */
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /** The thread parked until an event is put or some room is made, if any */
+    private volatile Thread waitingConsumer;
+    private volatile Thread waitingProducer;
+
+    public DBEventQueue(int capacity) {
+        int size = 1;
+        while(size < capacity)
+            size <<= 1;
+        buffer = new DBEvent[size];
+        mask = size-1;
+    }
+
+    /** Appends the event, waiting for some room if the consumer is late.
+     * Returns false if the queue has been closed.
+     */
+    public boolean put(DBEvent event) {
+        long t = tail.get();
+        int spins = 0;
+        while(t-head.get() == buffer.length) {
+            if(closed)
+                return false;
+            if(spins++ < SPINS)
+                continue;
+
+            // Check again once registered: the consumer unparks after having moved head
+            waitingProducer = Thread.currentThread();
+            if(t-head.get() == buffer.length && !closed)
+                LockSupport.park();
+            waitingProducer = null;
+        }
+        buffer[(int)t & mask] = event;
+        // The volatile write publishes the event to the consumer
+        tail.set(t+1);
+        unpark(waitingConsumer);
+        return !closed;
+    }
+
+    /** Moves up to batch.length events into batch and returns their number.
+     * Waits until at least one event is available: returns -1 if the queue
+     * has been closed.
+     */
+    public int take(DBEvent[] batch) {
+        long h = head.get();
+        long available;
+        int spins = 0;
+        while((available = tail.get()-h) == 0) {
+            if(closed)
+                return -1;
+            if(spins++ < SPINS)
+                continue;
+
+            // Check again once registered: the producer unparks after having moved tail
+            waitingConsumer = Thread.currentThread();
+            if(tail.get() == h && !closed)
+                LockSupport.park();
+            waitingConsumer = null;
+        }
+
+        int count = (int)Math.min(available, batch.length);
+        for(int i=0; i<count; i++) {
+            int index = (int)(h+i) & mask;
+            batch[i] = buffer[index];
+            buffer[index] = null;
+        }
+        head.set(h+count);
+        unpark(waitingProducer);
+        return count;
+    }
+
+    /** Closes the queue and wakes up the waiting threads */
+    public void close() {
+        closed = true;
+        unpark(waitingConsumer);
+        unpark(waitingProducer);
+    }
+
+    private static void unpark(Thread thread) {
+        if(thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
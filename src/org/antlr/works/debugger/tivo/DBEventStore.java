@@ -0,0 +1,72 @@
+package org.antlr.works.debugger.tivo;
+
+import org.antlr.works.debugger.events.DBEvent;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.AbstractList;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * The events received from the remote parser. The recorder appends the events
+ * and the player reads them (from another thread) using their position.
+ */
+public abstract class DBEventStore extends AbstractList<DBEvent> {
+
+    public abstract boolean add(DBEvent event);
+
+    /** Saves the events so they can be opened later with DBEventFileStore.open() */
+    public synchronized void save(File file) throws IOException {
+        DBEventCodec codec = new DBEventCodec();
+        DBEventCodec.Output output = new DBEventCodec.Output();
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            DBEventCodec.writeHeader(output);
+            os.write(output.bytes, 0, output.length);
+            for(int index=0; index<size(); index++) {
+                output.reset();
+                codec.encode(get(index), output);
+                os.write(output.bytes, 0, output.length);
+            }
+        } finally {
+            os.close();
+        }
+    }
+
+    /** Releases the resources used by the store */
+    public void close() {
+    }
+
+}
@@ -51,6 +51,8 @@ public class DBPlayer {
     protected int resyncing = 0;
     protected int eventPlayedCount = 0;
 
+    protected DBPlayerSnapshots snapshots = new DBPlayerSnapshots();
+
     public DBPlayer(DebuggerTab debuggerTab) {
         this.debuggerTab = debuggerTab;
         contextInfo = new DBPlayerContextInfo();
@@ -63,6 +65,7 @@ public class DBPlayer {
 
     public void setInputBuffer(DBInputProcessor processor) {
         this.processor = processor;
+        snapshots.clear();
     }
 
     public DBPlayerContextInfo getContextInfo() {
@@ -86,15 +89,57 @@ public class DBPlayer {
 
         resyncing = 0;
         eventPlayedCount = 0;
+
+        snapshots.clear();
     }
 
-    public void playEvents(List events, int lastEventPosition, boolean reset) {
-        if(reset)
+    /** Moves the player back to the last snapshot taken before the specified position
+     * so only the events following this snapshot have to be played again. If there
+     * is no such snapshot, the events are played again from the beginning.
+     */
+    public synchronized void rewindPlayEvents(int position) {
+        if(position > eventPlayedCount && eventPlayedCount > 0) {
+            // The events already played are still valid: simply play the next ones
+            return;
+        }
+
+        // Play at least the last event again so its location is displayed
+        DBPlayerSnapshot snapshot = snapshots.rewind(position-1);
+        if(snapshot == null)
             resetPlayEvents(false);
+        else
+            restoreSnapshot(snapshot);
+    }
+
+    public void takeSnapshot() {
+        DBPlayerSnapshot snapshot = new DBPlayerSnapshot(eventPlayedCount, contextInfo, markStack,
+                resyncing, lastLocationEvent);
+        snapshot.setState(processor, processor.createSnapshot());
+        debuggerTab.playerCreateSnapshot(snapshot);
+        snapshots.add(snapshot);
+    }
+
+    public void restoreSnapshot(DBPlayerSnapshot snapshot) {
+        contextInfo.set(snapshot.contextInfo);
+        markStack.clear();
+        markStack.addAll(snapshot.markStack);
+
+        resyncing = snapshot.resyncing;
+        lastLocationEvent = snapshot.lastLocationEvent;
+
+        processor.restoreSnapshot(snapshot.getState(processor));
+        debuggerTab.playerRestoreSnapshot(snapshot);
+
+        eventPlayedCount = snapshot.position;
+    }
+
+    public void playEvents(List<DBEvent> events, int lastEventPosition, boolean reset) {
+        if(reset)
+            rewindPlayEvents(lastEventPosition);
 
         int lastIndex = lastEventPosition - 1;
         for(int i=eventPlayedCount; i< lastEventPosition; i++) {
-            DBEvent event = (DBEvent)events.get(i);
+            DBEvent event = events.get(i);
 
             try {
                 playEvent(event);
@@ -102,11 +147,15 @@ public class DBPlayer {
                 debuggerTab.getConsole().println(e);
             }
 
-            debuggerTab.addEvent(event, contextInfo);
+            debuggerTab.addEvent(events, i, contextInfo);
             if(i == lastIndex) {
                 // Last event, play the location
                 playLocation();
             }
+
+            eventPlayedCount = i+1;
+            if(snapshots.shouldTakeSnapshot(eventPlayedCount))
+                takeSnapshot();
         }
         eventPlayedCount = lastEventPosition;
     }
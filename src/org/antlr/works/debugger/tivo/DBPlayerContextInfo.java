@@ -1,5 +1,7 @@
 package org.antlr.works.debugger.tivo;
 
+import org.antlr.works.debugger.events.*;
+
 import java.util.Stack;
 /*
 
@@ -91,6 +93,47 @@ public class DBPlayerContextInfo {
         return !backtrack.isEmpty();
     }
 
+    /** Applies the changes the event makes to the context, the same way DBPlayer does when
+     * it plays the event. This allows the context of any event to be computed again from a copy
+     * of the context of a previous event.
+     */
+    public void play(DBEvent event) {
+        switch(event.getEventType()) {
+            case DBEvent.ENTER_SUBRULE:
+                enterSubrule(((DBEventEnterSubRule)event).decision);
+                break;
+
+            case DBEvent.EXIT_SUBRULE:
+                exitSubrule();
+                break;
+
+            case DBEvent.ENTER_DECISION:
+                enterDecision(((DBEventEnterDecision)event).decision);
+                break;
+
+            case DBEvent.EXIT_DECISION:
+                exitDecision();
+                break;
+
+            case DBEvent.MARK:
+                mark(((DBEventMark)event).id);
+                break;
+
+            case DBEvent.REWIND:
+                if(!((DBEventRewind)event).rewindToLastMark())
+                    rewind();
+                break;
+
+            case DBEvent.BEGIN_BACKTRACK:
+                beginBacktrack(((DBEventBeginBacktrack)event).level);
+                break;
+
+            case DBEvent.END_BACKTRACK:
+                endBacktrack();
+                break;
+        }
+    }
+
     public int getPeekValue(Stack<Integer> s) {
         if(s.isEmpty())
             return -1;
@@ -104,4 +147,22 @@ public class DBPlayerContextInfo {
         mark.clear();
         backtrack.clear();
     }
+
+    public DBPlayerContextInfo copy() {
+        DBPlayerContextInfo info = new DBPlayerContextInfo();
+        info.set(this);
+        return info;
+    }
+
+    public void set(DBPlayerContextInfo other) {
+        clear();
+        subrule.addAll(other.subrule);
+        decision.addAll(other.decision);
+        mark.addAll(other.mark);
+        backtrack.addAll(other.backtrack);
+    }
+
+    public int size() {
+        return subrule.size() + decision.size() + mark.size() + backtrack.size();
+    }
 }
@@ -0,0 +1,94 @@
+package org.antlr.works.debugger.tivo;
+
+import org.antlr.works.debugger.events.DBEventLocation;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Stack;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * The state of the player, of its input processor and of the debugger panels after a given
+ * number of events has been played. Restoring a snapshot and playing the events following
+ * its position gives the same result as playing all the events from the beginning.
+ *
+ * Note: to keep the snapshots small, the parse tree and the events panel only remember
+ * how much of their content existed when the snapshot was taken. A snapshot can therefore only
+ * be restored when the events played since it was taken are still displayed (see DBPlayer).
+ */
+public class DBPlayerSnapshot {
+
+    /** The state of a component captured by a snapshot */
+    public interface State {
+        /** Returns an estimation of the number of objects retained by the state */
+        public int getSize();
+    }
+
+    /** Number of events played when the snapshot was taken */
+    public final int position;
+
+    public final DBPlayerContextInfo contextInfo;
+    public final Stack<Integer> markStack = new Stack<Integer>();
+    public final int resyncing;
+    public final DBEventLocation lastLocationEvent;
+
+    private final Map<Object,State> states = new IdentityHashMap<Object, State>();
+    private int size;
+
+    public DBPlayerSnapshot(int position, DBPlayerContextInfo contextInfo, Stack<Integer> markStack,
+                            int resyncing, DBEventLocation lastLocationEvent)
+    {
+        this.position = position;
+        this.contextInfo = contextInfo.copy();
+        this.markStack.addAll(markStack);
+        this.resyncing = resyncing;
+        this.lastLocationEvent = lastLocationEvent;
+
+        size = contextInfo.size() + markStack.size();
+    }
+
+    public void setState(Object owner, State state) {
+        State old = states.put(owner, state);
+        if(old != null)
+            size -= old.getSize();
+        size += state.getSize();
+    }
+
+    public State getState(Object owner) {
+        return states.get(owner);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+}
@@ -0,0 +1,136 @@
+package org.antlr.works.debugger.tivo;
+
+import org.antlr.works.prefs.AWPrefs;
+
+import java.util.ArrayList;
+import java.util.List;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * The snapshots taken by the player while it plays the events. A snapshot is taken each time
+ * the number of events played is a multiple of the interval. When the snapshots retain more
+ * objects than the budget allows, every other snapshot is removed and the interval doubled.
+ */
+public class DBPlayerSnapshots {
+
+    private final List<DBPlayerSnapshot> snapshots = new ArrayList<DBPlayerSnapshot>();
+
+    private int interval;
+    private int budget;
+    private int size;
+
+    public DBPlayerSnapshots() {
+        clear();
+    }
+
+    public void clear() {
+        snapshots.clear();
+        size = 0;
+
+        interval = getInitialInterval();
+        budget = getBudget();
+    }
+
+    /** Returns the number of events between two snapshots before any thinning */
+    protected int getInitialInterval() {
+        return AWPrefs.getDebugSnapshotInterval();
+    }
+
+    /** Returns the maximum number of objects the snapshots can retain */
+    protected int getBudget() {
+        return AWPrefs.getDebugSnapshotBudget();
+    }
+
+    public int getCount() {
+        return snapshots.size();
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /** Returns true if a snapshot should be taken after the specified number of events have been played */
+    public boolean shouldTakeSnapshot(int position) {
+        if(interval <= 0 || position == 0 || position % interval != 0)
+            return false;
+
+        return snapshots.isEmpty() || getLast().position < position;
+    }
+
+    public void add(DBPlayerSnapshot snapshot) {
+        snapshots.add(snapshot);
+        size += snapshot.getSize();
+
+        while(size > budget && snapshots.size() > 1) {
+            if(!thin())
+                break;
+        }
+    }
+
+    /** Returns the last snapshot taken at or before the specified position. The snapshots
+     * taken after it are removed because they cannot be restored anymore once the events
+     * following this snapshot are played again.
+     */
+    public DBPlayerSnapshot rewind(int position) {
+        while(!snapshots.isEmpty() && getLast().position > position) {
+            size -= snapshots.remove(snapshots.size()-1).getSize();
+        }
+        return snapshots.isEmpty()?null:getLast();
+    }
+
+    private DBPlayerSnapshot getLast() {
+        return snapshots.get(snapshots.size()-1);
+    }
+
+    /** Doubles the interval until at least one snapshot is not on a multiple of it anymore
+     * and removes these snapshots.
+     */
+    private boolean thin() {
+        while(interval <= Integer.MAX_VALUE/2) {
+            interval *= 2;
+
+            boolean removed = false;
+            for(int index=snapshots.size()-1; index >= 0; index--) {
+                DBPlayerSnapshot snapshot = snapshots.get(index);
+                if(snapshot.position % interval != 0) {
+                    snapshots.remove(index);
+                    size -= snapshot.getSize();
+                    removed = true;
+                }
+            }
+            if(removed)
+                return true;
+        }
+        return false;
+    }
+
+}
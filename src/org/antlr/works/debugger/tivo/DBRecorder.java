@@ -45,6 +45,7 @@ import org.antlr.xjlib.appkit.utils.XJDialogProgressDelegate;
 import org.antlr.xjlib.foundation.XJUtils;
 
 import javax.swing.*;
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
@@ -58,6 +59,11 @@ public class DBRecorder implements Runnable, XJDialogProgressDelegate {
 
     public static final int MAX_RETRY = 12;
 
+    /** Number of events the socket thread can read ahead of the ingestion thread */
+    public static final int QUEUE_CAPACITY = 8192;
+    /** Maximum number of events ingested while holding the recorder lock */
+    public static final int BATCH_SIZE = 512;
+
     protected DebuggerTab debuggerTab;
     protected int status = STATUS_STOPPED;
     protected boolean cancelled;
@@ -90,7 +96,7 @@ public class DBRecorder implements Runnable, XJDialogProgressDelegate {
     protected String address;
     protected int port;
 
-    protected List<DBEvent> events;
+    protected DBEventStore events;
     protected int position;
     protected NumberSet breakEvents = new NumberSet();
     protected int stoppedOnEvent = DBEvent.NO_EVENT;
@@ -104,6 +110,21 @@ public class DBRecorder implements Runnable, XJDialogProgressDelegate {
     protected DBRecorderEventListener eventListener;
     protected RemoteDebugEventSocketListener listener;
 
+    /** Events decoded by the socket thread and waiting to be ingested */
+    protected DBEventQueue queue;
+
+    /** Only written by the ingestion thread */
+    protected volatile long receivedEventsCount;
+    protected volatile int eventsPerSecond;
+    protected long rateStartTime;
+    protected long rateStartCount;
+
+    /** The events are played at most once per turn of the event dispatch thread:
+     * the requests received in between are coalesced.
+     */
+    protected boolean playEventsPending;
+    protected boolean playEventsReset;
+
     protected XJDialogProgress progress;
 
     /** This flag is used to indicate that the debugger received the terminate event.
@@ -129,6 +150,9 @@ public class DBRecorder implements Runnable, XJDialogProgressDelegate {
 
     public void close() {
         debuggerTab = null;
+        if(queue != null)
+            queue.close();
+        events.close();
     }
 
     public void showProgress() {
@@ -156,12 +180,45 @@ public class DBRecorder implements Runnable, XJDialogProgressDelegate {
     }
 
     public synchronized void reset() {
-        events = Collections.synchronizedList(new ArrayList<DBEvent>());
+        reset(new DBEventMemoryStore());
+    }
+
+    public synchronized void reset(DBEventStore store) {
+        if(events != null)
+            events.close();
+        events = store;
         position = -1;
         currentTokenIndex = -1;
         remoteParserStateWarned = false;
     }
 
+    /** The events are stored in a memory-mapped file so a long debugging session
+     * doesn't exhaust the heap. The memory is used if the file cannot be created.
+     */
+    protected DBEventStore createEventStore() {
+        try {
+            return DBEventFileStore.createTemporary();
+        } catch (IOException e) {
+            debuggerTab.getConsole().println("Cannot create the debugger events file, the events are kept in memory: "+e, Console.LEVEL_WARNING);
+            return new DBEventMemoryStore();
+        }
+    }
+
+    /** Saves the events received so far so they can be opened later using openEvents() */
+    public void saveEvents(File file) throws IOException {
+        events.save(file);
+    }
+
+    /** Opens the events saved by saveEvents(): the events can then be replayed
+     * without the remote parser.
+     */
+    public synchronized void openEvents(File file) throws IOException {
+        reset(DBEventFileStore.open(file));
+        grammarNamesStack.clear();
+        debuggerReceivedTerminateEvent = true;
+        setStatus(STATUS_BREAK);
+    }
+
     public synchronized DBEvent getEvent() {
         if(position<0 || position>=events.size())
             return null;
@@ -232,7 +289,11 @@ public class DBRecorder implements Runnable, XJDialogProgressDelegate {
 
     /** Return true if the debugger hitted a break event */
     public boolean isOnBreakEvent() {
-        int breakEvent = getOnBreakEvent();
+        return isOnBreakEvent(getEvent());
+    }
+
+    public boolean isOnBreakEvent(DBEvent event) {
+        int breakEvent = getOnBreakEvent(event);
         if(breakEvent != DBEvent.NO_EVENT) {
             setStoppedOnEvent(breakEvent);
             setStatus(STATUS_BREAK);
@@ -243,7 +304,10 @@ public class DBRecorder implements Runnable, XJDialogProgressDelegate {
 
     /** Return the event type that causes the break */
     public int getOnBreakEvent() {
-        DBEvent event = getEvent();
+        return getOnBreakEvent(getEvent());
+    }
+
+    public int getOnBreakEvent(DBEvent event) {
         if(event == null)
             return DBEvent.NO_EVENT;
 
@@ -442,7 +506,8 @@ public class DBRecorder implements Runnable, XJDialogProgressDelegate {
 
             debuggerReceivedTerminateEvent = false;
 
-            reset();
+            reset(createEventStore());
+            startIngestion();
             listener.start();
 
             connectionSuccess();
@@ -482,6 +547,10 @@ public class DBRecorder implements Runnable, XJDialogProgressDelegate {
     }
 
     public void stop() {
+        // The ingestion thread ends once the queued events have been ingested
+        if(queue != null)
+            queue.close();
+
         // if the window is closed, the debugger does not exist anymore
         // and this event can be ignored
         if(debuggerTab == null) return;
@@ -564,12 +633,99 @@ public class DBRecorder implements Runnable, XJDialogProgressDelegate {
         }
     }
 
+    /** Starts the thread ingesting the events queued by the socket thread */
+    protected void startIngestion() {
+        if(queue != null)
+            queue.close();
+
+        final DBEventQueue q = new DBEventQueue(QUEUE_CAPACITY);
+        queue = q;
+
+        receivedEventsCount = 0;
+        eventsPerSecond = 0;
+        resetEventsRate();
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                ingest(q);
+            }
+        }, "Debugger Events Ingestion");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    protected void ingest(DBEventQueue q) {
+        DBEvent[] batch = new DBEvent[BATCH_SIZE];
+        int count;
+        while((count = q.take(batch)) >= 0) {
+            if(listenerEvents(batch, count)) {
+                // No more events will be received from the remote parser
+                q.close();
+            }
+            Arrays.fill(batch, 0, count, null);
+            updateEventsRate(count);
+        }
+    }
+
     /** This method is called by DBRecorderEventListener for each event received from
-     * the remote parser. It is running on another thread than the event thread.
+     * the remote parser. It is running on the socket thread and never blocks on the
+     * recorder: the event is only queued (unless the queue is full).
+     */
+    public void queueEvent(DBEvent event) {
+        DBEventQueue q = queue;
+        if(q != null)
+            q.put(event);
+    }
+
+    /** Ingests a batch of events taken from the queue while holding the lock only once.
+     * Returns true if the batch contains the terminate event.
+     */
+    public synchronized boolean listenerEvents(DBEvent[] batch, int count) {
+        boolean terminated = false;
+        for(int i=0; i<count; i++) {
+            listenerEvent(batch[i]);
+            terminated |= batch[i].getEventType() == DBEvent.TERMINATE;
+        }
+        return terminated;
+    }
+
+    public long getReceivedEventsCount() {
+        return receivedEventsCount;
+    }
+
+    /** Returns the number of events ingested per second, measured each second */
+    public int getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    protected synchronized void resetEventsRate() {
+        rateStartTime = System.currentTimeMillis();
+        rateStartCount = receivedEventsCount;
+    }
+
+    protected synchronized void updateEventsRate(int count) {
+        receivedEventsCount += count;
+
+        long now = System.currentTimeMillis();
+        long elapsed = now-rateStartTime;
+        if(elapsed < 1000)
+            return;
+
+        eventsPerSecond = (int)((receivedEventsCount-rateStartCount)*1000/elapsed);
+        rateStartTime = now;
+        rateStartCount = receivedEventsCount;
+
+        if(debuggerTab != null)
+            debuggerTab.recorderStatusDidChange();
+    }
+
+    /** Handles one event received from the remote parser. It is running on the
+     * ingestion thread, not on the event thread.
      */
     public synchronized void listenerEvent(DBEvent event) {
-        events.add(event);
+        // The grammar name must be set before the event is encoded by the store
         handleGrammarName(event);
+        events.add(event);
         recordIndexes(event);
         setPositionToEnd();
 
@@ -606,7 +762,8 @@ public class DBRecorder implements Runnable, XJDialogProgressDelegate {
                     break;
 
                 default:
-                    if(checkRemoteParserState() || isOnBreakEvent())
+                    // The event is the last one: check it directly instead of reading it back from the store
+                    if(checkRemoteParserState() || isOnBreakEvent(event))
                         breaksOnEvent(true);
                     break;
             }
@@ -623,6 +780,8 @@ public class DBRecorder implements Runnable, XJDialogProgressDelegate {
         } catch (InterruptedException e) {
             debuggerTab.getConsole().println("recorderThreadBreaksOnEvent: interrupted", Console.LEVEL_WARNING);
         }
+        // Don't count the time spent on the break in the events rate
+        resetEventsRate();
     }
 
     public synchronized void breaksOnEvent(boolean wait) {
@@ -634,9 +793,13 @@ public class DBRecorder implements Runnable, XJDialogProgressDelegate {
 
     protected synchronized void playEvents(boolean reset) {
         /** Make sure this method is called on the event dispatch thread */
-        if(!SwingUtilities.isEventDispatchThread())
-            SwingUtilities.invokeLater(new PlayEventRunnable(reset));
-        else
+        if(!SwingUtilities.isEventDispatchThread()) {
+            playEventsReset |= reset;
+            if(!playEventsPending) {
+                playEventsPending = true;
+                SwingUtilities.invokeLater(new PlayEventRunnable());
+            }
+        } else
             debuggerTab.playEvents(events, getCurrentEventPosition(), reset);
     }
 
@@ -709,13 +872,13 @@ public class DBRecorder implements Runnable, XJDialogProgressDelegate {
 
     public class PlayEventRunnable implements Runnable {
 
-        public boolean reset;
-
-        public PlayEventRunnable(boolean reset) {
-            this.reset = reset;
-        }
-
         public void run() {
+            boolean reset;
+            synchronized(DBRecorder.this) {
+                reset = playEventsReset;
+                playEventsPending = false;
+                playEventsReset = false;
+            }
             playEvents(reset);
         }
     }
@@ -48,7 +48,7 @@ public class DBRecorderEventListener implements DebugEventListener {
     }
 
     public void event(DBEvent event) {
-        recorder.listenerEvent(event);
+        recorder.queueEvent(event);
     }
 
     public void commence() {
@@ -3,6 +3,7 @@ package org.antlr.works.debugger.tree;
 import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.Token;
 import org.antlr.works.debugger.DebuggerTab;
+import org.antlr.works.debugger.tivo.DBPlayerSnapshot;
 
 import java.util.*;
 /*
@@ -72,6 +73,40 @@ public class DBASTModel {
         fireDataChanged();
     }
 
+    /** The nodes of the AST can be moved by the events (i.e. becomeRoot) so the snapshot
+     * contains a copy of them. This copy is itself copied when the snapshot is restored
+     * because a snapshot can be restored more than once.
+     */
+    public DBPlayerSnapshot.State createSnapshot() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.size = copy(rules, nodesMap, snapshot.rules, snapshot.nodesMap);
+        return snapshot;
+    }
+
+    public void restoreSnapshot(DBPlayerSnapshot.State state) {
+        Snapshot snapshot = (Snapshot)state;
+        rules.clear();
+        nodesMap.clear();
+        copy(snapshot.rules, snapshot.nodesMap, rules, nodesMap);
+        fireDataChanged();
+    }
+
+    /** Copy the rules and the nodes and returns the number of objects copied */
+    protected int copy(Stack<Rule> fromRules, Map<Integer,ASTNode> fromNodes, Stack<Rule> toRules, Map<Integer,ASTNode> toNodes) {
+        Map<ASTNode,ASTNode> copies = new IdentityHashMap<ASTNode, ASTNode>();
+        for (Map.Entry<Integer,ASTNode> entry : fromNodes.entrySet()) {
+            toNodes.put(entry.getKey(), entry.getValue().copy(copies));
+        }
+        for (Rule rule : fromRules) {
+            Stack<ASTNode> roots = new Stack<ASTNode>();
+            for (ASTNode root : rule.roots) {
+                roots.push(root.copy(copies));
+            }
+            toRules.push(new Rule(rule.name, roots));
+        }
+        return copies.size() + toRules.size();
+    }
+
     /* Methods used to query the model */
 
     public int getRuleCount() {
@@ -196,6 +231,17 @@ public class DBASTModel {
             return (rules.peek()).roots;
     }
 
+    protected class Snapshot implements DBPlayerSnapshot.State {
+
+        public Stack<Rule> rules = new Stack<Rule>();
+        public Map<Integer, ASTNode> nodesMap = new HashMap<Integer, ASTNode>();
+        public int size;
+
+        public int getSize() {
+            return size;
+        }
+    }
+
     public class Rule {
 
         public String name;
@@ -228,6 +274,29 @@ public class DBASTModel {
             children = new Vector();
         }
 
+        /** Returns the copy of this node, creating it (with the copy of its parent
+         * and children) if it is not yet in the map of copies.
+         */
+        public ASTNode copy(Map<ASTNode,ASTNode> copies) {
+            ASTNode copy = copies.get(this);
+            if(copy != null)
+                return copy;
+
+            copy = new ASTNode(id);
+            copies.put(this, copy);
+
+            copy.nil = nil;
+            copy.token = token;
+            copy.location = location;
+            copy.color = color;
+            if(parentNode != null)
+                copy.parentNode = parentNode.copy(copies);
+            for (Object child : children) {
+                copy.children.add(((ASTNode) child).copy(copies));
+            }
+            return copy;
+        }
+
         /** Add a child */
         public void addChild(ASTNode node) {
             if(node.nil) {
@@ -4,6 +4,7 @@ import org.antlr.runtime.Token;
 import org.antlr.works.debugger.DebuggerTab;
 import org.antlr.works.debugger.events.DBEventLocation;
 import org.antlr.works.dialog.AWPrefsDialog;
+import org.antlr.works.debugger.tivo.DBPlayerSnapshot;
 import org.antlr.works.prefs.AWPrefs;
 import org.antlr.works.utils.awtree.AWTreeModel;
 import org.antlr.works.utils.awtree.AWTreeNode;
@@ -177,6 +178,40 @@ public class DBParseTreeModel extends AWTreeModel implements XJNotificationObser
         setLastNode(b.getLastNode());
     }
 
+    public DBPlayerSnapshot.State createSnapshot() {
+        return new Snapshot();
+    }
+
+    /** Restore the tree as it was when the snapshot was taken. Nodes are only added below
+     * the rules of the stack, so removing the children added since then to these rules
+     * (and the nodes added to the pending backtracks) is enough.
+     */
+    public void restoreSnapshot(DBPlayerSnapshot.State state) {
+        Snapshot snapshot = (Snapshot)state;
+
+        rules.clear();
+        for(int index=0; index<snapshot.rules.length; index++) {
+            ParseTreeNode node = snapshot.rules[index];
+            while(node.getChildCount() > snapshot.childCounts[index]) {
+                node.remove(node.getChildCount()-1);
+            }
+            rules.push(node);
+        }
+
+        backtrackStack.clear();
+        for(int index=0; index<snapshot.backtracks.length; index++) {
+            Backtrack b = snapshot.backtracks[index];
+            b.restore(snapshot.backtrackNodeCounts[index]);
+            backtrackStack.push(b);
+        }
+
+        clearNewNodes();
+        setLastNode(snapshot.lastNode);
+        location = snapshot.location;
+
+        fireDataChanged();
+    }
+
     public void notificationFire(Object source, String name) {
         if(name.equals(AWPrefsDialog.NOTIF_PREFS_APPLIED)) {
             initColors();
@@ -213,6 +248,29 @@ public class DBParseTreeModel extends AWTreeModel implements XJNotificationObser
 
     }
 
+    protected class Snapshot implements DBPlayerSnapshot.State {
+
+        public ParseTreeNode[] rules = DBParseTreeModel.this.rules.toArray(new ParseTreeNode[DBParseTreeModel.this.rules.size()]);
+        public int[] childCounts = new int[rules.length];
+        public Backtrack[] backtracks = backtrackStack.toArray(new Backtrack[backtrackStack.size()]);
+        public int[] backtrackNodeCounts = new int[backtracks.length];
+        public TreeNode lastNode = DBParseTreeModel.this.lastNode;
+        public DBEventLocation location = DBParseTreeModel.this.location;
+
+        public Snapshot() {
+            for(int index=0; index<rules.length; index++) {
+                childCounts[index] = rules[index].getChildCount();
+            }
+            for(int index=0; index<backtracks.length; index++) {
+                backtrackNodeCounts[index] = backtracks[index].nodes.size();
+            }
+        }
+
+        public int getSize() {
+            return rules.length + backtracks.length;
+        }
+    }
+
     public static class Backtrack {
 
         public int level;
@@ -241,6 +299,18 @@ public class DBParseTreeModel extends AWTreeModel implements XJNotificationObser
             }
         }
 
+        /** Remove the nodes added after the specified number of nodes and display
+         * the remaining ones as if the backtrack was not ended yet.
+         */
+        public void restore(int count) {
+            while(nodes.size() > count) {
+                nodes.removeLast();
+            }
+            for (DBTreeNode node : nodes) {
+                node.setColor(lookaheadTokenColor);
+            }
+        }
+
         public AWTreeNode getLastNode() {
             if(nodes.isEmpty())
                 return null;
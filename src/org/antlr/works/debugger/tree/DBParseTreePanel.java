@@ -2,6 +2,7 @@ package org.antlr.works.debugger.tree;
 
 import org.antlr.runtime.Token;
 import org.antlr.works.debugger.DebuggerTab;
+import org.antlr.works.debugger.tivo.DBPlayerSnapshot;
 import org.antlr.works.utils.DetachablePanel;
 import org.antlr.works.utils.awtree.AWTreePanel;
 import org.antlr.works.utils.awtree.AWTreePanelDelegate;
@@ -57,6 +58,7 @@ public class DBParseTreePanel extends DetachablePanel implements DBParseTreeMode
         model.addListener(this);
         
         treePanel = new AWTreePanel(new DefaultTreeModel(null));
+        treePanel.setAWTreeModel(model);
         treePanel.setDelegate(this);
 
         mainPanel.add(treePanel, BorderLayout.CENTER);
@@ -79,6 +81,11 @@ public class DBParseTreePanel extends DetachablePanel implements DBParseTreeMode
         treePanel.clear();
     }
 
+    public void restoreSnapshot(DBPlayerSnapshot.State state) {
+        model.restoreSnapshot(state);
+        treePanel.clear();
+    }
+
     public void updateOnBreakEvent() {
         model.fireDataChanged();
     }
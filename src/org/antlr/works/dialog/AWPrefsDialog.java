@@ -117,6 +117,7 @@ public class AWPrefsDialog extends XJPanel {
         getPreferences().bindToPreferences(desktopModeButton, AWPrefs.PREF_DESKTOP_MODE, AWPrefs.DEFAULT_DESKTOP_MODE);
         getPreferences().bindToPreferences(outputPathField, AWPrefs.PREF_OUTPUT_PATH, AWPrefs.DEFAULT_OUTPUT_PATH);
         getPreferences().bindToPreferences(dotToolPathField, AWPrefs.PREF_DOT_TOOL_PATH, AWPrefs.DEFAULT_DOT_TOOL_PATH);
+        getPreferences().bindToPreferences(dotUseToolButton, AWPrefs.PREF_DOT_USE_TOOL, AWPrefs.DEFAULT_DOT_USE_TOOL);
         getPreferences().bindToPreferences(antlr3OptionsField, AWPrefs.PREF_ANTLR3_OPTIONS, AWPrefs.DEFAULT_ANTLR3_OPTIONS);
 
         // General - debug only
@@ -416,6 +417,8 @@ public class AWPrefsDialog extends XJPanel {
         }
         applyCommonPrefs();
         applyTestRigPrefs();
+        // The values read after the notification must reflect the backing store
+        getPreferences().invalidate();
         XJNotificationCenter.defaultCenter().postNotification(this, NOTIF_PREFS_APPLIED);
     }
 
@@ -446,6 +449,7 @@ public class AWPrefsDialog extends XJPanel {
         label24 = new JLabel();
         dotToolPathField = new JTextField();
         browseDotToolPathButton = new JButton();
+        dotUseToolButton = new JCheckBox();
         label37 = new JLabel();
         antlr3OptionsField = new JTextField();
         tabEditor = new JPanel();
@@ -667,10 +671,15 @@ public class AWPrefsDialog extends XJPanel {
         				browseDotToolPathButton.setText("Browse...");
         				tabGeneral.add(browseDotToolPathButton, cc.xy(9, 13));
 
+        				//---- dotUseToolButton ----
+        				dotUseToolButton.setText("Use the DOT tool to lay out the graphs");
+        				dotUseToolButton.setToolTipText("The graphs are laid out by ANTLRWorks unless this option is selected");
+        				tabGeneral.add(dotUseToolButton, cc.xywh(5, 15, 3, 1));
+
         				//---- label37 ----
         				label37.setText("ANTLR options:");
-        				tabGeneral.add(label37, cc.xy(3, 15));
-        				tabGeneral.add(antlr3OptionsField, cc.xywh(5, 15, 3, 1));
+        				tabGeneral.add(label37, cc.xy(3, 17));
+        				tabGeneral.add(antlr3OptionsField, cc.xywh(5, 17, 3, 1));
         			}
         			tabbedPane1.addTab("General", tabGeneral);
 
@@ -1485,6 +1494,7 @@ public class AWPrefsDialog extends XJPanel {
     private JLabel label24;
     private JTextField dotToolPathField;
     private JButton browseDotToolPathButton;
+    private JCheckBox dotUseToolButton;
     private JLabel label37;
     private JTextField antlr3OptionsField;
     private JPanel tabEditor;
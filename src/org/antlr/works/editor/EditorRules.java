@@ -40,6 +40,7 @@ import org.antlr.works.grammar.element.ElementGroup;
 import org.antlr.works.grammar.element.ElementReference;
 import org.antlr.works.grammar.element.ElementRule;
 import org.antlr.works.grammar.engine.GrammarEngine;
+import org.antlr.works.grammar.syntax.GrammarSyntaxChanges;
 import org.antlr.works.grammar.syntax.GrammarSyntaxLexer;
 import org.antlr.works.prefs.AWPrefs;
 import org.antlr.works.stats.StatisticsAW;
@@ -532,6 +533,21 @@ public class EditorRules implements XJTreeDelegate {
         restoreExpandedNodes();
     }
 
+    public void updateTree(GrammarSyntaxChanges changes) {
+        Enumeration e = rulesTreeRootNode.depthFirstEnumeration();
+        while(e.hasMoreElements()) {
+            DefaultMutableTreeNode node = (DefaultMutableTreeNode)e.nextElement();
+            RuleTreeUserObject n = (RuleTreeUserObject)node.getUserObject();
+            if(n != null && n.rule != null) {
+                ElementRule rule = changes.getNewRule(n.rule);
+                if(rule != null) {
+                    n.rule = rule;
+                }
+            }
+        }
+        rulesTree.repaint();
+    }
+
     public void rememberSelectedTreeItem() {
         DefaultMutableTreeNode node = rulesTree.getSelectedNode();
         selectedObject = null;
@@ -620,8 +636,14 @@ public class EditorRules implements XJTreeDelegate {
         }
     }
 
-    public void parserDidParse() {
-        rebuildTree();
+    public void parserDidParse(GrammarSyntaxChanges changes) {
+        if(changes != null && changes.isScoped()) {
+            // Only some rules have been parsed again: their name and position didn't change
+            // so the tree can be kept as it is with the nodes pointing to the new rules.
+            updateTree(changes);
+        } else {
+            rebuildTree();
+        }
         if(selectNextRule) {
             // Can be set by RuleMoveDown() class when a rule is moved down. Selection has to occurs here
             // after rules have been parsed. We use this flag to select the next rule instead of the current one.
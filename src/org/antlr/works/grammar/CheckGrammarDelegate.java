@@ -35,5 +35,6 @@ import org.antlr.works.grammar.antlr.GrammarResult;
 
 public interface CheckGrammarDelegate {
     public void checkGrammarDidBegin(CheckGrammar source);
+    public void checkGrammarDidProgress(CheckGrammar source, int analyzedDecisions, int totalDecisions);
     public void checkGrammarDidEnd(CheckGrammar source, GrammarResult errorMsg);
 }
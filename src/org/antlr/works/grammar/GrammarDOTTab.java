@@ -12,6 +12,8 @@ import org.antlr.xjlib.appkit.gview.GView;
 import org.antlr.xjlib.appkit.gview.GViewDelegate;
 import org.antlr.xjlib.appkit.gview.object.GElement;
 import org.antlr.xjlib.appkit.gview.utils.GDOTImporterDOT;
+import org.antlr.xjlib.appkit.gview.utils.GLayeredLayout;
+import org.antlr.xjlib.appkit.gview.utils.GLayeredLayouts;
 import org.antlr.xjlib.appkit.utils.XJAlert;
 
 import javax.swing.*;
@@ -19,6 +21,8 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import java.awt.*;
 import java.io.*;
+import java.util.Map;
+import java.util.WeakHashMap;
 /*
 
 [The "BSD licence"]
@@ -62,6 +66,11 @@ public abstract class GrammarDOTTab extends GrammarWindowTab implements Runnable
 
     protected String error;
 
+    /** The built-in layouts of the graphs of each window: they remember the previous layout
+     * of each graph (see getGraphKey()) so generating it again only lays out again what changed.
+     */
+    private static final Map<GrammarWindow, GLayeredLayouts> layouts = new WeakHashMap<GrammarWindow, GLayeredLayouts>();
+
     public GrammarDOTTab(GrammarWindow window) {
         super(window);
     }
@@ -70,14 +79,14 @@ public abstract class GrammarDOTTab extends GrammarWindowTab implements Runnable
         return panel;
     }
 
-    public static final String dotInfo = "The 'dot' tool is used to render directed graph. It can be downloaded from www.graphviz.org.";
+    public static final String dotInfo = "The 'dot' tool is used to render directed graph. It can be downloaded from www.graphviz.org or the built-in layout can be used instead (see the Preferences).";
 
     public boolean launch() {
-        if(AWPrefs.getDOTToolPath() == null) {
+        if(AWPrefs.getDOTUseTool() && AWPrefs.getDOTToolPath() == null) {
             XJAlert.display(window.getJavaContainer(), "Error", "Cannot generate the graph because the 'dot' tool path is not defined. The path can be set in the Preferences.\n"+dotInfo);
             return false;
         }
-        if(!new File(AWPrefs.getDOTToolPath()).exists()) {
+        if(AWPrefs.getDOTUseTool() && !new File(AWPrefs.getDOTToolPath()).exists()) {
             XJAlert.display(window.getJavaContainer(), "Error", "Cannot generate the graph because the 'dot' tool does not exist at the specified path. Check the tool path in the Preferences.\n"+dotInfo);
             return false;
         }
@@ -143,9 +152,33 @@ public abstract class GrammarDOTTab extends GrammarWindowTab implements Runnable
     }
 
     public GElement generate() throws Exception {
-        generateDOTFile();
-        generatePlainTextFile();
-        return new GDOTImporterDOT().generateGraph(tempOutputFile);
+        if(AWPrefs.getDOTUseTool()) {
+            generateDOTFile();
+            generatePlainTextFile();
+            return new GDOTImporterDOT().generateGraph(tempOutputFile);
+        } else {
+            // The DOT string is created first because it identifies the graph (see getGraphKey())
+            String dot = getDOTString();
+            return getLayout().layout(dot);
+        }
+    }
+
+    /** Returns the key identifying the graph in its window, once the DOT string is created.
+     * A graph is laid out from the previous layout of the graph having the same key.
+     */
+    protected String getGraphKey() {
+        return getClass().getName();
+    }
+
+    protected GLayeredLayout getLayout() {
+        synchronized(layouts) {
+            GLayeredLayouts windowLayouts = layouts.get(window);
+            if(windowLayouts == null) {
+                windowLayouts = new GLayeredLayouts();
+                layouts.put(window, windowLayouts);
+            }
+            return windowLayouts.getLayout(getGraphKey());
+        }
     }
     
     protected void generateDOTFile() throws Exception {
@@ -181,8 +214,10 @@ public abstract class GrammarDOTTab extends GrammarWindowTab implements Runnable
         rule = window.getCurrentRule();
         
         try {
-            tempInputFile = File.createTempFile("GrammarDOTTab", ".in").getAbsolutePath();
-            tempOutputFile = File.createTempFile("GrammarDOTTab", ".out").getAbsolutePath();
+            if(AWPrefs.getDOTUseTool()) {
+                tempInputFile = File.createTempFile("GrammarDOTTab", ".in").getAbsolutePath();
+                tempOutputFile = File.createTempFile("GrammarDOTTab", ".out").getAbsolutePath();
+            }
 
             createInterface(generate());
         } catch(Exception e) {
@@ -206,8 +241,10 @@ public abstract class GrammarDOTTab extends GrammarWindowTab implements Runnable
             }
         });
 
-        new File(tempInputFile).delete();
-        new File(tempOutputFile).delete();
+        if(tempInputFile != null)
+            new File(tempInputFile).delete();
+        if(tempOutputFile != null)
+            new File(tempOutputFile).delete();
     }
 
     public boolean canExportToEPS() {
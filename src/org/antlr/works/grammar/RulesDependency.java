@@ -117,6 +117,11 @@ public class RulesDependency extends GrammarDOTTab {
         }
     }
 
+    @Override
+    protected String getGraphKey() {
+        return super.getGraphKey()+" "+rule.name+" "+includeLexerRefs;
+    }
+
     public String getTabName() {
         return "Dependency of \""+rule.name+"\"";
     }
@@ -0,0 +1,124 @@
+package org.antlr.works.grammar.antlr;
+
+import org.antlr.tool.Grammar;
+import org.antlr.works.utils.BufferedErrorListener;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-07 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * The messages reported by the analysis of the decisions of each rule.
+ *
+ * The messages of a rule can be reused if the rule was analyzed in the same grammar
+ * (its lookahead DFAs still exist) or, when the analysis is incremental, if the key of
+ * the rule did not change. The key of a rule covers the rule itself and everything its
+ * decisions can depend on (see ANTLRGrammarEngineImpl.createRuleKeys()), but not the position
+ * of the rule: a rule moved by an edit above it is not analyzed again.
+ *
+ * The cache only keeps a weak reference to the grammar of each analysis so the grammars
+ * replaced by a new parsing of the text can be collected.
+ */
+public class ANTLRGrammarAnalysisCache {
+
+    private final Map<String, RuleAnalysis> analyses = new HashMap<String, RuleAnalysis>();
+    private Map<String, GrammarSignature> keys = new HashMap<String, GrammarSignature>();
+
+    public synchronized void setRuleKeys(Map<String, GrammarSignature> keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * Returns the messages of each decision of the rule or null if the decisions have to be analyzed.
+     */
+    public synchronized List<BufferedErrorListener> getMessages(Grammar g, String rule, int decisions, boolean incremental) {
+        RuleAnalysis analysis = analyses.get(getName(g, rule));
+        if(analysis == null || analysis.decisions.size() != decisions)
+            return null;
+
+        if(analysis.grammar.get() == g)
+            return analysis.decisions;
+
+        if(incremental && analysis.key != null && analysis.key.equals(keys.get(rule)))
+            return analysis.decisions;
+
+        return null;
+    }
+
+    /**
+     * Returns true if the decisions of the rule have been analyzed in this grammar.
+     */
+    public synchronized boolean isAnalyzed(Grammar g, String rule) {
+        RuleAnalysis analysis = analyses.get(getName(g, rule));
+        return analysis != null && analysis.grammar.get() == g;
+    }
+
+    public synchronized void setMessages(Grammar g, String rule, List<BufferedErrorListener> decisions) {
+        analyses.put(getName(g, rule), new RuleAnalysis(keys.get(rule), g, decisions));
+    }
+
+    /**
+     * Removes the rules that are not in the grammars anymore.
+     */
+    public synchronized void retain(Set<String> names) {
+        analyses.keySet().retainAll(names);
+    }
+
+    public synchronized void clear() {
+        analyses.clear();
+        keys = new HashMap<String, GrammarSignature>();
+    }
+
+    public static String getName(Grammar g, String rule) {
+        // The lexer and the parser of a combined grammar can have rules with the same name
+        // (i.e. the syntactic predicates)
+        return g.name+":"+rule;
+    }
+
+    private static class RuleAnalysis {
+
+        public final GrammarSignature key;
+        public final WeakReference<Grammar> grammar;
+        public final List<BufferedErrorListener> decisions;
+
+        public RuleAnalysis(GrammarSignature key, Grammar grammar, List<BufferedErrorListener> decisions) {
+            this.key = key;
+            this.grammar = new WeakReference<Grammar>(grammar);
+            this.decisions = decisions;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package org.antlr.works.grammar.antlr;
+
+import org.antlr.analysis.DFA;
+import org.antlr.analysis.NFAState;
+import org.antlr.tool.ANTLRErrorListener;
+import org.antlr.tool.ErrorManager;
+import org.antlr.tool.Grammar;
+import org.antlr.tool.Rule;
+import org.antlr.works.utils.BufferedErrorListener;
+import org.antlr.works.utils.ErrorListener;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-07 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * Creates the lookahead DFAs of the parser and lexer grammars, one decision at a time.
+ *
+ * The decisions of a grammar are analyzed in order, the same way Grammar.createLookaheadDFAs()
+ * does: the analysis of a grammar is not thread-safe (the grammar and its LL(1) analyzer are
+ * shared by its decisions). The parser and lexer grammars are independent, so the decisions of the
+ * lexer are analyzed on a thread of their own while the parser decisions are analyzed on the thread
+ * of the caller (the ErrorManager keeps its listener and error state per thread). The lexer thread
+ * is always the same one and registers its ErrorManager state before the caller starts, because
+ * the ErrorManager does not synchronize the creation of the state of a thread.
+ * The messages reported by each decision are buffered so the messages of a rule can be cached,
+ * and forwarded to the listener in the order of the decisions.
+ *
+ * The decisions of a rule are not analyzed again if the cache has their messages: the rule
+ * was already analyzed in this grammar or, if the analysis is incremental, the rule and the
+ * rules it depends on did not change. In the latter case, the lookahead DFAs of the rule are
+ * not created: the next analysis that is not incremental creates them.
+ */
+public class ANTLRGrammarDecisionAnalysis {
+
+    private static final ExecutorService lexerExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ANTLRWorks Lexer Analysis");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final ErrorListener listener;
+    private final ANTLRGrammarAnalyzeDelegate delegate;
+    private final ANTLRGrammarAnalysisCache cache;
+    private final boolean incremental;
+
+    private final List<Grammar> grammars = new ArrayList<Grammar>();
+    private final Map<String, RuleDecisions> rules = new LinkedHashMap<String, RuleDecisions>();
+    private int analyzedDecisions;
+    private int totalDecisions;
+    private boolean decisionsSkipped;
+
+    private volatile boolean cancelled;
+
+    public ANTLRGrammarDecisionAnalysis(ErrorListener listener, ANTLRGrammarAnalyzeDelegate delegate,
+                                        ANTLRGrammarAnalysisCache cache, boolean incremental)
+    {
+        this.listener = listener;
+        this.delegate = delegate;
+        this.cache = cache;
+        this.incremental = incremental;
+    }
+
+    /**
+     * Analyzes the parser grammar and the lexer grammar (which can be null). The NFAs of the
+     * parser grammar must already exist.
+     */
+    public void analyze(Grammar parser, Grammar lexer) throws Exception {
+        List<BufferedErrorListener> buffers = new ArrayList<BufferedErrorListener>();
+        List<Decision> decisions = new ArrayList<Decision>();
+        List<Decision> lexerDecisions = new ArrayList<Decision>();
+
+        addGrammar(parser, null, buffers, decisions);
+        if(lexer != null) {
+            // The messages of the lexer NFAs come after the ones of the parser decisions
+            BufferedErrorListener buffer = new BufferedErrorListener();
+            buffers.add(buffer);
+            ErrorManager.setErrorListener(buffer);
+            try {
+                lexer.composite.createNFAs();
+                addGrammar(lexer, null, buffers, lexerDecisions);
+            } finally {
+                ErrorManager.setErrorListener(listener);
+            }
+        }
+
+        if(lexerDecisions.isEmpty()) {
+            run(decisions);
+        } else {
+            runInParallel(decisions, lexerDecisions);
+        }
+
+        for(Grammar g : grammars) {
+            g.allDecisionDFACreated = true;
+        }
+
+        for(BufferedErrorListener buffer : buffers) {
+            buffer.forward(listener);
+        }
+
+        updateCache();
+        cache.retain(rules.keySet());
+    }
+
+    /**
+     * Analyzes only the decisions of one rule.
+     */
+    public void analyzeRule(Grammar g, String rule) throws Exception {
+        List<BufferedErrorListener> buffers = new ArrayList<BufferedErrorListener>();
+        List<Decision> decisions = new ArrayList<Decision>();
+
+        addGrammar(g, rule, buffers, decisions);
+        run(decisions);
+
+        for(BufferedErrorListener buffer : buffers) {
+            buffer.forward(listener);
+        }
+
+        updateCache();
+    }
+
+    /**
+     * Returns true if some decisions were not analyzed because of the incremental analysis.
+     */
+    public boolean isDecisionsSkipped() {
+        return decisionsSkipped;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for(Grammar g : grammars) {
+            g.externallyAbortNFAToDFAConversion();
+        }
+    }
+
+    private void run(List<Decision> decisions) {
+        ANTLRErrorListener previousListener = ErrorManager.getErrorListener();
+        try {
+            for(Decision decision : decisions) {
+                if(cancelled)
+                    break;
+                decision.run();
+            }
+        } finally {
+            ErrorManager.setErrorListener(previousListener);
+        }
+    }
+
+    private void runInParallel(List<Decision> decisions, final List<Decision> lexerDecisions) throws Exception {
+        final CountDownLatch registered = new CountDownLatch(1);
+        Future<?> lexerAnalysis = lexerExecutor.submit(new Runnable() {
+            public void run() {
+                try {
+                    ErrorManager.setErrorListener(listener);
+                    ErrorManager.getErrorState();
+                } finally {
+                    registered.countDown();
+                }
+                ANTLRGrammarDecisionAnalysis.this.run(lexerDecisions);
+            }
+        });
+
+        try {
+            registered.await();
+            run(decisions);
+        } finally {
+            try {
+                lexerAnalysis.get();
+            } catch(ExecutionException e) {
+                if(e.getCause() instanceof Exception)
+                    throw (Exception) e.getCause();
+                throw e;
+            }
+        }
+    }
+
+    private synchronized void decisionDidEnd() {
+        analyzedDecisions++;
+        if(delegate != null) {
+            delegate.analyzeDidProgress(analyzedDecisions, totalDecisions);
+        }
+    }
+
+    private void updateCache() {
+        if(cancelled)
+            return;
+
+        for(RuleDecisions rd : rules.values()) {
+            if(rd.reused)
+                continue;
+
+            List<BufferedErrorListener> buffers = new ArrayList<BufferedErrorListener>();
+            for(Decision decision : rd.decisions) {
+                buffers.add(decision.buffer);
+            }
+            cache.setMessages(rd.grammar, rd.rule, buffers);
+        }
+    }
+
+    private void addGrammar(Grammar g, String ruleFilter, List<BufferedErrorListener> buffers, List<Decision> pendingDecisions) {
+        grammars.add(g);
+
+        // Grammar.createLookaheadDFAs() skips the decisions within left recursive rules
+        Set<Rule> leftRecursiveRules = new HashSet<Rule>();
+        for(Object set : g.checkAllRulesForLeftRecursion()) {
+            for(Object rule : (Collection) set) {
+                leftRecursiveRules.add((Rule) rule);
+            }
+        }
+
+        List<Decision> decisions = new ArrayList<Decision>();
+        for(int number = 1; number <= g.getNumberOfDecisions(); number++) {
+            NFAState state = g.getDecisionNFAStartState(number);
+            if(leftRecursiveRules.contains(state.enclosingRule) || state.getNumberOfTransitions() <= 1)
+                continue;
+            if(ruleFilter != null && !ruleFilter.equals(state.enclosingRule.name))
+                continue;
+
+            Decision decision = new Decision(g, number, state.enclosingRule);
+            decisions.add(decision);
+
+            String name = ANTLRGrammarAnalysisCache.getName(g, decision.rule.name);
+            RuleDecisions rd = rules.get(name);
+            if(rd == null) {
+                rd = new RuleDecisions(g, decision.rule.name);
+                rules.put(name, rd);
+            }
+            rd.decisions.add(decision);
+        }
+
+        // Use the messages of the cache when possible
+        for(RuleDecisions rd : rules.values()) {
+            if(rd.grammar != g)
+                continue;
+
+            List<BufferedErrorListener> messages = cache.getMessages(g, rd.rule, rd.decisions.size(), incremental);
+            if(messages == null)
+                continue;
+
+            rd.reused = true;
+            for(int index = 0; index < messages.size(); index++) {
+                rd.decisions.get(index).reuse(messages.get(index));
+            }
+            if(!cache.isAnalyzed(g, rd.rule)) {
+                decisionsSkipped = true;
+            }
+        }
+
+        for(Decision decision : decisions) {
+            buffers.add(decision.buffer);
+            if(decision.reused)
+                continue;
+
+            totalDecisions++;
+            pendingDecisions.add(decision);
+        }
+    }
+
+    private static class RuleDecisions {
+
+        public final Grammar grammar;
+        public final String rule;
+        public final List<Decision> decisions = new ArrayList<Decision>();
+        public boolean reused;
+
+        public RuleDecisions(Grammar grammar, String rule) {
+            this.grammar = grammar;
+            this.rule = rule;
+        }
+    }
+
+    private class Decision {
+
+        private final Grammar grammar;
+        private final int number;
+        private final Rule rule;
+        private BufferedErrorListener buffer = new BufferedErrorListener();
+        private boolean reused;
+
+        public Decision(Grammar grammar, int number, Rule rule) {
+            this.grammar = grammar;
+            this.number = number;
+            this.rule = rule;
+        }
+
+        public void reuse(BufferedErrorListener messages) {
+            buffer = messages;
+            reused = true;
+        }
+
+        public void run() {
+            try {
+                if(grammar.NFAToDFAConversionExternallyAborted())
+                    return;
+
+                // The syntactic predicates are analyzed only if a previous decision uses them
+                if(rule.isSynPred && !grammar.synPredNamesUsedInDFA.contains(rule.name))
+                    return;
+
+                ErrorManager.setErrorListener(buffer);
+                DFA dfa = null;
+                int k = grammar.getUserMaxLookahead(number);
+                if(k == 0 || k == 1) {
+                    dfa = grammar.createLL_1_LookaheadDFA(number);
+                }
+                if(dfa == null) {
+                    dfa = grammar.createLookaheadDFA(number, true);
+                }
+                if(dfa.startState == null) {
+                    // something went wrong: wipe out the DFA
+                    grammar.setLookaheadDFA(number, null);
+                }
+            } finally {
+                decisionDidEnd();
+            }
+        }
+    }
+
+}
@@ -52,9 +52,12 @@ public interface ANTLRGrammarEngine {
     Grammar getGrammarForRule(String name) throws Exception;
 
     void createGrammars() throws Exception;
+    void createGrammarsAtCurrentPositions() throws Exception;
     void computeRuleErrors(ElementRule rule);
 
     GrammarResult analyze() throws Exception;
+    GrammarResult analyze(ANTLRGrammarAnalyzeDelegate delegate) throws Exception;
+    GrammarResult analyzeIncrementally(ANTLRGrammarAnalyzeDelegate delegate) throws Exception;
     void cancel();
 
 }
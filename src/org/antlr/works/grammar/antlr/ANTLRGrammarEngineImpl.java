@@ -33,21 +33,23 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package org.antlr.works.grammar.antlr;
 
 import antlr.TokenStreamException;
+import org.antlr.analysis.DFA;
 import org.antlr.analysis.NFAState;
 import org.antlr.runtime.RecognitionException;
 import org.antlr.tool.*;
 import org.antlr.works.ate.syntax.misc.ATEToken;
 import org.antlr.works.grammar.element.ElementGrammarName;
+import org.antlr.works.grammar.element.ElementReference;
 import org.antlr.works.grammar.element.ElementRule;
 import org.antlr.works.grammar.engine.GrammarEngine;
+import org.antlr.works.utils.BufferedErrorListener;
 import org.antlr.works.utils.ErrorListener;
+import org.antlr.xjlib.foundation.XJUtils;
 
 import javax.swing.*;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
 
@@ -58,6 +60,19 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
     private boolean needsToCreateGrammar;
     private boolean needsToAnalyzeGrammar;
 
+    // Signature of the text used to create the grammars: used to reuse them
+    // when the text changes only cosmetically
+    private GrammarSignature grammarSignature;
+    // Layout of the text each grammar was created from: the position of the elements of a reused
+    // grammar (or of the messages of a rule analyzed in a previous grammar) are translated using it
+    private final Map<Grammar, GrammarLayout> grammarLayouts = Collections.synchronizedMap(new WeakHashMap<Grammar, GrammarLayout>());
+
+    // Messages of the analysis of each rule. If decisionsSkipped is true, the lookahead
+    // DFAs of some rules were not created by the last (incremental) analysis
+    private final ANTLRGrammarAnalysisCache analysisCache = new ANTLRGrammarAnalysisCache();
+    private volatile ANTLRGrammarDecisionAnalysis decisionAnalysis;
+    private boolean decisionsSkipped;
+
     private final GrammarResult createGrammarResult = new GrammarResult();
     private final GrammarResult analyzeResult = new GrammarResult();
 
@@ -78,6 +93,7 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
 
     public void close() {
         errors = null;
+        analysisCache.clear();
     }
 
     public void markDirty() {
@@ -93,7 +109,7 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
         return lexerGrammar;
     }
 
-    public NFAState getRuleStartState(String name) throws Exception {
+    public synchronized NFAState getRuleStartState(String name) throws Exception {
         Grammar g;
         createGrammars();
         if(ATEToken.isLexerName(name))
@@ -104,7 +120,7 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
         return g == null ? null:g.getRuleStartState(name);
     }
 
-    public Grammar getGrammarForRule(String name) throws Exception {
+    public synchronized Grammar getGrammarForRule(String name) throws Exception {
         createGrammars();
         if(ATEToken.isLexerName(name))
             return getLexerGrammar();
@@ -142,7 +158,11 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
         return null;
     }
 
-    public void createGrammars() throws Exception {
+    /**
+     * Creates the grammars if needed. The method is synchronized because the console renders
+     * the syntax diagrams of the rules of a grammar concurrently.
+     */
+    public synchronized void createGrammars() throws Exception {
         if(!needsToCreateGrammar) {
             if(createGrammarResult.isSuccess()) {
                 return;
@@ -151,30 +171,47 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
             }
         }
 
+        String text = engine.getGrammarText();
+        GrammarSignature signature = createSignature(text);
+        if(signature != null && signature.equals(grammarSignature) && createGrammarResult.isSuccess()
+                && grammarLayouts.containsKey(getDefaultGrammar())) {
+            // only comments or white spaces have changed: the grammars are still valid
+            needsToCreateGrammar = false;
+            return;
+        }
+
         ErrorListener el = ErrorListener.getThreadInstance();
         ErrorManager.setErrorListener(el);
 
         parserGrammar = null;
         lexerGrammar = null;
+        grammarSignature = null;
 
         createGrammarResult.clear();
 
         try {
             switch(engine.getType()) {
                 case ElementGrammarName.COMBINED:
-                    createCombinedGrammar();
+                    createCombinedGrammar(text);
                     break;
                 case ElementGrammarName.TREEPARSER:
                 case ElementGrammarName.PARSER:
-                    createParserGrammar();
+                    createParserGrammar(text);
                     break;
                 case ElementGrammarName.LEXER:
-                    createLexerGrammar();
+                    createLexerGrammar(text);
                     break;
             }
 
             // if no exception, then assume create grammar was successful
             needsToCreateGrammar = false;
+            grammarSignature = signature;
+
+            GrammarLayout layout = createLayout();
+            Grammar g = getDefaultGrammar();
+            if(layout != null && g != null) {
+                grammarLayouts.put(g, layout);
+            }
         } finally {
             // store the result of creating the grammars
             createGrammarResult.setErrors(el.errors);
@@ -185,11 +222,207 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
         }
     }
 
-    private Grammar createNewGrammar() throws TokenStreamException, RecognitionException, IOException {
+    /**
+     * Creates the grammars if needed and creates them again if they were reused from a text with
+     * another layout: the positions of their elements (i.e. the decisions) are then the ones of the text.
+     */
+    public synchronized void createGrammarsAtCurrentPositions() throws Exception {
+        createGrammars();
+
+        GrammarLayout layout = grammarLayouts.get(getDefaultGrammar());
+        if(layout == null)
+            return;
+
+        GrammarLayout current = createLayout();
+        if(current != null && !current.equals(layout)) {
+            grammarSignature = null;
+            markDirty();
+            createGrammars();
+        }
+    }
+
+    /**
+     * Returns the signature of the grammar or null if the grammar depends on other grammars
+     * (in which case a change in an imported grammar wouldn't be detected).
+     */
+    private GrammarSignature createSignature(String text) {
+        if(text == null || !engine.getImports().isEmpty())
+            return null;
+
+        try {
+            return new GrammarSignature(text, engine.getGrammarFileName(), getTokenVocabContent());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the layout of the tokens of the editor or null if they are not the tokens of the text
+     * the grammars were created from.
+     */
+    private GrammarLayout createLayout() {
+        if(grammarSignature == null)
+            return null;
+
+        List<ATEToken> tokens = engine.getTokens();
+        List<ElementRule> rules = engine.getRules();
+        if(tokens == null || rules == null)
+            return null;
+
+        try {
+            List<String> values = Arrays.asList(engine.getGrammarFileName(), getTokenVocabContent());
+            if(!grammarSignature.equals(new GrammarSignature(tokens, values)))
+                return null;
+        } catch (IOException e) {
+            return null;
+        }
+
+        return new GrammarLayout(tokens, rules);
+    }
+
+    private String getTokenVocabContent() throws IOException {
+        String tokenVocabName = engine.getTokenVocab();
+        if(tokenVocabName == null)
+            return null;
+
+        String file = engine.getTokenVocabFile(tokenVocabName+".tokens");
+        if(file == null)
+            return null;
+
+        return XJUtils.getStringFromFile(file);
+    }
+
+    /**
+     * Returns the key of each rule used by the incremental analysis. The key covers the tokens
+     * of the rule, the rules it calls and the rules calling it (directly or not), its follow set
+     * and the part of the grammar outside of the rules. The key covers the type and the text of the
+     * tokens but not their position: a rule that only moves keeps its key, and the lines of the errors
+     * reused from a previous grammar are translated using the layout of that grammar (see getLine()).
+     *
+     * The rules using syntactic predicates or backtracking have no key: their decisions depend on
+     * the syntactic predicates used by the other decisions. Neither have the rules of the lexer of a
+     * combined grammar because the lexer is generated by ANTLR.
+     */
+    private Map<String, GrammarSignature> createRuleKeys() {
+        Map<String, GrammarSignature> keys = new HashMap<String, GrammarSignature>();
+        if(grammarSignature == null)
+            return keys;
+
+        String tokenVocab;
+        try {
+            tokenVocab = getTokenVocabContent();
+        } catch (IOException e) {
+            return keys;
+        }
+
+        // Make sure the tokens are the ones the grammars were created from
+        List<ATEToken> tokens = engine.getTokens();
+        List<ElementRule> rules = engine.getRules();
+        List<String> values = Arrays.asList(engine.getGrammarFileName(), tokenVocab);
+        if(tokens == null || rules == null || !grammarSignature.equals(new GrammarSignature(tokens, values)))
+            return keys;
+
+        List<ATEToken> globalTokens = new ArrayList<ATEToken>();
+        int next = 0;
+        for(ElementRule rule : rules) {
+            globalTokens.addAll(tokens.subList(next, rule.start.index));
+            next = rule.end.index+1;
+        }
+        globalTokens.addAll(tokens.subList(next, tokens.size()));
+        if(isBacktracking(globalTokens))
+            return keys;
+
+        String global = new GrammarSignature(globalTokens, values).toString();
+
+        Map<String, String> signatures = new HashMap<String, String>();
+        Map<String, Set<String>> callees = new HashMap<String, Set<String>>();
+        Map<String, Set<String>> callers = new HashMap<String, Set<String>>();
+        for(ElementRule rule : rules) {
+            signatures.put(rule.name, new GrammarSignature(getRuleTokens(tokens, rule), Collections.singletonList(rule.name)).toString());
+            callees.put(rule.name, new HashSet<String>());
+            callers.put(rule.name, new HashSet<String>());
+        }
+        for(ElementRule rule : rules) {
+            for(ElementReference reference : rule.getReferences()) {
+                String name = reference.token.getAttribute();
+                if(callees.containsKey(name)) {
+                    callees.get(rule.name).add(name);
+                    callers.get(name).add(rule.name);
+                }
+            }
+        }
+
+        for(ElementRule rule : rules) {
+            List<ATEToken> ruleTokens = getRuleTokens(tokens, rule);
+            if(isBacktracking(ruleTokens))
+                continue;
+
+            boolean lexerRule = ATEToken.isLexerName(rule.name);
+            if(lexerRule && engine.isCombinedGrammar())
+                continue;
+
+            String follow = getFollow(lexerRule ? lexerGrammar : parserGrammar, rule.name);
+            if(follow == null)
+                continue;
+
+            Set<String> dependencies = new TreeSet<String>();
+            addClosure(rule.name, callees, dependencies);
+            addClosure(rule.name, callers, dependencies);
+
+            List<String> ruleValues = new ArrayList<String>();
+            ruleValues.add(global);
+            ruleValues.add(follow);
+            for(String name : dependencies) {
+                ruleValues.add(name+"="+signatures.get(name));
+            }
+            keys.put(rule.name, new GrammarSignature(ruleTokens, ruleValues));
+        }
+        return keys;
+    }
+
+    private static List<ATEToken> getRuleTokens(List<ATEToken> tokens, ElementRule rule) {
+        return tokens.subList(rule.start.index, rule.end.index+1);
+    }
+
+    private static boolean isBacktracking(List<ATEToken> tokens) {
+        ATEToken previous = null;
+        for(ATEToken token : tokens) {
+            if(token.getAttribute().equals("backtrack"))
+                return true;
+            // syntactic predicate =>
+            if(previous != null && previous.getAttribute().equals("=") && token.getAttribute().equals(">")
+                    && previous.end == token.start)
+                return true;
+            previous = token;
+        }
+        return false;
+    }
+
+    private static void addClosure(String name, Map<String, Set<String>> graph, Set<String> closure) {
+        for(String next : graph.get(name)) {
+            if(closure.add(next)) {
+                addClosure(next, graph, closure);
+            }
+        }
+    }
+
+    private static String getFollow(Grammar g, String name) {
+        if(g == null)
+            return null;
+
+        try {
+            Rule r = g.getRule(name);
+            return r == null ? null : g.LOOK(r.stopState).toString(g);
+        } catch(Exception e) {
+            return null;
+        }
+    }
+
+    private Grammar createNewGrammar(String text) throws TokenStreamException, RecognitionException, IOException {
         Grammar g = new Grammar();
         g.setTool(engine.getANTLRTool());
         g.setFileName(engine.getGrammarFileName());
-        g.setGrammarContent(engine.getGrammarText());
+        g.setGrammarContent(text);
         g.composite.createNFAs();
 
         // don't want errors from a previous grammar to interfere with this new grammar.
@@ -199,8 +432,8 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
         return g;
     }
 
-    private void createCombinedGrammar() throws Exception {
-        createParserGrammar();
+    private void createCombinedGrammar(String text) throws Exception {
+        createParserGrammar(text);
         lexerGrammar = createLexerGrammarFromCombinedGrammar(parserGrammar);
     }
 
@@ -221,12 +454,12 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
         return lexerGrammar;
     }
 
-    private void createParserGrammar() throws TokenStreamException, RecognitionException, IOException {
-        parserGrammar = createNewGrammar();
+    private void createParserGrammar(String text) throws TokenStreamException, RecognitionException, IOException {
+        parserGrammar = createNewGrammar(text);
     }
 
-    private void createLexerGrammar() throws TokenStreamException, RecognitionException, IOException {
-        lexerGrammar = createNewGrammar();
+    private void createLexerGrammar(String text) throws TokenStreamException, RecognitionException, IOException {
+        lexerGrammar = createNewGrammar(text);
     }
 
     private void printLeftRecursionToConsole(List rules) {
@@ -255,8 +488,21 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
     }
 
     public GrammarResult analyze() throws Exception {
+        return analyze(null, false);
+    }
+
+    public GrammarResult analyze(ANTLRGrammarAnalyzeDelegate delegate) throws Exception {
+        return analyze(delegate, false);
+    }
+
+    public GrammarResult analyzeIncrementally(ANTLRGrammarAnalyzeDelegate delegate) throws Exception {
+        return analyze(delegate, true);
+    }
+
+    private GrammarResult analyze(ANTLRGrammarAnalyzeDelegate delegate, boolean incremental) throws Exception {
         // if there is no need to analyze the grammar, return the previous result
-        if(!needsToAnalyzeGrammar) {
+        // (unless the previous analysis did not create all the lookahead DFAs)
+        if(!needsToAnalyzeGrammar && (incremental || !decisionsSkipped)) {
             GrammarResult r = analyzeCompleted(null);
             if(r.isSuccess()) {
                 return r;
@@ -290,13 +536,15 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
             if ( g.nfa==null ) {
                 g.composite.createNFAs();
             }
-            g.createLookaheadDFAs();
-            if(engine.isCombinedGrammar()) {
+            analysisCache.setRuleKeys(createRuleKeys());
+
+            decisionAnalysis = new ANTLRGrammarDecisionAnalysis(el, delegate, analysisCache, incremental);
+            try {
                 // If the grammar is combined, analyze also the lexer
-                if(lexerGrammar != null) {
-                    lexerGrammar.composite.createNFAs();
-                    lexerGrammar.createLookaheadDFAs();
-                }
+                decisionAnalysis.analyze(g, engine.isCombinedGrammar() ? lexerGrammar : null);
+                decisionsSkipped = decisionAnalysis.isDecisionsSkipped();
+            } finally {
+                decisionAnalysis = null;
             }
 
             buildNonDeterministicErrors(el);
@@ -357,6 +605,9 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
     }
 
     public void cancel() {
+        ANTLRGrammarDecisionAnalysis analysis = decisionAnalysis;
+        if(analysis != null)
+            analysis.cancel();
         Grammar g = getDefaultGrammar();
         if(g != null)
             g.externallyAbortNFAToDFAConversion();
@@ -364,26 +615,62 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
 
     private void buildNonDeterministicErrors(ErrorListener el) {
         errors.clear();
+        errors.addAll(buildErrors(el));
+    }
+
+    private List<GrammarError> buildErrors(ErrorListener el) {
+        GrammarLayout layout = createLayout();
+        List<GrammarError> errors = new ArrayList<GrammarError>();
         for (Message warning : el.warnings) {
-            buildError(warning);
+            GrammarError error = buildError(warning, layout);
+            if(error != null)
+                errors.add(error);
         }
         for (Message error : el.errors) {
-            buildError(error);
+            GrammarError e = buildError(error, layout);
+            if(e != null)
+                errors.add(e);
+        }
+        return errors;
+    }
+
+    private GrammarError buildError(Object o, GrammarLayout layout) {
+        GrammarError error;
+        DFA dfa;
+        if(o instanceof GrammarUnreachableAltsMessage) {
+            error = buildUnreachableAltsError((GrammarUnreachableAltsMessage)o);
+            dfa = ((GrammarUnreachableAltsMessage)o).probe.dfa;
+        } else if(o instanceof GrammarNonDeterminismMessage) {
+            error = buildNonDeterministicError((GrammarNonDeterminismMessage)o);
+            dfa = ((GrammarNonDeterminismMessage)o).probe.dfa;
+        } else if(o instanceof NonRegularDecisionMessage) {
+            error = buildNonRegularDecisionError((NonRegularDecisionMessage)o);
+            dfa = ((NonRegularDecisionMessage)o).probe.dfa;
+        } else {
+            return null;
         }
+
+        error.setLine(getLine(dfa, layout));
+        return error;
     }
 
-    private void buildError(Object o) {
-        if(o instanceof GrammarUnreachableAltsMessage)
-            errors.add(buildUnreachableAltsError((GrammarUnreachableAltsMessage)o));
-        else if(o instanceof GrammarNonDeterminismMessage)
-            errors.add(buildNonDeterministicError((GrammarNonDeterminismMessage)o));
-        else if(o instanceof NonRegularDecisionMessage)
-            errors.add(buildNonRegularDecisionError((NonRegularDecisionMessage)o));
+    /**
+     * Returns the line of the decision in the text of the editor (layout). The decision can come from
+     * a grammar created from a text with another layout.
+     */
+    private int getLine(DFA dfa, GrammarLayout layout) {
+        GrammarAST ast = dfa.getDecisionASTNode();
+        int line = ast.getLine()-1;
+
+        GrammarLayout grammarLayout = grammarLayouts.get(dfa.nfa.grammar);
+        if(grammarLayout == null || layout == null)
+            return line;
+
+        return grammarLayout.map(line, ast.getColumn()-1, layout)[0];
     }
 
     private GrammarError buildNonDeterministicError(GrammarNonDeterminismMessage message) {
         GrammarError error = new GrammarError();
-        error.setLine(message.probe.dfa.getDecisionASTNode().getLine()-1);
 
         List labels = message.probe.getSampleNonDeterministicInputSequence(message.problemState);
         error.setLabels(labels);
@@ -398,7 +685,6 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
     private GrammarError buildUnreachableAltsError(GrammarUnreachableAltsMessage message) {
         GrammarError error = new GrammarError();
 
-        error.setLine(message.probe.dfa.getDecisionASTNode().getLine()-1);
         error.setMessageText("The following alternatives are unreachable: "+message.alts);
         error.setMessage(message);
 
@@ -408,7 +694,6 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
     private GrammarError buildNonRegularDecisionError(NonRegularDecisionMessage message) {
         GrammarError error = new GrammarError();
 
-        error.setLine(message.probe.dfa.getDecisionASTNode().getLine()-1);
         error.setMessageText(message.toString());
         error.setMessage(message);
 
@@ -436,6 +721,8 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
     }
 
     public void computeRuleErrors(ElementRule rule) {
+        analyzeRuleIfNeeded(rule);
+
         List<GrammarError> errors = rule.getErrors();
         for (GrammarError error : errors) {
             Object o = error.getMessage();
@@ -450,6 +737,30 @@ public class ANTLRGrammarEngineImpl implements ANTLRGrammarEngine {
         rule.setNeedsToBuildErrors(false);
     }
 
+    /**
+     * The errors of a rule can come from the analysis of a previous grammar if the rule
+     * has not changed (see analyzeIncrementally()). Their NFA states are not the ones of the
+     * current grammar, so analyze again the decisions of the rule to display its errors.
+     */
+    private void analyzeRuleIfNeeded(ElementRule rule) {
+        Grammar g = ATEToken.isLexerName(rule.name) ? lexerGrammar : parserGrammar;
+        if(g == null || rule.getErrors().isEmpty() || analysisCache.isAnalyzed(g, rule.name))
+            return;
+
+        BufferedErrorListener el = new BufferedErrorListener();
+        try {
+            new ANTLRGrammarDecisionAnalysis(el, null, analysisCache, false).analyzeRule(g, rule.name);
+        } catch (Exception e) {
+            // ignore
+            return;
+        }
+
+        List<GrammarError> ruleErrors = buildErrors(el);
+        errors.removeAll(rule.getErrors());
+        errors.addAll(ruleErrors);
+        rule.setErrors(ruleErrors);
+    }
+
     private void computeRuleError(GrammarError error, GrammarNonDeterminismMessage message) {
         List nonDetAlts = message.probe.getNonDeterministicAltsForState(message.problemState);
         Set disabledAlts = message.probe.getDisabledAlternatives(message.problemState);
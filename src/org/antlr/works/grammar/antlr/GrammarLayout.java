@@ -0,0 +1,183 @@
+package org.antlr.works.grammar.antlr;
+
+import org.antlr.works.ate.syntax.generic.ATESyntaxLexer;
+import org.antlr.works.ate.syntax.misc.ATEToken;
+import org.antlr.works.grammar.element.ElementRule;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-07 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * The position of each token of a grammar (without the comments), and the tokens of each rule.
+ *
+ * The ANTLR grammars are reused when only the comments or the white spaces change (see GrammarSignature):
+ * the positions of their elements are then the ones of the text they were created from. A position
+ * of that text is translated into the current text using the token at this position: a token of a rule
+ * is matched with the token at the same offset in the rule with the same name, the other tokens with
+ * the token at the same index. The positions are zero-based (line and column of the editor).
+ */
+public class GrammarLayout {
+
+    private final int[] lines;
+    private final int[] columns;
+
+    private final String[] ruleNames;
+    private final int[] ruleStarts;
+    private final int[] ruleEnds;
+    private final Map<String,Integer> rulesByName = new HashMap<String, Integer>();
+
+    public GrammarLayout(List<ATEToken> tokens, List<ElementRule> rules) {
+        // firstIndex[i] is the index of the first token at or after the i-th token of the list
+        int[] firstIndex = new int[tokens.size()+1];
+        int[] lines = new int[tokens.size()];
+        int[] columns = new int[tokens.size()];
+        int count = 0;
+        for(int i=0; i<tokens.size(); i++) {
+            firstIndex[i] = count;
+            ATEToken token = tokens.get(i);
+            if(token.type == ATESyntaxLexer.TOKEN_SINGLE_COMMENT || token.type == ATESyntaxLexer.TOKEN_COMPLEX_COMMENT)
+                continue;
+
+            lines[count] = token.startLineNumber;
+            columns[count] = token.start-token.startLineIndex;
+            count++;
+        }
+        firstIndex[tokens.size()] = count;
+        this.lines = new int[count];
+        this.columns = new int[count];
+        System.arraycopy(lines, 0, this.lines, 0, count);
+        System.arraycopy(columns, 0, this.columns, 0, count);
+
+        ruleNames = new String[rules.size()];
+        ruleStarts = new int[rules.size()];
+        ruleEnds = new int[rules.size()];
+        for(int r=0; r<rules.size(); r++) {
+            ElementRule rule = rules.get(r);
+            ruleNames[r] = rule.name;
+            ruleStarts[r] = firstIndex[Math.min(rule.start.index, tokens.size())];
+            ruleEnds[r] = firstIndex[Math.min(rule.end.index+1, tokens.size())];
+            if(!rulesByName.containsKey(rule.name)) {
+                rulesByName.put(rule.name, r);
+            }
+        }
+    }
+
+    public int size() {
+        return lines.length;
+    }
+
+    /**
+     * Returns the position in the target layout of the specified position of this layout
+     * (or the same position if it cannot be translated).
+     */
+    public int[] map(int line, int column, GrammarLayout target) {
+        int index = indexOf(line, column);
+        int targetIndex = index == -1 ? -1 : getTargetIndex(index, target);
+        if(targetIndex == -1)
+            return new int[] { line, column };
+
+        int targetLine = target.lines[targetIndex]+line-lines[index];
+        int targetColumn = line == lines[index] ? target.columns[targetIndex]+column-columns[index] : column;
+        return new int[] { targetLine, targetColumn };
+    }
+
+    /**
+     * Returns the index of the last token starting at or before the specified position or -1 if none.
+     */
+    private int indexOf(int line, int column) {
+        int low = 0;
+        int high = lines.length-1;
+        int found = -1;
+        while(low <= high) {
+            int mid = (low+high) >>> 1;
+            if(lines[mid] < line || lines[mid] == line && columns[mid] <= column) {
+                found = mid;
+                low = mid+1;
+            } else {
+                high = mid-1;
+            }
+        }
+        return found;
+    }
+
+    private int getTargetIndex(int index, GrammarLayout target) {
+        int rule = getRuleAt(index);
+        if(rule == -1) {
+            // Outside of the rules: only a layout with the same tokens can be used
+            return lines.length == target.lines.length ? index : -1;
+        }
+
+        Integer targetRule = target.rulesByName.get(ruleNames[rule]);
+        if(targetRule == null)
+            return -1;
+
+        int offset = index-ruleStarts[rule];
+        int targetIndex = target.ruleStarts[targetRule]+offset;
+        return targetIndex < target.ruleEnds[targetRule] ? targetIndex : -1;
+    }
+
+    private int getRuleAt(int index) {
+        // The rules are sorted by position
+        int low = 0;
+        int high = ruleStarts.length-1;
+        while(low <= high) {
+            int mid = (low+high) >>> 1;
+            if(index < ruleStarts[mid]) {
+                high = mid-1;
+            } else if(index >= ruleEnds[mid]) {
+                low = mid+1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(!(other instanceof GrammarLayout))
+            return false;
+
+        GrammarLayout layout = (GrammarLayout)other;
+        return Arrays.equals(lines, layout.lines) && Arrays.equals(columns, layout.columns);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31*Arrays.hashCode(lines)+Arrays.hashCode(columns);
+    }
+
+}
@@ -0,0 +1,137 @@
+package org.antlr.works.grammar.antlr;
+
+import org.antlr.works.ate.syntax.generic.ATESyntaxLexer;
+import org.antlr.works.ate.syntax.misc.ATEToken;
+import org.antlr.works.grammar.syntax.GrammarSyntaxLexer;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-07 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * A digest of everything the ANTLR grammars are built from: the type and the text of the tokens
+ * of the grammar (without the comments and the white spaces), the file name and the content of the
+ * token vocabulary. Two texts with the same signature produce the same grammars, except for the
+ * position of their elements (see GrammarLayout). The signature of a part of the grammar
+ * (i.e. a rule) can also be created from its tokens.
+ */
+public class GrammarSignature {
+
+    private final byte[] digest;
+
+    public GrammarSignature(String text, String fileName, String tokenVocab) {
+        this(tokenize(text), Arrays.asList(fileName, tokenVocab));
+    }
+
+    /**
+     * Creates the signature of a list of tokens (for example the tokens of a rule) and of
+     * the values this list depends on.
+     */
+    public GrammarSignature(List<ATEToken> tokens, List<String> values) {
+        MessageDigest md = createDigest();
+
+        for(String value : values) {
+            update(md, value);
+        }
+
+        for(ATEToken token : tokens) {
+            if(token.type == ATESyntaxLexer.TOKEN_SINGLE_COMMENT || token.type == ATESyntaxLexer.TOKEN_COMPLEX_COMMENT)
+                continue;
+
+            update(md, String.valueOf(token.type));
+            update(md, token.getAttribute());
+        }
+
+        digest = md.digest();
+    }
+
+    private static List<ATEToken> tokenize(String text) {
+        GrammarSyntaxLexer lexer = new GrammarSyntaxLexer();
+        lexer.tokenize(text);
+        return lexer.getTokens();
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // MD5 is required to be available on every Java platform
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void update(MessageDigest md, String s) {
+        byte[] bytes = null;
+        if(s != null) {
+            try {
+                bytes = s.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                bytes = s.getBytes();
+            }
+        }
+
+        // The length distinguishes "ab","c" from "a","bc"
+        int length = bytes == null ? -1 : bytes.length;
+        md.update((byte)(length >>> 24));
+        md.update((byte)(length >>> 16));
+        md.update((byte)(length >>> 8));
+        md.update((byte)length);
+        if(bytes != null) {
+            md.update(bytes);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof GrammarSignature && Arrays.equals(digest, ((GrammarSignature)other).digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(digest);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for(byte b : digest) {
+            sb.append(Integer.toHexString((b >> 4) & 0xF));
+            sb.append(Integer.toHexString(b & 0xF));
+        }
+        return sb.toString();
+    }
+
+}
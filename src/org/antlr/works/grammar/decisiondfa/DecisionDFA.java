@@ -47,6 +47,7 @@ public class DecisionDFA extends GrammarDOTTab {
     protected int column;
 
     protected int decisionNumber;
+    protected String decisionGrammarName;
 
     public DecisionDFA(GrammarWindow window) {
         super(window);
@@ -80,6 +81,7 @@ public class DecisionDFA extends GrammarDOTTab {
 
         DFA dfa = g.getLookaheadDFAFromPositionInFile(line, adjustedColumn);
         decisionNumber = dfa.getDecisionNumber();
+        decisionGrammarName = g.name;
         DOTGenerator dg = new DOTGenerator(g);
         g.setCodeGenerator(generator);
         dg.setArrowheadType("none");
@@ -105,6 +107,11 @@ public class DecisionDFA extends GrammarDOTTab {
         return adjustedColumn;
     }
 
+    @Override
+    protected String getGraphKey() {
+        return super.getGraphKey()+" "+decisionGrammarName+" "+decisionNumber;
+    }
+
     public String getTabName() {
         return "Decision "+decisionNumber+" of \""+rule.name+"\"";
     }
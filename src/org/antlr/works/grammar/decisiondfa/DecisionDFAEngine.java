@@ -90,6 +90,8 @@ public class DecisionDFAEngine {
         }
 
         ANTLRGrammarEngine antlrEngineGrammar = window.getGrammarEngine().getANTLRGrammarEngine();
+        // The decisions are located by their position in the text
+        antlrEngineGrammar.createGrammarsAtCurrentPositions();
         antlrEngineGrammar.analyze();
         discoveredLexerGrammar = antlrEngineGrammar.getLexerGrammar();
         discoveredParserGrammar = antlrEngineGrammar.getParserGrammar();
@@ -53,6 +53,16 @@ public class ElementAction extends ElementScopable implements EditorPersistentOb
         this.start = start;
     }
 
+    /** Returns a copy of this action for a snapshot of the parser, with the folding state of the specified action */
+    public ElementAction createSnapshot(GrammarSyntaxParser parser, ElementRule rule, ATEToken start, ATEToken end, ElementAction state) {
+        ElementAction action = new ElementAction(parser, rule, start);
+        action.end = end;
+        action.actionNum = actionNum;
+        action.expanded = state.expanded;
+        action.setScope(rule);
+        return action;
+    }
+
     public boolean containsIndex(int index) {
         return index >= start.getStartIndex() && index <= end.getEndIndex();
     }
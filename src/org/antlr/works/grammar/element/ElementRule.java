@@ -97,6 +97,39 @@ public class ElementRule extends ElementScopable implements Comparable, EditorPe
         this.lexer = ATEToken.isLexerName(name);
     }
 
+    /** Returns a copy of this rule for a snapshot of the parser, made of the copies of its tokens.
+     * The state of the copy (folding, breakpoint, errors, analysis, etc) is the one of the specified
+     * rule, usually the copy of this rule in the previous snapshot.
+     */
+    public ElementRule createSnapshot(GrammarSyntaxParser parser, ATEToken start, ATEToken colon, ATEToken end, ElementRule state) {
+        ElementRule rule = new ElementRule(parser, name, start, colon, end);
+        rule.refsStartIndex = refsStartIndex;
+        rule.refsEndIndex = refsEndIndex;
+        rule.blocksStartIndex = blocksStartIndex;
+        rule.blocksEndIndex = blocksEndIndex;
+        rule.actionsStartIndex = actionsStartIndex;
+        rule.actionsEndIndex = actionsEndIndex;
+
+        rule.ignored = state.ignored;
+        rule.expanded = state.expanded;
+        rule.breakpoint = state.breakpoint;
+        rule.hasLeftRecursion = state.hasLeftRecursion;
+        rule.leftRecursionAnalyzed = state.leftRecursionAnalyzed;
+        rule.leftRecursiveRulesSet = state.leftRecursiveRulesSet;
+        rule.errors = state.errors;
+        rule.needsToBuildErrors = state.needsToBuildErrors;
+        rule.engine = state.engine;
+        synchronized(state) {
+            rule.hierarchyAnalyzed = state.hierarchyAnalyzed;
+            rule.override = state.override;
+            rule.overrideGrammars = state.overrideGrammars;
+            rule.isOverridden = state.isOverridden;
+            rule.overriddenGrammars = state.overriddenGrammars;
+            rule.types.addAll(state.types);
+        }
+        return rule;
+    }
+
     public void completed() {
         // Called when the rule has been completely parsed
         // Do not analyze the left recursion now, but on-demand.
@@ -120,6 +153,24 @@ public class ElementRule extends ElementScopable implements Comparable, EditorPe
         this.refsEndIndex = endIndex;
     }
 
+    /** Shifts the indexes of the elements of this rule when the elements of
+     * a previous rule have been parsed again.
+     */
+    public void shiftIndexes(int refsDelta, int blocksDelta, int actionsDelta) {
+        if(refsStartIndex != -1) {
+            refsStartIndex += refsDelta;
+            refsEndIndex += refsDelta;
+        }
+        if(blocksStartIndex != -1) {
+            blocksStartIndex += blocksDelta;
+            blocksEndIndex += blocksDelta;
+        }
+        if(actionsStartIndex != -1) {
+            actionsStartIndex += actionsDelta;
+            actionsEndIndex += actionsDelta;
+        }
+    }
+
     public List<ElementReference> getReferences() {
         if(refsStartIndex != -1 && refsEndIndex != -1)
             return parser.references.subList(refsStartIndex, refsEndIndex+1);
@@ -2,9 +2,11 @@ package org.antlr.works.grammar.engine;
 
 import org.antlr.Tool;
 import org.antlr.works.ate.syntax.misc.ATEToken;
+import org.antlr.works.grammar.antlr.ANTLRGrammarAnalyzeDelegate;
 import org.antlr.works.grammar.antlr.ANTLRGrammarEngine;
 import org.antlr.works.grammar.antlr.GrammarResult;
 import org.antlr.works.grammar.element.*;
+import org.antlr.works.grammar.syntax.GrammarSyntaxChanges;
 import org.antlr.works.grammar.syntax.GrammarSyntaxEngine;
 
 import java.util.List;
@@ -65,6 +67,7 @@ public interface GrammarEngine {
     List<String> getRuleNames();
 
     List<ElementReference> getReferences();
+    List<ElementReference> getReferencesWithName(String name);
     List<ElementReference> getUndefinedReferences();
 
     List<ElementImport> getImports();
@@ -74,6 +77,7 @@ public interface GrammarEngine {
     List<ElementGroup> getGroups();
     List<ElementBlock> getBlocks();
     List<ATEToken> getDecls();
+    Set<String> getDeclaredNames();
 
     int getNumberOfLines();
     int getNumberOfRules();
@@ -86,18 +90,23 @@ public interface GrammarEngine {
     int getFirstDeclarationPosition(String name);
     List<String> getGrammarsOverriddenByRule(String name);
     List<String> getGrammarsOverridingRule(String name);
+    Set<String> getNamesDeclaredInImportedGrammars();
+    void importedDeclarationsDidChange();
 
     List<ATEToken> getTokens();
 
     void updateHierarchy(Map<String, GrammarEngine> engines, Set<GrammarEngine> alreadyVisitedEngines);
 
     GrammarResult analyze() throws Exception;
+    GrammarResult analyze(ANTLRGrammarAnalyzeDelegate delegate) throws Exception;
+    GrammarResult analyzeIncrementally(ANTLRGrammarAnalyzeDelegate delegate) throws Exception;
     void cancelAnalyze();
 
     void computeRuleErrors(ElementRule rule);
 
     void parserCompleted();
     void updateAll();
+    GrammarSyntaxChanges getSyntaxChanges();
 
     void markDirty();
     void reset();
@@ -3,16 +3,15 @@ package org.antlr.works.grammar.engine;
 import org.antlr.Tool;
 import org.antlr.tool.Grammar;
 import org.antlr.works.ate.syntax.misc.ATEToken;
+import org.antlr.works.grammar.antlr.ANTLRGrammarAnalyzeDelegate;
 import org.antlr.works.grammar.antlr.ANTLRGrammarEngine;
 import org.antlr.works.grammar.antlr.ANTLRGrammarEngineImpl;
 import org.antlr.works.grammar.antlr.GrammarResult;
 import org.antlr.works.grammar.element.*;
+import org.antlr.works.grammar.syntax.GrammarSyntaxChanges;
 import org.antlr.works.grammar.syntax.GrammarSyntaxEngine;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 /*
 
@@ -51,6 +50,8 @@ public class GrammarEngineImpl implements GrammarEngine {
 
     private GrammarEngine parent;
     private final List<GrammarEngine> importedEngines = new ArrayList<GrammarEngine>();
+    // Cache of getNamesDeclaredInImportedGrammars() (null if it has to be computed again)
+    private Set<String> namesDeclaredInImportedGrammars;
 
     private final GrammarProperties properties = new GrammarPropertiesImpl();
     private final ANTLRGrammarEngine antlrEngine = new ANTLRGrammarEngineImpl();
@@ -150,6 +151,10 @@ public class GrammarEngineImpl implements GrammarEngine {
         return properties.getReferences();
     }
 
+    public List<ElementReference> getReferencesWithName(String name) {
+        return properties.getReferencesWithName(name);
+    }
+
     public List<ElementReference> getUndefinedReferences() {
         return properties.getUndefinedReferences();
     }
@@ -192,6 +197,10 @@ public class GrammarEngineImpl implements GrammarEngine {
         return properties.getDecls();
     }
 
+    public Set<String> getDeclaredNames() {
+        return properties.getDeclaredNames();
+    }
+
     public int getNumberOfLines() {
         return syntaxEngine.getMaxLines();
     }
@@ -266,28 +275,51 @@ public class GrammarEngineImpl implements GrammarEngine {
     public List<String> getGrammarsOverriddenByRule(String name) {
         List<String> grammars = new ArrayList<String>();
         for(GrammarEngine child : importedEngines) {
-            for(ATEToken decl : child.getDecls()) {
-                if(decl.getAttribute().equals(name)) {
-                    grammars.add(child.getGrammarName());
-                    break;
-                }
+            if(child.getDeclaredNames().contains(name)) {
+                grammars.add(child.getGrammarName());
             }
             grammars.addAll(child.getGrammarsOverriddenByRule(name));
         }
         return grammars;
     }
 
+    /**
+     * Returns the names declared in all the imported grammars, in declaration order. A rule with one
+     * of these names is overridden by at least one grammar (see getGrammarsOverriddenByRule).
+     * The names are cached until the imports or the declarations of an imported grammar change.
+     */
+    public synchronized Set<String> getNamesDeclaredInImportedGrammars() {
+        if(namesDeclaredInImportedGrammars == null) {
+            Set<String> names = new LinkedHashSet<String>();
+            for(GrammarEngine child : importedEngines) {
+                names.addAll(child.getDeclaredNames());
+                names.addAll(child.getNamesDeclaredInImportedGrammars());
+            }
+            namesDeclaredInImportedGrammars = Collections.unmodifiableSet(names);
+        }
+        return namesDeclaredInImportedGrammars;
+    }
+
+    /**
+     * Invoked when the declarations of this grammar or of one of the grammars it imports change.
+     */
+    public void importedDeclarationsDidChange() {
+        synchronized(this) {
+            namesDeclaredInImportedGrammars = null;
+        }
+        if(parent != null) {
+            parent.importedDeclarationsDidChange();
+        }
+    }
+
     /**
      * Returns the list of grammars that this rule overrides.
      */
     public List<String> getGrammarsOverridingRule(String name) {
         List<String> grammars = new ArrayList<String>();
         if(parent != null) {
-            for(ATEToken decl : parent.getDecls()) {
-                if(decl.getAttribute().equals(name)) {
-                    grammars.add(parent.getGrammarName());
-                    break;
-                }
+            if(parent.getDeclaredNames().contains(name)) {
+                grammars.add(parent.getGrammarName());
             }
             grammars.addAll(parent.getGrammarsOverridingRule(name));
         }
@@ -301,6 +333,7 @@ public class GrammarEngineImpl implements GrammarEngine {
     public void updateHierarchy(Map<String, GrammarEngine> engines,
                                 Set<GrammarEngine> alreadyVisitedEngines) {
         importedEngines.clear();
+        importedDeclarationsDidChange();
         // traverse all the imports for this grammar
         for(ElementImport element : properties.getImports()) {
             GrammarEngine d = engines.get(element.getName());
@@ -325,6 +358,14 @@ public class GrammarEngineImpl implements GrammarEngine {
         return antlrEngine.analyze();
     }
 
+    public GrammarResult analyze(ANTLRGrammarAnalyzeDelegate delegate) throws Exception {
+        return antlrEngine.analyze(delegate);
+    }
+
+    public GrammarResult analyzeIncrementally(ANTLRGrammarAnalyzeDelegate delegate) throws Exception {
+        return antlrEngine.analyzeIncrementally(delegate);
+    }
+
     public void cancelAnalyze() {
         antlrEngine.cancel();
     }
@@ -341,6 +382,10 @@ public class GrammarEngineImpl implements GrammarEngine {
         properties.updateAll();
     }
 
+    public GrammarSyntaxChanges getSyntaxChanges() {
+        return properties.getSyntaxChanges();
+    }
+
     public void markDirty() {
         antlrEngine.markDirty();
         if(parent != null) {
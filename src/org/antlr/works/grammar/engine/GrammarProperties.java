@@ -3,9 +3,11 @@ package org.antlr.works.grammar.engine;
 import org.antlr.works.ate.syntax.misc.ATEToken;
 import org.antlr.works.grammar.antlr.ANTLRGrammarEngine;
 import org.antlr.works.grammar.element.*;
+import org.antlr.works.grammar.syntax.GrammarSyntaxChanges;
 import org.antlr.works.grammar.syntax.GrammarSyntaxEngine;
 
 import java.util.List;
+import java.util.Set;
 /*
 
 [The "BSD licence"]
@@ -55,8 +57,10 @@ public interface GrammarProperties {
     List<ElementBlock> getBlocks();
     List<ElementAction> getActions();
     List<ElementReference> getReferences();
+    List<ElementReference> getReferencesWithName(String name);
     List<ElementImport> getImports();
     List<ATEToken> getDecls();
+    Set<String> getDeclaredNames();
 
     ElementGrammarName getElementName();
     String getName();
@@ -80,5 +84,6 @@ public interface GrammarProperties {
     void reset();
     void updateAll();
     void parserCompleted();
+    GrammarSyntaxChanges getSyntaxChanges();
 
 }
@@ -6,6 +6,7 @@ import org.antlr.works.ate.syntax.generic.ATESyntaxParser;
 import org.antlr.works.ate.syntax.misc.ATEToken;
 import org.antlr.works.grammar.antlr.ANTLRGrammarEngine;
 import org.antlr.works.grammar.element.*;
+import org.antlr.works.grammar.syntax.GrammarSyntaxChanges;
 import org.antlr.works.grammar.syntax.GrammarSyntaxEngine;
 import org.antlr.works.grammar.syntax.GrammarSyntaxLexer;
 import org.antlr.works.grammar.syntax.GrammarSyntaxParser;
@@ -56,12 +57,22 @@ public class GrammarPropertiesImpl implements GrammarProperties {
     private final List<ElementImport> imports = new ArrayList<ElementImport>();
     private final List<ATEToken> decls = new ArrayList<ATEToken>();
 
+    // The indexes iterate in declaration order so the duplicates are always reported in the same order
+    private final Map<String,List<ElementRule>> rulesByName = new LinkedHashMap<String, List<ElementRule>>();
+    private final Map<String,ATEToken> declsByName = new LinkedHashMap<String, ATEToken>();
+    private final Map<String,List<ElementReference>> referencesByName = new LinkedHashMap<String, List<ElementReference>>();
+
     private final List<ElementRule> duplicateRules = new ArrayList<ElementRule>();
     private final List<ElementReference> undefinedReferences = new ArrayList<ElementReference>();
 
     private final Set<String> tokenVocabNames = new HashSet<String>();
     private String tokenVocabName;
 
+    private GrammarSyntaxChanges changes;
+    private boolean changesPending;
+    private boolean scopedUpdate;
+    private int parseCount = -1;    // number of parsings done by the parser at the last update
+
     private GrammarEngine engine;
     private GrammarSyntaxEngine syntaxEngine;
     private ANTLRGrammarEngine antlrEngine;
@@ -86,12 +97,11 @@ public class GrammarPropertiesImpl implements GrammarProperties {
     }
 
     public ElementRule getRuleWithName(String name) {
-        List<ElementRule> rules = getRules();
-        for (ElementRule r : rules) {
-            if (r.name.equals(name))
-                return r;
-        }
-        return null;
+        List<ElementRule> rules = rulesByName.get(name);
+        if(rules == null)
+            return null;
+        else
+            return rules.get(0);
     }
 
     public List<ElementGroup> getGroups() {
@@ -110,6 +120,14 @@ public class GrammarPropertiesImpl implements GrammarProperties {
         return references;
     }
 
+    public List<ElementReference> getReferencesWithName(String name) {
+        List<ElementReference> refs = referencesByName.get(name);
+        if(refs == null)
+            return Collections.emptyList();
+        else
+            return refs;
+    }
+
     public List<ElementImport> getImports() {
         return imports;
     }
@@ -118,6 +136,14 @@ public class GrammarPropertiesImpl implements GrammarProperties {
         return decls;
     }
 
+    public Set<String> getDeclaredNames() {
+        return declsByName.keySet();
+    }
+
+    public GrammarSyntaxChanges getSyntaxChanges() {
+        return changes;
+    }
+
     public ElementGrammarName getElementName() {
         return name;
     }
@@ -313,27 +339,53 @@ public class GrammarPropertiesImpl implements GrammarProperties {
     }
 
     private void rebuildDuplicateRulesList() {
-        List<ElementRule> rules = getRules();
-        if(rules == null)
-            return;
-
-        List<ElementRule> sortedRules = Collections.list(Collections.enumeration(rules));
-        Collections.sort(sortedRules);
-        Iterator<ElementRule> iter = sortedRules.iterator();
-        ElementRule currentRule = null;
         duplicateRules.clear();
-        while(iter.hasNext()) {
-            ElementRule nextRule = iter.next();
-            if(currentRule != null && currentRule.name.equals(nextRule.name) && !duplicateRules.contains(currentRule)) {
-                duplicateRules.add(currentRule);
-                duplicateRules.add(nextRule);
+        for(List<ElementRule> rules : rulesByName.values()) {
+            if(rules.size() > 1) {
+                duplicateRules.addAll(rules);
             }
-            currentRule = nextRule;
         }
     }
 
+    /**
+     * Replaces the rules of the previous parsing by the rules parsed again
+     * in the duplicate and undefined references lists.
+     */
+    private void updateChangedRules() {
+        for(int index=0; index<duplicateRules.size(); index++) {
+            ElementRule newRule = changes.getNewRule(duplicateRules.get(index));
+            if(newRule != null) {
+                duplicateRules.set(index, newRule);
+            }
+        }
+
+        // Only the references of the changed rules need to be checked again
+        for(Iterator<ElementReference> iter = undefinedReferences.iterator(); iter.hasNext(); ) {
+            if(changes.getNewRule(iter.next().rule) != null) {
+                iter.remove();
+            }
+        }
+        List<ElementReference> references = new ArrayList<ElementReference>();
+        for(ElementRule rule : changes.getChangedRules()) {
+            List<ElementReference> refs = rule.getReferences();
+            if(refs != null) {
+                references.addAll(refs);
+            }
+        }
+        addUndefinedReferences(references);
+    }
+
     private void rebuildUndefinedReferencesList() {
-        List<String> existingReferences = getRuleNames();
+        undefinedReferences.clear();
+        List<ElementReference> references = getReferences();
+        if(references == null)
+            return;
+
+        addUndefinedReferences(references);
+    }
+
+    private void addUndefinedReferences(List<ElementReference> references) {
+        Set<String> existingReferences = new HashSet<String>(rulesByName.keySet());
         existingReferences.addAll(getDeclaredTokenNames());
         existingReferences.addAll(getPredefinedReferences());
 
@@ -341,24 +393,28 @@ public class GrammarPropertiesImpl implements GrammarProperties {
         existingReferences.addAll(tokenVocabNames);
         syntaxEngine.resolveReferencesWithExternalNames(tokenVocabNames);
 
-        undefinedReferences.clear();
-        List<ElementReference> references = getReferences();
-        if(references == null)
-            return;
+        // The rules overridden by an imported grammar (also from the root grammar)
+        existingReferences.addAll(engine.getNamesDeclaredInImportedGrammars());
+        if(engine.getRootEngine() != engine) {
+            existingReferences.addAll(engine.getRootEngine().getNamesDeclaredInImportedGrammars());
+        }
 
         for (ElementReference ref : references) {
             if (existingReferences.contains(ref.token.getAttribute())) continue;
-            if (!engine.getGrammarsOverriddenByRule(ref.token.getAttribute()).isEmpty()) continue;
-            // also check from the root grammar
-            if (!engine.getRootEngine().getGrammarsOverriddenByRule(ref.token.getAttribute()).isEmpty()) continue;
             undefinedReferences.add(ref);
         }
     }
 
     public void updateAll() {
-        rebuildDuplicateRulesList();
-        rebuildUndefinedReferencesList();
+        if(changesPending && scopedUpdate) {
+            // The names of the rules did not change
+            updateChangedRules();
+        } else {
+            rebuildDuplicateRulesList();
+            rebuildUndefinedReferencesList();
+        }
         rebuildHasLeftRecursionRulesList();
+        changesPending = false;
     }
 
     public void parserCompleted() {
@@ -367,8 +423,28 @@ public class GrammarPropertiesImpl implements GrammarProperties {
     }
 
     private void update(GrammarSyntaxParser parser) {
-        rules.clear();
-        rules.addAll(parser.rules);
+        // Several parsings can occur between two updates. The lists can only be partially updated
+        // if none of them parsed all the tokens and if the previous changes have been applied.
+        scopedUpdate = !changesPending && parseCount != -1 && parser.getLastFullParse() <= parseCount
+                && haveSameNames(rules, parser.rules);
+        parseCount = parser.getParseCount();
+        changesPending = true;
+        if(scopedUpdate) {
+            // Only replace the rules that have been parsed again since the last update
+            changes = GrammarSyntaxChanges.createScopedChanges(rules, parser.rules);
+            for(ElementRule rule : changes.getChangedRules()) {
+                rule.setEngine(engine);
+            }
+            rules.clear();
+            rules.addAll(parser.rules);
+        } else {
+            changes = GrammarSyntaxChanges.createChanges(rules, parser.rules);
+            rules.clear();
+            rules.addAll(parser.rules);
+            for(ElementRule r : rules) {
+                r.setEngine(engine);
+            }
+        }
 
         groups.clear();
         groups.addAll(parser.groups);
@@ -390,8 +466,51 @@ public class GrammarPropertiesImpl implements GrammarProperties {
 
         this.name = parser.getName();
 
-        for(ElementRule r : rules) {
-            r.setEngine(engine);
+        rebuildIndexes();
+    }
+
+    private static boolean haveSameNames(List<ElementRule> rules, List<ElementRule> otherRules) {
+        if(rules.size() != otherRules.size())
+            return false;
+
+        for(int index=0; index<rules.size(); index++) {
+            if(!rules.get(index).name.equals(otherRules.get(index).name))
+                return false;
+        }
+        return true;
+    }
+
+    private void rebuildIndexes() {
+        rulesByName.clear();
+        for(ElementRule rule : rules) {
+            List<ElementRule> list = rulesByName.get(rule.name);
+            if(list == null) {
+                list = new ArrayList<ElementRule>(1);
+                rulesByName.put(rule.name, list);
+            }
+            list.add(rule);
+        }
+
+        List<String> previousDeclaredNames = new ArrayList<String>(declsByName.keySet());
+        declsByName.clear();
+        for(ATEToken decl : decls) {
+            if(!declsByName.containsKey(decl.getAttribute())) {
+                declsByName.put(decl.getAttribute(), decl);
+            }
+        }
+        if(!previousDeclaredNames.equals(new ArrayList<String>(declsByName.keySet())) && engine.getParent() != null) {
+            // The grammars importing this one cache the names it declares
+            engine.getParent().importedDeclarationsDidChange();
+        }
+
+        referencesByName.clear();
+        for(ElementReference ref : references) {
+            List<ElementReference> list = referencesByName.get(ref.token.getAttribute());
+            if(list == null) {
+                list = new ArrayList<ElementReference>();
+                referencesByName.put(ref.token.getAttribute(), list);
+            }
+            list.add(ref);
         }
     }
 
@@ -425,12 +544,7 @@ public class GrammarPropertiesImpl implements GrammarProperties {
     }
 
     private ATEToken getFirstDeclaration(String name) {
-        for(ATEToken decl : getDecls()) {
-            if(decl.getAttribute().equals(name)) {
-                return decl;
-            }
-        }
-        return null;
+        return declsByName.get(name);
     }
 
 }
\ No newline at end of file
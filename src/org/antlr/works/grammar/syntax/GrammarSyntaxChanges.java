@@ -0,0 +1,136 @@
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package org.antlr.works.grammar.syntax;
+
+import org.antlr.works.grammar.element.ElementRule;
+
+import java.util.*;
+
+/**
+ * This class describes the changes of the rules between two updates of the grammar properties. When
+ * only some rules have been parsed again, the other rules are the same objects than in the previous update.
+ */
+public class GrammarSyntaxChanges {
+
+    private final List<ElementRule> addedRules = new ArrayList<ElementRule>();
+    private final List<ElementRule> removedRules = new ArrayList<ElementRule>();
+    private final Map<ElementRule,ElementRule> changedRules = new LinkedHashMap<ElementRule,ElementRule>();
+    private final boolean scoped;
+
+    private GrammarSyntaxChanges(boolean scoped) {
+        this.scoped = scoped;
+    }
+
+    /**
+     * Creates the changes when only some rules have been parsed again: the rules are matched
+     * by position and a rule is changed if it is not the same object anymore.
+     *
+     * @param oldRules The rules of the previous update
+     * @param newRules The rules of the current parsing, with the same names in the same order
+     * @return The changes
+     */
+    public static GrammarSyntaxChanges createScopedChanges(List<ElementRule> oldRules, List<ElementRule> newRules) {
+        GrammarSyntaxChanges changes = new GrammarSyntaxChanges(true);
+        for(int index=0; index<oldRules.size(); index++) {
+            if(oldRules.get(index) != newRules.get(index)) {
+                changes.changedRules.put(oldRules.get(index), newRules.get(index));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Creates the changes when all the rules have been parsed again. The rules
+     * are matched by name: a rule whose name existed before is considered as changed.
+     *
+     * @param oldRules The rules of the previous update
+     * @param newRules The rules of the current parsing
+     * @return The changes
+     */
+    public static GrammarSyntaxChanges createChanges(List<ElementRule> oldRules, List<ElementRule> newRules) {
+        GrammarSyntaxChanges changes = new GrammarSyntaxChanges(false);
+        Map<String,ElementRule> oldRulesByName = new HashMap<String, ElementRule>();
+        for(ElementRule rule : oldRules) {
+            if(!oldRulesByName.containsKey(rule.name)) {
+                oldRulesByName.put(rule.name, rule);
+            }
+        }
+        for(ElementRule rule : newRules) {
+            ElementRule oldRule = oldRulesByName.remove(rule.name);
+            if(oldRule == null) {
+                changes.addedRules.add(rule);
+            } else {
+                changes.changedRules.put(oldRule, rule);
+            }
+        }
+        for(ElementRule rule : oldRules) {
+            if(!changes.changedRules.containsKey(rule)) {
+                changes.removedRules.add(rule);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Returns true if only the changed rules have been parsed again: the list of rules is the same
+     * (same names, same order) and all the other elements of the grammar are unchanged.
+     *
+     * @return true if the parsing was limited to the changed rules
+     */
+    public boolean isScoped() {
+        return scoped;
+    }
+
+    public List<ElementRule> getAddedRules() {
+        return addedRules;
+    }
+
+    public List<ElementRule> getRemovedRules() {
+        return removedRules;
+    }
+
+    public Collection<ElementRule> getChangedRules() {
+        return changedRules.values();
+    }
+
+    /**
+     * Returns the rule that replaces the specified rule of the previous update
+     *
+     * @param oldRule A rule of the previous update
+     * @return The rule of the current update or null if the rule has been removed
+     */
+    public ElementRule getNewRule(ElementRule oldRule) {
+        return changedRules.get(oldRule);
+    }
+
+}
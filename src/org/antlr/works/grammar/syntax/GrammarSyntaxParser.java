@@ -74,10 +74,22 @@ public class GrammarSyntaxParser extends ATESyntaxParser {
     public final List<ATEToken> decls = new ArrayList<ATEToken>();
 
     private final LabelTable labels = new LabelTable();
+    private final List<ATEToken> internalReferences = new ArrayList<ATEToken>();
     private final List<ATEToken> unresolvedReferences = new ArrayList<ATEToken>();
     private final Set<String> declaredReferenceNames = new HashSet<String>();
     private final Map<ATEToken,ElementRule> refsToRules = new HashMap<ATEToken,ElementRule>();
 
+    private final List<RuleSpan> ruleSpans = new ArrayList<RuleSpan>();    // span of each rule in rules
+    private int resolvedReferencesIndex;    // index in references of the first reference resolved after parsing
+    private int iterationLookahead;         // farthest token read before the current top-level element
+
+    private int parseCount;                 // number of parsings
+    private int lastFullParse;              // number of the last parsing of all the tokens
+
+    // The copies of the rules and of the actions in the last snapshot
+    private Map<ElementRule,ElementRule> publishedRules = new IdentityHashMap<ElementRule,ElementRule>();
+    private Map<ElementAction,ElementAction> publishedActions = new IdentityHashMap<ElementAction,ElementAction>();
+
     private ElementGrammarName name;
     private ElementRule currentRule;
 
@@ -114,19 +126,170 @@ public class GrammarSyntaxParser extends ATESyntaxParser {
         return name;
     }
 
+    /**
+     * Returns the number of parsings done by this parser
+     *
+     * @return The number of parsings
+     */
+    public int getParseCount() {
+        return parseCount;
+    }
+
+    /**
+     * Returns the number of the last parsing of all the tokens. The parsings done after this one
+     * were limited to a single rule: the names and the order of the rules did not change since then.
+     *
+     * @return The number of the last parsing of all the tokens
+     */
+    public int getLastFullParse() {
+        return lastFullParse;
+    }
+
     @Override
     public void close() {
         super.close();
         clear();
+        publishedRules.clear();
+        publishedActions.clear();
+    }
+
+    @Override
+    public boolean isIncremental() {
+        return true;
+    }
+
+    /**
+     * Returns a copy of this parser and of its elements for the specified copies of the tokens. The copies
+     * of the rules and of the actions that have not been parsed again keep the state of their copy in the
+     * previous snapshot. The scopes that are not elements of the lists (e.g. REWRITE_BLOCK) are shared.
+     *
+     * @param tokens The copies of the tokens of the last parsing
+     * @return The snapshot
+     */
+    @Override
+    public ATESyntaxParser createSnapshot(List<ATEToken> tokens) {
+        GrammarSyntaxParser snapshot = new GrammarSyntaxParser();
+        snapshot.reset(tokens, -1);
+        snapshot.parseCount = parseCount;
+        snapshot.lastFullParse = lastFullParse;
+
+        Map<ElementRule,ElementRule> rulesCopies = new IdentityHashMap<ElementRule,ElementRule>();
+        Map<ElementAction,ElementAction> actionsCopies = new IdentityHashMap<ElementAction,ElementAction>();
+        Map<ATEScope,ATEScope> scopesCopies = new IdentityHashMap<ATEScope,ATEScope>();
+
+        for(ElementRule rule : rules) {
+            ElementRule previous = publishedRules.get(rule);
+            ElementRule copy = rule.createSnapshot(snapshot, copyOf(rule.start, tokens), copyOf(rule.colon, tokens),
+                    copyOf(rule.end, tokens), previous == null ? rule : previous);
+            rulesCopies.put(rule, copy);
+            snapshot.rules.add(copy);
+        }
+        for(ElementAction action : actions) {
+            ElementAction previous = publishedActions.get(action);
+            ElementAction copy = action.createSnapshot(snapshot, rulesCopies.get(action.rule), copyOf(action.start, tokens),
+                    copyOf(action.end, tokens), previous == null ? action : previous);
+            actionsCopies.put(action, copy);
+            scopesCopies.put(action, copy);
+            snapshot.actions.add(copy);
+        }
+        for(ElementBlock block : blocks) {
+            ElementBlock copy = new ElementBlock(block.name, copyOf(block.start, tokens));
+            copy.end = copyOf(block.end, tokens);
+            if(block.internalTokens != null) {
+                copy.internalTokens = copyOf(block.internalTokens, tokens);
+                copy.parse();
+            }
+            scopesCopies.put(block, copy);
+            snapshot.blocks.add(copy);
+        }
+        for(ElementReference ref : references) {
+            snapshot.references.add(new ElementReference(rulesCopies.get(ref.rule), copyOf(ref.token, tokens)));
+        }
+        for(ElementGroup group : groups) {
+            ATEToken token = copyOf(group.token, tokens);
+            snapshot.groups.add(group.openGroup ? new ElementGroup(group.name, group.ruleIndex, token) : new ElementGroup(group.ruleIndex, token));
+        }
+        if(name != null && copyOf(name.name, tokens) != null) {
+            snapshot.name = new ElementGrammarName(copyOf(name.name, tokens), copyOf(name.start, tokens),
+                    copyOf(name.end, tokens), copyOf(name.type, tokens));
+        }
+        for(ElementImport imp : imports) {
+            snapshot.imports.add(new ElementImport(imp.name == name ? snapshot.name : null, copyOf(imp.token, tokens)));
+        }
+        snapshot.decls.addAll(copyOf(decls, tokens));
+
+        // The unresolved references can be resolved later with external names
+        for(ATEToken ref : unresolvedReferences) {
+            ATEToken copy = copyOf(ref, tokens);
+            snapshot.unresolvedReferences.add(copy);
+            snapshot.refsToRules.put(copy, rulesCopies.get(refsToRules.get(ref)));
+        }
+
+        for(ATEToken token : tokens) {
+            ATEScope scope = scopesCopies.get(token.scope);
+            if(scope != null) {
+                token.scope = scope;
+            }
+        }
+
+        publishedRules = rulesCopies;
+        publishedActions = actionsCopies;
+        return snapshot;
+    }
+
+    /**
+     * Returns the copy of a token of the last parsing
+     *
+     * @param token The token
+     * @param copies The copies of the tokens of the last parsing
+     * @return The copy or null if the token does not belong to the last parsing
+     */
+    private ATEToken copyOf(ATEToken token, List<ATEToken> copies) {
+        if(token == null || token.index >= copies.size() || getTokens().get(token.index) != token)
+            return null;
+        else
+            return copies.get(token.index);
+    }
+
+    private List<ATEToken> copyOf(List<ATEToken> tokens, List<ATEToken> copies) {
+        List<ATEToken> t = new ArrayList<ATEToken>(tokens.size());
+        for(ATEToken token : tokens) {
+            t.add(copyOf(token, copies));
+        }
+        return t;
+    }
+
+    @Override
+    public void parse(List<ATEToken> tokens, int firstModifiedToken, int lastModifiedToken, int tokenDelta) {
+        // Parse only the rule containing the modified tokens if possible
+        final int rulesCount = rules.size();
+        final int ruleIndex = getRuleIndexContainingTokens(firstModifiedToken, lastModifiedToken);
+        if(ruleIndex == -1 || getTokens() == null || getTokens().size() != tokens.size() - tokenDelta
+                || !parseRule(tokens, ruleIndex, tokenDelta))
+        {
+            // Discard any rule matched while trying to parse the single rule
+            rules.subList(rulesCount, rules.size()).clear();
+            ruleSpans.subList(Math.min(rulesCount, ruleSpans.size()), ruleSpans.size()).clear();
+            parse(tokens);
+        }
     }
 
     @Override
     public void parseTokens() {
+        try {
+            parseAllTokens();
+        } finally {
+            lastFullParse = ++parseCount;
+        }
+    }
+
+    private void parseAllTokens() {
         clear();
 
         if(!nextToken()) return;
 
         while(true) {
+            iterationLookahead = getLookahead();
 
             if(matchName()) continue;
             if(matchScope()) continue; // scope before block
@@ -143,7 +306,133 @@ public class GrammarSyntaxParser extends ATESyntaxParser {
             if(!nextToken()) break;
         }
 
+        resolvedReferencesIndex = references.size();
+        resolveReferences();
+    }
+
+    /**
+     * Returns the index of the rule that contains all the specified tokens. The first token
+     * of the rule is excluded because it is read by the element preceding the rule.
+     *
+     * @param firstToken The index of the first token
+     * @param lastToken The index of the last token
+     * @return The index of the rule or -1 if the tokens are not inside a single rule
+     */
+    private int getRuleIndexContainingTokens(int firstToken, int lastToken) {
+        int low = 0;
+        int high = ruleSpans.size()-1;
+        while(low <= high) {
+            int mid = (low + high) >>> 1;
+            RuleSpan span = ruleSpans.get(mid);
+            if(span.endToken < firstToken) {
+                low = mid + 1;
+            } else if(span.startToken > firstToken) {
+                high = mid - 1;
+            } else {
+                return firstToken > span.startToken && lastToken <= span.endToken ? mid : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses again a single rule after some of its tokens have been modified and splices the
+     * new elements of the rule into the existing lists. This is only possible if the rule ends
+     * at the same token (once shifted): otherwise the whole grammar has to be parsed.
+     *
+     * @param tokens The new tokens
+     * @param ruleIndex The index of the rule containing the modified tokens
+     * @param tokenDelta The difference between the number of new and previous tokens
+     * @return true if the rule has been parsed again, false if the whole grammar needs to be parsed
+     */
+    private boolean parseRule(List<ATEToken> tokens, int ruleIndex, int tokenDelta) {
+        final RuleSpan span = ruleSpans.get(ruleIndex);
+        final ElementRule oldRule = rules.get(ruleIndex);
+        final int endToken = span.endToken + tokenDelta;
+        if(!span.isolated || endToken >= tokens.size()) return false;
+
+        // Discard the types assigned by the previous parsing to the tokens of the rule
+        for(int index=span.startToken; index<=endToken; index++) {
+            tokens.get(index).resetParsing();
+        }
+
+        // Forget the references of the previous rule (the tokens are re-used by the lexer)
+        for(ElementReference ref : references.subList(span.refsStart, span.refsEnd)) {
+            refsToRules.remove(ref.token);
+        }
+        for(ATEToken ref : internalReferences.subList(span.internalRefsStart, span.internalRefsEnd)) {
+            refsToRules.remove(ref);
+        }
+
+        // Make sure nothing else than the rule matches at that position, as in parseTokens()
+        reset(tokens, span.startToken);
+        iterationLookahead = getLookahead();
+        if(matchName() || matchScope() || matchBlock() || matchImport()) return false;
+
+        final int refsSize = references.size();
+        final int blocksSize = blocks.size();
+        final int actionsSize = actions.size();
+        final int declsSize = decls.size();
+        final int internalRefsSize = internalReferences.size();
+        if(!matchRule() || getPosition() != endToken + 1) return false;
+        if(!ruleSpans.get(ruleSpans.size()-1).isolated) return false;
+
+        final ElementRule newRule = rules.get(rules.size()-1);
+        if(!newRule.name.equals(oldRule.name)) return false;
+
+        // Move the elements of the new rule at the position of the elements of the previous rule
+        final int refsDelta = splice(references, span.refsStart, span.refsEnd, refsSize);
+        final int blocksDelta = splice(blocks, span.blocksStart, span.blocksEnd, blocksSize);
+        final int actionsDelta = splice(actions, span.actionsStart, span.actionsEnd, actionsSize);
+        final int declsDelta = splice(decls, span.declsStart, span.declsEnd, declsSize);
+        final int internalRefsDelta = splice(internalReferences, span.internalRefsStart, span.internalRefsEnd, internalRefsSize);
+
+        declaredReferenceNames.clear();
+        for(ATEToken decl : decls) {
+            declaredReferenceNames.add(decl.getAttribute());
+        }
+
+        rules.remove(rules.size()-1);
+        rules.set(ruleIndex, newRule);
+        newRule.shiftIndexes(span.refsStart - refsSize, span.blocksStart - blocksSize, span.actionsStart - actionsSize);
+
+        final RuleSpan newSpan = ruleSpans.remove(ruleSpans.size()-1);
+        newSpan.shift(span.startToken - newSpan.startToken,
+                span.refsStart - refsSize, span.blocksStart - blocksSize, span.actionsStart - actionsSize,
+                span.declsStart - declsSize, span.internalRefsStart - internalRefsSize);
+        ruleSpans.set(ruleIndex, newSpan);
+
+        // Shift the elements of the following rules
+        for(int index=ruleIndex+1; index<rules.size(); index++) {
+            rules.get(index).shiftIndexes(refsDelta, blocksDelta, actionsDelta);
+            ruleSpans.get(index).shift(tokenDelta, refsDelta, blocksDelta, actionsDelta, declsDelta, internalRefsDelta);
+        }
+        for(int index=span.actionsStart; index<actions.size(); index++) {
+            actions.get(index).actionNum = index;
+        }
+
+        // Resolve again the references that are resolved after parsing
+        resolvedReferencesIndex += refsDelta;
+        references.subList(resolvedReferencesIndex, references.size()).clear();
         resolveReferences();
+
+        parseCount++;
+        return true;
+    }
+
+    /**
+     * Moves the elements located at the end of the list (starting at from) to replace the elements
+     * between start (inclusive) and end (exclusive).
+     *
+     * @return The difference between the number of elements moved and replaced
+     */
+    private static <T> int splice(List<T> list, int start, int end, int from) {
+        List<T> tail = list.subList(from, list.size());
+        List<T> moved = new ArrayList<T>(tail);
+        tail.clear();
+        list.subList(start, end).clear();
+        list.addAll(start, moved);
+        return moved.size() - (end - start);
     }
 
     private void clear() {
@@ -156,8 +445,12 @@ public class GrammarSyntaxParser extends ATESyntaxParser {
         decls.clear();
         currentRule = null;
         declaredReferenceNames.clear();
+        internalReferences.clear();
         unresolvedReferences.clear();
         refsToRules.clear();
+        ruleSpans.clear();
+        resolvedReferencesIndex = 0;
+        iterationLookahead = -1;
     }
 
     /**
@@ -179,9 +472,11 @@ public class GrammarSyntaxParser extends ATESyntaxParser {
     }
 
     /**
-     * Resolves the unresolved references by looking at the set of declared references
+     * Resolves the internal references by looking at the set of declared references
      */
     private void resolveReferences() {
+        unresolvedReferences.clear();
+        unresolvedReferences.addAll(internalReferences);
         for(int i=unresolvedReferences.size()-1; i >= 0; i--) {
             ATEToken ref = unresolvedReferences.get(i);
             if(declaredReferenceNames.contains(ref.getAttribute())) {
@@ -405,8 +700,12 @@ public class GrammarSyntaxParser extends ATESyntaxParser {
      */
     private boolean matchRule() {
         mark();
+        RuleSpan span = new RuleSpan();
+        span.begin();
         try {
             if(tryMatchRule()) {
+                span.end();
+                ruleSpans.add(span);
                 return true;
             } else {
                 rewind();
@@ -421,6 +720,9 @@ public class GrammarSyntaxParser extends ATESyntaxParser {
         ATEToken start = T(0);
         if(start == null) return false;
 
+        // The labels are only valid inside a rule
+        labels.clear();
+
         // Match any modifiers
         if(ruleModifiers.contains(start.getAttribute())) {
             // skip the modifier
@@ -919,7 +1221,7 @@ public class GrammarSyntaxParser extends ATESyntaxParser {
                 // after parsing if they are listed as a lexer or parser declaration. Otherwise, we
                 // skip these references.
 
-                unresolvedReferences.add(ref);
+                internalReferences.add(ref);
             }
         }
     }
@@ -1047,4 +1349,59 @@ public class GrammarSyntaxParser extends ATESyntaxParser {
         }
     }
 
+
+    /**
+     * Position of a rule in the tokens and in the lists of elements. The start of each list
+     * is inclusive and the end exclusive: the elements between belong to the rule, including the ones
+     * located before the colon of the rule (e.g. blocks).
+     */
+    private class RuleSpan {
+
+        int startToken;
+        int endToken;
+
+        int refsStart, refsEnd;
+        int blocksStart, blocksEnd;
+        int actionsStart, actionsEnd;
+        int declsStart, declsEnd;
+        int internalRefsStart, internalRefsEnd;
+
+        // True if the rule can be parsed again alone: the parsing before the rule didn't read
+        // the tokens of the rule and the parsing of the rule didn't read the tokens after it
+        boolean isolated;
+
+        public void begin() {
+            startToken = getPosition();
+            refsStart = references.size();
+            blocksStart = blocks.size();
+            actionsStart = actions.size();
+            declsStart = decls.size();
+            internalRefsStart = internalReferences.size();
+        }
+
+        public void end() {
+            endToken = getPosition()-1;
+            isolated = iterationLookahead <= startToken && getLookahead() <= endToken+1;
+            refsEnd = references.size();
+            blocksEnd = blocks.size();
+            actionsEnd = actions.size();
+            declsEnd = decls.size();
+            internalRefsEnd = internalReferences.size();
+        }
+
+        public void shift(int tokensDelta, int refsDelta, int blocksDelta, int actionsDelta, int declsDelta, int internalRefsDelta) {
+            startToken += tokensDelta;
+            endToken += tokensDelta;
+            refsStart += refsDelta;
+            refsEnd += refsDelta;
+            blocksStart += blocksDelta;
+            blocksEnd += blocksDelta;
+            actionsStart += actionsDelta;
+            actionsEnd += actionsDelta;
+            declsStart += declsDelta;
+            declsEnd += declsDelta;
+            internalRefsStart += internalRefsDelta;
+            internalRefsEnd += internalRefsDelta;
+        }
+    }
 }
@@ -33,21 +33,34 @@ package org.antlr.works.interpreter;
 
 import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.NoViableAltException;
+import org.antlr.runtime.Token;
 import org.antlr.runtime.tree.ParseTree;
 import org.antlr.runtime.tree.Tree;
 import org.antlr.tool.Grammar;
+import org.antlr.works.utils.awtree.AWTreeModel;
 import org.antlr.works.utils.awtree.AWTreeNode;
 
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.MutableTreeNode;
 import javax.swing.tree.TreeNode;
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Stack;
 
 public class EditorInterpreterTreeModel extends DefaultTreeModel {
 
     protected Grammar grammar;
 
+    /** State used to grow the tree from the interpreter events */
+    protected Stack<ParseTree> callStack;
+    protected Stack<InterpreterTreeNode> nodeStack;
+    protected List<Token> hiddenTokens;
+
+    /** Records the nodes appended so the graph view can lay them out incrementally */
+    protected AWTreeModel awTreeModel = new AWTreeModel();
+
     public EditorInterpreterTreeModel() {
         super(null);
     }
@@ -56,21 +69,107 @@ public class EditorInterpreterTreeModel extends DefaultTreeModel {
         this.grammar = grammar;
     }
 
+    public AWTreeModel getAWTreeModel() {
+        return awTreeModel;
+    }
+
     public void setTree(Tree tree) {
+        callStack = null;
+        nodeStack = null;
+        awTreeModel.clearNewNodes();
         setRoot(new InterpreterTreeNode(null, tree));
     }
 
+    /**
+     * Starts a new empty tree which is then grown using appendEvents(). The nodes
+     * are created the same way as ParseTreeBuilder does.
+     */
+    public void beginTree(Grammar grammar, String grammarName) {
+        ParseTree root = new ParseTree("<grammar "+grammarName+">");
+        setGrammar(grammar);
+        setTree(root);
+        callStack = new Stack<ParseTree>();
+        callStack.push(root);
+        nodeStack = new Stack<InterpreterTreeNode>();
+        nodeStack.push((InterpreterTreeNode)getRoot());
+        hiddenTokens = new ArrayList<Token>();
+    }
+
+    /**
+     * Appends a batch of events published by the InterpreterTreeBuilder. Must be called
+     * from the event dispatch thread: the caller is responsible to refresh the views.
+     */
+    public void appendEvents(List<InterpreterTreeBuilder.Event> events) {
+        if(callStack == null)
+            return;
+
+        for(InterpreterTreeBuilder.Event event : events) {
+            ParseTree ruleNode = callStack.peek();
+            InterpreterTreeNode ruleTreeNode = nodeStack.peek();
+            switch(event.type) {
+                case InterpreterTreeBuilder.Event.ENTER_RULE: {
+                    ParseTree node = new ParseTree(event.payload);
+                    ruleNode.addChild(node);
+                    callStack.push(node);
+                    nodeStack.push(nodeAdded(ruleTreeNode));
+                    break;
+                }
+                case InterpreterTreeBuilder.Event.EXIT_RULE:
+                    if(callStack.size() > 1) {
+                        callStack.pop();
+                        nodeStack.pop();
+                        if(ruleNode.getChildCount() == 0) {
+                            ruleNode.addChild(new ParseTree("<epsilon>"));
+                            nodeAdded(ruleTreeNode);
+                        }
+                    }
+                    break;
+                case InterpreterTreeBuilder.Event.TOKEN: {
+                    ParseTree node = new ParseTree(event.payload);
+                    node.hiddenTokens = hiddenTokens;
+                    hiddenTokens = new ArrayList<Token>();
+                    ruleNode.addChild(node);
+                    nodeAdded(ruleTreeNode);
+                    break;
+                }
+                case InterpreterTreeBuilder.Event.HIDDEN_TOKEN:
+                    hiddenTokens.add((Token)event.payload);
+                    break;
+                case InterpreterTreeBuilder.Event.ERROR:
+                    ruleNode.addChild(new ParseTree(event.payload));
+                    nodeAdded(ruleTreeNode);
+                    break;
+            }
+        }
+    }
+
+    private InterpreterTreeNode nodeAdded(InterpreterTreeNode parent) {
+        InterpreterTreeNode node = (InterpreterTreeNode)parent.getChildAt(parent.getChildCount()-1);
+        awTreeModel.nodeAdded(parent, node);
+        return node;
+    }
+
     public class InterpreterTreeNode extends AWTreeNode {
 
         protected Tree tree;
 
+        /** The nodes of the children, created on demand. The same node is always
+         * returned for a given child because the views use the nodes as keys.
+         */
+        protected List<InterpreterTreeNode> childNodes;
+
         public InterpreterTreeNode(TreeNode parent, Tree tree) {
             this.parent = (MutableTreeNode) parent;
             this.tree = tree;
         }
 
         public TreeNode getChildAt(int childIndex) {
-            return new InterpreterTreeNode(this, tree.getChild(childIndex));
+            if(childNodes == null)
+                childNodes = new ArrayList<InterpreterTreeNode>();
+            while(childNodes.size() <= childIndex) {
+                childNodes.add(new InterpreterTreeNode(this, tree.getChild(childNodes.size())));
+            }
+            return childNodes.get(childIndex);
         }
 
         public int getChildCount() {
@@ -82,11 +181,10 @@ public class EditorInterpreterTreeModel extends DefaultTreeModel {
         }
 
         public int getIndex(TreeNode node) {
-            for(int i=0; i<tree.getChildCount(); i++) {
-                if(tree.getChild(i) == node)
-                    return i;
-            }
-            return -1;
+            if(childNodes == null)
+                return -1;
+            else
+                return childNodes.indexOf(node);
         }
 
         public boolean getAllowsChildren() {
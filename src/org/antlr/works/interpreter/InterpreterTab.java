@@ -32,7 +32,6 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package org.antlr.works.interpreter;
 
 import org.antlr.runtime.*;
-import org.antlr.runtime.tree.ParseTree;
 import org.antlr.tool.Grammar;
 import org.antlr.tool.Interpreter;
 import org.antlr.works.ate.syntax.misc.ATEToken;
@@ -54,18 +53,26 @@ import org.antlr.xjlib.appkit.gview.GView;
 import org.antlr.xjlib.appkit.swing.XJRollOverButton;
 import org.antlr.xjlib.appkit.utils.XJAlert;
 import org.antlr.xjlib.appkit.utils.XJDialogProgress;
+import org.antlr.xjlib.appkit.utils.XJDialogProgressDelegate;
+import org.antlr.xjlib.appkit.utils.XJFileChooser;
 
 import javax.swing.*;
 import javax.swing.tree.TreeNode;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
 
-public class InterpreterTab extends GrammarWindowTab implements Runnable, AWTreePanelDelegate {
+public class InterpreterTab extends GrammarWindowTab implements Runnable, AWTreePanelDelegate,
+        XJDialogProgressDelegate, InterpreterTreeBuilder.Delegate {
+
+    public static final int INPUT_TEXT = 0;
+    public static final int INPUT_FILE = 1;
 
 	public static class FilteringTokenStream extends CommonTokenStream {
 		public FilteringTokenStream(TokenSource src) { super(src); }
@@ -88,11 +95,16 @@ public class InterpreterTab extends GrammarWindowTab implements Runnable, AWTree
     protected JComboBox rulesCombo;
     protected JComboBox eolCombo;
     protected JLabel tokensToIgnoreLabel;
+    protected JCheckBox fileInputCheck;
+    protected JLabel inputFileLabel;
 
     protected XJDialogProgress progress;
 
     protected String startSymbol = null;
 
+    /** Builder of the interpretation in progress (used to cancel it) */
+    protected volatile InterpreterTreeBuilder treeBuilder;
+
     public InterpreterTab(GrammarWindow window) {
         super(window);
     }
@@ -118,6 +130,7 @@ public class InterpreterTab extends GrammarWindowTab implements Runnable, AWTree
 
         treeModel = new EditorInterpreterTreeModel();
         awTreePanel = new AWTreePanel(treeModel);
+        awTreePanel.setAWTreeModel(treeModel.getAWTreeModel());
         awTreePanel.setDelegate(this);
 
         splitPane = new JSplitPane();
@@ -142,6 +155,8 @@ public class InterpreterTab extends GrammarWindowTab implements Runnable, AWTree
         box.addElement(new JLabel("Line Endings:"));
         box.addElement(createEOLCombo());
         box.addGroupSeparator();
+        createInputFileControls(box);
+        box.addGroupSeparator();
         createTokensToIgnoreField(box);
         return box;
     }
@@ -187,6 +202,55 @@ public class InterpreterTab extends GrammarWindowTab implements Runnable, AWTree
         return eolCombo;
     }
 
+    public Box createInputFileControls(Toolbar box) {
+        fileInputCheck = new JCheckBox("Input file:");
+        fileInputCheck.setFocusable(false);
+        fileInputCheck.setToolTipText("Interpret the content of a file instead of the text (the file is not loaded in the editor)");
+        fileInputCheck.setSelected(AWPrefs.getInterpreterInputMode() == INPUT_FILE);
+        fileInputCheck.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent event) {
+                AWPrefs.setInterpreterInputMode(fileInputCheck.isSelected() ? INPUT_FILE : INPUT_TEXT);
+            }
+        });
+        box.addElement(fileInputCheck);
+
+        inputFileLabel = new JLabel();
+        inputFileLabel.setFont(inputFileLabel.getFont().deriveFont(Font.ITALIC));
+        updateInputFileLabel();
+        box.addElement(inputFileLabel);
+
+        JButton button = new JButton("Browse...");
+        button.setFocusable(false);
+        button.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent event) {
+                if(XJFileChooser.shared().displayOpenDialog(getContainer(), false)) {
+                    AWPrefs.setInterpreterInputFile(XJFileChooser.shared().getSelectedFilePath());
+                    AWPrefs.setInterpreterInputMode(INPUT_FILE);
+                    fileInputCheck.setSelected(true);
+                    updateInputFileLabel();
+                }
+            }
+        });
+        box.addElement(button);
+
+        return box;
+    }
+
+    public void updateInputFileLabel() {
+        String path = AWPrefs.getInterpreterInputFile();
+        if(path == null || path.length() == 0) {
+            inputFileLabel.setText("-");
+            inputFileLabel.setToolTipText(null);
+        } else {
+            inputFileLabel.setText(new File(path).getName());
+            inputFileLabel.setToolTipText(path);
+        }
+    }
+
+    public boolean isFileInput() {
+        return fileInputCheck.isSelected();
+    }
+
     public Box createTokensToIgnoreField(Toolbar box) {
         box.addElement(new JLabel("Ignore rules:"));
 
@@ -259,7 +323,8 @@ public class InterpreterTab extends GrammarWindowTab implements Runnable, AWTree
         // AW-42: guess always before running the interpreterTab
         window.findTokensToIgnore(false);
 
-        progress.setCancellable(false);
+        progress.setCancellable(true);
+        progress.setDelegate(this);
         progress.setIndeterminate(true);
         progress.display();
 
@@ -277,6 +342,13 @@ public class InterpreterTab extends GrammarWindowTab implements Runnable, AWTree
         }
     }
 
+    public void dialogDidCancel() {
+        InterpreterTreeBuilder builder = treeBuilder;
+        if(builder != null) {
+            builder.cancel();
+        }
+    }
+
     public void runEnded() {
         SwingUtilities.invokeLater(new Runnable() {
             public void run() {
@@ -289,7 +361,23 @@ public class InterpreterTab extends GrammarWindowTab implements Runnable, AWTree
         progress.setInfo("Interpreting...");
         window.consoleTab.println("Interpreting...");
 
-        CharStream input = new ANTLRStringStream(Utils.convertRawTextWithEOL(textPane.getText(), eolCombo));
+        CharStream input;
+        if(isFileInput()) {
+            // The file is mapped in memory: its content never goes into the text pane
+            String path = AWPrefs.getInterpreterInputFile();
+            if(path == null || path.length() == 0) {
+                window.consoleTab.println("No input file selected. Select a file or uncheck \"Input file\".");
+                return;
+            }
+            try {
+                input = new MappedFileCharStream(new File(path));
+            } catch (IOException e) {
+                window.consoleTab.println(e);
+                return;
+            }
+        } else {
+            input = new ANTLRStringStream(Utils.convertRawTextWithEOL(textPane.getText(), eolCombo));
+        }
 
         ANTLRGrammarEngine eg = window.getGrammarEngine().getANTLRGrammarEngine();
         try {
@@ -318,20 +406,40 @@ public class InterpreterTab extends GrammarWindowTab implements Runnable, AWTree
 
         Interpreter parseEngine = new CustomInterpreter(parser, tokens);
 
-        ParseTree t = null;
+        boolean lexerRule = ATEToken.isLexerName(startSymbol);
+        Grammar startGrammar = lexerRule ? lexer : parser;
+        if(parser != null) {
+            // Queued before any batch of events so the new tree is ready to grow
+            SwingUtilities.invokeLater(new BeginTree(parser, startGrammar.name));
+        }
+
+        InterpreterTreeBuilder builder = new InterpreterTreeBuilder(this);
+        treeBuilder = builder;
+
+        long t = System.currentTimeMillis();
         try {
-            if(ATEToken.isLexerName(startSymbol)) {
-                t = lexEngine.parse(startSymbol);
+            if(lexerRule) {
+                lexEngine.parse(startSymbol, builder, null);
             } else {
-                t = parseEngine.parse(startSymbol);
+                parseEngine.parse(startSymbol, builder, null);
             }
+        } catch (InterpreterTreeBuilder.CancelledException e) {
+            window.consoleTab.println("Interpreter cancelled");
         } catch (Exception e) {
             window.consoleTab.println(e);
+        } finally {
+            treeBuilder = null;
         }
+        builder.flush();
+        long elapsed = Math.max(1, System.currentTimeMillis()-t);
 
-        if(parser != null && t != null) {
-            SwingUtilities.invokeLater(new Refresh(parser, t));
-        }
+        window.consoleTab.println("Interpreted "+builder.getTokenCount()+" tokens and "+builder.getNodeCount()+
+                " nodes in "+elapsed+" ms ("+builder.getTokenCount()*1000L/elapsed+" tokens/s, "+
+                builder.getNodeCount()*1000L/elapsed+" nodes/s)");
+    }
+
+    public void treeBuilderPublish(InterpreterTreeBuilder builder, List<InterpreterTreeBuilder.Event> events) {
+        SwingUtilities.invokeLater(new Append(events, builder.getTokenCount(), builder.getNodeCount()));
     }
 
     public class CustomInterpreter extends Interpreter {
@@ -348,24 +456,42 @@ public class InterpreterTab extends GrammarWindowTab implements Runnable, AWTree
         }
     }
 
-    public class Refresh implements Runnable {
+    public class BeginTree implements Runnable {
         Grammar g;
-        ParseTree t;
+        String name;
 
-        public Refresh(Grammar grammar, ParseTree t) {
+        public BeginTree(Grammar grammar, String name) {
             this.g = grammar;
-            this.t = t;
+            this.name = name;
         }
 
         public void run() {
-            treeModel.setGrammar(g);
-            treeModel.setTree(t);
+            treeModel.beginTree(g, name);
 
             awTreePanel.setRoot((TreeNode)treeModel.getRoot());
             awTreePanel.refresh();
         }
     }
 
+    public class Append implements Runnable {
+        List<InterpreterTreeBuilder.Event> events;
+        int tokens;
+        int nodes;
+
+        public Append(List<InterpreterTreeBuilder.Event> events, int tokens, int nodes) {
+            this.events = events;
+            this.tokens = tokens;
+            this.nodes = nodes;
+        }
+
+        public void run() {
+            treeModel.appendEvents(events);
+            awTreePanel.refresh();
+
+            progress.setInfo("Interpreting... "+tokens+" tokens, "+nodes+" nodes");
+        }
+    }
+
     public boolean canExportToBitmap() {
         return true;
     }
@@ -0,0 +1,186 @@
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package org.antlr.works.interpreter;
+
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.debug.BlankDebugEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the events of the interpreter (the same events as the ones used by ParseTreeBuilder)
+ * and hands them to the delegate in batches, at most every PUBLISH_INTERVAL milliseconds.
+ * The parse tree is not built here: the delegate replays the events into a tree owned by the
+ * event dispatch thread (see EditorInterpreterTreeModel.appendEvents()) so the tree displayed
+ * is never modified by the interpreter thread.
+ *
+ * The interpreter can be stopped at any time using cancel(): the next event throws
+ * a CancelledException which unwinds the interpreter.
+ */
+public class InterpreterTreeBuilder extends BlankDebugEventListener {
+
+    public static final long PUBLISH_INTERVAL = 250;
+
+    /** Number of events between two checks of the clock */
+    private static final int CHECK_INTERVAL = 256;
+
+    private final Delegate delegate;
+
+    private List<Event> batch = new ArrayList<Event>();
+    private int eventsSinceCheck = 0;
+    private long lastPublish = System.currentTimeMillis();
+
+    /** Type of the last event which adds a child to the current rule */
+    private int lastType = -1;
+
+    private int tokens = 0;
+    private int nodes = 0;
+
+    private volatile boolean cancelled = false;
+
+    public InterpreterTreeBuilder(Delegate delegate) {
+        this.delegate = delegate;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public int getTokenCount() {
+        return tokens;
+    }
+
+    public int getNodeCount() {
+        return nodes;
+    }
+
+    @Override
+    public void enterRule(String filename, String ruleName) {
+        nodes++;
+        add(Event.ENTER_RULE, ruleName);
+    }
+
+    @Override
+    public void exitRule(String filename, String ruleName) {
+        if(lastType == Event.ENTER_RULE) {
+            // the rule is empty: the tree will contain an epsilon node
+            nodes++;
+        }
+        add(Event.EXIT_RULE, ruleName);
+    }
+
+    @Override
+    public void consumeToken(Token token) {
+        tokens++;
+        nodes++;
+        add(Event.TOKEN, token);
+    }
+
+    @Override
+    public void consumeHiddenToken(Token token) {
+        add(Event.HIDDEN_TOKEN, token);
+    }
+
+    @Override
+    public void recognitionException(RecognitionException e) {
+        nodes++;
+        add(Event.ERROR, e);
+    }
+
+    /**
+     * Hands the remaining events to the delegate. Called by the interpreter thread once
+     * the interpreter is done.
+     */
+    public void flush() {
+        if(!batch.isEmpty()) {
+            delegate.treeBuilderPublish(this, batch);
+            batch = new ArrayList<Event>();
+        }
+        lastPublish = System.currentTimeMillis();
+    }
+
+    private void add(int type, Object payload) {
+        if(cancelled) {
+            throw new CancelledException();
+        }
+
+        batch.add(new Event(type, payload));
+        if(type != Event.HIDDEN_TOKEN) {
+            lastType = type;
+        }
+
+        if(++eventsSinceCheck >= CHECK_INTERVAL) {
+            eventsSinceCheck = 0;
+            if(System.currentTimeMillis() - lastPublish >= PUBLISH_INTERVAL) {
+                flush();
+            }
+        }
+    }
+
+    public interface Delegate {
+        /**
+         * Called from the interpreter thread with a batch of events: the list
+         * is not used anymore by the builder once it is handed to the delegate.
+         */
+        public void treeBuilderPublish(InterpreterTreeBuilder builder, List<Event> events);
+    }
+
+    public static class Event {
+
+        public static final int ENTER_RULE = 0;
+        public static final int EXIT_RULE = 1;
+        public static final int TOKEN = 2;
+        public static final int HIDDEN_TOKEN = 3;
+        public static final int ERROR = 4;
+
+        public final int type;
+        public final Object payload;
+
+        public Event(int type, Object payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    public static class CancelledException extends RuntimeException {
+        public CancelledException() {
+            super("Interpreter cancelled");
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package org.antlr.works.interpreter;
+
+import org.antlr.runtime.CharStream;
+import org.antlr.runtime.CharStreamState;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A CharStream reading its characters directly from a memory-mapped file so that
+ * large inputs can be interpreted without being loaded in a String (or in the text pane).
+ * Each byte of the file is one character (ISO-8859-1): multi-byte encodings are not decoded.
+ *
+ * The logic is the same as the one of ANTLRStringStream.
+ */
+public class MappedFileCharStream implements CharStream {
+
+    protected final MappedByteBuffer data;
+    protected final int n;
+    protected final String name;
+
+    protected int p = 0;
+    protected int line = 1;
+    protected int charPositionInLine = 0;
+
+    protected int markDepth = 0;
+    protected List<CharStreamState> markers;
+    protected int lastMarker;
+
+    public MappedFileCharStream(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            if(length > Integer.MAX_VALUE) {
+                throw new IOException("The file \""+file+"\" is too large to be interpreted ("+length+" bytes)");
+            }
+            // The mapping stays valid after the channel is closed
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            n = (int)length;
+        } finally {
+            raf.close();
+        }
+        name = file.getPath();
+    }
+
+    public void reset() {
+        p = 0;
+        line = 1;
+        charPositionInLine = 0;
+        markDepth = 0;
+    }
+
+    public void consume() {
+        if(p < n) {
+            charPositionInLine++;
+            if(data.get(p) == '\n') {
+                line++;
+                charPositionInLine = 0;
+            }
+            p++;
+        }
+    }
+
+    public int LA(int i) {
+        if(i == 0) {
+            return 0; // undefined
+        }
+        if(i < 0) {
+            i++; // e.g., translate LA(-1) to use offset i=0; then data[p+0-1]
+            if((p+i-1) < 0) {
+                return CharStream.EOF; // invalid; no char before first char
+            }
+        }
+        if((p+i-1) >= n) {
+            return CharStream.EOF;
+        }
+        return data.get(p+i-1) & 0xFF;
+    }
+
+    public int LT(int i) {
+        return LA(i);
+    }
+
+    public int index() {
+        return p;
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public int mark() {
+        if(markers == null) {
+            markers = new ArrayList<CharStreamState>();
+            markers.add(null); // depth 0 means no backtracking, leave blank
+        }
+        markDepth++;
+        CharStreamState state;
+        if(markDepth >= markers.size()) {
+            state = new CharStreamState();
+            markers.add(state);
+        } else {
+            state = markers.get(markDepth);
+        }
+        state.p = p;
+        state.line = line;
+        state.charPositionInLine = charPositionInLine;
+        lastMarker = markDepth;
+        return markDepth;
+    }
+
+    public void rewind(int m) {
+        CharStreamState state = markers.get(m);
+        // restore stream state
+        seek(state.p);
+        line = state.line;
+        charPositionInLine = state.charPositionInLine;
+        release(m);
+    }
+
+    public void rewind() {
+        rewind(lastMarker);
+    }
+
+    public void release(int marker) {
+        // unwind any other markers made after m and release m
+        markDepth = marker;
+        // release this marker
+        markDepth--;
+    }
+
+    public void seek(int index) {
+        if(index <= p) {
+            p = index; // just jump; don't update stream state (line, ...)
+            return;
+        }
+        // seek forward, consume until p hits index
+        while(p < index) {
+            consume();
+        }
+    }
+
+    public String substring(int start, int stop) {
+        // Absolute reads only: the tokens are also read from the event dispatch thread
+        char[] chars = new char[stop-start+1];
+        for(int i=0; i<chars.length; i++) {
+            chars[i] = (char)(data.get(start+i) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public void setLine(int line) {
+        this.line = line;
+    }
+
+    public int getCharPositionInLine() {
+        return charPositionInLine;
+    }
+
+    public void setCharPositionInLine(int pos) {
+        this.charPositionInLine = pos;
+    }
+
+    public String getSourceName() {
+        return name;
+    }
+
+}
@@ -2,9 +2,15 @@ package org.antlr.works.menu;
 
 import org.antlr.works.components.GrammarWindow;
 import org.antlr.works.debugger.DebuggerTab;
+import org.antlr.works.debugger.panels.DBEventsExporter;
+import org.antlr.works.debugger.tivo.DBEventFileStore;
 import org.antlr.works.stats.StatisticsAW;
 import org.antlr.works.utils.Console;
 import org.antlr.works.utils.StreamWatcher;
+import org.antlr.xjlib.appkit.utils.XJFileChooser;
+
+import java.io.File;
+import java.io.IOException;
 
 /*
 
@@ -78,6 +84,17 @@ public class DebugMenu {
         window.getDebuggerTab().launchRemoteDebugger();
     }
 
+    public void debugEventsFile() {
+        if(!XJFileChooser.shared().displayOpenDialog(window.getJavaContainer(), DBEventFileStore.EXTENSION, "Debugger events", false))
+            return;
+
+        String file = XJFileChooser.shared().getSelectedFilePath();
+        if(file == null)
+            return;
+
+        window.getDebuggerTab().debuggerOpenEvents(new File(file));
+    }
+
     public void toggleInputTokens() {
         window.getDebuggerTab().toggleInputTokensBox();
         StatisticsAW.shared().recordEvent(StatisticsAW.EVENT_DEBUGGER_TOGGLE_INPUT_TOKENS);
@@ -99,7 +116,11 @@ public class DebugMenu {
         return window.getDebuggerTab().canDebugAgain();
     }
 
-    public String getEventsAsString() {
-        return window.getDebuggerTab().getEventsAsString();
+    public DBEventsExporter createEventsExporter(int format) {
+        return window.getDebuggerTab().createEventsExporter(format);
+    }
+
+    public void saveEvents(File file) throws IOException {
+        window.getDebuggerTab().saveEvents(file);
     }
 }
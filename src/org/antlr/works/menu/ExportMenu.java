@@ -32,13 +32,13 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package org.antlr.works.menu;
 
 import org.antlr.works.components.GrammarWindow;
+import org.antlr.works.debugger.panels.DBEventsExporter;
+import org.antlr.works.debugger.tivo.DBEventFileStore;
 import org.antlr.works.editor.GrammarWindowTab;
 import org.antlr.works.grammar.element.ElementRule;
 import org.antlr.works.stats.StatisticsAW;
 import org.antlr.works.visualization.SDGenerator;
 import org.antlr.works.visualization.SyntaxDiagramTab;
-import org.antlr.works.visualization.graphics.GContext;
-import org.antlr.works.visualization.graphics.GEngine;
 import org.antlr.works.visualization.graphics.GEnginePS;
 import org.antlr.works.visualization.graphics.graph.GGraphAbstract;
 import org.antlr.xjlib.appkit.gview.GView;
@@ -48,9 +48,11 @@ import org.antlr.xjlib.foundation.XJUtils;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -64,8 +66,26 @@ public class ExportMenu {
 
     public void exportEventsAsTextFile() {
         StatisticsAW.shared().recordEvent(StatisticsAW.EVENT_EXPORT_EVENTS_AS_TEXT);
+        exportEvents("txt", "Text file", DBEventsExporter.FORMAT_TEXT);
+    }
+
+    public void exportEventsAsCSVFile() {
+        exportEvents("csv", "CSV file", DBEventsExporter.FORMAT_CSV);
+    }
 
-        if(!XJFileChooser.shared().displaySaveDialog(window.getJavaContainer(), "txt", "Text file", false))
+    private void exportEvents(String extension, String description, int format) {
+        if(!XJFileChooser.shared().displaySaveDialog(window.getJavaContainer(), extension, description, false))
+            return;
+
+        String file = XJFileChooser.shared().getSelectedFilePath();
+        if(file == null)
+            return;
+
+        window.getDebugMenu().createEventsExporter(format).exportInThread(window.getJavaContainer(), new File(file));
+    }
+
+    public void exportEventsAsFile() {
+        if(!XJFileChooser.shared().displaySaveDialog(window.getJavaContainer(), DBEventFileStore.EXTENSION, "Debugger events", false))
             return;
 
         String file = XJFileChooser.shared().getSelectedFilePath();
@@ -73,11 +93,9 @@ public class ExportMenu {
             return;
 
         try {
-            FileWriter writer = new FileWriter(file);
-            writer.write(window.getDebugMenu().getEventsAsString());
-            writer.close();
+            window.getDebugMenu().saveEvents(new File(file));
         } catch (IOException e) {
-            XJAlert.display(window.getJavaContainer(), "Error", "Cannot save text file: "+file+"\nError: "+e);
+            XJAlert.display(window.getJavaContainer(), "Error", "Cannot save events file: "+file+"\nError: "+e);
         }
     }
 
@@ -197,15 +215,12 @@ public class ExportMenu {
             return;
 
         try {
-            GEnginePS engine = new GEnginePS();
-
-            GContext context = graph.getContext();
-            GEngine oldEngine = context.engine;
-            context.setEngine(engine);
-            graph.draw();
-            context.setEngine(oldEngine);
-
-            XJUtils.writeStringToFile(engine.getPSText(), file);
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+            try {
+                GEnginePS.writeEPS(graph, out);
+            } finally {
+                out.close();
+            }
         } catch (Exception e) {
             window.consoleTab.println(e);
             XJAlert.display(window.getJavaContainer(), "Error", "Cannot export to EPS file: "+file+"\nError: "+e);
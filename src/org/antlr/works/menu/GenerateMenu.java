@@ -186,6 +186,10 @@ public class GenerateMenu implements CodeGenerateDelegate, CheckGrammarDelegate
         // do nothing
     }
 
+    public void checkGrammarDidProgress(CheckGrammar source, int analyzedDecisions, int totalDecisions) {
+        // do nothing
+    }
+
     public void checkGrammarDidEnd(CheckGrammar source, GrammarResult result) {
         if(result.getErrorCount() == 0) {
             generateCodeProcessContinued();
@@ -57,6 +57,11 @@ public class GrammarMenu implements CheckGrammarDelegate, XJDialogProgressDelega
     private CheckGrammar checkGrammar;
     private boolean checkingGrammar;
 
+    private final Object progressLock = new Object();
+    private boolean progressPending;
+    private int progressValue;
+    private int progressMax;
+
     public GrammarMenu(GrammarWindow window) {
         this.window = window;
     }
@@ -185,6 +190,31 @@ public class GrammarMenu implements CheckGrammarDelegate, XJDialogProgressDelega
         checkingGrammar = true;
     }
 
+    public void checkGrammarDidProgress(CheckGrammar source, int analyzedDecisions, int totalDecisions) {
+        // The progress is reported for each decision: only the last one is displayed
+        synchronized(progressLock) {
+            progressValue = analyzedDecisions;
+            progressMax = totalDecisions;
+            if(progressPending)
+                return;
+            progressPending = true;
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                int value;
+                int max;
+                synchronized(progressLock) {
+                    progressPending = false;
+                    value = progressValue;
+                    max = progressMax;
+                }
+                if(checkingGrammar) {
+                    window.setProgress(value, max);
+                }
+            }
+        });
+    }
+
     public void checkGrammarDidEnd(CheckGrammar source, GrammarResult result) {
         checkGrammar.close();
         checkGrammar = null;
@@ -36,6 +36,7 @@ import org.antlr.xjlib.appkit.app.XJPreferences;
 import org.antlr.xjlib.foundation.XJSystem;
 
 import java.awt.*;
+import java.io.File;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
@@ -56,6 +57,7 @@ public class AWPrefs {
     public static final String PREF_DEBUG_DONT_OPTIMIZE_NFA = "PREF_DONT_OPTIMIZE_NFA";
 
     public static final String PREF_DOT_TOOL_PATH = "PREF_DOT_TOOL_PATH";
+    public static final String PREF_DOT_USE_TOOL = "PREF_DOT_USE_TOOL";
     public static final String PREF_ANTLR3_OPTIONS = "PREF_ANTLR3_OPTIONS";
 
     public static final String PREF_TOOLBAR_SORT = "PREF_TOOLBAR_SORT";
@@ -68,6 +70,7 @@ public class AWPrefs {
 
     public static final boolean DEFAULT_DESKTOP_MODE;
     public static final String DEFAULT_DOT_TOOL_PATH;
+    public static final boolean DEFAULT_DOT_USE_TOOL = false;
     public static final String DEFAULT_ANTLR3_OPTIONS="";
     public static final boolean DEFAULT_RESTORE_WINDOWS = true;
 
@@ -221,6 +224,15 @@ public class AWPrefs {
     public static final String PREF_DEBUG_LAUNCHTIMEOUT = "PREF_DEBUG_LAUNCHTIMEOUT";
     public static final int DEFAULT_DEBUG_LAUNCHTIMEOUT = 5;
 
+    public static final String PREF_DEBUG_IN_PROCESS = "PREF_DEBUG_IN_PROCESS";
+    public static final boolean DEFAULT_DEBUG_IN_PROCESS = false;
+
+    public static final String PREF_DEBUG_SNAPSHOT_INTERVAL = "PREF_DEBUG_SNAPSHOT_INTERVAL";
+    public static final int DEFAULT_DEBUG_SNAPSHOT_INTERVAL = 1000;
+
+    public static final String PREF_DEBUG_SNAPSHOT_BUDGET = "PREF_DEBUG_SNAPSHOT_BUDGET";
+    public static final int DEFAULT_DEBUG_SNAPSHOT_BUDGET = 500000;
+
     public static final String PREF_DETACHABLE_CHILDREN = "PREF_DETACHABLE_CHILDREN";
     public static final boolean DEFAULT_DETACHABLE_CHILDREN = true;
 
@@ -236,6 +248,12 @@ public class AWPrefs {
 
     public static final String PREF_CLEAR_CONSOLE_BEFORE_CHECK = "PREF_CLEAR_CONSOLE_BEFORE_CHECK";
 
+    public static final String PREF_SD_CACHE_PATH = "PREF_SD_CACHE_PATH";
+    public static final String DEFAULT_SD_CACHE_PATH = System.getProperty("user.home")+File.separator+".antlrworks"+File.separator+"sdcache";
+
+    public static final String PREF_SD_CACHE_SIZE = "PREF_SD_CACHE_SIZE";
+    public static final int DEFAULT_SD_CACHE_SIZE = 32;
+
     // Test Rig
     public static final String PREF_TEST_RIG_TEXT = "PREF_TEST_RIG_TEXT";
     public static final String PREF_TEST_RIG_CLASS = "PREF_TEST_RIG_CLASS";
@@ -258,6 +276,9 @@ public class AWPrefs {
     public static final String PREF_DEBUGGER_INPUT_FILE = "PREF_DEBUGGER_INPUT_FILE";
     public static final String PREF_DEBUGGER_INPUT_MODE = "PREF_DEBUGGER_INPUT_MODE";
 
+    public static final String PREF_INTERPRETER_INPUT_FILE = "PREF_INTERPRETER_INPUT_FILE";
+    public static final String PREF_INTERPRETER_INPUT_MODE = "PREF_INTERPRETER_INPUT_MODE";
+
     public static final String PREF_DEBUG_BREAK_ALL = "PREF_DEBUG_BREAK_ALL";
     public static final String PREF_DEBUG_BREAK_LOCATION = "PREF_DEBUG_BREAK_LOCATION";
     public static final String PREF_DEBUG_BREAK_CONSUME = "PREF_DEBUG_BREAK_CONSUME";
@@ -309,6 +330,26 @@ public class AWPrefs {
         return getPreferences().getInt(PREF_DEBUG_LAUNCHTIMEOUT, DEFAULT_DEBUG_LAUNCHTIMEOUT);
     }
 
+    /** True to compile and run the test rig inside AW instead of forking a JVM.
+     * While a rig runs, this affects the whole VM: a security manager is installed to turn
+     * System.exit() into an exception and System.out and System.err are replaced to capture
+     * the output of the rig. Both are restored once no rig is running. A rig that doesn't end
+     * after being interrupted has its threads killed with Thread.stop().
+     */
+    public static boolean getDebugInProcess() {
+        return getPreferences().getBoolean(PREF_DEBUG_IN_PROCESS, DEFAULT_DEBUG_IN_PROCESS);
+    }
+
+    /** Number of events played between two snapshots of the debugger replay */
+    public static int getDebugSnapshotInterval() {
+        return getPreferences().getInt(PREF_DEBUG_SNAPSHOT_INTERVAL, DEFAULT_DEBUG_SNAPSHOT_INTERVAL);
+    }
+
+    /** Maximum number of objects retained by all the snapshots of the debugger replay */
+    public static int getDebugSnapshotBudget() {
+        return getPreferences().getInt(PREF_DEBUG_SNAPSHOT_BUDGET, DEFAULT_DEBUG_SNAPSHOT_BUDGET);
+    }
+
     public static void setOutputPath(String path) {
         getPreferences().setString(PREF_OUTPUT_PATH, path);
     }
@@ -409,6 +450,15 @@ public class AWPrefs {
         return getPreferences().getString(PREF_DOT_TOOL_PATH, DEFAULT_DOT_TOOL_PATH);
     }
 
+    public static void setDOTUseTool(boolean flag) {
+        getPreferences().setBoolean(PREF_DOT_USE_TOOL, flag);
+    }
+
+    /** Returns true if the graphs are laid out by the external 'dot' tool instead of the built-in layout */
+    public static boolean getDOTUseTool() {
+        return getPreferences().getBoolean(PREF_DOT_USE_TOOL, DEFAULT_DOT_USE_TOOL);
+    }
+
     public static String[] getANTLR3Options() {
         String options = getPreferences().getString(PREF_ANTLR3_OPTIONS, DEFAULT_ANTLR3_OPTIONS);
         if(options != null && options.trim().length() > 0) {
@@ -584,6 +634,22 @@ public class AWPrefs {
         return getPreferences().getString(PREF_DEBUGGER_INPUT_FILE, "");         
     }
 
+    public static void setInterpreterInputMode(int mode) {
+        getPreferences().setInt(PREF_INTERPRETER_INPUT_MODE, mode);
+    }
+
+    public static int getInterpreterInputMode() {
+        return getPreferences().getInt(PREF_INTERPRETER_INPUT_MODE, 0);
+    }
+
+    public static void setInterpreterInputFile(String file) {
+        getPreferences().setString(PREF_INTERPRETER_INPUT_FILE, file);
+    }
+
+    public static String getInterpreterInputFile() {
+        return getPreferences().getString(PREF_INTERPRETER_INPUT_FILE, "");
+    }
+
     public static void setTestRigTemplateTextByLanguage(String language, String text) {
         getPreferences().setString(PREF_TEST_RIG_TEXT + "_FOR_" + language.toUpperCase(), text);
     }
@@ -651,4 +717,14 @@ public class AWPrefs {
     public static boolean isClearConsoleBeforeCheckGrammar() {
         return getPreferences().getBoolean(PREF_CLEAR_CONSOLE_BEFORE_CHECK, false);
     }
+
+    /** Directory of the syntax diagrams cache shared by the IDE and the console (empty to disable it) */
+    public static String getSDCachePath() {
+        return getPreferences().getString(PREF_SD_CACHE_PATH, DEFAULT_SD_CACHE_PATH);
+    }
+
+    /** Maximum size in megabytes of the syntax diagrams cache */
+    public static int getSDCacheSize() {
+        return getPreferences().getInt(PREF_SD_CACHE_SIZE, DEFAULT_SD_CACHE_SIZE);
+    }
 }
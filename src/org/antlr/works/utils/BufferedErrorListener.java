@@ -0,0 +1,115 @@
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-07 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package org.antlr.works.utils;
+
+import org.antlr.tool.Message;
+import org.antlr.tool.ToolMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the messages in the order they were reported so they can be forwarded later
+ * to another listener.
+ */
+public class BufferedErrorListener extends ErrorListener {
+
+    private static final int INFO = 0;
+    private static final int ERROR = 1;
+    private static final int WARNING = 2;
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    public BufferedErrorListener() {
+        setPrintToConsole(false);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        entries.clear();
+    }
+
+    @Override
+    public void info(String msg) {
+        super.info(msg);
+        entries.add(new Entry(INFO, msg));
+    }
+
+    @Override
+    public void error(Message msg) {
+        super.error(msg);
+        entries.add(new Entry(ERROR, msg));
+    }
+
+    @Override
+    public void error(ToolMessage msg) {
+        super.error(msg);
+        entries.add(new Entry(ERROR, msg));
+    }
+
+    @Override
+    public void warning(Message msg) {
+        super.warning(msg);
+        entries.add(new Entry(WARNING, msg));
+    }
+
+    public void forward(ErrorListener target) {
+        for(Entry entry : entries) {
+            switch(entry.type) {
+                case INFO:
+                    target.info((String) entry.value);
+                    break;
+                case ERROR:
+                    if(entry.value instanceof ToolMessage) {
+                        target.error((ToolMessage) entry.value);
+                    } else {
+                        target.error((Message) entry.value);
+                    }
+                    break;
+                case WARNING:
+                    target.warning((Message) entry.value);
+                    break;
+            }
+        }
+    }
+
+    private static class Entry {
+        public final int type;
+        public final Object value;
+
+        public Entry(int type, Object value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+}
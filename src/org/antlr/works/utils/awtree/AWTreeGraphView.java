@@ -13,8 +13,14 @@ import org.antlr.xjlib.appkit.gview.shape.SLinkElbow;
 import javax.swing.*;
 import javax.swing.tree.TreeNode;
 import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /*
 
@@ -47,7 +53,14 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 */
 
-public class AWTreeGraphView extends GView {
+/**
+ * Displays a tree as a graph. The position of each node is computed by an AWTreeLayout and
+ * the graphic elements are only created for the nodes in (or near) the visible area: the
+ * elements are created again when the view is scrolled outside of this area. A node can
+ * be collapsed (see toggleCollapsed()) in which case its descendants are replaced by a
+ * summary node.
+ */
+public class AWTreeGraphView extends GView implements AWTreeLayout.Measurer {
 
     public static final boolean DRAGGABLE = false;
 
@@ -56,10 +69,15 @@ public class AWTreeGraphView extends GView {
 
     public static final int MARGIN = 10;
 
+    /** Fraction of the visible area added on each side of the area in which the elements are created */
+    public static final double MATERIALIZE_MARGIN = 0.5;
+
     public static final Color HIGHLIGHTED_COLOR = new Color(0, 0.5f, 1, 0.4f);
+    public static final Color SUMMARY_COLOR = Color.gray;
     public static final Font DEFAULT_FONT = new Font("Monospaced", Font.PLAIN, 11);
 
     protected TreeNode root;
+    protected TreeNode highlightedTreeNode;
     protected GElementNode highlightedNode;
 
     protected Map<TreeNode,GElement> treeNodeToGElementMap = new HashMap<TreeNode, GElement>();
@@ -68,6 +86,13 @@ public class AWTreeGraphView extends GView {
     protected AWTreePanel panel;
     protected AWTreeModel model;
 
+    protected AWTreeLayout layout;
+    protected Set<TreeNode> collapsedNodes = new HashSet<TreeNode>();
+
+    /** Area (in tree coordinates) for which the elements have been created */
+    protected Rectangle2D materializedArea;
+    protected boolean materializedDirty = true;
+
     protected Graphics2D g2d;
     protected FontMetrics fontMetrics;
 
@@ -88,13 +113,23 @@ public class AWTreeGraphView extends GView {
     }
 
     public void setRoot(TreeNode root) {
-        this.root = root;
+        if(this.root != root) {
+            this.root = root;
+            layout = null;
+            collapsedNodes.clear();
+            dirty = true;
+        }
     }
 
+    /** Forgets the layout: the tree is laid out again from scratch by the next rebuild.
+     * Only the pending nodes of the model are cleared as the whole tree is going to be read.
+     */
     public void clear() {
         if(model != null)
-            model.clear();
+            model.clearNewNodes();
         clearMaps();
+        layout = null;
+        dirty = true;
     }
 
     public void refresh() {
@@ -116,10 +151,13 @@ public class AWTreeGraphView extends GView {
 
         if(dirty) {
             dirty = false;
-            if(model == null)
+            if(model == null || layout == null)
                 rebuildNoModel();
             else
                 rebuildWithModel();
+
+            materializedDirty = true;
+            autoAdjustSize();
         }
     }
 
@@ -137,6 +175,9 @@ public class AWTreeGraphView extends GView {
         return gelementToTreeNodeMap.get(elem);
     }
 
+    /** Returns the element of a node or null if the node is not displayed in the
+     * visible area.
+     */
     public GElementNode getGElementForNode(TreeNode node) {
         if(node == null)
             return null;
@@ -144,70 +185,31 @@ public class AWTreeGraphView extends GView {
             return (GElementNode)treeNodeToGElementMap.get(node);
     }
 
-    /** This method rebuild the tree completely. This can be expensive if the tree
-     * contains many node. Use a AWTreeModel instead (see rebuildWithModel)
+    /** This method lays out the tree completely. This is O(n) but no graphic element
+     * is created: use a AWTreeModel to lay out only the new nodes (see rebuildWithModel)
      */
-
     public void rebuildNoModel() {
-        clearMaps();
-
-        GElement element = buildGraph(null);
-        element.move(MARGIN, MARGIN);
-
-        setSizeMargin(MARGIN);
-        setRootElement(element);
-    }
-
-    public GElementNode buildGraph(TreeNode node) {
-        if(node == null)
-            node = root;
+        layout = new AWTreeLayout(this, fontMetrics.getHeight()+8, HORIZONTAL_GAP, VERTICAL_GAP, MARGIN, collapsedNodes);
+        layout.build(root);
 
-        GElementNode nodeElement = getGElementForNode(node);
-        if(nodeElement == null)
-            nodeElement = createGElement(node);
-
-        /** Add all the children of the node */
-        for(int index=0; index<node.getChildCount(); index++) {
-            TreeNode child = node.getChildAt(index);
-
-            /** Then add it to the parent node */
-            addChildElement(nodeElement, createGElement(child));
-
-            /** Recursively build the children of the child */
-            buildGraph(child);
-        }
-
-        /** Adjust the parent element position after adding all its children */
-        adjustElementPositionRelativeToItsChildren(node, false);
-
-        return nodeElement;
+        if(model != null)
+            model.clearNewNodes();
     }
 
-    /** This method rebuild the tree incrementally using the information provided
-     * by the tree model. This method is faster than rebuildNoModel() for large tree.
-     *
-     * Note: actually it is slower because of the adjustElement...() method which is called too often
+    /** This method lays out the tree incrementally using the new nodes provided
+     * by the tree model. Each new node costs O(depth of the node).
      */
     public void rebuildWithModel() {
         for(int n=0; n<model.getNewNodesCount(); n++) {
             TreeNode parent = model.getNewNodeParentAtIndex(n);
             TreeNode child = model.getNewNodeAtIndex(n);
 
-            GElementNode parentElement = getGElementForNode(parent);
-            if(parentElement == null) {
-                parentElement = createGElement(root);
-                parentElement.move(MARGIN, MARGIN);
-                setSizeMargin(MARGIN);
-                setRootElement(parentElement);
+            if(!layout.append(parent, child)) {
+                rebuildNoModel();
+                return;
             }
-
-            GElementNode childElement = createGElement(child);
-            addChildElement(parentElement, childElement);
-            adjustElementPositionRelativeToItsChildren(parent, true);
         }
 
-        autoAdjustSize();
-
         model.clearNewNodes();
     }
 
@@ -219,22 +221,109 @@ public class AWTreeGraphView extends GView {
             fontMetrics = g2d.getFontMetrics();
         }
         rebuild();
+        materializeVisibleArea();
         super.paintComponent(g);
     }
 
-    public void addChildElement(GElementNode parent, GElementNode child) {
-        /** Get the far right position of the last child */
-        double x = parent.getLastChildRightSpan();
+    @Override
+    public void autoAdjustSize() {
+        if(layout == null || !autoAdjustSize)
+            return;
 
-        /** Add a gap if there is already a child otherwise use the parent left coordinate */
-        if(x > 0)
-            x += HORIZONTAL_GAP;
-        else
-            x = parent.getLeft();
+        setSizeMargin(MARGIN);
+        setRealSize((int)(layout.getWidth()*zoom), (int)(layout.getHeight()*zoom));
+
+        if(delegate != null)
+            delegate.viewSizeDidChange();
+    }
+
+    @Override
+    public BufferedImage getImage() {
+        materialize(null);
+        materializedDirty = true;
+        return super.getImage();
+    }
+
+    @Override
+    public String getEPS() {
+        materialize(null);
+        materializedDirty = true;
+        return super.getEPS();
+    }
+
+    /** Creates the elements of the visible area if they don't exist yet */
+    public void materializeVisibleArea() {
+        if(layout == null)
+            return;
+
+        Rectangle r = getVisibleRect();
+        Rectangle2D visible = new Rectangle2D.Double(r.x/zoom, r.y/zoom, r.width/zoom, r.height/zoom);
+        if(!materializedDirty && materializedArea != null && materializedArea.contains(visible))
+            return;
+
+        double mx = visible.getWidth()*MATERIALIZE_MARGIN;
+        double my = visible.getHeight()*MATERIALIZE_MARGIN;
+        materialize(new Rectangle2D.Double(visible.getX()-mx, visible.getY()-my,
+                visible.getWidth()+2*mx, visible.getHeight()+2*my));
+    }
+
+    /** Creates the elements of the nodes located in the area (all the visible nodes
+     * if the area is null) and replaces the previous elements.
+     */
+    public void materialize(Rectangle2D area) {
+        if(layout == null)
+            return;
+
+        clearMaps();
+        highlightedNode = null;
+
+        List<GElement> links = new ArrayList<GElement>();
+        List<GElement> elements = new ArrayList<GElement>();
+
+        List<AWTreeLayout.Node> nodes = layout.collect(area);
+        for(AWTreeLayout.Node node : nodes) {
+            GElementNode element = createGElement(node.getTreeNode());
+            element.setSize(node.getWidth(), layout.getNodeHeight());
+            element.setPositionOfUpperLeftCorner(node.getX(), layout.getRowTop(node.getDepth()));
+            elements.add(element);
+        }
+
+        for(AWTreeLayout.Node node : nodes) {
+            GElementNode element = getGElementForNode(node.getTreeNode());
+            AWTreeLayout.Node parent = node.getParent();
+            if(parent != null && layout.isCollected(parent)) {
+                links.add(createLink(getGElementForNode(parent.getTreeNode()), element));
+            }
+            if(node.isCollapsed()) {
+                GElementNode summary = createSummaryElement(node);
+                elements.add(summary);
+                links.add(createLink(element, summary));
+            }
+        }
+
+        GElement container = new GElementContainer();
+        for(GElement link : links) {
+            container.addElement(link);
+        }
+        for(GElement element : elements) {
+            container.addElement(element);
+        }
+
+        GElementNode element = getGElementForNode(highlightedTreeNode);
+        if(element != null) {
+            element.setHighlighted(true);
+            highlightedNode = element;
+        }
 
-        /** Set the child position */
-        child.setPositionOfUpperLeftCorner(x, parent.getBottom()+VERTICAL_GAP);
+        materializedArea = area == null ? new Rectangle2D.Double(0, 0, layout.getWidth(), layout.getHeight()) : area;
+        materializedDirty = false;
 
+        /** The size of the view does not depend on the elements (see autoAdjustSize()) */
+        rootElement = container;
+        rootElement.setPanel(this);
+    }
+
+    public GLink createLink(GElementNode parent, GElementNode child) {
         /** Create the link from the parent to this child */
         GLink link = new GLink(parent, GLink.ANCHOR_BOTTOM,
                 child, GLink.ANCHOR_TOP,
@@ -246,51 +335,36 @@ public class AWTreeGraphView extends GView {
         l.setOutOffsetLength(10);
         l.getArrow().setLength(6);
 
-        /** Add the link and the child */
-        parent.addElement(link);
-        parent.addElement(child);
+        return link;
     }
 
-    /** This method recursively adjusts a node position relative to its children */
+    public GElementNode createSummaryElement(AWTreeLayout.Node node) {
+        GElementNode element = new GElementNode();
+        element.setDraggable(DRAGGABLE);
+        element.setSize(getSummaryWidth(node.getHiddenCount()), layout.getNodeHeight());
+        element.setPositionOfUpperLeftCorner(layout.getSummaryLeft(node), layout.getRowTop(node.getDepth()+1));
+        element.setLabel(getSummaryLabel(node.getHiddenCount()));
+        element.setColor(SUMMARY_COLOR);
+        element.setLabelColor(SUMMARY_COLOR);
 
-    public void adjustElementPositionRelativeToItsChildren(TreeNode node, boolean recursive) {
-        GElementNode element = getGElementForNode(node);
-        if(element == null)
-            return;
+        /** Selecting the summary selects the collapsed node */
+        gelementToTreeNodeMap.put(element, node.getTreeNode());
 
-        double elementWidth = element.getWidth();
-        double childrenWidth = element.getLastChildRightSpan()-element.getFirstChildLeftSpan();
+        return element;
+    }
 
-        /** Nothing to adjust if there is no children */
-        if(childrenWidth == 0)
+    /** Collapses or expands a node. A collapsed node displays a summary node instead
+     * of its descendants.
+     */
+    public void toggleCollapsed(TreeNode node) {
+        if(layout == null)
             return;
 
-        /** x and y are the coordinates of the upper-left corner of the frame enclosing
-         * the element and all its children.
-         */
-        double x = Math.min(element.getLeft(), element.getFirstChildLeftSpan());
-        double y = element.getTop();
-        double spanWidth = Math.max(elementWidth, childrenWidth);
-
-        /** First move the children if needed. To move all the children at once, we move
-         * the element itself (which will cause all the children to be moved recursively).
-         * The element position is set after this operation.
-         */
-        double childrenOffset = spanWidth*0.5-childrenWidth*0.5;
-
-        /** Compute the offset to move the children given their current position */
-        double offset = x+childrenOffset-element.getFirstChildLeftSpan();
-        element.move(offset, 0);
-
-        /** Set the element position */
-        element.setPositionOfUpperLeftCorner(x+spanWidth*0.5-elementWidth*0.5, y);
-
-        /** Set the span (children width) of the element */
-        element.setSpanWidth(spanWidth);
-
-        /** Recursively adjust the parent node */
-        if(recursive)
-            adjustElementPositionRelativeToItsChildren(node.getParent(), recursive);
+        if(layout.setCollapsed(node, !layout.isCollapsed(node))) {
+            materializedDirty = true;
+            autoAdjustSize();
+            repaint();
+        }
     }
 
     public String getNodeLabel(TreeNode node) {
@@ -306,6 +380,10 @@ public class AWTreeGraphView extends GView {
         return node.toString();
     }
 
+    public String getSummaryLabel(int hiddenCount) {
+        return "+ "+hiddenCount+(hiddenCount == 1 ? " node" : " nodes");
+    }
+
     public Color getNodeColor(TreeNode node) {
         if(node instanceof AWTreeNode)
             return ((AWTreeNode)node).getColor();
@@ -313,6 +391,15 @@ public class AWTreeGraphView extends GView {
             return Color.black;
     }
 
+    public double getNodeWidth(TreeNode node) {
+        String nodeLabel = getNodeLabel(node);
+        return (nodeLabel==null?0:fontMetrics.stringWidth(nodeLabel))+16;
+    }
+
+    public double getSummaryWidth(int hiddenCount) {
+        return fontMetrics.stringWidth(getSummaryLabel(hiddenCount))+16;
+    }
+
     public GElementNode createGElement(TreeNode node) {
         Color nodeColor = getNodeColor(node);
         String nodeLabel = getNodeLabel(node);
@@ -345,12 +432,21 @@ public class AWTreeGraphView extends GView {
             highlightedNode = null;
         }
 
-        GElementNode element = getGElementForNode(node);
-        if(element == null)
+        highlightedTreeNode = node;
+        if(node == null || layout == null)
             return;
 
-        element.setHighlighted(true);
-        highlightedNode = element;
+        /** The node must be visible */
+        if(layout.expandAncestors(node)) {
+            materializedDirty = true;
+            autoAdjustSize();
+        }
+
+        GElementNode element = getGElementForNode(node);
+        if(element != null) {
+            element.setHighlighted(true);
+            highlightedNode = element;
+        }
 
         scrollNodeToVisible(node);
 
@@ -372,12 +468,28 @@ public class AWTreeGraphView extends GView {
         }
     }
 
+    /** The node does not need to have an element: its position is given by the layout */
     public void scrollNodeToVisible(TreeNode node) {
-        GElementNode element = getGElementForNode(node);
-        if(element == null)
+        if(layout == null || node == null)
+            return;
+
+        Rectangle r = layout.getNodeBounds(node);
+        if(r == null)
             return;
 
-        scrollElementToVisible(element);
+        // Scale according to the current zoom
+        r.x *= zoom;
+        r.y *= zoom;
+        r.width *= zoom;
+        r.height *= zoom;
+
+        // Add some margin to make the element "more" visible
+        r.x -= SCROLL_TO_VISIBLE_MARGIN;
+        r.y -= SCROLL_TO_VISIBLE_MARGIN;
+        r.width += 2*SCROLL_TO_VISIBLE_MARGIN;
+        r.height += 2*SCROLL_TO_VISIBLE_MARGIN;
+
+        scrollRectToVisible(r);
     }
 
     @Override
@@ -385,10 +497,13 @@ public class AWTreeGraphView extends GView {
         return panel.getContextualMenu();
     }
 
+    /** The root element containing the elements of the visible nodes and their links */
+    public static class GElementContainer extends GElement {
+    }
+
     public static class GElementNode extends GElementRect {
 
         public boolean highlighted = false;
-        public double spanWidth = 0;
 
         public void setHighlighted(boolean flag) {
             this.highlighted = flag;
@@ -405,62 +520,6 @@ public class AWTreeGraphView extends GView {
             super.draw(g);
         }
 
-        /** Methods to retrieve the span width of the node. The span width
-         * is the maximum width of the node and its children.
-         */
-        public void setSpanWidth(double width) {
-            spanWidth = width;
-        }
-
-        public double getLeftSpan() {
-            if(spanWidth <= getWidth())
-                return getLeft();
-            else
-                return getLeft()-(spanWidth-getWidth())*0.5;
-        }
-
-        public double getRightSpan() {
-            if(spanWidth <= getWidth())
-                return getRight();
-            else
-                return getRight()+(spanWidth-getWidth())*0.5;
-        }
-
-        /** Return the last children right coordinate of this node. Note that links are
-         * also in the list of children so we must skip them.
-         */
-        public double getLastChildRightSpan() {
-            if(elements == null)
-                return 0;
-
-            for (int i = elements.size()-1; i >= 0; i--) {
-                GElement element = (GElement) elements.get(i);
-                if(element instanceof GElementNode) {
-                    GElementNode n = (GElementNode)element;
-                    return n.getRightSpan();
-                }
-            }
-
-            return 0;
-        }
-
-        /** Return the first children left coordinate of this node. Note that links are
-         * also in the list of children so we must skip them.
-         */
-        public double getFirstChildLeftSpan() {
-            if(elements == null)
-                return 0;
-
-            for (GElement element : elements) {
-                if (element instanceof GElementNode) {
-                    GElementNode n = (GElementNode) element;
-                    return n.getLeftSpan();
-                }
-            }
-
-            return 0;
-        }
-
         /** Methods used to retrieve the coordinate of the frame. Note that
          * a GElementRect position is always centered so we need to use getFrame()
          * to get the frame rectangle from which we can get the coordinate we want. */
@@ -482,9 +541,5 @@ public class AWTreeGraphView extends GView {
             Rect r = getFrame();
             return r.r.y+r.r.height;
         }
-
-        public void setTop(double top) {
-            position.y = top+getHeight()*0.5;
-        }
     }
 }
@@ -0,0 +1,506 @@
+package org.antlr.works.utils.awtree;
+
+import javax.swing.tree.TreeNode;
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * The layout of the tree displayed by AWTreeGraphView. The layout only keeps the extent of each
+ * subtree (its span) and the offset of each subtree relative to its siblings: the absolute position
+ * of a node is computed when needed by walking up to the root. This way appending a node only
+ * updates the extents of its ancestors (O(depth)) instead of moving whole subtrees.
+ *
+ * Each subtree is centered above its children, the children being placed from left to right
+ * (the same layout AWTreeGraphView always used). A collapsed node hides its descendants
+ * and displays instead a summary node with the number of hidden nodes.
+ */
+public class AWTreeLayout {
+
+    public interface Measurer {
+        public double getNodeWidth(TreeNode node);
+        public double getSummaryWidth(int hiddenCount);
+    }
+
+    private final Measurer measurer;
+    private final double nodeHeight;
+    private final double horizontalGap;
+    private final double verticalGap;
+    private final double margin;
+
+    private final Map<TreeNode,Node> nodes = new IdentityHashMap<TreeNode,Node>();
+    private final Set<TreeNode> collapsedNodes;
+    private Node root;
+
+    /** Generation of the last collect() used to mark the collected nodes */
+    private int mark = 0;
+
+    public AWTreeLayout(Measurer measurer, double nodeHeight, double horizontalGap, double verticalGap,
+                        double margin, Set<TreeNode> collapsedNodes) {
+        this.measurer = measurer;
+        this.nodeHeight = nodeHeight;
+        this.horizontalGap = horizontalGap;
+        this.verticalGap = verticalGap;
+        this.margin = margin;
+        this.collapsedNodes = collapsedNodes;
+    }
+
+    public void build(TreeNode treeNode) {
+        nodes.clear();
+        root = treeNode == null ? null : create(null, treeNode);
+    }
+
+    /**
+     * Appends a node which has been added as the last child of its parent. Returns false
+     * if the layout cannot be updated incrementally (i.e. the parent is unknown or the
+     * node was not added at the end): the whole layout must then be built again.
+     */
+    public boolean append(TreeNode parentTreeNode, TreeNode treeNode) {
+        if(nodes.containsKey(treeNode))
+            return true;
+
+        Node parent = nodes.get(parentTreeNode);
+        if(parent == null)
+            return false;
+
+        int index = parent.children == null ? 0 : parent.children.size();
+        if(index >= parentTreeNode.getChildCount() || parentTreeNode.getChildAt(index) != treeNode)
+            return false;
+
+        Node child = create(parent, treeNode);
+        child.index = index;
+        child.offset = index == 0 ? 0 : parent.childrenWidth+horizontalGap;
+        if(parent.children == null)
+            parent.children = new ArrayList<Node>();
+        parent.children.add(child);
+
+        double oldSpan = parent.span;
+        int oldLevels = parent.levels;
+        parent.childrenWidth = child.offset+child.span;
+        parent.childLevels = Math.max(parent.childLevels, child.levels);
+        parent.count += child.count;
+        updateExtent(parent);
+        propagate(parent, oldSpan, oldLevels, child.count);
+        return true;
+    }
+
+    public boolean isCollapsed(TreeNode treeNode) {
+        Node node = nodes.get(treeNode);
+        return node != null && node.collapsed;
+    }
+
+    /**
+     * Collapses or expands a node. Returns false if the node is not part of the layout
+     * or does not have any children.
+     */
+    public boolean setCollapsed(TreeNode treeNode, boolean flag) {
+        if(flag)
+            collapsedNodes.add(treeNode);
+        else
+            collapsedNodes.remove(treeNode);
+
+        Node node = nodes.get(treeNode);
+        if(node == null || node.collapsed == flag)
+            return false;
+
+        double oldSpan = node.span;
+        int oldLevels = node.levels;
+        node.collapsed = flag;
+        if(flag)
+            node.count = countNodes(node);
+        if(node.children == null)
+            return false;
+
+        updateExtent(node);
+        propagate(node, oldSpan, oldLevels, 0);
+        return true;
+    }
+
+    /**
+     * Expands all the collapsed ancestors of a node so the node becomes visible.
+     * Returns true if at least one ancestor has been expanded.
+     */
+    public boolean expandAncestors(TreeNode treeNode) {
+        Node node = nodes.get(treeNode);
+        if(node == null)
+            return false;
+
+        boolean expanded = false;
+        for(Node ancestor = node.parent; ancestor != null; ancestor = ancestor.parent) {
+            if(ancestor.collapsed) {
+                setCollapsed(ancestor.treeNode, false);
+                expanded = true;
+            }
+        }
+        return expanded;
+    }
+
+    public double getNodeHeight() {
+        return nodeHeight;
+    }
+
+    public double getRowTop(int depth) {
+        return margin+depth*(nodeHeight+verticalGap);
+    }
+
+    public double getWidth() {
+        return root == null ? 0 : margin+root.span;
+    }
+
+    public double getHeight() {
+        return root == null ? 0 : margin+root.levels*nodeHeight+(root.levels-1)*verticalGap;
+    }
+
+    /**
+     * Returns the bounds of a node or null if the node is not part of the layout.
+     */
+    public Rectangle getNodeBounds(TreeNode treeNode) {
+        Node node = nodes.get(treeNode);
+        if(node == null)
+            return null;
+
+        double left = getSubtreeLeft(node)+(node.span-node.width)*0.5;
+        return new Rectangle((int)left, (int)getRowTop(node.depth), (int)Math.ceil(node.width), (int)Math.ceil(nodeHeight));
+    }
+
+    /**
+     * Returns the nodes to display in the specified area (or all the visible nodes
+     * if the area is null). The parent of each returned node is also returned so
+     * the link to the node can be displayed. The position of the returned nodes is
+     * available using Node.getX() and getRowTop(Node.getDepth()).
+     */
+    public List<Node> collect(Rectangle2D area) {
+        List<Node> result = new ArrayList<Node>();
+        if(root == null)
+            return result;
+
+        mark++;
+
+        double minX = area == null ? 0 : area.getMinX();
+        double maxX = area == null ? 0 : area.getMaxX();
+        double minY = area == null ? 0 : area.getMinY();
+        double maxY = area == null ? 0 : area.getMaxY();
+
+        List<Node> stack = new ArrayList<Node>();
+        root.left = margin;
+        stack.add(root);
+        while(!stack.isEmpty()) {
+            Node node = stack.remove(stack.size()-1);
+            double left = node.left;
+            double top = getRowTop(node.depth);
+            if(area != null && (left > maxX || left+node.span < minX || top > maxY))
+                continue;
+
+            node.x = left+(node.span-node.width)*0.5;
+            if(area == null || (top+nodeHeight >= minY && node.x <= maxX && node.x+node.width >= minX)) {
+                include(node, result);
+                if(node.parent != null)
+                    include(node.parent, result);
+            }
+
+            if(node.children == null)
+                continue;
+
+            if(node.collapsed) {
+                double summaryLeft = left+(node.span-node.summaryWidth)*0.5;
+                double summaryTop = getRowTop(node.depth+1);
+                if(area == null || (summaryTop <= maxY && summaryTop+nodeHeight >= minY &&
+                        summaryLeft <= maxX && summaryLeft+node.summaryWidth >= minX))
+                    include(node, result);
+                continue;
+            }
+
+            if(area != null && getRowTop(node.depth+1) > maxY)
+                continue;
+
+            double childrenLeft = left+(node.span-node.childrenWidth)*0.5;
+            int first = area == null ? 0 : getFirstChildEndingAfter(node, minX-childrenLeft);
+            for(int index=first; index<node.children.size(); index++) {
+                Node child = node.children.get(index);
+                child.left = childrenLeft+child.offset;
+                if(area != null && child.left > maxX)
+                    break;
+                stack.add(child);
+            }
+        }
+        return result;
+    }
+
+    /** Returns true if the node has been returned by the last collect() */
+    public boolean isCollected(Node node) {
+        return node.mark == mark;
+    }
+
+    public double getSummaryLeft(Node node) {
+        return node.left+(node.span-node.summaryWidth)*0.5;
+    }
+
+    private void include(Node node, List<Node> result) {
+        if(node.mark != mark) {
+            node.mark = mark;
+            result.add(node);
+        }
+    }
+
+    /** Binary search of the first child whose right edge is after x (relative to the children) */
+    private int getFirstChildEndingAfter(Node node, double x) {
+        int low = 0;
+        int high = node.children.size()-1;
+        while(low < high) {
+            int middle = (low+high) >>> 1;
+            Node child = node.children.get(middle);
+            if(child.offset+child.span < x)
+                low = middle+1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private double getSubtreeLeft(Node node) {
+        double left = margin;
+        for(Node n = node; n.parent != null; n = n.parent) {
+            left += (n.parent.span-n.parent.childrenWidth)*0.5+n.offset;
+        }
+        return left;
+    }
+
+    /**
+     * Creates the layout of a subtree. The nodes are created breadth-first (no recursion
+     * because parse trees can be very deep) and then measured from the deepest ones.
+     */
+    private Node create(Node parent, TreeNode treeNode) {
+        Node top = createNode(parent, treeNode);
+        if(treeNode.getChildCount() == 0) {
+            // most of the appended nodes are tokens
+            layoutChildren(top);
+            return top;
+        }
+
+        List<Node> order = new ArrayList<Node>();
+        order.add(top);
+        for(int i=0; i<order.size(); i++) {
+            Node node = order.get(i);
+            int count = node.treeNode.getChildCount();
+            if(count == 0)
+                continue;
+
+            node.children = new ArrayList<Node>(count);
+            for(int index=0; index<count; index++) {
+                Node child = createNode(node, node.treeNode.getChildAt(index));
+                child.index = index;
+                node.children.add(child);
+                order.add(child);
+            }
+        }
+
+        for(int i=order.size()-1; i>=0; i--) {
+            layoutChildren(order.get(i));
+        }
+        return top;
+    }
+
+    private int countNodes(Node node) {
+        int count = 0;
+        List<Node> stack = new ArrayList<Node>();
+        stack.add(node);
+        while(!stack.isEmpty()) {
+            Node n = stack.remove(stack.size()-1);
+            count++;
+            if(n.children != null)
+                stack.addAll(n.children);
+        }
+        return count;
+    }
+
+    private Node createNode(Node parent, TreeNode treeNode) {
+        Node node = new Node(treeNode, parent);
+        node.width = measurer.getNodeWidth(treeNode);
+        node.collapsed = collapsedNodes.contains(treeNode);
+        nodes.put(treeNode, node);
+        return node;
+    }
+
+    private void layoutChildren(Node node) {
+        double x = 0;
+        int childLevels = 0;
+        int count = 1;
+        if(node.children != null) {
+            for(Node child : node.children) {
+                if(child.index > 0)
+                    x += horizontalGap;
+                child.offset = x;
+                x += child.span;
+                childLevels = Math.max(childLevels, child.levels);
+                count += child.count;
+            }
+        }
+        node.childrenWidth = x;
+        node.childLevels = childLevels;
+        node.count = count;
+        updateExtent(node);
+    }
+
+    private void updateExtent(Node node) {
+        if(node.children == null) {
+            node.span = node.width;
+            node.levels = 1;
+        } else if(node.collapsed) {
+            node.summaryWidth = measurer.getSummaryWidth(node.count-1);
+            node.span = Math.max(node.width, node.summaryWidth);
+            node.levels = 2;
+        } else {
+            node.span = Math.max(node.width, node.childrenWidth);
+            node.levels = node.childLevels+1;
+        }
+    }
+
+    /**
+     * Propagates the change of the extent of a node to its ancestors. The siblings after
+     * each modified subtree are shifted (nothing to shift when appending to the last rule).
+     */
+    private void propagate(Node node, double oldSpan, int oldLevels, int addedCount) {
+        Node child = node;
+        Node parent = node.parent;
+        while(parent != null) {
+            double parentOldSpan = parent.span;
+            int parentOldLevels = parent.levels;
+
+            double delta = child.span-oldSpan;
+            if(delta != 0) {
+                parent.childrenWidth += delta;
+                for(int index=child.index+1; index<parent.children.size(); index++) {
+                    parent.children.get(index).offset += delta;
+                }
+            }
+
+            if(child.levels > parent.childLevels) {
+                parent.childLevels = child.levels;
+            } else if(child.levels < oldLevels && oldLevels == parent.childLevels) {
+                int levels = 0;
+                for(Node n : parent.children) {
+                    levels = Math.max(levels, n.levels);
+                }
+                parent.childLevels = levels;
+            }
+
+            parent.count += addedCount;
+            updateExtent(parent);
+
+            /** The count only matters for the collapsed nodes: no need to go up to the root
+             * when there are none (the common case when appending nodes).
+             */
+            if(parent.span == parentOldSpan && parent.levels == parentOldLevels &&
+                    (addedCount == 0 || collapsedNodes.isEmpty()))
+                break;
+
+            oldSpan = parentOldSpan;
+            oldLevels = parentOldLevels;
+            child = parent;
+            parent = parent.parent;
+        }
+    }
+
+    public static class Node {
+
+        final TreeNode treeNode;
+        final Node parent;
+        final int depth;
+        int index;
+        List<Node> children;
+
+        /** Width of the node itself */
+        double width;
+        /** Width of the children, including the gaps between them */
+        double childrenWidth;
+        /** Width of the subtree (the maximum of the node and its visible children width) */
+        double span;
+        /** Position of the subtree relative to the first child of the parent */
+        double offset;
+        /** Width of the summary node displayed when the node is collapsed */
+        double summaryWidth;
+
+        /** Number of rows of the visible subtree and maximum of the children ones */
+        int levels;
+        int childLevels;
+        /** Number of nodes of the subtree, including this node. Only kept up-to-date
+         * for the collapsed nodes (see propagate()).
+         */
+        int count;
+        boolean collapsed;
+
+        /** Computed by collect() */
+        double left;
+        double x;
+        int mark;
+
+        public Node(TreeNode treeNode, Node parent) {
+            this.treeNode = treeNode;
+            this.parent = parent;
+            this.depth = parent == null ? 0 : parent.depth+1;
+        }
+
+        public TreeNode getTreeNode() {
+            return treeNode;
+        }
+
+        public Node getParent() {
+            return parent;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public double getX() {
+            return x;
+        }
+
+        public double getWidth() {
+            return width;
+        }
+
+        public boolean isCollapsed() {
+            return collapsed && children != null;
+        }
+
+        /** Number of nodes hidden by this node when collapsed */
+        public int getHiddenCount() {
+            return count-1;
+        }
+    }
+}
@@ -39,6 +39,11 @@ public class AWTreeModel {
 
     public void addNode(AWTreeNode parent, AWTreeNode node) {
         parent.add(node);
+        nodeAdded(parent, node);
+    }
+
+    /** Records a node which has already been added as the last child of its parent */
+    public void nodeAdded(AWTreeNode parent, AWTreeNode node) {
         newNodes.add(new AWTreeNode[] { parent, node });
     }
 
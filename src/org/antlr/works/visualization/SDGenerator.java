@@ -8,12 +8,14 @@ import org.antlr.works.visualization.graphics.*;
 import org.antlr.works.visualization.graphics.graph.GGraph;
 import org.antlr.works.visualization.serializable.SEncoder;
 import org.antlr.works.visualization.skin.syntaxdiagram.SDSkin;
-import org.antlr.xjlib.foundation.XJUtils;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 
 /*
 
@@ -51,6 +53,9 @@ public class SDGenerator implements GContextProvider {
     public GrammarEngine engine;
     public GContext context;
 
+    private GDiskCache diskCache;
+    private String grammarPath;
+
     public SDGenerator(GrammarEngine engine) {
         this.engine = engine;
 
@@ -59,6 +64,12 @@ public class SDGenerator implements GContextProvider {
         context.setProvider(this);
     }
 
+    /** Loads and stores the graphs of the grammar at the specified path in the disk cache */
+    public void setDiskCache(GDiskCache cache, String grammarPath) {
+        this.diskCache = cache;
+        this.grammarPath = grammarPath;
+    }
+
     public void serializeRule(String name, SEncoder encoder) throws Exception {
         GGraph graph = createGraph(name);
         encoder.write(graph);
@@ -66,10 +77,12 @@ public class SDGenerator implements GContextProvider {
 
     public void renderRuleToEPSFile(String ruleName, String file) throws Exception {
         GGraph graph = createGraph(ruleName);
-        GEnginePS engine = new GEnginePS();
-        context.setEngine(engine);
-        graph.draw();
-        XJUtils.writeStringToFile(engine.getPSText(), file);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            GEnginePS.writeEPS(graph, out);
+        } finally {
+            out.close();
+        }
     }
 
     public void renderRuleToBitmapFile(String ruleName, String imageFormat, String file) throws Exception {
@@ -96,7 +109,9 @@ public class SDGenerator implements GContextProvider {
     }
 
     private GGraph createGraph(String ruleName) throws Exception {
-        GGraph graph = new GFactory().buildGraphsForRule(engine.getANTLRGrammarEngine(), ruleName);
+        GFactory factory = new GFactory();
+        factory.setDiskCache(diskCache, grammarPath);
+        GGraph graph = factory.buildGraphsForRule(engine.getANTLRGrammarEngine(), ruleName);
         graph.setContext(context);
         graph.render(0,0);
         return graph;
@@ -142,6 +142,10 @@ public class SyntaxDiagramTab extends GrammarWindowTab implements GContextProvid
         drawing.clearCacheGraphs();
     }
 
+    public void invalidateCacheGraphs() {
+        drawing.invalidateCacheGraphs();
+    }
+
     public void createGraphsForRule(ElementRule rule) throws Exception {
         drawing.createGraphsForRule(rule);
     }
@@ -155,6 +159,11 @@ public class SyntaxDiagramTab extends GrammarWindowTab implements GContextProvid
         return window.getGrammarEngine().getRootEngine().getANTLRGrammarEngine();
     }
 
+    /** Returns the path of the grammar or null if the grammar has never been saved */
+    public String getGrammarPath() {
+        return window.getFilePath();
+    }
+
     public Container getContainer() {
         return panel.getContainer();
     }
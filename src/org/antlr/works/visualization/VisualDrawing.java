@@ -32,15 +32,23 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package org.antlr.works.visualization;
 
 import org.antlr.analysis.NFAState;
+import org.antlr.tool.Grammar;
+import org.antlr.works.ate.syntax.misc.ATETaskScheduler;
 import org.antlr.works.ate.syntax.misc.ATEThread;
+import org.antlr.works.grammar.antlr.ANTLRGrammarEngine;
+import org.antlr.works.grammar.antlr.GrammarError;
 import org.antlr.works.grammar.element.ElementRule;
 import org.antlr.works.prefs.AWPrefs;
 import org.antlr.works.utils.Console;
 import org.antlr.works.utils.ErrorListener;
+import org.antlr.works.visualization.fa.FAFingerprint;
+import org.antlr.works.visualization.graphics.GDiskCache;
 import org.antlr.works.visualization.graphics.GFactory;
 
 import javax.swing.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -57,10 +65,25 @@ public class VisualDrawing extends ATEThread {
     protected ElementRule threadRule;
     protected ElementRule threadLastProcessedRule;
 
-    protected Map<ElementRule,List> cacheGraphs = new HashMap<ElementRule, List>();
+    /** Maximum number of rules whose graphs are kept in cache */
+    public static final int CACHE_SIZE = 64;
+
+    /** Number of rules before and after the displayed one whose graphs are created in advance */
+    public static final int PRECOMPUTE_DISTANCE = 2;
+
+    /** Graphs of the most recently displayed rules, by name. An entry is valid as long as the
+     * fingerprint of the rule doesn't change.
+     */
+    protected Map<String,CachedGraphs> cacheGraphs = new LinkedHashMap<String, CachedGraphs>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedGraphs> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
 
     public VisualDrawing(SyntaxDiagramTab syntaxDiagramTab) {
         this.syntaxDiagramTab = syntaxDiagramTab;
+        setPriority(ATETaskScheduler.Priority.DIAGRAM);
         start();
     }
 
@@ -71,7 +94,9 @@ public class VisualDrawing extends ATEThread {
     }
 
     public void toggleNFAOptimization() {
-        factory.toggleNFAOptimization();
+        synchronized(factory) {
+            factory.toggleNFAOptimization();
+        }
         clearCacheGraphs();
     }
 
@@ -89,11 +114,55 @@ public class VisualDrawing extends ATEThread {
         cacheGraphs.clear();
     }
 
+    /**
+     * Marks the graphs in cache to be checked again before they are displayed (i.e. because
+     * the errors of the rules might have changed). Only the rules whose fingerprint changed
+     * are created again.
+     */
+    public synchronized void invalidateCacheGraphs() {
+        for(CachedGraphs cached : cacheGraphs.values()) {
+            cached.checked = false;
+        }
+    }
+
+    /**
+     * Removes from the cache the graphs of the rules whose NFA changed.
+     */
+    protected void pruneCacheGraphs() {
+        ANTLRGrammarEngine engine = syntaxDiagramTab.getEngineGrammar();
+        if(!engine.hasGrammar()) {
+            clearCacheGraphs();
+            return;
+        }
+
+        // The fingerprints are computed without holding the lock of the cache
+        Map<String,CachedGraphs> entries;
+        synchronized(this) {
+            entries = new HashMap<String, CachedGraphs>(cacheGraphs);
+        }
+        for(Map.Entry<String,CachedGraphs> entry : entries.entrySet()) {
+            Long fingerprint = getNFAFingerprint(engine, entry.getKey());
+            if(fingerprint == null || fingerprint != entry.getValue().nfaFingerprint) {
+                removeCachedGraphs(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private synchronized void removeCachedGraphs(String name, CachedGraphs cached) {
+        if(cacheGraphs.get(name) == cached) {
+            cacheGraphs.remove(name);
+        }
+    }
+
     /**
      * Tries to refresh the current graph in cache. If the graphs are not in cache, return false.
      */
     public synchronized boolean refresh() {
-        final List graphs = cacheGraphs.get(threadLastProcessedRule);
+        if(threadLastProcessedRule == null)
+            return false;
+
+        CachedGraphs cached = cacheGraphs.get(threadLastProcessedRule.name);
+        final List graphs = cached == null || !cached.checked ? null : cached.graphs;
         if(graphs == null || graphs.isEmpty()) {
             return false;
         } else {
@@ -140,8 +209,8 @@ public class VisualDrawing extends ATEThread {
         } catch (Exception e) {
             // ignore
         } finally {
-            // Flush all caches in cache because the grammar has changed
-            clearCacheGraphs();
+            // Flush the graphs of the rules that changed
+            pruneCacheGraphs();
         }
     }
 
@@ -180,16 +249,133 @@ public class VisualDrawing extends ATEThread {
         threadLastProcessedRule = threadRule;
 
         refresh();
+
+        precomputeNeighbourRules(threadRule);
+    }
+
+    /**
+     * Creates in the background the graphs of the rules around the one being displayed so
+     * they are ready when the caret moves to them. Stops as soon as there is something else
+     * to process.
+     */
+    private void precomputeNeighbourRules(ElementRule rule) {
+        List<ElementRule> rules = syntaxDiagramTab.getEngineGrammar().getGrammarEngine().getRules();
+        if(rules == null)
+            return;
+
+        int index = rules.indexOf(rule);
+        if(index == -1)
+            return;
+
+        List<ElementRule> neighbours = new ArrayList<ElementRule>();
+        for(int distance = 1; distance <= PRECOMPUTE_DISTANCE; distance++) {
+            if(index+distance < rules.size()) neighbours.add(rules.get(index+distance));
+            if(index-distance >= 0) neighbours.add(rules.get(index-distance));
+        }
+
+        for(ElementRule neighbour : neighbours) {
+            if(threadShouldProcess() || !isRunning())
+                return;
+            try {
+                createGraphsForRule(neighbour);
+            } catch (Exception e) {
+                // ignore: the error will be reported if the rule is displayed
+            }
+        }
     }
 
-    protected synchronized void createGraphsForRule(ElementRule rule) throws Exception {
-        List graphs = cacheGraphs.get(rule);
-        if(graphs == null) {
-            factory.setOptimize(!AWPrefs.getDebugDontOptimizeNFA());
+    /**
+     * Creates the graphs of the rule if they are not in cache or if the rule changed. The graphs
+     * are built without holding the lock of this object so the event thread isn't blocked.
+     */
+    protected void createGraphsForRule(ElementRule rule) throws Exception {
+        ANTLRGrammarEngine engine = syntaxDiagramTab.getEngineGrammar();
+        boolean optimize = !AWPrefs.getDebugDontOptimizeNFA();
+
+        Long nfaFingerprint = getNFAFingerprint(engine, rule.name);
+        if(nfaFingerprint == null)
+            return;
+        long errorsFingerprint = getErrorsFingerprint(engine, rule);
+
+        synchronized(this) {
+            CachedGraphs cached = cacheGraphs.get(rule.name);
+            if(cached != null && cached.nfaFingerprint == nfaFingerprint && cached.errorsFingerprint == errorsFingerprint
+                    && cached.optimize == optimize) {
+                cached.checked = true;
+                return;
+            }
+        }
+
+        List graphs;
+        synchronized(factory) {
+            factory.setOptimize(optimize);
             factory.setConsole(syntaxDiagramTab.getConsole());
-            graphs = factory.buildGraphsForRule(syntaxDiagramTab.getEngineGrammar(), rule.name, rule.errors);
+            factory.setDiskCache(GDiskCache.getShared(), syntaxDiagramTab.getGrammarPath());
+            graphs = factory.buildGraphsForRule(engine, rule.name, rule.errors);
+        }
+
+        synchronized(this) {
             if(graphs != null)
-                cacheGraphs.put(rule, graphs);
+                cacheGraphs.put(rule.name, new CachedGraphs(graphs, nfaFingerprint, errorsFingerprint, optimize));
+            else
+                cacheGraphs.remove(rule.name);
+        }
+    }
+
+    /** Returns the fingerprint of the NFA of the rule or null if the rule doesn't exist */
+    private Long getNFAFingerprint(ANTLRGrammarEngine engine, String name) {
+        try {
+            NFAState startState = engine.getRuleStartState(name);
+            if(startState == null)
+                return null;
+            return FAFingerprint.compute(engine.getGrammarForRule(name), startState);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the fingerprint of the errors of the rule. The error paths refer to the states
+     * of the NFA by number: the fingerprint includes the numbers of the start states and
+     * the NFA of the rules involved in each error.
+     */
+    private long getErrorsFingerprint(ANTLRGrammarEngine engine, ElementRule rule) throws Exception {
+        FAFingerprint fingerprint = new FAFingerprint(engine.getGrammarForRule(rule.name));
+        if(rule.errors == null)
+            return fingerprint.getValue();
+
+        for(GrammarError error : rule.errors) {
+            fingerprint.update(error.messageText);
+            fingerprint.update(error.paths.size());
+            fingerprint.update(error.unreachableAlts.size());
+            for(String name : error.rules) {
+                Grammar g = engine.getGrammarForRule(name);
+                NFAState startState = g == null ? null : g.getRuleStartState(name);
+                fingerprint.update(name);
+                if(startState != null) {
+                    fingerprint.update(startState.stateNumber);
+                    fingerprint.updateNFA(startState);
+                }
+            }
+        }
+        return fingerprint.getValue();
+    }
+
+    protected static class CachedGraphs {
+
+        public final List graphs;
+        public final long nfaFingerprint;
+        public final long errorsFingerprint;
+        public final boolean optimize;
+
+        /** False if the graphs have to be checked before being displayed */
+        public boolean checked = true;
+
+        public CachedGraphs(List graphs, long nfaFingerprint, long errorsFingerprint, boolean optimize) {
+            this.graphs = graphs;
+            this.nfaFingerprint = nfaFingerprint;
+            this.errorsFingerprint = errorsFingerprint;
+            this.optimize = optimize;
         }
     }
 
@@ -0,0 +1,133 @@
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+package org.antlr.works.visualization.fa;
+
+import org.antlr.analysis.NFAState;
+import org.antlr.analysis.RuleClosureTransition;
+import org.antlr.analysis.Transition;
+import org.antlr.tool.Grammar;
+
+import java.util.*;
+
+/** This class computes a fingerprint of the NFA of a rule: two rules with the same fingerprint
+ * produce the same syntax diagram. The fingerprint covers the structure of the NFA, the labels
+ * of its transitions and the names of the rules it references, but not the numbers of the states
+ * which change as soon as a rule above is modified.
+ */
+
+public class FAFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Grammar g;
+    private long hash = FNV_OFFSET;
+
+    public FAFingerprint(Grammar g) {
+        this.g = g;
+    }
+
+    public static long compute(Grammar g, NFAState start) {
+        FAFingerprint fingerprint = new FAFingerprint(g);
+        fingerprint.updateNFA(start);
+        return fingerprint.getValue();
+    }
+
+    public long getValue() {
+        return hash;
+    }
+
+    /** Visits the states of the rule in breadth-first order: each state is identified by
+     * the order in which it is discovered.
+     */
+    public void updateNFA(NFAState start) {
+        Map<NFAState,Integer> ids = new IdentityHashMap<NFAState, Integer>();
+        LinkedList<NFAState> queue = new LinkedList<NFAState>();
+        ids.put(start, 0);
+        queue.add(start);
+
+        while(!queue.isEmpty()) {
+            NFAState state = queue.removeFirst();
+            update(ids.get(state));
+
+            if(state.isAcceptState()) {
+                // The diagram stops at the accept state
+                update(-1);
+                continue;
+            }
+
+            update(state.getNumberOfTransitions());
+            for(int t=0; t<state.getNumberOfTransitions(); t++) {
+                Transition transition = state.transition(t);
+                NFAState target;
+                if(transition instanceof RuleClosureTransition) {
+                    RuleClosureTransition rct = (RuleClosureTransition)transition;
+                    update(g.getRuleName(rct.rule.index));
+                    target = rct.followState;
+                } else {
+                    update(transition.isEpsilon() ? null : transition.label.toString(g));
+                    target = (NFAState)transition.target;
+                }
+
+                Integer id = ids.get(target);
+                if(id == null) {
+                    id = ids.size();
+                    ids.put(target, id);
+                    queue.add(target);
+                }
+                update(id);
+            }
+        }
+    }
+
+    public void update(String s) {
+        if(s == null) {
+            update(-2);
+            return;
+        }
+        update(s.length());
+        for(int i=0; i<s.length(); i++) {
+            mix(s.charAt(i));
+        }
+    }
+
+    public void update(long value) {
+        for(int i=0; i<8; i++) {
+            mix((int)(value >>> (i*8)) & 0xFF);
+        }
+    }
+
+    private void mix(int value) {
+        hash ^= value;
+        hash *= FNV_PRIME;
+    }
+
+}
@@ -0,0 +1,289 @@
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package org.antlr.works.visualization.graphics;
+
+import org.antlr.works.prefs.AWPrefs;
+import org.antlr.works.visualization.graphics.graph.GGraph;
+import org.antlr.works.visualization.serializable.SGraphCodec;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Persistent cache of the rendered graphs of the rules, shared by the IDE and the console. Each graph is
+ * stored in its own file, keyed by the path of the grammar, the name of the rule, the fingerprint of the
+ * NFA of the rule and the optimization flag of the GFactory.
+ *
+ * An entry starts with a header (magic number, version, key, length and CRC32 of the payload): an entry that
+ * doesn't match its header is deleted and treated as missing. An entry is first written to a temporary file
+ * and then renamed so a reader never sees a partial entry. When the cache grows over its maximum size, the
+ * least recently used entries are deleted.
+ */
+public class GDiskCache {
+
+    private static final int MAGIC = 0x53444743; // "SDGC"
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".sdg";
+
+    /** Fraction of the maximum size the cache is trimmed to when it overflows */
+    private static final float TRIM_RATIO = 0.75f;
+
+    private static GDiskCache shared;
+    private static boolean sharedCreated = false;
+
+    private final File directory;
+    private final long maxSize;
+    private long size = -1;
+
+    public GDiskCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cache located in the directory specified by the preferences or null if the cache is disabled
+     * or if the directory cannot be created.
+     */
+    public static synchronized GDiskCache getShared() {
+        if(!sharedCreated) {
+            sharedCreated = true;
+            String path = AWPrefs.getSDCachePath();
+            if(path != null && path.length() > 0) {
+                shared = create(new File(path), AWPrefs.getSDCacheSize()*1024L*1024L);
+            }
+        }
+        return shared;
+    }
+
+    public static GDiskCache create(File directory, long maxSize) {
+        if(!directory.isDirectory() && !directory.mkdirs())
+            return null;
+        return new GDiskCache(directory, maxSize);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public GGraph get(String grammarPath, String rule, long fingerprint, boolean optimize) {
+        String key = getKey(grammarPath, rule, fingerprint, optimize);
+        File file = getFile(key);
+        if(!file.exists())
+            return null;
+
+        GGraph graph = null;
+        try {
+            graph = readEntry(file, key);
+        } catch (IOException e) {
+            // Invalid entry (corrupted or written by another version)
+        } catch (RuntimeException e) {
+            // Entry with a valid checksum but not decodable
+        }
+
+        if(graph == null) {
+            delete(file);
+        } else {
+            // Least recently used entries are evicted first
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return graph;
+    }
+
+    public void put(String grammarPath, String rule, long fingerprint, boolean optimize, GGraph graph) {
+        String key = getKey(grammarPath, rule, fingerprint, optimize);
+        File file = getFile(key);
+        File temp = null;
+        try {
+            temp = File.createTempFile("entry", ".tmp", directory);
+            writeEntry(temp, key, graph);
+
+            long previous = file.length();
+            // renameTo() doesn't replace an existing file on every platform
+            if(file.exists() && !file.delete() || !temp.renameTo(file)) {
+                delete(temp);
+                return;
+            }
+            sizeChanged(file.length()-previous);
+        } catch (IOException e) {
+            // The cache is only an optimization: a graph that cannot be written is simply not cached
+            if(temp != null) {
+                delete(temp);
+            }
+        }
+    }
+
+    /** Deletes all the entries of the cache */
+    public synchronized void clear() {
+        for(File file : listEntries()) {
+            delete(file);
+        }
+        size = 0;
+    }
+
+    private GGraph readEntry(File file, String key) throws IOException {
+        // The entries are small: reading the whole file makes the length check trivial
+        byte[] data = new byte[(int)file.length()];
+        DataInputStream fileIn = new DataInputStream(new FileInputStream(file));
+        try {
+            fileIn.readFully(data);
+        } finally {
+            fileIn.close();
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if(in.readInt() != MAGIC || in.readInt() != VERSION || !key.equals(in.readUTF()))
+            return null;
+
+        int length = in.readInt();
+        long checksum = in.readLong();
+        if(length != in.available())
+            return null;
+
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if(crc.getValue() != checksum)
+            return null;
+
+        return SGraphCodec.read(new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(payload))));
+    }
+
+    private void writeEntry(File file, String key, GGraph graph) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream payloadOut = new DataOutputStream(new DeflaterOutputStream(bytes));
+        SGraphCodec.write(graph, payloadOut);
+        payloadOut.close();
+        byte[] payload = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            out.writeInt(payload.length);
+            out.writeLong(crc.getValue());
+            out.write(payload);
+        } finally {
+            out.close();
+        }
+    }
+
+    private synchronized void sizeChanged(long delta) {
+        if(size == -1) {
+            // First change: the size of the directory includes the new entry
+            size = 0;
+            for(File file : listEntries()) {
+                size += file.length();
+            }
+        } else {
+            size += delta;
+        }
+
+        if(size > maxSize) {
+            trim();
+        }
+    }
+
+    private void trim() {
+        File[] files = listEntries();
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+
+        size = 0;
+        for(File file : files) {
+            size += file.length();
+        }
+        for(File file : files) {
+            if(size <= maxSize*TRIM_RATIO)
+                break;
+            long length = file.length();
+            if(delete(file)) {
+                size -= length;
+            }
+        }
+    }
+
+    private File[] listEntries() {
+        File[] files = directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().endsWith(EXTENSION);
+            }
+        });
+        return files == null ? new File[0] : files;
+    }
+
+    private File getFile(String key) {
+        return new File(directory, digest(key)+EXTENSION);
+    }
+
+    private static String getKey(String grammarPath, String rule, long fingerprint, boolean optimize) {
+        return grammarPath+"\n"+rule+"\n"+Long.toHexString(fingerprint)+"\n"+optimize;
+    }
+
+    private static String digest(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder();
+            for(byte b : digest) {
+                sb.append(Integer.toHexString((b >> 4) & 0xF));
+                sb.append(Integer.toHexString(b & 0xF));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // MD5 is required to be available on every Java platform
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean delete(File file) {
+        return file.delete() || !file.exists();
+    }
+
+}
@@ -1,8 +1,11 @@
 package org.antlr.works.visualization.graphics;
 
+import org.antlr.works.visualization.graphics.graph.GGraphAbstract;
 import org.antlr.xjlib.appkit.swing.XJGraphics2DPS;
 
 import java.awt.*;
+import java.io.IOException;
+import java.io.OutputStream;
 /*
 
 [The "BSD licence"]
@@ -38,9 +41,48 @@ public class GEnginePS extends GEngineGraphics {
 
     protected XJGraphics2DPS g2d;
 
+    public static final int MARGIN = 10;
+
     public GEnginePS() {
-        g2d = new XJGraphics2DPS();
-        g2d.setMargins(10, 10);
+        this(new XJGraphics2DPS());
+    }
+
+    /** Creates an engine streaming the EPS program of a drawing with the specified bounds to the output stream */
+    public GEnginePS(OutputStream out, Rectangle bounds) {
+        this(new XJGraphics2DPS(out, bounds));
+    }
+
+    protected GEnginePS(XJGraphics2DPS g2d) {
+        this.g2d = g2d;
+        this.g2d.setMargins(MARGIN, MARGIN);
+    }
+
+    /**
+     * Writes the EPS program of the graph to the output stream without building it in memory. The graph is
+     * drawn a first time to measure its bounding box and a second time to stream the program.
+     */
+    public static void writeEPS(GGraphAbstract graph, OutputStream out) throws IOException {
+        GContext context = graph.getContext();
+        GEngine oldEngine = context.engine;
+        try {
+            GEnginePS measure = new GEnginePS(XJGraphics2DPS.createMeasure());
+            context.setEngine(measure);
+            graph.draw();
+
+            GEnginePS engine = new GEnginePS(out, measure.g2d.getDrawingBounds());
+            context.setEngine(engine);
+            graph.draw();
+            engine.finish();
+        } finally {
+            if(oldEngine == null)
+                context.engine = null;
+            else
+                context.setEngine(oldEngine);
+        }
+    }
+
+    public void finish() throws IOException {
+        g2d.finish();
     }
 
     public Graphics2D getG2D() {
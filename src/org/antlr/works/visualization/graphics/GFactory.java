@@ -37,6 +37,7 @@ import org.antlr.works.grammar.antlr.ANTLRGrammarEngine;
 import org.antlr.works.grammar.antlr.GrammarError;
 import org.antlr.works.utils.Console;
 import org.antlr.works.visualization.fa.FAFactory;
+import org.antlr.works.visualization.fa.FAFingerprint;
 import org.antlr.works.visualization.fa.FAState;
 import org.antlr.works.visualization.graphics.graph.GGraph;
 import org.antlr.works.visualization.graphics.graph.GGraphGroup;
@@ -51,6 +52,9 @@ public class GFactory {
     protected boolean optimize = true;
     protected Console console = null;
 
+    protected GDiskCache diskCache = null;
+    protected String grammarPath = null;
+
     public GFactory() {
     }
 
@@ -66,6 +70,15 @@ public class GFactory {
         this.console = console;
     }
 
+    /**
+     * Sets the disk cache used to load and store the graphs of the rules (without errors) of the
+     * grammar located at the specified path. A null cache or path disables the disk cache.
+     */
+    public void setDiskCache(GDiskCache cache, String grammarPath) {
+        this.diskCache = cache;
+        this.grammarPath = grammarPath;
+    }
+
     public List buildGraphsForRule(ANTLRGrammarEngine antlrEngineGrammar, String rule, List<GrammarError> errors) throws Exception {
         if(antlrEngineGrammar == null)
             return null;
@@ -81,10 +94,25 @@ public class GFactory {
         if(startState == null)
             return null;
 
-        FAState state = new FAFactory(antlrEngineGrammar.getGrammarForRule(rule)).buildNFA(startState, optimize);
+        Grammar grammar = antlrEngineGrammar.getGrammarForRule(rule);
+        boolean useDiskCache = diskCache != null && grammarPath != null;
+        long fingerprint = 0;
+        if(useDiskCache) {
+            fingerprint = FAFingerprint.compute(grammar, startState);
+            GGraph graph = diskCache.get(grammarPath, rule, fingerprint, optimize);
+            if(graph != null) {
+                graph.setName(rule);
+                return graph;
+            }
+        }
+
+        FAState state = new FAFactory(grammar).buildNFA(startState, optimize);
         GGraph graph = renderer.render(state);
         graph.setName(rule);
 
+        if(useDiskCache)
+            diskCache.put(grammarPath, rule, fingerprint, optimize, graph);
+
         return graph;
     }
 
@@ -33,6 +33,7 @@ package org.antlr.works.visualization.graphics.graph;
 
 import org.antlr.analysis.NFAState;
 import org.antlr.works.visualization.graphics.GContext;
+import org.antlr.works.visualization.graphics.GObject;
 import org.antlr.works.visualization.graphics.primitive.GDimension;
 import org.antlr.works.visualization.graphics.shape.GLink;
 import org.antlr.works.visualization.graphics.shape.GNode;
@@ -53,6 +54,9 @@ public class GGraph extends GGraphAbstract implements SSerializable {
     public float offsetX = 0;
     public float offsetY = 0;
 
+    /** Index of the nodes and links, built on demand after each rendering */
+    private volatile GSpatialIndex index;
+
     public void setEnable(boolean flag) {
         
     }
@@ -73,6 +77,11 @@ public class GGraph extends GGraphAbstract implements SSerializable {
         this.dimension = dimension;
     }
 
+    /** Returns the dimension of the graph without the name of the rule */
+    public GDimension getLayoutDimension() {
+        return dimension;
+    }
+
     public void setNodes(List<GNode> nodes) {
         this.nodes = nodes;
     }
@@ -108,12 +117,24 @@ public class GGraph extends GGraphAbstract implements SSerializable {
         offsetX = ox;
         offsetY = oy;
 
+        // The positions changed: the index is built again when needed
+        index = null;
+
         setRendered(true);
     }
 
     public static final int TITLE_OFFSET = 100;
+    public static final int SPATIAL_INDEX_CELL_SIZE = 128;
 
     public void draw() {
+        draw(null);
+    }
+
+    /**
+     * Draws only the nodes and links intersecting the area (in the coordinates of the graph)
+     * or the whole graph if the area is null.
+     */
+    public void draw(Rectangle area) {
         context.nodeColor = Color.black;
         context.linkColor = Color.black;
         context.setLineWidth(1);
@@ -123,8 +144,14 @@ public class GGraph extends GGraphAbstract implements SSerializable {
             context.drawString(context.getRuleFont(), name, offsetX, offsetY, GContext.ALIGN_LEFT);            
         }
 
-        for (GNode node : nodes) {
-            node.drawNodeAndLink();
+        if(area == null) {
+            for (GNode node : nodes) {
+                node.drawNodeAndLink();
+            }
+        } else {
+            for (GObject object : getSpatialIndex().query(area)) {
+                object.draw();
+            }
         }
 
         if(context.drawdimension) {
@@ -137,6 +164,14 @@ public class GGraph extends GGraphAbstract implements SSerializable {
         }
     }
 
+    public GSpatialIndex getSpatialIndex() {
+        GSpatialIndex index = this.index;
+        if(index == null) {
+            this.index = index = GSpatialIndex.create(this, SPATIAL_INDEX_CELL_SIZE);
+        }
+        return index;
+    }
+
     public GLink findLinkAtPosition(int x, int y) {
         for (GNode node : nodes) {
             for (GLink link : node.links) {
@@ -34,6 +34,8 @@ package org.antlr.works.visualization.graphics.graph;
 import org.antlr.works.visualization.graphics.GObject;
 import org.antlr.works.visualization.graphics.primitive.GDimension;
 
+import java.awt.*;
+
 public abstract class GGraphAbstract extends GObject {
 
     private boolean rendered = false;
@@ -46,6 +48,9 @@ public abstract class GGraphAbstract extends GObject {
     public abstract void render(float ox, float oy);
     public abstract void draw();
 
+    /** Draws only what intersects the area (in the coordinates of the graph) or everything if the area is null */
+    public abstract void draw(Rectangle area);
+
     public synchronized void setRendered(boolean flag) {
         this.rendered = flag;
     }
@@ -379,12 +379,27 @@ public class GGraphGroup extends GGraphAbstract {
     }
 
     public void draw() {
+        draw(null);
+    }
+
+    /**
+     * Draws only the graphs intersecting the area, each one drawing only its nodes and links
+     * intersecting the area. The paths are always drawn: there are only a few of them.
+     */
+    public void draw(Rectangle area) {
         context.nodeColor = Color.black;
         context.linkColor = Color.black;
         context.setLineWidth(1);
 
         for (GGraph graph : getGraphs()) {
-            graph.draw();
+            if(area != null) {
+                // The graphs are stacked vertically: skip the ones above or below the area
+                float top = graph.offsetY-graph.getDimension().getPixelUp(context);
+                float bottom = graph.offsetY+graph.getDimension().getPixelDown(context);
+                if(bottom < area.y || top > area.y+area.height)
+                    continue;
+            }
+            graph.draw(area);
         }
 
         getPathGroup().draw();
@@ -0,0 +1,179 @@
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package org.antlr.works.visualization.graphics.graph;
+
+import org.antlr.works.visualization.graphics.GContext;
+import org.antlr.works.visualization.graphics.GObject;
+import org.antlr.works.visualization.graphics.shape.GLink;
+import org.antlr.works.visualization.graphics.shape.GNode;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Uniform grid over the nodes and the links of a rendered graph so only the elements
+ * intersecting an area (i.e. a tile or the clip of a repaint) are drawn. The bounds of
+ * each element are conservative: they enclose everything the skin draws for it (boxes,
+ * labels, sloops and arrows).
+ *
+ * The index is built from the pixel positions cached by GGraph.render() and must be
+ * created again each time the graph is rendered.
+ */
+public class GSpatialIndex {
+
+    private final int cellSize;
+    private final Map<Long, List<Entry>> cells = new HashMap<Long, List<Entry>>();
+    private int count = 0;
+
+    public GSpatialIndex(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public static GSpatialIndex create(GGraph graph, int cellSize) {
+        GSpatialIndex index = new GSpatialIndex(cellSize);
+        GContext context = graph.getContext();
+        int padding = (int)Math.ceil(context.getPixelArrowWidth()+context.getPixelArrowHeight())+2;
+
+        // Same order as GGraph.draw(): the links of a node and then the node
+        for(GNode node : graph.nodes) {
+            for(GLink link : node.links) {
+                index.add(link, getLinkBounds(context, link), padding);
+            }
+            index.add(node, getNodeBounds(context, node), padding);
+        }
+        return index;
+    }
+
+    private static Rectangle2D getNodeBounds(GContext context, GNode node) {
+        float x = node.getX();
+        float y = node.getY();
+        return new Rectangle2D.Float(x, y-node.nodeDimension.getPixelUp(context),
+                node.nodeDimension.getPixelWidth(context),
+                node.nodeDimension.getPixelUp(context)+node.nodeDimension.getPixelDown(context));
+    }
+
+    private static Rectangle2D getLinkBounds(GContext context, GLink link) {
+        float sx = link.source.getX();
+        float sy = link.source.getY();
+        Rectangle2D r = new Rectangle2D.Float(sx, sy, 0, 0);
+        r.add(link.target.getX(), link.target.getY());
+
+        if(link.virtualPosition != null) {
+            r.add(sx, link.getVirtualY());
+        }
+
+        if(link.transition != null && !link.transition.isEpsilon()) {
+            float width = link.source.linkDimension.getPixelWidth(context);
+            float height = context.getPixelBoxUp()+context.getPixelBoxDown();
+            r.add(sx+width, sy-height);
+            r.add(sx+width, sy+height);
+        }
+        return r;
+    }
+
+    public void add(GObject object, Rectangle2D bounds, int padding) {
+        Rectangle r = bounds.getBounds();
+        r.grow(padding, padding);
+
+        Entry entry = new Entry(object, r, count++);
+        int c0 = floorDiv(r.x), c1 = floorDiv(r.x+r.width);
+        int r0 = floorDiv(r.y), r1 = floorDiv(r.y+r.height);
+        for(int row=r0; row<=r1; row++) {
+            for(int col=c0; col<=c1; col++) {
+                Long key = getKey(col, row);
+                List<Entry> cell = cells.get(key);
+                if(cell == null) {
+                    cells.put(key, cell = new ArrayList<Entry>());
+                }
+                cell.add(entry);
+            }
+        }
+    }
+
+    /** Returns the elements intersecting the area, in the order they were added */
+    public List<GObject> query(Rectangle area) {
+        Set<Entry> found = new HashSet<Entry>();
+        int c0 = floorDiv(area.x), c1 = floorDiv(area.x+area.width);
+        int r0 = floorDiv(area.y), r1 = floorDiv(area.y+area.height);
+        for(int row=r0; row<=r1; row++) {
+            for(int col=c0; col<=c1; col++) {
+                List<Entry> cell = cells.get(getKey(col, row));
+                if(cell == null) continue;
+
+                for(Entry entry : cell) {
+                    if(entry.bounds.intersects(area)) {
+                        found.add(entry);
+                    }
+                }
+            }
+        }
+
+        Entry[] entries = found.toArray(new Entry[found.size()]);
+        Arrays.sort(entries);
+        List<GObject> objects = new ArrayList<GObject>(entries.length);
+        for(Entry entry : entries) {
+            objects.add(entry.object);
+        }
+        return objects;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private int floorDiv(int value) {
+        return value >= 0 ? value/cellSize : (value+1)/cellSize-1;
+    }
+
+    private static Long getKey(int col, int row) {
+        return ((long)col << 32) | (row & 0xFFFFFFFFL);
+    }
+
+    private static class Entry implements Comparable<Entry> {
+
+        public final GObject object;
+        public final Rectangle bounds;
+        public final int order;
+
+        public Entry(GObject object, Rectangle bounds, int order) {
+            this.object = object;
+            this.bounds = bounds;
+            this.order = order;
+        }
+
+        public int compareTo(Entry other) {
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+}
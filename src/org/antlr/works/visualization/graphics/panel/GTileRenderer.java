@@ -0,0 +1,239 @@
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package org.antlr.works.visualization.graphics.panel;
+
+import org.antlr.works.ate.ATEUtilities;
+import org.antlr.works.visualization.graphics.graph.GGraphAbstract;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Renders the graph of a GView in fixed-size tiles. Only the tiles of the visible part of the view are
+ * rendered, on a background thread, and kept in a LRU cache: a huge graph never needs an image of its
+ * full size and a repaint only draws the cached tiles.
+ *
+ * The tiles and the pending requests are only accessed from the event thread. Each invalidation starts
+ * a new generation: tiles rendered for an older generation are discarded. Until a tile of the current
+ * generation is ready, the tile of the previous generation (if any) is displayed to avoid flickering.
+ */
+public class GTileRenderer {
+
+    public static final int TILE_SIZE = 256;
+
+    /** Minimum number of tiles kept in cache (about 24 MB) */
+    private static final int MIN_CACHED_TILES = 96;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Syntax Diagram Tiles");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final GView view;
+
+    private final Map<Long, BufferedImage> tiles = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+            return size() > capacity;
+        }
+    };
+    private Map<Long, BufferedImage> staleTiles = new HashMap<Long, BufferedImage>();
+    private final Set<Long> pending = new HashSet<Long>();
+    private int capacity = MIN_CACHED_TILES;
+
+    private int generation = 0;
+    private volatile int currentGeneration = 0;
+    private volatile Rectangle visibleRect = new Rectangle();
+
+    /** Size of the painted area the tiles have been rendered for */
+    private int paintWidth = -1;
+    private int paintHeight = -1;
+
+    public GTileRenderer(GView view) {
+        this.view = view;
+    }
+
+    /** Discards the rendered tiles: the visible ones are rendered again at the next paint */
+    public void invalidate() {
+        if(!tiles.isEmpty()) {
+            staleTiles = new HashMap<Long, BufferedImage>(tiles);
+        }
+        tiles.clear();
+        pending.clear();
+        currentGeneration = ++generation;
+    }
+
+    /** Discards the rendered tiles and the tiles displayed while rendering */
+    public void clear() {
+        invalidate();
+        staleTiles.clear();
+    }
+
+    /**
+     * Paints the visible tiles of the area of the specified size. If resizing is true and the size changed,
+     * the existing tiles are scaled instead of being rendered again (useful for fast live resize).
+     */
+    public void paint(Graphics2D g, int width, int height, boolean resizing) {
+        if(width != paintWidth || height != paintHeight) {
+            if(resizing && !tiles.isEmpty()) {
+                Graphics2D gs = (Graphics2D)g.create();
+                gs.scale((double)width/paintWidth, (double)height/paintHeight);
+                for(Map.Entry<Long, BufferedImage> entry : tiles.entrySet()) {
+                    gs.drawImage(entry.getValue(), getColumn(entry.getKey())*TILE_SIZE, getRow(entry.getKey())*TILE_SIZE, null);
+                }
+                gs.dispose();
+                return;
+            }
+            clear();
+            paintWidth = width;
+            paintHeight = height;
+        }
+
+        Rectangle visible = view.getVisibleRect().intersection(new Rectangle(0, 0, width, height));
+        visibleRect = visible;
+        if(visible.isEmpty())
+            return;
+
+        int c0 = visible.x/TILE_SIZE;
+        int c1 = (visible.x+visible.width-1)/TILE_SIZE;
+        int r0 = visible.y/TILE_SIZE;
+        int r1 = (visible.y+visible.height-1)/TILE_SIZE;
+
+        // Keep at least twice the visible tiles so scrolling back and forth doesn't render them again
+        capacity = Math.max(MIN_CACHED_TILES, 2*(c1-c0+1)*(r1-r0+1));
+
+        for(int row=r0; row<=r1; row++) {
+            for(int col=c0; col<=c1; col++) {
+                Long key = getKey(col, row);
+                BufferedImage image = tiles.get(key);
+                if(image == null) {
+                    schedule(col, row, key);
+                    image = staleTiles.get(key);
+                }
+                if(image != null) {
+                    g.drawImage(image, col*TILE_SIZE, row*TILE_SIZE, null);
+                }
+            }
+        }
+    }
+
+    private void schedule(int col, int row, Long key) {
+        if(!pending.add(key))
+            return;
+
+        Rectangle tile = new Rectangle(col*TILE_SIZE, row*TILE_SIZE, TILE_SIZE, TILE_SIZE);
+        executor.execute(new TileTask(key, tile, generation, view.getCurrentGraph(), view.offset_x, view.offset_y));
+    }
+
+    private void tileRendered(Long key, Rectangle tile, int tileGeneration, BufferedImage image) {
+        if(tileGeneration != generation)
+            return;
+
+        pending.remove(key);
+        if(image != null) {
+            tiles.put(key, image);
+            staleTiles.remove(key);
+            view.repaint(tile);
+        }
+    }
+
+    private static Long getKey(int col, int row) {
+        return ((long)col << 32) | (row & 0xFFFFFFFFL);
+    }
+
+    private static int getColumn(long key) {
+        return (int)(key >> 32);
+    }
+
+    private static int getRow(long key) {
+        return (int)key;
+    }
+
+    private class TileTask implements Runnable {
+
+        private final Long key;
+        private final Rectangle tile;
+        private final int tileGeneration;
+        private final GGraphAbstract graph;
+        private final int offsetX;
+        private final int offsetY;
+
+        public TileTask(Long key, Rectangle tile, int tileGeneration, GGraphAbstract graph, int offsetX, int offsetY) {
+            this.key = key;
+            this.tile = tile;
+            this.tileGeneration = tileGeneration;
+            this.graph = graph;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+        }
+
+        public void run() {
+            BufferedImage image = null;
+            // Skip the tiles that are outdated or that have been scrolled out of the view in the meantime
+            if(tileGeneration == currentGeneration && visibleRect.intersects(tile) && graph != null) {
+                try {
+                    image = render();
+                } catch(Exception e) {
+                    // The graph changed while rendering: the tile is requested again at the next paint
+                }
+            }
+
+            final BufferedImage result = image;
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    tileRendered(key, tile, tileGeneration, result);
+                }
+            });
+        }
+
+        private BufferedImage render() {
+            BufferedImage image = new BufferedImage(tile.width, tile.height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            ATEUtilities.prepareForText(g);
+            g.setColor(Color.white);
+            g.fillRect(0, 0, tile.width, tile.height);
+            g.translate(-tile.x, -tile.y);
+            g.clip(tile);
+            view.render(g, graph, offsetX, offsetY, tile);
+            g.dispose();
+            return image;
+        }
+    }
+}
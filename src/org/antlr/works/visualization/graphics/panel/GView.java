@@ -52,11 +52,10 @@ import java.util.List;
 public class GView extends JPanel implements XJMenuItemDelegate {
 
     protected boolean useCachedImage = true;
-    protected boolean cachedImageRerender = false;
     protected boolean cachedImageResize = false;
 
     protected String placeholder;
-    protected BufferedImage cachedImage = null;
+    protected GTileRenderer tileRenderer = new GTileRenderer(this);
 
     protected List graphs = new ArrayList();
     protected int currentGraphIndex = 0;
@@ -105,6 +104,8 @@ public class GView extends JPanel implements XJMenuItemDelegate {
     @SuppressWarnings("unchecked")
     public void setGraphs(List graphs) {
         this.graphs.clear();
+        // The tiles of the previous graphs must not be displayed while the new ones are rendered
+        tileRenderer.clear();
 
         if(graphs == null)
             return;
@@ -140,11 +141,11 @@ public class GView extends JPanel implements XJMenuItemDelegate {
     }
 
     public void cacheInvalidate() {
-        cachedImage = null;
+        tileRenderer.invalidate();
     }
 
     public void cacheRerender() {
-        cachedImageRerender = true;
+        tileRenderer.invalidate();
     }
 
     public void setCacheResizeImage(boolean flag) {
@@ -168,8 +169,10 @@ public class GView extends JPanel implements XJMenuItemDelegate {
         if(currentGraphIndex>=graphs.size()) {
             currentGraphIndex = graphs.size()-1;
             return false;
-        } else
+        } else {
+            tileRenderer.clear();
             return true;
+        }
     }
 
     public boolean setPrevGraph() {
@@ -177,8 +180,10 @@ public class GView extends JPanel implements XJMenuItemDelegate {
         if(currentGraphIndex<0) {
             currentGraphIndex = 0;
             return false;
-        } else
+        } else {
+            tileRenderer.clear();
             return true;
+        }
     }
 
     public int getCurrentGraphIndex() {
@@ -205,8 +210,7 @@ public class GView extends JPanel implements XJMenuItemDelegate {
     }
 
     public void refresh() {
-        if(getCurrentGraph() != null)
-            getCurrentGraph().render(0, 0);
+        renderCurrentGraph();
 
         cacheInvalidate();
         adjustSize();
@@ -217,8 +221,7 @@ public class GView extends JPanel implements XJMenuItemDelegate {
         if(useCachedImage) {
             setCacheResizeImage(useCacheImageResize);
             if(!useCacheImageResize) {
-                if(getCurrentGraph() != null)
-                    getCurrentGraph().render(0, 0);
+                renderCurrentGraph();
                 cacheInvalidate();
             }
             adjustSize();
@@ -228,6 +231,15 @@ public class GView extends JPanel implements XJMenuItemDelegate {
         }
     }
 
+    /** Renders the current graph: the lock prevents a tile from being drawn while the layout is computed */
+    private void renderCurrentGraph() {
+        if(getCurrentGraph() != null) {
+            synchronized(context) {
+                getCurrentGraph().render(0, 0);
+            }
+        }
+    }
+
     public void adjustSize() {
         if(getCurrentGraph() == null || context == null)
             return;
@@ -295,12 +307,29 @@ public class GView extends JPanel implements XJMenuItemDelegate {
     }
 
     public void render(Graphics2D g2d) {
-        context.offsetX = offset_x;
-        context.offsetY = offset_y;
-        context.setGraphics2D(g2d);
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
-        getCurrentGraph().draw();
+        render(g2d, getCurrentGraph(), offset_x, offset_y, null);
+    }
+
+    /**
+     * Renders the graph at the specified offset. If the area (in the coordinates of the view) is not null,
+     * only the nodes and links intersecting this area are drawn. The context is shared by
+     * the event thread and the thread rendering the tiles so it is locked while drawing.
+     */
+    public void render(Graphics2D g2d, GGraphAbstract graph, int offsetX, int offsetY, Rectangle area) {
+        synchronized(context) {
+            context.offsetX = offsetX;
+            context.offsetY = offsetY;
+            context.setGraphics2D(g2d);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+            if(area != null) {
+                Rectangle r = new Rectangle(area);
+                r.translate(-offsetX, -offsetY);
+                graph.draw(r);
+            } else {
+                graph.draw();
+            }
+        }
     }
 
     public int getPaintWidth() {
@@ -324,54 +353,23 @@ public class GView extends JPanel implements XJMenuItemDelegate {
         int height = getPaintHeight();
 
         if(useCachedImage) {
-            boolean sizeChanged = cachedImage != null && (cachedImage.getWidth() != width || cachedImage.getHeight() != height);
-
-            if(sizeChanged) {
-                // Discard the cache image only if it already exists and if the cachedImageResize flag is false.
-                // The cachedImageResize flag indicates, if true, that we should use the cachedImage
-                // instead of re-creating a new one (useful for fast live resize).
-                if(!cachedImageResize && cachedImage != null) {
-                    cachedImage.flush();
-                    cachedImage = null;
-                }
-            }
-
-            if(cachedImage == null) {
-                // Create a new cache image.
-                cachedImage = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
-                Graphics2D gCache = (Graphics2D)cachedImage.getGraphics();
-                ATEUtilities.prepareForText(gCache);
-                gCache.setColor(Color.white);
-                gCache.fillRect(0, 0, width, height);
-                render(gCache);
-                gCache.dispose();
-            } else if(cachedImageRerender) {
-                // Only render the cachedImage without re-creating it again
-                Graphics2D gCache = (Graphics2D)cachedImage.getGraphics();
-                ATEUtilities.prepareForText(gCache);
-                gCache.setColor(Color.white);
-                gCache.fillRect(0, 0, width, height);
-                render(gCache);
-                gCache.dispose();
-                cachedImageRerender = false;
-            }
+            tileRenderer.paint((Graphics2D)g, width, height, cachedImageResize);
+        } else {
+            render((Graphics2D)g, getCurrentGraph(), offset_x, offset_y, g.getClipBounds());
         }
 
-        if(cachedImage == null)
-            render((Graphics2D)g);
-        else
-            g.drawImage(cachedImage, 0, 0, width, height, null);
-
         if(!cachedImageResize && getCurrentGraph() instanceof GGraphGroup) {
             // Draw the selected segment of a path (and only if we are not resizing using only the cached image)
             Graphics2D g2d = (Graphics2D)g;
-            context.offsetX = offset_x;
-            context.offsetY = offset_y;
-            context.setGraphics2D(g2d);
-            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
-            g2d.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
-
-            getCurrentPathGroup().drawSelectedElement();
+            synchronized(context) {
+                context.offsetX = offset_x;
+                context.offsetY = offset_y;
+                context.setGraphics2D(g2d);
+                g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
+                g2d.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+
+                getCurrentPathGroup().drawSelectedElement();
+            }
         }
     }
 
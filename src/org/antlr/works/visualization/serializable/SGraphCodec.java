@@ -0,0 +1,380 @@
+package org.antlr.works.visualization.serializable;
+
+import org.antlr.works.visualization.fa.FAState;
+import org.antlr.works.visualization.fa.FATransition;
+import org.antlr.works.visualization.graphics.graph.GGraph;
+import org.antlr.works.visualization.graphics.primitive.GDimension;
+import org.antlr.works.visualization.graphics.primitive.GPoint;
+import org.antlr.works.visualization.graphics.shape.GLink;
+import org.antlr.works.visualization.graphics.shape.GNode;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-07 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * Binary encoding of a rendered graph: unlike the SXMLEncoder, it stores everything that is needed
+ * to rebuild the graph (the FA states and transitions, the nodes, the links and their layout) so a graph
+ * can be read back without building the NFA and rendering it again.
+ *
+ * The layout is made of symbolic expressions evaluated against the GContext of the graph: a graph read
+ * back only needs its context to be set and to be rendered at its position. The strings are written once
+ * and then referenced by index because the expressions of a graph are highly repetitive.
+ */
+public class SGraphCodec {
+
+    private static final int NULL = -1;
+    private static final int NEW_STRING = -2;
+
+    /** Upper bound of any count read back, so a damaged input cannot allocate a huge array */
+    private static final int MAX_COUNT = 1 << 24;
+
+    private SGraphCodec() {
+    }
+
+    public static void write(GGraph graph, DataOutputStream out) throws IOException {
+        new Writer(out).write(graph);
+    }
+
+    public static GGraph read(DataInputStream in) throws IOException {
+        return new Reader(in).read();
+    }
+
+    private static class Writer {
+
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        private final Map<FAState, Integer> states = new IdentityHashMap<FAState, Integer>();
+        private final List<FAState> statesList = new ArrayList<FAState>();
+        private final Map<FATransition, Integer> transitions = new IdentityHashMap<FATransition, Integer>();
+        private final List<FATransition> transitionsList = new ArrayList<FATransition>();
+        private final Map<GNode, Integer> nodes = new IdentityHashMap<GNode, Integer>();
+
+        public Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        public void write(GGraph graph) throws IOException {
+            collect(graph);
+
+            out.writeInt(statesList.size());
+            for(FAState state : statesList) {
+                out.writeInt(state.stateNumber);
+                out.writeBoolean(state.acceptedState);
+                out.writeBoolean(state.loop);
+                writeString(state.enclosingRuleName);
+                writeString(state.externalRuleRefName);
+            }
+
+            out.writeInt(transitionsList.size());
+            for(FATransition transition : transitionsList) {
+                writeState(transition.source);
+                writeState(transition.target);
+                writeString(transition.label);
+                out.writeBoolean(transition.loop);
+                out.writeBoolean(transition.externalRuleRef);
+                if(transition.skippedStates == null) {
+                    out.writeInt(NULL);
+                } else {
+                    out.writeInt(transition.skippedStates.size());
+                    for(Integer n : transition.skippedStates) {
+                        out.writeInt(n);
+                    }
+                }
+            }
+
+            // The transitions of each state, in order
+            for(FAState state : statesList) {
+                out.writeInt(state.transitions.size());
+                for(FATransition transition : state.transitions) {
+                    out.writeInt(transitions.get(transition));
+                }
+            }
+
+            writeString(graph.name);
+            writeDimension(graph.getLayoutDimension());
+
+            out.writeInt(graph.nodes.size());
+            for(GNode node : graph.nodes) {
+                writeState(node.state);
+                writePoint(node.position);
+                writeDimension(node.nodeDimension);
+                writeDimension(node.linkDimension);
+                out.writeBoolean(node.lastNodeOfRule);
+            }
+            for(GNode node : graph.nodes) {
+                out.writeInt(node.links.size());
+                for(GLink link : node.links) {
+                    out.writeInt(link.transition == null ? NULL : transitions.get(link.transition));
+                    writeNode(link.source);
+                    writeNode(link.target);
+                    writeDimension(link.branchDim);
+                    writePoint(link.virtualPosition);
+                    out.writeBoolean(link.last);
+                }
+            }
+        }
+
+        /** Numbers every state, transition and node reachable from the graph */
+        private void collect(GGraph graph) {
+            for(GNode node : graph.nodes) {
+                nodes.put(node, nodes.size());
+                addState(node.state);
+                for(GLink link : node.links) {
+                    addTransition(link.transition);
+                }
+            }
+            // The list grows while the transitions (and their states) are added
+            for(int index=0; index<statesList.size(); index++) {
+                for(FATransition transition : statesList.get(index).transitions) {
+                    addTransition(transition);
+                }
+            }
+        }
+
+        private void addState(FAState state) {
+            if(state != null && !states.containsKey(state)) {
+                states.put(state, statesList.size());
+                statesList.add(state);
+            }
+        }
+
+        private void addTransition(FATransition transition) {
+            if(transition != null && !transitions.containsKey(transition)) {
+                transitions.put(transition, transitionsList.size());
+                transitionsList.add(transition);
+                addState(transition.source);
+                addState(transition.target);
+            }
+        }
+
+        private void writeState(FAState state) throws IOException {
+            out.writeInt(state == null ? NULL : states.get(state));
+        }
+
+        private void writeNode(GNode node) throws IOException {
+            Integer index = node == null ? null : nodes.get(node);
+            out.writeInt(index == null ? NULL : index);
+        }
+
+        private void writeDimension(GDimension dimension) throws IOException {
+            if(dimension == null) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                writeString(dimension.width);
+                writeString(dimension.up);
+                writeString(dimension.down);
+            }
+        }
+
+        private void writePoint(GPoint point) throws IOException {
+            if(point == null) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                writeString(point.x);
+                writeString(point.y);
+            }
+        }
+
+        private void writeString(String s) throws IOException {
+            if(s == null) {
+                out.writeInt(NULL);
+                return;
+            }
+
+            Integer index = strings.get(s);
+            if(index == null) {
+                strings.put(s, strings.size());
+                // writeUTF() is limited to 64K and the expressions of a large rule can be longer
+                byte[] bytes = s.getBytes("UTF-8");
+                out.writeInt(NEW_STRING);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } else {
+                out.writeInt(index);
+            }
+        }
+    }
+
+    private static class Reader {
+
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<String>();
+
+        private FAState[] states;
+        private FATransition[] transitions;
+        private GNode[] nodes;
+
+        public Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        public GGraph read() throws IOException {
+            states = new FAState[readCount()];
+            for(int index=0; index<states.length; index++) {
+                FAState state = new FAState(in.readInt());
+                state.acceptedState = in.readBoolean();
+                state.loop = in.readBoolean();
+                state.enclosingRuleName = readString();
+                state.externalRuleRefName = readString();
+                states[index] = state;
+            }
+
+            transitions = new FATransition[readCount()];
+            for(int index=0; index<transitions.length; index++) {
+                FAState source = readState();
+                FATransition transition = new FATransition(readState());
+                transition.source = source;
+                transition.label = readString();
+                transition.loop = in.readBoolean();
+                transition.externalRuleRef = in.readBoolean();
+                int skipped = in.readInt();
+                if(skipped != NULL) {
+                    transition.skippedStates = new ArrayList<Integer>(checkCount(skipped));
+                    for(int i=0; i<skipped; i++) {
+                        transition.skippedStates.add(in.readInt());
+                    }
+                }
+                transitions[index] = transition;
+            }
+
+            for(FAState state : states) {
+                int count = readCount();
+                for(int i=0; i<count; i++) {
+                    state.transitions.add(readTransition());
+                }
+            }
+
+            GGraph graph = new GGraph();
+            String name = readString();
+            if(name != null) {
+                graph.setName(name);
+            }
+            graph.setDimension(readDimension());
+
+            nodes = new GNode[readCount()];
+            for(int index=0; index<nodes.length; index++) {
+                GNode node = new GNode();
+                node.setState(readState());
+                node.setPosition(readPoint());
+                node.nodeDimension = readDimension();
+                node.linkDimension = readDimension();
+                node.lastNodeOfRule = in.readBoolean();
+                nodes[index] = node;
+            }
+            for(GNode node : nodes) {
+                int count = readCount();
+                for(int i=0; i<count; i++) {
+                    GLink link = new GLink();
+                    link.transition = readTransition();
+                    link.setSource(readNode());
+                    link.target = readNode();
+                    link.branchDim = readDimension();
+                    link.virtualPosition = readPoint();
+                    link.last = in.readBoolean();
+                    node.links.add(link);
+                }
+            }
+            graph.setNodes(new ArrayList<GNode>(Arrays.asList(nodes)));
+            return graph;
+        }
+
+        private int readCount() throws IOException {
+            return checkCount(in.readInt());
+        }
+
+        private int checkCount(int count) throws IOException {
+            if(count < 0 || count > MAX_COUNT)
+                throw new IOException("Invalid count "+count);
+            return count;
+        }
+
+        private FAState readState() throws IOException {
+            return (FAState)readReference(states);
+        }
+
+        private FATransition readTransition() throws IOException {
+            return (FATransition)readReference(transitions);
+        }
+
+        private GNode readNode() throws IOException {
+            return (GNode)readReference(nodes);
+        }
+
+        private Object readReference(Object[] objects) throws IOException {
+            int index = in.readInt();
+            if(index == NULL)
+                return null;
+            if(index < 0 || index >= objects.length)
+                throw new IOException("Invalid reference "+index);
+            return objects[index];
+        }
+
+        private GDimension readDimension() throws IOException {
+            if(!in.readBoolean())
+                return null;
+            return new GDimension(readString(), readString(), readString());
+        }
+
+        private GPoint readPoint() throws IOException {
+            if(!in.readBoolean())
+                return null;
+            GPoint point = new GPoint();
+            point.x = readString();
+            point.y = readString();
+            return point;
+        }
+
+        private String readString() throws IOException {
+            int index = in.readInt();
+            if(index == NULL)
+                return null;
+
+            if(index == NEW_STRING) {
+                byte[] bytes = new byte[readCount()];
+                in.readFully(bytes);
+                String s = new String(bytes, "UTF-8");
+                strings.add(s);
+                return s;
+            }
+
+            if(index < 0 || index >= strings.size())
+                throw new IOException("Invalid string "+index);
+            return strings.get(index);
+        }
+    }
+}
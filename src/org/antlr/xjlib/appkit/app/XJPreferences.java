@@ -42,19 +42,45 @@ import java.awt.event.*;
 import java.io.*;
 import java.util.*;
 import java.util.List;
+import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.prefs.BackingStoreException;
+import java.util.prefs.PreferenceChangeEvent;
+import java.util.prefs.PreferenceChangeListener;
 import java.util.prefs.Preferences;
 
+/**
+ * The preferences of the application, backed by java.util.prefs.
+ *
+ * The values are cached once read: a value is read again from the backing store only if it is
+ * changed there (or invalidate() is called) and the objects are deserialized only once. The
+ * changes are visible immediately but written to the backing store in batch by a background
+ * thread, WRITE_DELAY ms after the first change. flush() writes the pending changes at once.
+ */
 public class XJPreferences {
 
+    /** Delay (in ms) before the changes are written to the backing store */
+    public static final int WRITE_DELAY = 500;
+
     protected Preferences prefs = null;
     protected Map<String,EventListener> bindings = new HashMap<String, EventListener>();
 
+    private final Map<String,Value> values = new ConcurrentHashMap<String, Value>();
+    private final Map<String,Value> pending = new LinkedHashMap<String, Value>();
+    private boolean writeScheduled = false;
+    private Timer writer;
+
     public XJPreferences(Class c) {
         this.prefs = Preferences.userNodeForPackage(c);
+        this.prefs.addPreferenceChangeListener(new PreferenceChangeListener() {
+            public void preferenceChange(PreferenceChangeEvent evt) {
+                backingStoreDidChange(evt.getKey());
+            }
+        });
     }
 
     public void flush() {
+        writePendingValues();
         try {
             prefs.flush();
         } catch (BackingStoreException e) {
@@ -62,32 +88,68 @@ public class XJPreferences {
         }
     }
 
+    /** Discards the cached values: they are read again from the backing store */
+    public void invalidate() {
+        synchronized(pending) {
+            values.keySet().retainAll(pending.keySet());
+        }
+    }
+
     public void setString(String key, String value) {
-        prefs.put(key, value);
+        if(value == null)
+            throw new NullPointerException();
+        setValue(key, new Value(value, null, false));
     }
 
     public String getString(String key, String def) {
-        return prefs.get(key, def);
+        String s = getValue(key).string;
+        return s == null ? def : s;
     }
 
     public void setInt(String key, int value) {
-        prefs.putInt(key, value);
+        setString(key, Integer.toString(value));
     }
 
     public void setInt(String key, Integer value) {
-        prefs.putInt(key, value);
+        setInt(key, value.intValue());
     }
 
     public int getInt(String key, int def) {
-        return prefs.getInt(key, def);
+        Value v = getValue(key);
+        if(v.decoded instanceof Integer)
+            return (Integer)v.decoded;
+        if(v.string == null)
+            return def;
+
+        try {
+            int i = Integer.parseInt(v.string);
+            v.decoded = i;
+            return i;
+        } catch (NumberFormatException e) {
+            return def;
+        }
     }
 
     public void setBoolean(String key, boolean value) {
-        prefs.putBoolean(key, value);
+        setString(key, String.valueOf(value));
     }
 
     public boolean getBoolean(String key, boolean def) {
-        return prefs.getBoolean(key, def);
+        Value v = getValue(key);
+        if(v.decoded instanceof Boolean)
+            return (Boolean)v.decoded;
+        if(v.string == null)
+            return def;
+
+        Boolean b;
+        if(v.string.equalsIgnoreCase("true"))
+            b = Boolean.TRUE;
+        else if(v.string.equalsIgnoreCase("false"))
+            b = Boolean.FALSE;
+        else
+            return def;
+        v.decoded = b;
+        return b;
     }
 
     public void setColor(String key, Color value) {
@@ -112,21 +174,35 @@ public class XJPreferences {
             ObjectOutput out = new ObjectOutputStream(bos);
             out.writeObject(obj);
             out.close();
-            prefs.putByteArray(key, bos.toByteArray());
+            setValue(key, new Value(null, bos.toByteArray(), false));
         } catch(Exception e) {
             System.err.println("Cannot set the object associated with key "+key+": "+e);
         }
     }
 
+    /** Returns the object associated with the key. The immutable objects (i.e. colors) are
+     * deserialized only once, the other ones each time so the caller can modify them.
+     */
     public Object getObject(String key, Object defaultObject) {
+        Value v = getValue(key);
+        if(v.decoded != null && !(v.decoded instanceof Integer) && !(v.decoded instanceof Boolean))
+            return v.decoded;
+
         try {
-            byte[] bytes = prefs.getByteArray(key, null);
+            byte[] bytes = v.bytes;
+            if(bytes == null && v.stored) {
+                bytes = prefs.getByteArray(key, null);
+                v.bytes = bytes;
+            }
             if(bytes == null)
                 return defaultObject;
 
             ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
             Object o = in.readObject();
             in.close();
+            if(isImmutable(o)) {
+                v.decoded = o;
+            }
             return o;
         } catch(Exception e) {
             System.err.println("Cannot get the object associated with key "+key+": "+e);
@@ -135,10 +211,11 @@ public class XJPreferences {
     }
 
     public void remove(String key) {
-        prefs.remove(key);
+        setValue(key, new Value(null, null, false));
     }
 
     public String[] getKeys() {
+        writePendingValues();
         try {
             return prefs.keys();
         } catch (BackingStoreException e) {
@@ -147,10 +224,94 @@ public class XJPreferences {
         return null;
     }
 
+    /** Returns the backing store after having written the pending changes */
     public Preferences getPreferences() {
+        writePendingValues();
         return prefs;
     }
 
+    private Value getValue(String key) {
+        Value v = values.get(key);
+        if(v == null) {
+            synchronized(pending) {
+                v = pending.get(key);
+                if(v == null) {
+                    v = new Value(prefs.get(key, null), null, true);
+                }
+                values.put(key, v);
+            }
+        }
+        return v;
+    }
+
+    private void setValue(String key, Value value) {
+        synchronized(pending) {
+            values.put(key, value);
+            pending.put(key, value);
+            if(!writeScheduled) {
+                writeScheduled = true;
+                if(writer == null) {
+                    writer = new Timer("XJPreferences Writer", true);
+                }
+                writer.schedule(new TimerTask() {
+                    public void run() {
+                        writePendingValues();
+                    }
+                }, WRITE_DELAY);
+            }
+        }
+    }
+
+    /** Writes the pending changes to the backing store */
+    public void writePendingValues() {
+        synchronized(pending) {
+            for(Map.Entry<String,Value> entry : pending.entrySet()) {
+                String key = entry.getKey();
+                Value v = entry.getValue();
+                if(v.bytes != null) {
+                    prefs.putByteArray(key, v.bytes);
+                } else if(v.string != null) {
+                    prefs.put(key, v.string);
+                } else {
+                    prefs.remove(key);
+                }
+            }
+            pending.clear();
+            writeScheduled = false;
+        }
+    }
+
+    private void backingStoreDidChange(String key) {
+        synchronized(pending) {
+            // A pending change is more recent than the one notified
+            if(!pending.containsKey(key)) {
+                values.remove(key);
+            }
+        }
+    }
+
+    private static boolean isImmutable(Object o) {
+        return o instanceof String || o instanceof Number || o instanceof Boolean
+                || o instanceof Color || o instanceof Font;
+    }
+
+    /** A cached value: the string stored for the key, or the serialized object for the objects */
+    private static class Value {
+
+        final String string;
+        /** True if the value has been read from the backing store */
+        final boolean stored;
+        volatile byte[] bytes;
+        /** The value converted to the type it is read as */
+        volatile Object decoded;
+
+        public Value(String string, byte[] bytes, boolean stored) {
+            this.string = string;
+            this.bytes = bytes;
+            this.stored = stored;
+        }
+    }
+
     // *** Bindings
 
     public void bindToPreferences(JComboBox component, String key, int defaultValue) {
@@ -0,0 +1,363 @@
+package org.antlr.xjlib.appkit.gview.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * The nodes and edges described by a DOT graph, as written by ANTLRWorks and ANTLR (i.e. before
+ * the layout done by the 'dot' tool). Only the attributes needed to lay out and draw the graph
+ * are kept: the labels, the shape and the size of the nodes and the direction of the graph.
+ *
+ * Example of DOT input:
+ digraph NFA {
+ rankdir=LR;
+ node [fontsize=11, label="s0", shape=circle, fixedsize=true, width=.4]; s0
+ node [fontsize=11, label="s1=>1", shape=doublecircle, fixedsize=true, width=.6]; s1=>1
+ s0 -> s1=>1 [fontsize=11, fontname="Courier", arrowsize=.7, label = "'a'", arrowhead = none];
+ }
+ */
+
+public class GDOTModel {
+
+    public List<Node> nodes = new ArrayList<Node>();
+    public List<Edge> edges = new ArrayList<Edge>();
+    public boolean leftToRight;
+
+    private final Map<String, Node> nodesByName = new HashMap<String, Node>();
+
+    public static GDOTModel parse(String dot) {
+        GDOTModel model = new GDOTModel();
+        new Parser(model, dot).parseGraph();
+        return model;
+    }
+
+    public Node getNode(String name) {
+        return nodesByName.get(name);
+    }
+
+    /**
+     * Returns a string describing everything the layout depends on: two models
+     * with the same signature have the same layout.
+     */
+    public String getSignature() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(leftToRight ? "LR" : "TB");
+        for(Node node : nodes) {
+            sb.append('\n').append(node.name).append('\t').append(node.label).append('\t').append(node.shape);
+            sb.append('\t').append(node.fixedsize).append('\t').append(node.width).append('\t').append(node.height);
+        }
+        for(Edge edge : edges) {
+            sb.append('\n').append(edge.source.name).append("->").append(edge.target.name).append('\t').append(edge.label);
+        }
+        return sb.toString();
+    }
+
+    protected Node getOrCreateNode(String name, Map<String, String> attributes) {
+        Node node = nodesByName.get(name);
+        if(node == null) {
+            node = new Node(name);
+            node.apply(attributes);
+            nodesByName.put(name, node);
+            nodes.add(node);
+        }
+        return node;
+    }
+
+    public static class Node {
+
+        public String name;
+        public String label;
+        public String shape = "ellipse";
+        public boolean fixedsize;
+
+        /** Size in inches or -1 if not specified */
+        public float width = -1;
+        public float height = -1;
+
+        public Node(String name) {
+            this.name = name;
+            this.label = name;
+        }
+
+        public boolean isDoubleCircle() {
+            return "doublecircle".equals(shape);
+        }
+
+        public boolean isCircle() {
+            return "circle".equals(shape) || isDoubleCircle();
+        }
+
+        public void apply(Map<String, String> attributes) {
+            for(Map.Entry<String, String> entry : attributes.entrySet()) {
+                String key = entry.getKey();
+                String value = entry.getValue();
+                if(key.equals("label")) {
+                    // \N is the DOT escape for the name of the node
+                    label = value.equals("\\N") ? name : value;
+                } else if(key.equals("shape")) {
+                    shape = value;
+                } else if(key.equals("fixedsize")) {
+                    fixedsize = value.equals("true");
+                } else if(key.equals("width")) {
+                    width = parseFloat(value, width);
+                } else if(key.equals("height")) {
+                    height = parseFloat(value, height);
+                }
+            }
+        }
+    }
+
+    public static class Edge {
+
+        public Node source;
+        public Node target;
+        public String label;
+
+        public Edge(Node source, Node target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        public void apply(Map<String, String> attributes) {
+            String l = attributes.get("label");
+            if(l != null && l.length() > 0)
+                label = l;
+        }
+    }
+
+    private static float parseFloat(String s, float defaultValue) {
+        try {
+            return Float.parseFloat(s);
+        } catch(NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * A tolerant parser for the subset of the DOT language used by ANTLRWorks: statements
+     * that are not understood are skipped.
+     */
+    protected static class Parser {
+
+        private final GDOTModel model;
+        private final String s;
+        private int position;
+
+        private final Map<String, String> nodeAttributes = new HashMap<String, String>();
+        private final Map<String, String> edgeAttributes = new HashMap<String, String>();
+
+        public Parser(GDOTModel model, String s) {
+            this.model = model;
+            this.s = s;
+        }
+
+        public void parseGraph() {
+            // Skip the header (i.e. "digraph name {")
+            String token;
+            while((token = nextToken()) != null && !token.equals("{")) {
+                // skip
+            }
+            parseStatements(0);
+        }
+
+        private void parseStatements(int depth) {
+            String token;
+            while((token = nextToken()) != null) {
+                if(token.equals("}")) {
+                    return;
+                } else if(token.equals("{")) {
+                    // Subgraph (i.e. "{rank=same; s1; s2}"): the ranks are computed by the layout
+                    parseStatements(depth+1);
+                } else if(token.equals(";") || token.equals(",")) {
+                    // Empty statement
+                } else if(token.equals("subgraph")) {
+                    String name = nextToken();
+                    if(name != null && !name.equals("{"))
+                        nextToken();
+                    parseStatements(depth+1);
+                } else if(token.equals("node")) {
+                    nodeAttributes.putAll(parseAttributesIfAny());
+                } else if(token.equals("edge")) {
+                    edgeAttributes.putAll(parseAttributesIfAny());
+                } else if(token.equals("graph")) {
+                    parseAttributesIfAny();
+                } else if(peekToken("=")) {
+                    // Graph attribute (i.e. "rankdir=LR")
+                    nextToken();
+                    String value = nextToken();
+                    if(depth == 0 && token.equals("rankdir"))
+                        model.leftToRight = "LR".equals(value) || "RL".equals(value);
+                } else {
+                    parseNodeOrEdge(token);
+                }
+            }
+        }
+
+        private void parseNodeOrEdge(String name) {
+            List<String> names = new ArrayList<String>();
+            names.add(name);
+            while(peekToken("->") || peekToken("--")) {
+                nextToken();
+                String target = nextToken();
+                if(target == null)
+                    break;
+                names.add(target);
+            }
+
+            Map<String, String> attributes = parseAttributesIfAny();
+            if(names.size() == 1) {
+                // The current default attributes also apply to a node already referenced by an edge
+                Node node = model.getOrCreateNode(name, nodeAttributes);
+                node.apply(nodeAttributes);
+                node.apply(attributes);
+            } else {
+                Map<String, String> ea = new HashMap<String, String>(edgeAttributes);
+                ea.putAll(attributes);
+                for(int index=1; index<names.size(); index++) {
+                    Node source = model.getOrCreateNode(names.get(index-1), nodeAttributes);
+                    Node target = model.getOrCreateNode(names.get(index), nodeAttributes);
+                    Edge edge = new Edge(source, target);
+                    edge.apply(ea);
+                    model.edges.add(edge);
+                }
+            }
+        }
+
+        private Map<String, String> parseAttributesIfAny() {
+            Map<String, String> attributes = new HashMap<String, String>();
+            if(!peekToken("["))
+                return attributes;
+
+            nextToken();
+            String token;
+            while((token = nextToken()) != null && !token.equals("]")) {
+                if(token.equals(",") || token.equals(";"))
+                    continue;
+                if(peekToken("=")) {
+                    nextToken();
+                    String value = nextToken();
+                    if(value == null)
+                        break;
+                    attributes.put(token, value);
+                }
+            }
+            return attributes;
+        }
+
+        private boolean peekToken(String expected) {
+            int saved = position;
+            String token = nextToken();
+            position = saved;
+            return expected.equals(token);
+        }
+
+        private String nextToken() {
+            skipWhitespacesAndComments();
+            if(position >= s.length())
+                return null;
+
+            char c = s.charAt(position);
+            if(c == '"') {
+                return parseString();
+            }
+            if(s.startsWith("->", position) || s.startsWith("--", position)) {
+                position += 2;
+                return s.substring(position-2, position);
+            }
+            if(isSeparator(c)) {
+                position++;
+                return String.valueOf(c);
+            }
+
+            // A name can contain "=>" (i.e. the ANTLR accept state "s1=>2")
+            int start = position;
+            while(position < s.length()) {
+                c = s.charAt(position);
+                if(Character.isWhitespace(c) || c == '"' || s.startsWith("->", position))
+                    break;
+                if(c == '=' && s.startsWith("=>", position)) {
+                    position += 2;
+                    continue;
+                }
+                if(isSeparator(c))
+                    break;
+                position++;
+            }
+            return s.substring(start, position);
+        }
+
+        private String parseString() {
+            StringBuilder sb = new StringBuilder();
+            position++;
+            while(position < s.length()) {
+                char c = s.charAt(position++);
+                if(c == '"')
+                    break;
+                if(c == '\\' && position < s.length() && s.charAt(position) == '"') {
+                    sb.append('"');
+                    position++;
+                } else if(c == '\\' && position < s.length() && s.charAt(position) == '\n') {
+                    // Line continuation
+                    position++;
+                } else {
+                    sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+
+        private void skipWhitespacesAndComments() {
+            while(position < s.length()) {
+                char c = s.charAt(position);
+                if(Character.isWhitespace(c)) {
+                    position++;
+                } else if(s.startsWith("//", position) || c == '#') {
+                    int end = s.indexOf('\n', position);
+                    position = end == -1 ? s.length() : end;
+                } else if(s.startsWith("/*", position)) {
+                    int end = s.indexOf("*/", position+2);
+                    position = end == -1 ? s.length() : end+2;
+                } else {
+                    break;
+                }
+            }
+        }
+
+        private static boolean isSeparator(char c) {
+            return c == '[' || c == ']' || c == '{' || c == '}' || c == ';' || c == ',' || c == '=';
+        }
+    }
+
+}
@@ -0,0 +1,920 @@
+package org.antlr.xjlib.appkit.gview.utils;
+
+import org.antlr.xjlib.appkit.gview.base.Vector2D;
+import org.antlr.xjlib.appkit.gview.object.GElement;
+import org.antlr.xjlib.appkit.gview.object.GElementCircle;
+import org.antlr.xjlib.appkit.gview.object.GLink;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+/**
+ * Lays out a DOT graph in-process and creates the same elements as GDOTImporterDOT does
+ * with the output of the 'dot' tool. The layout is a layered (Sugiyama) layout:
+ *
+ * 1. the cycles are broken by reversing the back edges found by a depth-first search
+ * 2. the nodes are assigned to layers (longest path) and long edges are split with dummy nodes
+ * 3. the crossings are reduced with the barycenter heuristic
+ * 4. the nodes are positioned inside each layer as close as possible to their neighbors
+ *
+ * The same instance should be used to lay out successive versions of a graph: the previous
+ * layout is reused as is if the graph did not change and otherwise it is used as the
+ * initial order of the nodes, which keeps the layout stable and requires less iterations.
+ */
+
+public class GLayeredLayout {
+
+    public static final double RANK_SEPARATION = 0.5*GDOTImporterDOT.INCH_TO_PIXEL;
+    public static final double NODE_SEPARATION = 0.25*GDOTImporterDOT.INCH_TO_PIXEL;
+    public static final double DUMMY_SEPARATION = 0.1*GDOTImporterDOT.INCH_TO_PIXEL;
+    public static final double MARGIN = 4;
+
+    public static final int ORDERING_ITERATIONS = 24;
+    public static final int INCREMENTAL_ORDERING_ITERATIONS = 4;
+    public static final int POSITIONING_ITERATIONS = 8;
+
+    /** Weight of the dummy nodes when positioning the nodes: it keeps the long edges straight */
+    protected static final double DUMMY_WEIGHT = 4;
+
+    private static FontMetrics metrics;
+
+    private String previousSignature;
+    private Geometry previousGeometry;
+    private Map<String, Double> previousPositions = new HashMap<String, Double>();
+
+    public synchronized GElement layout(String dot) {
+        return layout(GDOTModel.parse(dot));
+    }
+
+    public synchronized GElement layout(GDOTModel model) {
+        String signature = model.getSignature();
+        if(!signature.equals(previousSignature)) {
+            Worker worker = new Worker(model);
+            previousGeometry = worker.layout();
+            previousSignature = signature;
+            previousPositions = worker.getPositions();
+        }
+        return createElements(previousGeometry);
+    }
+
+    protected GElement createElements(Geometry geometry) {
+        GElement graph = null;
+        Map<NodeGeometry, GElement> elements = new HashMap<NodeGeometry, GElement>();
+        for(NodeGeometry ng : geometry.nodes) {
+            GDOTImporter.Node node = new GDOTImporter.Node();
+            node.setDraggable(true);
+            node.setPosition(ng.x, ng.y);
+            node.setSize((float)ng.width, (float)ng.height);
+            node.setRadius(ng.width/2);
+            node.setLabel(ng.label);
+            node.setDouble(ng.doublecircle);
+            elements.put(ng, node);
+
+            if(graph == null)
+                graph = node;
+            else
+                graph.addElement(node);
+        }
+
+        for(EdgeGeometry eg : geometry.edges) {
+            GLink link = new GLink(elements.get(eg.source), GElementCircle.ANCHOR_CENTER,
+                    elements.get(eg.target), GElementCircle.ANCHOR_CENTER,
+                    GLink.SHAPE_BEZIER, eg.label, 0);
+
+            // Each link owns its points because they are modified when the nodes are moved
+            Vector2D points[] = new Vector2D[eg.points.length];
+            for(int i=0; i<points.length; i++) {
+                points[i] = eg.points[i].copy();
+            }
+            link.setBezierControlPoints(points);
+            link.setBezierLabelPosition(eg.labelPosition == null ? null : eg.labelPosition.copy());
+            graph.addElement(link);
+        }
+
+        return graph;
+    }
+
+    protected static synchronized FontMetrics getFontMetrics() {
+        if(metrics == null) {
+            Graphics g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).getGraphics();
+            metrics = g.getFontMetrics();
+            g.dispose();
+        }
+        return metrics;
+    }
+
+    protected static class Geometry {
+        public List<NodeGeometry> nodes = new ArrayList<NodeGeometry>();
+        public List<EdgeGeometry> edges = new ArrayList<EdgeGeometry>();
+    }
+
+    protected static class NodeGeometry {
+        public String label;
+        public double x, y;
+        public double width, height;
+        public boolean doublecircle;
+    }
+
+    protected static class EdgeGeometry {
+        public NodeGeometry source;
+        public NodeGeometry target;
+        public String label;
+        public Vector2D points[];
+        public Vector2D labelPosition;
+    }
+
+    /**
+     * Computes the layout of one graph. The nodes are identified by their index: the nodes of
+     * the model come first and are followed by the dummy nodes. The "order axis" is the axis
+     * along which the nodes of a layer are placed (x for a top-to-bottom graph, y for a
+     * left-to-right graph).
+     */
+    protected class Worker {
+
+        private final GDOTModel model;
+        private final int realCount;
+        private final Map<GDOTModel.Node, Integer> indexes = new HashMap<GDOTModel.Node, Integer>();
+
+        /** Size of the nodes along the order axis and along the layer axis */
+        private double[] size;
+        private double[] thickness;
+        private double[] width;
+        private double[] height;
+
+        private int count;
+        private int[] layer;
+        private double[] position;
+        private int[][] layers;
+
+        /** Chain of nodes of each edge of the model, from the upper layer to the lower layer */
+        private int[][] chains;
+        private boolean[] reversed;
+
+        /** Neighbors of each node in the layer above and in the layer below */
+        private int[][] up;
+        private int[][] down;
+
+        private int[] buffer;
+
+        public Worker(GDOTModel model) {
+            this.model = model;
+            this.realCount = model.nodes.size();
+            for(int index=0; index<realCount; index++) {
+                indexes.put(model.nodes.get(index), index);
+            }
+        }
+
+        public Geometry layout() {
+            measure();
+            breakCycles();
+            assignLayers();
+            createDummies();
+            order();
+            assignPositions();
+            return createGeometry();
+        }
+
+        public Map<String, Double> getPositions() {
+            Map<String, Double> positions = new HashMap<String, Double>();
+            for(int index=0; index<realCount; index++) {
+                positions.put(model.nodes.get(index).name, position[index]);
+            }
+            return positions;
+        }
+
+        private void measure() {
+            FontMetrics fm = getFontMetrics();
+            width = new double[realCount];
+            height = new double[realCount];
+            for(int index=0; index<realCount; index++) {
+                GDOTModel.Node node = model.nodes.get(index);
+                double text = fm.stringWidth(node.label);
+                double w;
+                double h;
+                if(node.isCircle()) {
+                    w = node.width > 0 ? node.width*GDOTImporterDOT.INCH_TO_PIXEL : 0.5*GDOTImporterDOT.INCH_TO_PIXEL;
+                    if(!node.fixedsize)
+                        w = Math.max(w, text+fm.getHeight());
+                    h = w;
+                } else {
+                    w = node.width > 0 ? node.width*GDOTImporterDOT.INCH_TO_PIXEL : 0.75*GDOTImporterDOT.INCH_TO_PIXEL;
+                    h = node.height > 0 ? node.height*GDOTImporterDOT.INCH_TO_PIXEL : 0.5*GDOTImporterDOT.INCH_TO_PIXEL;
+                    if(!node.fixedsize) {
+                        // The text must fit inside the ellipse
+                        w = Math.max(w, text*Math.sqrt(2)+fm.getHeight());
+                        h = Math.max(h, fm.getHeight()*Math.sqrt(2));
+                    }
+                }
+                width[index] = w;
+                height[index] = h;
+            }
+        }
+
+        private void breakCycles() {
+            int edgeCount = model.edges.size();
+            reversed = new boolean[edgeCount];
+
+            // Outgoing edges of each node, in the order of the model
+            int[][] outgoing = new int[realCount][];
+            int[] degree = new int[realCount];
+            for(GDOTModel.Edge edge : model.edges) {
+                degree[indexOf(edge.source)]++;
+            }
+            for(int index=0; index<realCount; index++) {
+                outgoing[index] = new int[degree[index]];
+                degree[index] = 0;
+            }
+            for(int e=0; e<edgeCount; e++) {
+                int source = indexOf(model.edges.get(e).source);
+                outgoing[source][degree[source]++] = e;
+            }
+
+            // Iterative depth-first search: an edge to a node on the stack is a back edge
+            final int NEW = 0, ACTIVE = 1, DONE = 2;
+            int[] state = new int[realCount];
+            int[] stack = new int[realCount];
+            int[] next = new int[realCount];
+            for(int root=0; root<realCount; root++) {
+                if(state[root] != NEW)
+                    continue;
+                int top = 0;
+                stack[0] = root;
+                state[root] = ACTIVE;
+                while(top >= 0) {
+                    int node = stack[top];
+                    if(next[node] < outgoing[node].length) {
+                        int e = outgoing[node][next[node]++];
+                        int target = indexOf(model.edges.get(e).target);
+                        if(target == node)
+                            continue;
+                        if(state[target] == ACTIVE) {
+                            reversed[e] = true;
+                        } else if(state[target] == NEW) {
+                            state[target] = ACTIVE;
+                            stack[++top] = target;
+                        }
+                    } else {
+                        state[node] = DONE;
+                        top--;
+                    }
+                }
+            }
+        }
+
+        private void assignLayers() {
+            int edgeCount = model.edges.size();
+            layer = new int[realCount];
+
+            int[] indegree = new int[realCount];
+            int[][] successors = new int[realCount][];
+            int[] degree = new int[realCount];
+            for(int e=0; e<edgeCount; e++) {
+                if(!isSelfLoop(e))
+                    degree[upper(e)]++;
+            }
+            for(int index=0; index<realCount; index++) {
+                successors[index] = new int[degree[index]];
+                degree[index] = 0;
+            }
+            for(int e=0; e<edgeCount; e++) {
+                if(isSelfLoop(e))
+                    continue;
+                int u = upper(e);
+                int v = lower(e);
+                successors[u][degree[u]++] = v;
+                indegree[v]++;
+            }
+            boolean[] source = new boolean[realCount];
+            for(int index=0; index<realCount; index++) {
+                source[index] = indegree[index] == 0;
+            }
+
+            // Longest path from the sources, in topological order
+            int[] topological = new int[realCount];
+            int head = 0;
+            int tail = 0;
+            for(int index=0; index<realCount; index++) {
+                if(indegree[index] == 0)
+                    topological[tail++] = index;
+            }
+            while(head < tail) {
+                int u = topological[head++];
+                for(int v : successors[u]) {
+                    layer[v] = Math.max(layer[v], layer[u]+1);
+                    if(--indegree[v] == 0)
+                        topological[tail++] = v;
+                }
+            }
+
+            // Move the sources down next to their closest successor to shorten the edges
+            for(int i=tail-1; i>=0; i--) {
+                int u = topological[i];
+                if(successors[u].length == 0 || !source[u])
+                    continue;
+                int min = Integer.MAX_VALUE;
+                for(int v : successors[u]) {
+                    min = Math.min(min, layer[v]);
+                }
+                layer[u] = Math.max(layer[u], min-1);
+            }
+        }
+
+        private void createDummies() {
+            int edgeCount = model.edges.size();
+            count = realCount;
+            for(int e=0; e<edgeCount; e++) {
+                if(!isSelfLoop(e))
+                    count += layer[lower(e)]-layer[upper(e)]-1;
+            }
+
+            int[] extended = new int[count];
+            System.arraycopy(layer, 0, extended, 0, realCount);
+            layer = extended;
+
+            size = new double[count];
+            thickness = new double[count];
+            for(int index=0; index<realCount; index++) {
+                size[index] = model.leftToRight ? height[index] : width[index];
+                thickness[index] = model.leftToRight ? width[index] : height[index];
+            }
+            for(int e=0; e<edgeCount; e++) {
+                if(isSelfLoop(e)) {
+                    // Room for the loop on both sides to keep the node centered
+                    int node = upper(e);
+                    size[node] = Math.max(size[node], (model.leftToRight ? height[node] : width[node])+2*selfLoopExtent(e));
+                }
+            }
+
+            chains = new int[edgeCount][];
+            int[] upDegree = new int[count];
+            int[] downDegree = new int[count];
+            int dummy = realCount;
+            for(int e=0; e<edgeCount; e++) {
+                if(isSelfLoop(e))
+                    continue;
+                int u = upper(e);
+                int v = lower(e);
+                int[] chain = new int[layer[v]-layer[u]+1];
+                chain[0] = u;
+                for(int i=1; i<chain.length-1; i++) {
+                    layer[dummy] = layer[u]+i;
+                    chain[i] = dummy++;
+                }
+                chain[chain.length-1] = v;
+                chains[e] = chain;
+                for(int i=0; i<chain.length-1; i++) {
+                    downDegree[chain[i]]++;
+                    upDegree[chain[i+1]]++;
+                }
+            }
+
+            up = new int[count][];
+            down = new int[count][];
+            for(int index=0; index<count; index++) {
+                up[index] = new int[upDegree[index]];
+                down[index] = new int[downDegree[index]];
+                upDegree[index] = 0;
+                downDegree[index] = 0;
+            }
+            for(int[] chain : chains) {
+                if(chain == null)
+                    continue;
+                for(int i=0; i<chain.length-1; i++) {
+                    down[chain[i]][downDegree[chain[i]]++] = chain[i+1];
+                    up[chain[i+1]][upDegree[chain[i+1]]++] = chain[i];
+                }
+            }
+        }
+
+        private void order() {
+            int layerCount = 0;
+            for(int index=0; index<count; index++) {
+                layerCount = Math.max(layerCount, layer[index]+1);
+            }
+            int[] layerSizes = new int[layerCount];
+            for(int index=0; index<count; index++) {
+                layerSizes[layer[index]]++;
+            }
+            layers = new int[layerCount][];
+            for(int l=0; l<layerCount; l++) {
+                layers[l] = new int[layerSizes[l]];
+                layerSizes[l] = 0;
+            }
+            for(int index=0; index<count; index++) {
+                layers[layer[index]][layerSizes[layer[index]]++] = index;
+            }
+
+            // Initial order: the previous position of the nodes if any, otherwise the order of the
+            // model. The other nodes are placed at the barycenter of their upper neighbors.
+            position = new double[count];
+            boolean incremental = false;
+            for(int index=0; index<realCount && !incremental; index++) {
+                incremental = previousPositions.containsKey(model.nodes.get(index).name);
+            }
+            double[] keys = new double[count];
+            for(int l=0; l<layerCount; l++) {
+                for(int i=0; i<layers[l].length; i++) {
+                    int node = layers[l][i];
+                    Double p = node < realCount ? previousPositions.get(model.nodes.get(node).name) : null;
+                    if(p != null)
+                        keys[node] = p;
+                    else if(incremental)
+                        keys[node] = barycenter(up[node], keys, Double.MAX_VALUE);
+                    else
+                        keys[node] = l == 0 ? i : barycenter(up[node], position, i);
+                }
+                sort(layers[l], keys);
+                updatePositions(layers[l]);
+            }
+
+            int iterations = incremental ? INCREMENTAL_ORDERING_ITERATIONS : ORDERING_ITERATIONS;
+            int[][] best = copy(layers);
+            long bestCrossings = crossings();
+            int stale = 0;
+            for(int iteration=0; iteration<iterations && bestCrossings > 0 && stale < 4; iteration++) {
+                for(int l=1; l<layerCount; l++) {
+                    sweep(layers[l], up, keys);
+                }
+                for(int l=layerCount-2; l>=0; l--) {
+                    sweep(layers[l], down, keys);
+                }
+                long c = crossings();
+                if(c < bestCrossings) {
+                    bestCrossings = c;
+                    best = copy(layers);
+                    stale = 0;
+                } else {
+                    stale++;
+                }
+            }
+            layers = best;
+            for(int[] nodes : layers) {
+                updatePositions(nodes);
+            }
+        }
+
+        private void sweep(int[] nodes, int[][] neighbors, double[] keys) {
+            for(int i=0; i<nodes.length; i++) {
+                int node = nodes[i];
+                keys[node] = barycenter(neighbors[node], position, i);
+            }
+            sort(nodes, keys);
+            updatePositions(nodes);
+        }
+
+        /** Returns the barycenter of the neighbors or the default value if there is none */
+        private double barycenter(int[] neighbors, double[] positions, double defaultValue) {
+            if(neighbors.length == 0)
+                return defaultValue;
+            double sum = 0;
+            for(int n : neighbors) {
+                sum += positions[n];
+            }
+            return sum/neighbors.length;
+        }
+
+        /** During the ordering, the position of a node is its index in its layer */
+        private void updatePositions(int[] nodes) {
+            for(int i=0; i<nodes.length; i++) {
+                position[nodes[i]] = i;
+            }
+        }
+
+        private long crossings() {
+            long total = 0;
+            for(int l=0; l<layers.length-1; l++) {
+                total += crossings(l);
+            }
+            return total;
+        }
+
+        /** Counts the crossings between the layer l and the next one (using a Fenwick tree) */
+        private long crossings(int l) {
+            int segmentCount = 0;
+            for(int node : layers[l]) {
+                segmentCount += down[node].length;
+            }
+            if(segmentCount < 2)
+                return 0;
+
+            // Segments sorted by upper position then lower position
+            int[] lowers = new int[segmentCount];
+            int k = 0;
+            for(int node : layers[l]) {
+                int start = k;
+                for(int n : down[node]) {
+                    lowers[k++] = (int)position[n];
+                }
+                Arrays.sort(lowers, start, k);
+            }
+
+            int max = layers[l+1].length;
+            int[] tree = new int[max+1];
+            long crossings = 0;
+            for(int i=0; i<segmentCount; i++) {
+                // Number of previous segments ending strictly after this one
+                int lowerOrEqual = 0;
+                for(int j=lowers[i]+1; j>0; j-=j&-j) {
+                    lowerOrEqual += tree[j];
+                }
+                crossings += i-lowerOrEqual;
+                for(int j=lowers[i]+1; j<=max; j+=j&-j) {
+                    tree[j]++;
+                }
+            }
+            return crossings;
+        }
+
+        private void assignPositions() {
+            double[] weight = new double[count];
+            for(int index=0; index<count; index++) {
+                weight[index] = index < realCount ? 1 : DUMMY_WEIGHT;
+            }
+
+            // Start with the nodes packed to the left
+            for(int[] nodes : layers) {
+                double x = 0;
+                for(int i=0; i<nodes.length; i++) {
+                    if(i > 0)
+                        x += separation(nodes[i-1], nodes[i]);
+                    position[nodes[i]] = x;
+                }
+            }
+
+            // Move the nodes toward their neighbors, alternatively down and up, then both
+            double[] desired = new double[count];
+            for(int iteration=0; iteration<POSITIONING_ITERATIONS; iteration++) {
+                boolean last = iteration == POSITIONING_ITERATIONS-1;
+                if(iteration % 2 == 0 || last) {
+                    for(int l=1; l<layers.length; l++) {
+                        align(layers[l], up, last ? down : null, desired, weight);
+                    }
+                }
+                if(iteration % 2 == 1 || last) {
+                    for(int l=layers.length-2; l>=0; l--) {
+                        align(layers[l], down, last ? up : null, desired, weight);
+                    }
+                }
+            }
+
+            // Translate the layout so it starts at the margin
+            double min = Double.MAX_VALUE;
+            for(int index=0; index<count; index++) {
+                min = Math.min(min, position[index]-size[index]/2);
+            }
+            for(int index=0; index<count; index++) {
+                position[index] += MARGIN-min;
+            }
+        }
+
+        private void align(int[] nodes, int[][] neighbors, int[][] otherNeighbors, double[] desired, double[] weight) {
+            for(int node : nodes) {
+                int n = neighbors[node].length + (otherNeighbors == null ? 0 : otherNeighbors[node].length);
+                if(n == 0) {
+                    desired[node] = position[node];
+                } else {
+                    double sum = 0;
+                    for(int neighbor : neighbors[node]) {
+                        sum += position[neighbor];
+                    }
+                    if(otherNeighbors != null) {
+                        for(int neighbor : otherNeighbors[node]) {
+                            sum += position[neighbor];
+                        }
+                    }
+                    desired[node] = sum/n;
+                }
+            }
+            place(nodes, desired, weight);
+        }
+
+        /**
+         * Places the nodes of a layer as close as possible to their desired position while
+         * keeping their order and separation: this is a weighted isotonic regression of the
+         * desired positions minus the minimum offset of each node (pool adjacent violators).
+         */
+        private void place(int[] nodes, double[] desired, double[] weight) {
+            int n = nodes.length;
+            if(n == 0)
+                return;
+
+            double[] offset = new double[n];
+            for(int i=1; i<n; i++) {
+                offset[i] = offset[i-1]+separation(nodes[i-1], nodes[i]);
+            }
+
+            double[] blockValue = new double[n];
+            double[] blockWeight = new double[n];
+            int[] blockSize = new int[n];
+            int blocks = 0;
+            for(int i=0; i<n; i++) {
+                int node = nodes[i];
+                blockValue[blocks] = desired[node]-offset[i];
+                blockWeight[blocks] = weight[node];
+                blockSize[blocks] = 1;
+                blocks++;
+                while(blocks > 1 && blockValue[blocks-2] > blockValue[blocks-1]) {
+                    double w = blockWeight[blocks-2]+blockWeight[blocks-1];
+                    blockValue[blocks-2] = (blockValue[blocks-2]*blockWeight[blocks-2]+blockValue[blocks-1]*blockWeight[blocks-1])/w;
+                    blockWeight[blocks-2] = w;
+                    blockSize[blocks-2] += blockSize[blocks-1];
+                    blocks--;
+                }
+            }
+
+            int i = 0;
+            for(int b=0; b<blocks; b++) {
+                for(int j=0; j<blockSize[b]; j++, i++) {
+                    position[nodes[i]] = blockValue[b]+offset[i];
+                }
+            }
+        }
+
+        private double separation(int a, int b) {
+            double gap = a >= realCount && b >= realCount ? DUMMY_SEPARATION : NODE_SEPARATION;
+            return (size[a]+size[b])/2+gap;
+        }
+
+        private Geometry createGeometry() {
+            FontMetrics fm = getFontMetrics();
+
+            // Position of each layer along the layer axis: the gap is enlarged by the labels
+            double[] layerThickness = new double[layers.length];
+            double[] labelExtent = new double[layers.length];
+            for(int index=0; index<realCount; index++) {
+                layerThickness[layer[index]] = Math.max(layerThickness[layer[index]], thickness[index]);
+            }
+            for(int e=0; e<model.edges.size(); e++) {
+                String label = model.edges.get(e).label;
+                if(label == null || chains[e] == null)
+                    continue;
+                // The label is placed on the first segment of the chain
+                int l = layer[chains[e][0]];
+                double extent = model.leftToRight ? fm.stringWidth(label) : fm.getHeight();
+                labelExtent[l] = Math.max(labelExtent[l], extent);
+            }
+            double[] layerPosition = new double[layers.length];
+            double p = MARGIN;
+            for(int l=0; l<layers.length; l++) {
+                if(l > 0)
+                    p += layerThickness[l-1]/2+RANK_SEPARATION+labelExtent[l-1];
+                p += layerThickness[l]/2;
+                layerPosition[l] = p;
+            }
+
+            Geometry geometry = new Geometry();
+            NodeGeometry[] nodes = new NodeGeometry[realCount];
+            for(int index=0; index<realCount; index++) {
+                GDOTModel.Node node = model.nodes.get(index);
+                NodeGeometry ng = new NodeGeometry();
+                ng.label = node.label;
+                ng.width = width[index];
+                ng.height = height[index];
+                ng.doublecircle = node.isDoubleCircle();
+                Vector2D center = point(index, layerPosition);
+                ng.x = center.x;
+                ng.y = center.y;
+                nodes[index] = ng;
+                geometry.nodes.add(ng);
+            }
+
+            Map<String, Integer> parallels = new HashMap<String, Integer>();
+            for(int e=0; e<model.edges.size(); e++) {
+                GDOTModel.Edge edge = model.edges.get(e);
+                EdgeGeometry eg = new EdgeGeometry();
+                eg.source = nodes[indexOf(edge.source)];
+                eg.target = nodes[indexOf(edge.target)];
+                eg.label = edge.label;
+
+                if(chains[e] == null) {
+                    createSelfLoop(eg, fm);
+                } else {
+                    // Path from the source to the target
+                    List<Vector2D> path = new ArrayList<Vector2D>();
+                    for(int node : chains[e]) {
+                        path.add(point(node, layerPosition));
+                    }
+                    if(reversed[e])
+                        Collections.reverse(path);
+
+                    // Bend the edges that connect the same nodes so they don't overlap
+                    if(path.size() == 2) {
+                        String key = Math.min(indexOf(edge.source), indexOf(edge.target))+"-"+Math.max(indexOf(edge.source), indexOf(edge.target));
+                        Integer k = parallels.get(key);
+                        parallels.put(key, k == null ? 1 : k+1);
+                        if(k != null) {
+                            Vector2D a = path.get(0);
+                            Vector2D b = path.get(1);
+                            Vector2D normal = b.sub(a).rotate(90).normalize();
+                            double distance = ((k+1)/2)*NODE_SEPARATION*(k % 2 == 1 ? 1 : -1);
+                            path.add(1, new Vector2D((a.x+b.x)/2, (a.y+b.y)/2).add(normal.setLength(distance)));
+                        }
+                    }
+
+                    eg.points = createControlPoints(eg.source, eg.target, path);
+                    if(eg.label != null) {
+                        eg.labelPosition = labelPosition(eg.label, path, reversed[e], fm);
+                    }
+                }
+                geometry.edges.add(eg);
+            }
+
+            return geometry;
+        }
+
+        private Vector2D labelPosition(String label, List<Vector2D> path, boolean reversed, FontMetrics fm) {
+            // The first segment of the chain (in the upper layer) is the last one of a reversed path
+            Vector2D a = reversed ? path.get(path.size()-1) : path.get(0);
+            Vector2D b = reversed ? path.get(path.size()-2) : path.get(1);
+            Vector2D middle = new Vector2D((a.x+b.x)/2, (a.y+b.y)/2);
+            if(model.leftToRight)
+                return middle.shift(0, -fm.getHeight()*0.75);
+            else
+                return middle.shift(fm.stringWidth(label)/2+4, 0);
+        }
+
+        private Vector2D[] createControlPoints(NodeGeometry source, NodeGeometry target, List<Vector2D> path) {
+            // The curve starts and ends on the perimeter of the nodes
+            Vector2D start = boundary(source, path.get(1));
+            Vector2D tip = boundary(target, path.get(path.size()-2));
+
+            // Three times the start point so the curve starts exactly there, then a straight
+            // segment before the tip to give its direction to the arrow.
+            Vector2D toPrevious = path.get(path.size()-2).sub(tip);
+            double arrowLength = Math.min(10, toPrevious.length()/2);
+            Vector2D arrowBase = tip.add(toPrevious.copy().setLength(arrowLength));
+
+            Vector2D points[] = new Vector2D[path.size()+4];
+            int i = 0;
+            points[i++] = start;
+            points[i++] = start.copy();
+            points[i++] = start.copy();
+            for(int k=1; k<path.size()-1; k++) {
+                points[i++] = path.get(k);
+            }
+            points[i++] = arrowBase;
+            points[i++] = arrowBase.copy();
+            points[i] = tip;
+            return points;
+        }
+
+        /** Returns the extent of a self loop and its label along the order axis */
+        private double selfLoopExtent(int e) {
+            String label = model.edges.get(e).label;
+            double extent = NODE_SEPARATION;
+            if(label != null) {
+                FontMetrics fm = getFontMetrics();
+                extent += model.leftToRight ? fm.getHeight() : fm.stringWidth(label)+4;
+            }
+            return extent;
+        }
+
+        /** The loop is drawn on the side of the node, along the order axis, to stay out of the layer gaps */
+        private void createSelfLoop(EdgeGeometry eg, FontMetrics fm) {
+            NodeGeometry n = eg.source;
+            double rx = n.width/2;
+            double ry = n.height/2;
+            double d = Math.sqrt(0.5);
+            if(model.leftToRight) {
+                // Above the node
+                Vector2D start = new Vector2D(n.x-rx*d, n.y-ry*d);
+                Vector2D tip = new Vector2D(n.x+rx*d, n.y-ry*d);
+                Vector2D arrowBase = new Vector2D(n.x+rx*d+6, n.y-ry*d-6);
+                eg.points = new Vector2D[] {
+                        start, start.copy(), start.copy(),
+                        new Vector2D(n.x-rx, n.y-ry-NODE_SEPARATION),
+                        new Vector2D(n.x+rx, n.y-ry-NODE_SEPARATION),
+                        arrowBase, arrowBase.copy(), tip
+                };
+                if(eg.label != null)
+                    eg.labelPosition = new Vector2D(n.x, n.y-ry-NODE_SEPARATION-fm.getHeight()*0.75);
+            } else {
+                // On the right of the node
+                Vector2D start = new Vector2D(n.x+rx*d, n.y-ry*d);
+                Vector2D tip = new Vector2D(n.x+rx*d, n.y+ry*d);
+                Vector2D arrowBase = new Vector2D(n.x+rx*d+6, n.y+ry*d+6);
+                eg.points = new Vector2D[] {
+                        start, start.copy(), start.copy(),
+                        new Vector2D(n.x+rx+NODE_SEPARATION, n.y-ry),
+                        new Vector2D(n.x+rx+NODE_SEPARATION, n.y+ry),
+                        arrowBase, arrowBase.copy(), tip
+                };
+                if(eg.label != null)
+                    eg.labelPosition = new Vector2D(n.x+rx+NODE_SEPARATION+fm.stringWidth(eg.label)/2+4, n.y);
+            }
+        }
+
+        /** Returns the point where the segment from the center of the node to p crosses the ellipse */
+        private Vector2D boundary(NodeGeometry node, Vector2D p) {
+            double dx = p.x-node.x;
+            double dy = p.y-node.y;
+            double rx = node.width/2;
+            double ry = node.height/2;
+            double f = Math.sqrt((dx*dx)/(rx*rx)+(dy*dy)/(ry*ry));
+            if(f == 0)
+                return new Vector2D(node.x, node.y);
+            return new Vector2D(node.x+dx/f, node.y+dy/f);
+        }
+
+        private Vector2D point(int node, double[] layerPosition) {
+            double l = layerPosition[layer[node]];
+            if(model.leftToRight)
+                return new Vector2D(l, position[node]);
+            else
+                return new Vector2D(position[node], l);
+        }
+
+        private boolean isSelfLoop(int e) {
+            GDOTModel.Edge edge = model.edges.get(e);
+            return edge.source == edge.target;
+        }
+
+        private int upper(int e) {
+            GDOTModel.Edge edge = model.edges.get(e);
+            return indexOf(reversed[e] ? edge.target : edge.source);
+        }
+
+        private int lower(int e) {
+            GDOTModel.Edge edge = model.edges.get(e);
+            return indexOf(reversed[e] ? edge.source : edge.target);
+        }
+
+        private int indexOf(GDOTModel.Node node) {
+            return indexes.get(node);
+        }
+
+        /** Stable merge sort of the nodes by key: the nodes with the same key keep their relative order */
+        private void sort(int[] nodes, double[] keys) {
+            if(nodes.length < 2)
+                return;
+            if(buffer == null || buffer.length < nodes.length)
+                buffer = new int[count];
+            sort(nodes, buffer, 0, nodes.length, keys);
+        }
+
+        private void sort(int[] nodes, int[] temp, int from, int to, double[] keys) {
+            if(to-from < 2)
+                return;
+            int middle = (from+to) >>> 1;
+            sort(nodes, temp, from, middle, keys);
+            sort(nodes, temp, middle, to, keys);
+            if(keys[nodes[middle-1]] <= keys[nodes[middle]])
+                return;
+
+            int i = from;
+            int j = middle;
+            int k = from;
+            while(i < middle && j < to) {
+                temp[k++] = keys[nodes[j]] < keys[nodes[i]] ? nodes[j++] : nodes[i++];
+            }
+            while(i < middle) {
+                temp[k++] = nodes[i++];
+            }
+            while(j < to) {
+                temp[k++] = nodes[j++];
+            }
+            System.arraycopy(temp, from, nodes, from, to-from);
+        }
+
+        private int[][] copy(int[][] array) {
+            int[][] copy = new int[array.length][];
+            for(int i=0; i<array.length; i++) {
+                copy[i] = array[i].clone();
+            }
+            return copy;
+        }
+    }
+
+}
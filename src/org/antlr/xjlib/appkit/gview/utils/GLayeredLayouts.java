@@ -0,0 +1,76 @@
+package org.antlr.xjlib.appkit.gview.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+/**
+ * The layouts of several graphs, each one identified by a key (for example the rule or the
+ * decision the graph displays). Each graph is laid out again from its own previous layout,
+ * whatever the graphs laid out in between. Only the most recently used layouts are kept.
+ */
+public class GLayeredLayouts {
+
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private final Map<String, GLayeredLayout> layouts;
+
+    public GLayeredLayouts() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public GLayeredLayouts(final int capacity) {
+        layouts = new LinkedHashMap<String, GLayeredLayout>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, GLayeredLayout> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public synchronized GLayeredLayout getLayout(String key) {
+        GLayeredLayout layout = layouts.get(key);
+        if(layout == null) {
+            layout = createLayout();
+            layouts.put(key, layout);
+        }
+        return layout;
+    }
+
+    protected GLayeredLayout createLayout() {
+        return new GLayeredLayout();
+    }
+
+    public synchronized int size() {
+        return layouts.size();
+    }
+
+}
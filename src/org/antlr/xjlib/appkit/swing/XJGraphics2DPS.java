@@ -8,11 +8,15 @@ import java.awt.font.TextLayout;
 import java.awt.geom.*;
 import java.awt.image.*;
 import java.awt.image.renderable.RenderableImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.text.AttributedCharacterIterator;
 import java.text.AttributedString;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
 import java.util.Map;
+import java.util.Stack;
 /*
 
 [The "BSD licence"]
@@ -45,11 +49,38 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 */
 
+/**
+ * Graphics2D producing an EPS program. By default the program is built in memory and returned by getPSText().
+ * In streaming mode, the program is written to an output stream as it is produced: the bounding box must then
+ * be known in advance, for example by drawing first into the graphics returned by createMeasure().
+ *
+ * The numbers are formatted directly into the buffer and the changes of color and stroke are only emitted
+ * when they differ from the current PostScript graphics state.
+ */
 public class XJGraphics2DPS extends Graphics2D {
 
     protected static final String NEWLINE = System.getProperty("line.separator");
+    protected static final char[] NEWLINE_CHARS = NEWLINE.toCharArray();
+    protected static final char NEWLINE_END = NEWLINE.charAt(NEWLINE.length()-1);
+
+    /** Number of characters buffered before being written to the stream in streaming mode */
+    protected static final int FLUSH_SIZE = 8192;
 
     protected StringBuilder ps;
+    protected char lastChar = 0;
+
+    protected Writer out;
+    protected Rectangle streamBounds;
+    protected boolean headerWritten = false;
+    protected IOException outException;
+    protected char[] flushBuffer;
+    protected boolean measureOnly = false;
+
+    /** The graphics state of the PostScript program, saved by gsave and restored by grestore */
+    protected Color psColor;
+    protected BasicStroke psStroke;
+    protected final Stack<Object[]> psStates = new Stack<Object[]>();
+
     protected Font font;
     protected Color color;
     protected Color background;
@@ -59,8 +90,6 @@ public class XJGraphics2DPS extends Graphics2D {
     protected Point upperLeftCorner;
     protected Point lowerRightCorner;
 
-    protected DecimalFormat df;
-
     protected int marginWidth, marginHeight;
 
     public XJGraphics2DPS() {
@@ -70,15 +99,37 @@ public class XJGraphics2DPS extends Graphics2D {
         transform = new AffineTransform();
         fontRenderContext = new FontRenderContext(null, false, true);
 
-        DecimalFormatSymbols s = new DecimalFormatSymbols();
-        s.setDecimalSeparator('.');
-        df = new DecimalFormat("###.##", s);
-
         setFont(null);
         setStroke(new BasicStroke());
         setMargins(0, 0);
     }
 
+    /**
+     * Creates a graphics that streams the program to the output stream. The bounds (before the margins) are
+     * the ones of the drawing. The margins must be set before drawing and finish() must be called at the end.
+     */
+    public XJGraphics2DPS(OutputStream stream, Rectangle bounds) {
+        this();
+        out = new OutputStreamWriter(stream, Charset.forName("ISO-8859-1"));
+        streamBounds = new Rectangle(bounds);
+    }
+
+    /** Creates a graphics that doesn't produce any program but only computes the bounds of the drawing */
+    public static XJGraphics2DPS createMeasure() {
+        XJGraphics2DPS g = new XJGraphics2DPS();
+        g.measureOnly = true;
+        g.ps.setLength(0);
+        return g;
+    }
+
+    /** Returns the bounds of what has been drawn so far, without the margins */
+    public Rectangle getDrawingBounds() {
+        if(upperLeftCorner.x == Integer.MAX_VALUE)
+            return new Rectangle();
+        return new Rectangle(upperLeftCorner.x, upperLeftCorner.y,
+                lowerRightCorner.x-upperLeftCorner.x, lowerRightCorner.y-upperLeftCorner.y);
+    }
+
     public void setMargins(int width, int height) {
         marginWidth = width;
         marginHeight = height;
@@ -89,15 +140,46 @@ public class XJGraphics2DPS extends Graphics2D {
     }
 
     public String getPSText() {
+        if(out != null)
+            throw new IllegalStateException("The PostScript program is written to the output stream");
+
         // Apply margins
         lowerRightCorner.x += marginWidth;
         lowerRightCorner.y += marginHeight;
         upperLeftCorner.x -= marginWidth;
         upperLeftCorner.y -= marginHeight;
 
-        // EPS header
         StringBuilder eps = new StringBuilder();
+        appendHeader(eps, upperLeftCorner, lowerRightCorner);
 
+        // Append postscript code
+        eps.append(ps);
+
+        return eps.toString();
+    }
+
+    /**
+     * Writes the end of the program to the output stream and flushes it (the stream is not closed).
+     * Any error that occurred while streaming is thrown here.
+     */
+    public void finish() throws IOException {
+        if(out == null)
+            return;
+
+        psFlush();
+        if(outException == null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                outException = e;
+            }
+        }
+        if(outException != null)
+            throw outException;
+    }
+
+    protected void appendHeader(StringBuilder eps, Point upperLeftCorner, Point lowerRightCorner) {
+        // EPS header
         eps.append("%!PS-Adobe-3.0 EPSF-3.0");
         eps.append(NEWLINE);
         eps.append("%%Creator: XJGraphics2DPS (c) 2005 by Jean Bovet and Terence Parr");
@@ -142,32 +224,113 @@ public class XJGraphics2DPS extends Graphics2D {
         eps.append(upperLeftCorner.y + (lowerRightCorner.y-upperLeftCorner.y));
         eps.append(" tr");
         eps.append(NEWLINE);
+    }
 
-        // Append postscript code
-        eps.append(ps);
+    /** Writes the buffered program to the output stream, preceded by the header the first time */
+    protected void psFlush() {
+        if(outException == null) {
+            try {
+                if(!headerWritten) {
+                    headerWritten = true;
+                    Point ul = new Point(streamBounds.x-marginWidth, streamBounds.y-marginHeight);
+                    Point lr = new Point(streamBounds.x+streamBounds.width+marginWidth,
+                            streamBounds.y+streamBounds.height+marginHeight);
+                    StringBuilder header = new StringBuilder();
+                    appendHeader(header, ul, lr);
+                    out.write(header.toString());
+                }
+
+                int length = ps.length();
+                if(flushBuffer == null || flushBuffer.length < length) {
+                    flushBuffer = new char[Math.max(length, 2*FLUSH_SIZE)];
+                }
+                ps.getChars(0, length, flushBuffer, 0);
+                out.write(flushBuffer, 0, length);
+            } catch (IOException e) {
+                // Graphics2D methods cannot throw: the error is thrown by finish()
+                outException = e;
+            }
+        }
+        ps.setLength(0);
+    }
 
-        return eps.toString();
+    protected void psAppended() {
+        if(ps.length() > 0) {
+            lastChar = ps.charAt(ps.length()-1);
+        }
+        if(out != null && ps.length() >= FLUSH_SIZE) {
+            psFlush();
+        }
+    }
+
+    protected void psSeparate() {
+        if(lastChar != 0 && lastChar != ' ' && lastChar != NEWLINE_END)
+            ps.append(' ');
     }
 
     public void psAppend(double v) {
-        psAppend(df.format(v));
+        if(measureOnly)
+            return;
+
+        psSeparate();
+        appendNumber(ps, v);
+        psAppended();
     }
 
     public void psAppend(String s) {
-        if(ps.length() > 0) {
-            char c = ps.charAt(ps.length()-1);
-            if(c != ' ' && !String.valueOf(c).equals(NEWLINE))
-                ps.append(' ');
-        }
+        if(measureOnly)
+            return;
+
+        psSeparate();
         ps.append(s);
+        psAppended();
+    }
+
+    /** Appends the characters without any separator */
+    public void psAppendRaw(char[] c) {
+        if(measureOnly)
+            return;
+
+        ps.append(c);
+        psAppended();
+    }
+
+    /**
+     * Appends the number with at most two decimals, like the "###.##" format, without allocating
+     * any object.
+     */
+    public static void appendNumber(StringBuilder sb, double v) {
+        if(Double.isNaN(v) || Double.isInfinite(v)) {
+            sb.append('0');
+            return;
+        }
+
+        long hundredths = Math.round(Math.abs(v)*100);
+        if(v < 0 && hundredths != 0)
+            sb.append('-');
+
+        sb.append(hundredths/100);
+        int decimals = (int)(hundredths%100);
+        if(decimals != 0) {
+            sb.append('.');
+            sb.append((char)('0'+decimals/10));
+            if(decimals%10 != 0)
+                sb.append((char)('0'+decimals%10));
+        }
     }
 
     public void psGSave() {
+        psStates.push(new Object[] { psColor, psStroke });
         psAppend("gs");
         psAppend(NEWLINE);
     }
 
     public void psGRestore() {
+        if(!psStates.isEmpty()) {
+            Object[] state = psStates.pop();
+            psColor = (Color)state[0];
+            psStroke = (BasicStroke)state[1];
+        }
         psAppend("gr");
         psAppend(NEWLINE);
     }
@@ -291,7 +454,7 @@ public class XJGraphics2DPS extends Graphics2D {
         StringBuilder sb = new StringBuilder();
         if(array != null) {
             for(int index=0; index<array.length; index++) {
-                sb.append(array[index]);
+                appendNumber(sb, array[index]);
                 if(index < array.length-1)
                     sb.append(" ");
             }
@@ -402,6 +565,11 @@ public class XJGraphics2DPS extends Graphics2D {
 
     public void setColor(Color c) {
         this.color = c;
+        // PostScript colors are opaque: only the RGB components are compared
+        if(psColor != null && (psColor.getRGB() & 0xFFFFFF) == (c.getRGB() & 0xFFFFFF))
+            return;
+
+        psColor = c;
         psAppend(c.getRed()/255.0);
         psAppend(c.getGreen()/255.0);
         psAppend(c.getBlue()/255.0);
@@ -421,11 +589,21 @@ public class XJGraphics2DPS extends Graphics2D {
         this.stroke = s;
         if(s instanceof BasicStroke) {
             BasicStroke bs = (BasicStroke)s;
-            psAppend(bs.getLineWidth()+" sw"+NEWLINE);
-            psAppend(Math.max(1, bs.getMiterLimit())+" sm"+NEWLINE);
-            psAppend(bs.getLineJoin()+" sj"+NEWLINE);
-            psAppend(bs.getEndCap()+" slc"+NEWLINE);
-            psAppend("["+arrayToString(bs.getDashArray())+"] "+bs.getDashPhase()+" sd"+NEWLINE);
+            if(bs.equals(psStroke))
+                return;
+
+            psStroke = bs;
+            psAppend(bs.getLineWidth());
+            psAppend("sw"+NEWLINE);
+            psAppend(Math.max(1, bs.getMiterLimit()));
+            psAppend("sm"+NEWLINE);
+            psAppend(bs.getLineJoin());
+            psAppend("sj"+NEWLINE);
+            psAppend(bs.getEndCap());
+            psAppend("slc"+NEWLINE);
+            psAppend("["+arrayToString(bs.getDashArray())+"]");
+            psAppend(bs.getDashPhase());
+            psAppend("sd"+NEWLINE);
         }
     }
 
@@ -589,7 +767,7 @@ public class XJGraphics2DPS extends Graphics2D {
             for (int i = 0; i < w; i++) {
                 getSinglePixel(x+i, y+j, pixels[j * w + i]);
             }
-            ps.append(NEWLINE);
+            psAppendRaw(NEWLINE_CHARS);
         }
     }
 
@@ -602,9 +780,9 @@ public class XJGraphics2DPS extends Graphics2D {
         int green = (pixel >>  8) & 0xFF;
         int blue  = (pixel      ) & 0xFF;
         char[] hexValue = new char[2];
-        ASCIIHexEncode(red, hexValue); ps.append(hexValue);
-        ASCIIHexEncode(green, hexValue); ps.append(hexValue);
-        ASCIIHexEncode(blue, hexValue); ps.append(hexValue);
+        ASCIIHexEncode(red, hexValue); psAppendRaw(hexValue);
+        ASCIIHexEncode(green, hexValue); psAppendRaw(hexValue);
+        ASCIIHexEncode(blue, hexValue); psAppendRaw(hexValue);
     }
 
     /** Convert a byte to a two-char hex sequence; no Strings allocation
@@ -64,6 +64,29 @@ public abstract class AbstractTest extends TestCase {
         engine.updateAll();
     }
 
+    /** Removes length characters at offset and inserts the specified text
+     * the same way the editor does it (one parsing per edit).
+     */
+    public void replaceText(int offset, int length, String insert) {
+        editText(offset, length, insert);
+        engine.parserCompleted();
+        engine.updateAll();
+    }
+
+    /** Same as replaceText but the engine is not updated after the parsing, like
+     * when the editor parses several edits before the after-parse operations run.
+     */
+    public void editText(int offset, int length, String insert) {
+        if(length > 0) {
+            text = text.substring(0, offset)+text.substring(offset+length);
+            engine.getSyntaxEngine().processSyntax(offset, -length);
+        }
+        if(insert.length() > 0) {
+            text = text.substring(0, offset)+insert+text.substring(offset);
+            engine.getSyntaxEngine().processSyntax(offset, insert.length());
+        }
+    }
+
     public String getResourceFile(String fileName) {
         return getClass().getResource(fileName).getFile();
     }
@@ -36,6 +36,7 @@ public interface TestConstants {
     String TEST = PREFIX+"test.g";
     String REFERENCES = PREFIX+"references.g";
     String BLOCKS = PREFIX+"blocks.g";
+    String CALC = PREFIX+"calc.g";
 
     String REFACTOR_PREFIX = PREFIX+"refactor/";
     String REFACTOR_ORIGINAL_A = REFACTOR_PREFIX+"original_a.g";
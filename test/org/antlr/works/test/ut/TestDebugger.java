@@ -0,0 +1,509 @@
+package org.antlr.works.test.ut;
+
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+import org.antlr.works.debugger.DebuggerTab;
+import org.antlr.works.debugger.events.*;
+import org.antlr.works.debugger.input.DBInputProcessor;
+import org.antlr.works.debugger.input.DBInputTextTokenInfo;
+import org.antlr.works.debugger.panels.DBEventsPanel;
+import org.antlr.works.debugger.tivo.*;
+import org.antlr.works.debugger.tree.DBParseTreeModel;
+import org.antlr.works.debugger.tree.DBTreeNode;
+import org.antlr.works.test.AbstractTest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+public class TestDebugger extends AbstractTest {
+
+    public static void main(String[] args) {
+        new TestRunner().doRun(new TestSuite(TestDebugger.class));
+    }
+
+    public void testEventFileStore() throws Exception {
+        List<DBEvent> events = new ArrayList<DBEvent>();
+        events.add(new DBEventEnterRule("T.g", "prog"));
+        events.add(new DBEventLocation(3, 7));
+        events.add(new DBEventEnterDecision(1));
+        events.add(new DBEventMark(2));
+        events.add(new DBEventEnterAlt(1));
+        events.add(new DBEventRewind(2));
+        events.add(new DBEventExitDecision(1));
+        events.add(new DBEventExitRule("T.g", "prog"));
+
+        DBEventFileStore store = DBEventFileStore.createTemporary();
+        File temporary = store.getFile();
+        File saved = File.createTempFile("antlrworks", "."+DBEventFileStore.EXTENSION);
+        try {
+            for(DBEvent event : events) {
+                store.add(event);
+            }
+            assertEquals("size", events.size(), store.size());
+            assertEvents("recorded", events, store);
+
+            store.save(saved);
+        } finally {
+            store.close();
+        }
+        assertFalse("temporary file deleted", temporary.exists());
+
+        DBEventFileStore opened = DBEventFileStore.open(saved);
+        try {
+            assertEquals("opened size", events.size(), opened.size());
+            assertEvents("opened", events, opened);
+        } finally {
+            opened.close();
+        }
+        assertTrue("saved file kept", saved.exists());
+        saved.delete();
+    }
+
+    public void testEventsTableCheckpoints() throws Exception {
+        List<DBEvent> events = createEvents(1000);
+
+        // Add the events the way the player does and keep the context of each one
+        EventsPanel panel = new EventsPanel();
+        DBPlayerContextInfo info = new DBPlayerContextInfo();
+        List<int[]> expected = new ArrayList<int[]>();
+        for(int index=0; index<events.size(); index++) {
+            info.play(events.get(index));
+            panel.addEvent(events, index, info);
+            expected.add(new int[] { info.getSubrule(), info.getDecision(), info.getMark(), info.getBacktrack() });
+        }
+        DBEventsPanel.EventTableDataModel model = panel.getModel();
+        assertEquals("rows", events.size(), model.getRowCount());
+
+        // Read the rows forward, backward and at random to replay from the checkpoints and from the cursor
+        for(int row=0; row<events.size(); row++) {
+            assertContext(model, row, expected.get(row));
+        }
+        for(int row=events.size()-1; row>=0; row--) {
+            assertContext(model, row, expected.get(row));
+        }
+        Random random = new Random(0);
+        for(int i=0; i<500; i++) {
+            int row = random.nextInt(events.size());
+            assertContext(model, row, expected.get(row));
+        }
+
+        // Rewinding the player removes the rows and their checkpoints
+        int count = 600;
+        model.truncate(count);
+        assertEquals("truncated rows", count, model.getRowCount());
+        info.clear();
+        for(int index=0; index<events.size(); index++) {
+            info.play(events.get(index));
+            if(index >= count) {
+                panel.addEvent(events, index, info);
+            }
+        }
+        for(int row=events.size()-1; row>=0; row-=7) {
+            assertContext(model, row, expected.get(row));
+        }
+    }
+
+    public void testPlayerSnapshots() throws Exception {
+        List<DBEvent> events = createParseEvents(3000);
+
+        // Seek at random with enough budget: the snapshots are never thinned
+        assertSeeks(events, 32, Integer.MAX_VALUE, false);
+        // Seek at random with a small budget: the snapshots are thinned while playing
+        assertSeeks(events, 8, 60, true);
+    }
+
+    /** Plays the events, then seeks at random positions and checks that the player restored
+     * from its snapshots is in the same state as a player playing the events from the beginning.
+     */
+    private void assertSeeks(List<DBEvent> events, int interval, int budget, boolean thinned) {
+        PlayerTab tab = new PlayerTab(interval, budget);
+        DBPlayerSnapshots snapshots = tab.player.getSnapshots();
+        tab.playEvents(events, events.size(), false);
+        assertEquals("played", events.size(), tab.played);
+        if(thinned) {
+            assertTrue("interval doubled", snapshots.getInterval() > interval);
+        } else {
+            assertEquals("interval", interval, snapshots.getInterval());
+            assertEquals("snapshots", events.size()/interval, snapshots.getCount());
+        }
+        assertEquals("end", describe(createReference(events, events.size())), describe(tab));
+
+        Random random = new Random(2);
+        int position = events.size();
+        for(int i=0; i<60; i++) {
+            int target = 1+random.nextInt(events.size());
+            int count = snapshots.getCount();
+            int spacing = snapshots.getInterval();
+
+            tab.played = 0;
+            tab.playEvents(events, target, true);
+            assertEquals("seek "+target, describe(createReference(events, target)), describe(tab));
+
+            if(target <= position) {
+                // Only the events following the nearest snapshot are played again
+                assertTrue("played from snapshot "+tab.played, tab.played <= spacing);
+
+                // The snapshots after the restored one are dropped (playing the events again
+                // from the beginning resets the snapshots)
+                DBPlayerSnapshot last = snapshots.rewind(Integer.MAX_VALUE);
+                assertTrue("later snapshots dropped", last == null || last.position <= target);
+                if(tab.played < target) {
+                    assertEquals("interval kept", spacing, snapshots.getInterval());
+                    assertTrue("snapshots count", snapshots.getCount() <= count);
+                }
+            } else {
+                assertEquals("played forward", target-position, tab.played);
+            }
+            position = target;
+        }
+    }
+
+    /** Returns the state after playing the events from the beginning, without snapshots */
+    private PlayerTab createReference(List<DBEvent> events, int position) {
+        PlayerTab tab = new PlayerTab(0, 0);
+        tab.playEvents(events, position, false);
+        assertEquals("reference snapshots", 0, tab.player.getSnapshots().getCount());
+        return tab;
+    }
+
+    private String describe(PlayerTab tab) {
+        StringBuilder sb = new StringBuilder();
+        DBPlayerContextInfo info = tab.player.getContextInfo();
+        sb.append("context ").append(info.subrule).append(info.decision).append(info.mark).append(info.backtrack);
+        sb.append(" input ").append(tab.processor.index).append(" ").append(tab.processor.lt).append('\n');
+        describe(sb, (DBTreeNode)tab.tree.getRootRule(), 0);
+        sb.append("last ").append(tab.tree.getLastNode()).append(" rules ").append(tab.tree.rules.size());
+        sb.append(" backtracks ").append(tab.tree.backtrackStack.size());
+        return sb.toString();
+    }
+
+    private void describe(StringBuilder sb, DBTreeNode node, int depth) {
+        for(int i=0; i<depth; i++) {
+            sb.append(' ');
+        }
+        sb.append(node).append(' ').append(node.getColor().getRGB()).append('\n');
+        for(Enumeration e = node.children(); e.hasMoreElements(); ) {
+            describe(sb, (DBTreeNode)e.nextElement(), depth+1);
+        }
+    }
+
+    /** Returns random events of a parser entering rules, consuming tokens, looking ahead
+     * in decisions and backtracking.
+     */
+    private List<DBEvent> createParseEvents(int count) {
+        List<DBEvent> events = new ArrayList<DBEvent>();
+        Random random = new Random(3);
+        int rules = 0;
+        int decisions = 0;
+        int marks = 0;
+        int backtracks = 0;
+        int tokenIndex = 0;
+        events.add(new DBEventEnterRule("T.g", "prog"));
+        while(events.size() < count) {
+            int value = random.nextInt(100);
+            switch(random.nextInt(10)) {
+                case 0:
+                    events.add(new DBEventEnterRule("T.g", "r"+value));
+                    rules++;
+                    break;
+                case 1:
+                    if(rules > 0) {
+                        events.add(new DBEventExitRule("T.g", "r"+value));
+                        rules--;
+                    }
+                    break;
+                case 2:
+                    events.add(new DBEventEnterDecision(value));
+                    decisions++;
+                    break;
+                case 3:
+                    if(decisions > 0) {
+                        events.add(new DBEventExitDecision(value));
+                        decisions--;
+                    }
+                    break;
+                case 4:
+                    events.add(new DBEventLT(random.nextInt(3), createToken(tokenIndex+1, value)));
+                    break;
+                case 5:
+                    events.add(new DBEventMark(value));
+                    marks++;
+                    break;
+                case 6:
+                    if(marks > 0) {
+                        events.add(new DBEventRewind(value));
+                        marks--;
+                    }
+                    break;
+                case 7:
+                    events.add(new DBEventBeginBacktrack(backtracks+1));
+                    backtracks++;
+                    break;
+                case 8:
+                    if(backtracks > 0) {
+                        events.add(new DBEventEndBacktrack(backtracks, random.nextBoolean()));
+                        backtracks--;
+                    }
+                    break;
+                default:
+                    events.add(new DBEventLocation(value, 0));
+                    events.add(new DBEventConsumeToken(createToken(++tokenIndex, value)));
+                    break;
+            }
+        }
+        return events;
+    }
+
+    private Token createToken(int index, int value) {
+        CommonToken token = new CommonToken(1, "t"+value);
+        token.setTokenIndex(index);
+        return token;
+    }
+
+    /** Returns random events entering and leaving subrules, decisions, marks and backtracking */
+    private List<DBEvent> createEvents(int count) {
+        List<DBEvent> events = new ArrayList<DBEvent>();
+        DBPlayerContextInfo info = new DBPlayerContextInfo();
+        Random random = new Random(1);
+        while(events.size() < count) {
+            int value = random.nextInt(100);
+            DBEvent event;
+            switch(random.nextInt(9)) {
+                case 0: event = new DBEventEnterSubRule(value); break;
+                case 1: event = info.subrule.isEmpty() ? null : new DBEventExitSubRule(info.getSubrule()); break;
+                case 2: event = new DBEventEnterDecision(value); break;
+                case 3: event = info.decision.isEmpty() ? null : new DBEventExitDecision(info.getDecision()); break;
+                case 4: event = new DBEventMark(value); break;
+                case 5: event = info.mark.isEmpty() ? new DBEventRewind() : new DBEventRewind(info.getMark()); break;
+                case 6: event = new DBEventBeginBacktrack(value); break;
+                case 7: event = info.backtrack.isEmpty() ? null : new DBEventEndBacktrack(info.getBacktrack(), true); break;
+                default: event = new DBEventLocation(value, 0); break;
+            }
+            if(event != null) {
+                info.play(event);
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private void assertContext(DBEventsPanel.EventTableDataModel model, int row, int[] expected) {
+        int[] columns = { DBEventsPanel.INFO_COLUMN_SUBRULE, DBEventsPanel.INFO_COLUMN_DECISION,
+                DBEventsPanel.INFO_COLUMN_MARK, DBEventsPanel.INFO_COLUMN_BACKTRACK };
+        for(int index=0; index<columns.length; index++) {
+            String value = expected[index] == -1 ? null : String.valueOf(expected[index]);
+            assertEquals("row "+row+" column "+columns[index], value, model.getValueAt(row, columns[index]));
+        }
+    }
+
+    private void assertEvents(String message, List<DBEvent> expected, List<DBEvent> actual) {
+        for(int index=0; index<expected.size(); index++) {
+            assertEquals(message+" "+index, expected.get(index).toString(), actual.get(index).toString());
+        }
+    }
+
+    /** A debugger tab which only displays the parse tree, played by a player whose
+     * snapshots have the specified interval and budget.
+     */
+    private static class PlayerTab extends DebuggerTab {
+
+        public final DBParseTreeModel tree = new DBParseTreeModel(this);
+        public final Processor processor = new Processor();
+        public final Player player;
+        public int played;
+
+        public PlayerTab(int interval, int budget) {
+            super(null);
+            player = new Player(this, interval, budget);
+            player.setInputBuffer(processor);
+            player.resetPlayEvents(true);
+        }
+
+        public void playEvents(List<DBEvent> events, int lastEventPosition, boolean reset) {
+            player.playEvents(events, lastEventPosition, reset);
+        }
+
+        public void resetGUI() {
+            tree.clear();
+        }
+
+        public void addEvent(List<DBEvent> events, int index, DBPlayerContextInfo info) {
+            played++;
+        }
+
+        public void playerCreateSnapshot(DBPlayerSnapshot snapshot) {
+            snapshot.setState(tree, tree.createSnapshot());
+        }
+
+        public void playerRestoreSnapshot(DBPlayerSnapshot snapshot) {
+            tree.restoreSnapshot(snapshot.getState(tree));
+        }
+
+        public void playerSetLocation(DBEventLocation location) {
+            tree.setLocation(location);
+        }
+
+        public void playerPushRule(DBEventEnterRule rule) {
+            tree.pushRule(rule.name);
+        }
+
+        public void playerPopRule(DBEventExitRule rule) {
+            tree.popRule();
+        }
+
+        public void playerConsumeToken(Token token) {
+            tree.addToken(token);
+        }
+
+        public void playerBeginBacktrack(int level) {
+            tree.beginBacktrack(level);
+        }
+
+        public void playerEndBacktrack(int level, boolean success) {
+            tree.endBacktrack(level, success);
+        }
+
+        public void resetGrammarLocation() {
+        }
+
+        public void setGrammarLocation(DBEventLocation location) {
+        }
+    }
+
+    private static class Player extends DBPlayer {
+
+        public Player(DebuggerTab tab, final int interval, final int budget) {
+            super(tab);
+            snapshots = new DBPlayerSnapshots() {
+                protected int getInitialInterval() {
+                    return interval;
+                }
+
+                protected int getBudget() {
+                    return budget;
+                }
+            };
+        }
+
+        public DBPlayerSnapshots getSnapshots() {
+            return snapshots;
+        }
+    }
+
+    /** An input which only remembers the index of the current token and the lookahead tokens */
+    private static class Processor implements DBInputProcessor {
+
+        public int index;
+        public List<Integer> lt = new ArrayList<Integer>();
+
+        public void reset() {
+            index = 0;
+            lt.clear();
+        }
+
+        public void removeAllLT() {
+            lt.clear();
+        }
+
+        public void rewind(int i) {
+            index = i;
+        }
+
+        public void rewindAll() {
+            reset();
+        }
+
+        public void LT(Token token) {
+            lt.add(token.getTokenIndex());
+        }
+
+        public void consumeToken(Token token, int flavor) {
+            index = token.getTokenIndex();
+        }
+
+        public void setLocation(DBEventLocation event) {
+        }
+
+        public int getCurrentTokenIndex() {
+            return index;
+        }
+
+        public DBInputTextTokenInfo getTokenInfoAtTokenIndex(int index) {
+            return null;
+        }
+
+        public DBPlayerSnapshot.State createSnapshot() {
+            return new State(index, lt);
+        }
+
+        public void restoreSnapshot(DBPlayerSnapshot.State state) {
+            State s = (State)state;
+            index = s.index;
+            lt.clear();
+            lt.addAll(s.lt);
+        }
+
+        private static class State implements DBPlayerSnapshot.State {
+
+            public final int index;
+            public final List<Integer> lt;
+
+            public State(int index, List<Integer> lt) {
+                this.index = index;
+                this.lt = new ArrayList<Integer>(lt);
+            }
+
+            public int getSize() {
+                return 1+lt.size();
+            }
+        }
+    }
+
+    /** Gives access to the table model of the events panel */
+    private static class EventsPanel extends DBEventsPanel {
+
+        public EventsPanel() {
+            super(null);
+        }
+
+        public EventTableDataModel getModel() {
+            return eventTableDataModel;
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+package org.antlr.works.test.ut;
+
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.antlr.works.test.AbstractTest;
+import org.antlr.xjlib.appkit.gview.base.Vector2D;
+import org.antlr.xjlib.appkit.gview.object.GElement;
+import org.antlr.xjlib.appkit.gview.utils.GLayeredLayout;
+import org.antlr.xjlib.appkit.gview.utils.GLayeredLayouts;
+
+import java.util.ArrayList;
+import java.util.List;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+public class TestGraphLayout extends AbstractTest {
+
+    public static void main(String[] args) {
+        new TestRunner().doRun(new TestSuite(TestGraphLayout.class));
+    }
+
+    public void testCycles() throws Exception {
+        Layout layout = new Layout();
+        layout.layout("digraph { a -> b; b -> c; c -> a; }");
+
+        // The back edge is reversed: the nodes are on three layers, in the order of the search
+        assertTrue("a above b", layout.y("a") < layout.y("b"));
+        assertTrue("b above c", layout.y("b") < layout.y("c"));
+
+        // The reversed edge still goes from c to a, through a dummy node in the layer of b
+        Vector2D[] points = layout.points("c", "a");
+        assertTrue("starts at c", points[0].sub(layout.center("c")).length() < points[0].sub(layout.center("a")).length());
+        Vector2D tip = points[points.length-1];
+        assertTrue("ends at a", tip.sub(layout.center("a")).length() < tip.sub(layout.center("c")).length());
+        assertEquals("dummy node", layout.points("a", "b").length+1, points.length);
+    }
+
+    public void testDummyNodes() throws Exception {
+        Layout layout = new Layout();
+        layout.layout("digraph { a -> b; b -> c; a -> c; }");
+
+        // The long edge goes around b through a dummy node in the layer of b
+        Vector2D[] points = layout.points("a", "c");
+        assertEquals("one dummy node", layout.points("a", "b").length+1, points.length);
+        Vector2D dummy = points[3];
+        assertEquals("dummy layer", layout.y("b"), dummy.y, 0.001);
+        assertTrue("dummy beside b", Math.abs(dummy.x-layout.x("b")) >= layout.width("b")/2);
+
+        // A self loop does not create a layer
+        layout.layout("digraph { a -> b; b -> b; }");
+        assertTrue("a above b", layout.y("a") < layout.y("b"));
+        assertEquals("two layers", 2, layout.getLayers());
+    }
+
+    public void testIncrementalLayout() throws Exception {
+        String first = "digraph { a -> d; a -> c; a -> b; }";
+        String second = "digraph { a -> b; a -> c; a -> d; a -> e; }";
+
+        Layout layout = new Layout();
+        layout.layout(first);
+        assertEquals("first order", "[d, c, b]", layout.order("b", "c", "d").toString());
+
+        // The same graph reuses the previous layout
+        Object geometry = layout.geometry;
+        layout.layout(first);
+        assertSame("same geometry", geometry, layout.geometry);
+
+        // A new version of the graph is seeded with the previous positions: the nodes keep their order
+        layout.layout(second);
+        assertEquals("seeded order", "[d, c, b]", layout.order("b", "c", "d").toString());
+
+        Layout fresh = new Layout();
+        fresh.layout(second);
+        assertEquals("fresh order", "[b, c, d]", fresh.order("b", "c", "d").toString());
+    }
+
+    public void testLayoutsByGraph() throws Exception {
+        GLayeredLayouts layouts = new GLayeredLayouts(2) {
+            @Override
+            protected GLayeredLayout createLayout() {
+                return new Layout();
+            }
+        };
+        Layout a = (Layout)layouts.getLayout("a");
+        assertSame("same graph", a, layouts.getLayout("a"));
+        assertNotSame("other graph", a, layouts.getLayout("b"));
+
+        // Each graph is seeded with its own previous layout, whatever is laid out in between
+        a.layout("digraph { a -> d; a -> c; a -> b; }");
+        layouts.getLayout("b").layout("digraph { x -> y; }");
+        layouts.getLayout("a").layout("digraph { a -> b; a -> c; a -> d; a -> e; }");
+        assertEquals("seeded order", "[d, c, b]", a.order("b", "c", "d").toString());
+
+        // Only the most recently used layouts are kept
+        layouts.getLayout("c");
+        assertEquals("size", 2, layouts.size());
+        assertSame("recently used", a, layouts.getLayout("a"));
+        assertNotSame("evicted", layouts.getLayout("c"), layouts.getLayout("b"));
+    }
+
+    /** Gives access to the geometry computed by the layout */
+    private static class Layout extends GLayeredLayout {
+
+        public Geometry geometry;
+
+        @Override
+        protected GElement createElements(Geometry geometry) {
+            this.geometry = geometry;
+            return super.createElements(geometry);
+        }
+
+        public NodeGeometry node(String label) {
+            for(NodeGeometry ng : geometry.nodes) {
+                if(ng.label.equals(label))
+                    return ng;
+            }
+            fail("no node "+label);
+            return null;
+        }
+
+        public double width(String label) {
+            return node(label).width;
+        }
+
+        public double x(String label) {
+            return node(label).x;
+        }
+
+        public double y(String label) {
+            return node(label).y;
+        }
+
+        public Vector2D center(String label) {
+            return new Vector2D(x(label), y(label));
+        }
+
+        public Vector2D[] points(String source, String target) {
+            for(EdgeGeometry eg : geometry.edges) {
+                if(eg.source.label.equals(source) && eg.target.label.equals(target))
+                    return eg.points;
+            }
+            fail("no edge "+source+" -> "+target);
+            return null;
+        }
+
+        public int getLayers() {
+            List<Double> layers = new ArrayList<Double>();
+            for(NodeGeometry ng : geometry.nodes) {
+                if(!layers.contains(ng.y))
+                    layers.add(ng.y);
+            }
+            return layers.size();
+        }
+
+        /** Returns the labels sorted by their position in their layer */
+        public List<String> order(String... labels) {
+            List<String> order = new ArrayList<String>();
+            for(String label : labels) {
+                int index = 0;
+                while(index < order.size() && x(order.get(index)) < x(label)) {
+                    index++;
+                }
+                order.add(index, label);
+            }
+            return order;
+        }
+    }
+
+}
@@ -2,16 +2,29 @@ package org.antlr.works.test.ut;
 
 import junit.framework.TestSuite;
 import junit.textui.TestRunner;
+import org.antlr.tool.Grammar;
+import org.antlr.works.ate.syntax.generic.ATEStylePalette;
+import org.antlr.works.ate.syntax.generic.ATEStyleRuns;
+import org.antlr.works.ate.syntax.generic.ATESyntaxResult;
+import org.antlr.works.ate.syntax.misc.ATELine;
 import org.antlr.works.ate.syntax.misc.ATEToken;
 import org.antlr.works.editor.EditorInspector;
 import org.antlr.works.editor.EditorRules;
+import org.antlr.works.grammar.antlr.ANTLRGrammarAnalysisCache;
+import org.antlr.works.grammar.antlr.GrammarLayout;
+import org.antlr.works.grammar.antlr.GrammarSignature;
+import org.antlr.works.grammar.element.ElementAction;
 import org.antlr.works.grammar.element.ElementBlock;
 import org.antlr.works.grammar.element.ElementGrammarName;
 import org.antlr.works.grammar.element.ElementReference;
 import org.antlr.works.grammar.element.ElementRule;
+import org.antlr.works.grammar.syntax.GrammarSyntaxLexer;
+import org.antlr.works.grammar.syntax.GrammarSyntaxParser;
 import org.antlr.works.test.AbstractTest;
 import org.antlr.works.test.TestConstants;
+import org.antlr.works.utils.BufferedErrorListener;
 
+import java.lang.ref.WeakReference;
 import java.util.*;
 /*
 
@@ -112,6 +125,20 @@ public class TestParser extends AbstractTest {
         assertEquals("references", Arrays.asList("FOO", "BAR", "OTHER"), getRefsAsString(getEngine().getReferences()));
     }
 
+    public void testDuplicateRules() throws Exception {
+        parseFile(TestConstants.REFERENCES);
+        replaceText(getText().length(), 0, "\nBAR :\n\t;\n\nrule_a : FOO\n\t;\n");
+
+        // The duplicates are reported in declaration order
+        List<String> names = new ArrayList<String>();
+        for(ElementRule rule : getEngine().getDuplicateRules()) {
+            names.add(rule.name);
+        }
+        assertEquals("duplicate rules", Arrays.asList("rule_a", "rule_a", "BAR", "BAR"), names);
+        assertEquals("declared names", Arrays.asList("FOO", "OTHER", "LAST", "rule_a", "BAR"),
+                new ArrayList<String>(getEngine().getDeclaredNames()));
+    }
+
     public void testMantra() throws Exception {
         parseFile(TestConstants.MANTRA);
         assertInspector(0);
@@ -171,8 +198,310 @@ public class TestParser extends AbstractTest {
         assertInspector(0);
     }
 
+    public void testIncrementalLexing() throws Exception {
+        parseFile(TestConstants.MANTRA);
+
+        // Open a comment in the middle of the grammar, then close it
+        int offset = getText().indexOf("\n", getText().length()/2);
+        replaceText(offset, 0, "\n/* comment");
+        assertTokensLexedFromScratch();
+        assertTokensNotShared();
+        replaceText(offset+"\n/* comment".length(), 0, " */");
+        assertTokensLexedFromScratch();
+        assertTokensNotShared();
+
+        // Remove the comment and rename the first rule
+        replaceText(offset, "\n/* comment */".length(), "");
+        assertTokensLexedFromScratch();
+        ElementRule rule = getEngine().getRules().get(0);
+        replaceText(getText().indexOf(rule.name, rule.start.start), rule.name.length(), "renamed");
+        assertTokensLexedFromScratch();
+        assertEquals("renamed rule", "renamed", getEngine().getRules().get(0).name);
+
+        assertParserProperties(65, 32, 30, 115, 274);
+    }
+
+    public void testIncrementalParsing() throws Exception {
+        parseFile(TestConstants.MANTRA);
+        List<ElementRule> rules = new ArrayList<ElementRule>(getEngine().getRules());
+
+        // Add a reference at the end of a rule: only this rule is parsed again and
+        // the other rules are copied with their state
+        ElementRule rule = rules.get(10);
+        rules.get(20).setExpanded(false);
+        replaceText(getText().lastIndexOf(";", rule.end.end), 0, " "+rules.get(0).name+" ");
+        assertTrue("scoped changes", getEngine().getSyntaxChanges().isScoped());
+        for(int index=0; index<rules.size(); index++) {
+            ElementRule newRule = getEngine().getRules().get(index);
+            assertNotSame("copied rule", rules.get(index), newRule);
+            assertSame("new rule", newRule, getEngine().getSyntaxChanges().getNewRule(rules.get(index)));
+            assertEquals("name of the rule", rules.get(index).name, newRule.name);
+        }
+        assertFalse("state of the rule", getEngine().getRules().get(20).isExpanded());
+        assertEquals("references of the rule", 2, getEngine().getRules().get(10).getReferences().size());
+
+        assertParserProperties(65, 32, 30, 115, 275);
+    }
+
+    public void testIncrementalParsingWithoutUpdate() throws Exception {
+        parseFile(TestConstants.MANTRA);
+        List<ElementRule> rules = new ArrayList<ElementRule>(getEngine().getRules());
+        int undefined = getEngine().getUndefinedReferences().size();
+
+        // Add an undefined reference in two rules before a single update: both rules have changed
+        editText(getText().lastIndexOf(";", rules.get(20).end.end), 0, " undefinedB ");
+        editText(getText().lastIndexOf(";", rules.get(10).end.end), 0, " undefinedA ");
+        getEngine().parserCompleted();
+        getEngine().updateAll();
+
+        assertTrue("scoped changes", getEngine().getSyntaxChanges().isScoped());
+        assertNotNull("first rule", getEngine().getSyntaxChanges().getNewRule(rules.get(10)));
+        assertNotNull("second rule", getEngine().getSyntaxChanges().getNewRule(rules.get(20)));
+        assertEquals("undefined references", undefined+2, getEngine().getUndefinedReferences().size());
+
+        // A parsing of all the tokens between two updates is never scoped
+        int offset = getText().lastIndexOf(";", getEngine().getRules().get(10).end.end);
+        String comment = "// comment\n";
+        editText(0, 0, comment);
+        getSyntaxEngine().processSyntax();
+        editText(offset+comment.length(), 0, " undefinedC ");
+        getEngine().parserCompleted();
+        getEngine().updateAll();
+
+        assertFalse("full changes", getEngine().getSyntaxChanges().isScoped());
+        assertEquals("undefined references", undefined+3, getEngine().getUndefinedReferences().size());
+    }
+
+    public void testGrammarSignature() throws Exception {
+        parseFile(TestConstants.MANTRA);
+        List<String> values = Arrays.asList("mantra.g", null);
+        GrammarSignature signature = new GrammarSignature(getEngine().getTokens(), values);
+        GrammarLayout layout = new GrammarLayout(getEngine().getTokens(), getEngine().getRules());
+        ATEToken name = getEngine().getRules().get(10).start;
+        int line = name.startLineNumber;
+        int column = name.start-name.startLineIndex;
+
+        // A comment and a blank line only move the rules: the grammars can be reused
+        replaceText(getEngine().getRules().get(0).start.start, 0, "// comment\n\n");
+        assertEquals("same signature", signature, new GrammarSignature(getEngine().getTokens(), values));
+
+        ATEToken moved = getEngine().getRules().get(10).start;
+        int[] position = layout.map(line, column, new GrammarLayout(getEngine().getTokens(), getEngine().getRules()));
+        assertEquals("moved line", line+2, moved.startLineNumber);
+        assertEquals("translated line", moved.startLineNumber, position[0]);
+        assertEquals("translated column", moved.start-moved.startLineIndex, position[1]);
+
+        // A new token changes the signature
+        replaceText(getEngine().getRules().get(10).end.start, 0, " "+getEngine().getRules().get(0).name+" ");
+        assertFalse("different signature", signature.equals(new GrammarSignature(getEngine().getTokens(), values)));
+    }
+
+    public void testAnalysisCache() throws Exception {
+        ANTLRGrammarAnalysisCache cache = new ANTLRGrammarAnalysisCache();
+        Grammar g1 = new Grammar();
+        g1.name = "t";
+        Grammar g2 = new Grammar();
+        g2.name = "t";
+        List<BufferedErrorListener> messages = Collections.singletonList(new BufferedErrorListener());
+
+        cache.setRuleKeys(createRuleKeys("a", "a : B c ;"));
+        cache.setMessages(g1, "a", messages);
+        assertSame("same grammar", messages, cache.getMessages(g1, "a", 1, false));
+        assertNull("other grammar", cache.getMessages(g2, "a", 1, false));
+        assertNull("other number of decisions", cache.getMessages(g1, "a", 2, false));
+
+        // The key of a rule that only moved does not change
+        cache.setRuleKeys(createRuleKeys("a", "\n\n// comment\na :\n\tB c\n\t;"));
+        assertSame("moved rule", messages, cache.getMessages(g2, "a", 1, true));
+
+        cache.setRuleKeys(createRuleKeys("a", "a : B d ;"));
+        assertNull("changed rule", cache.getMessages(g2, "a", 1, true));
+
+        cache.retain(Collections.<String>emptySet());
+        assertNull("removed rule", cache.getMessages(g1, "a", 1, false));
+
+        // The cache does not prevent a grammar from being collected
+        cache.setMessages(g1, "a", messages);
+        WeakReference<Grammar> grammar = new WeakReference<Grammar>(g1);
+        g1 = null;
+        for(int i=0; i<50 && grammar.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("collected grammar", grammar.get());
+    }
+
+    private Map<String, GrammarSignature> createRuleKeys(String rule, String text) {
+        GrammarSyntaxLexer lexer = new GrammarSyntaxLexer();
+        lexer.tokenize(text);
+        return Collections.singletonMap(rule, new GrammarSignature(lexer.getTokens(), Collections.singletonList(rule)));
+    }
+
+    public void testPublishedResultNotModified() throws Exception {
+        parseFile(TestConstants.MANTRA);
+        ATESyntaxResult previous = getSyntaxEngine().getResult();
+        String description = describe(previous);
+
+        // Insert a line in the middle of the grammar and edit a rule: the previous result is not modified
+        int offset = getText().indexOf("\n", getText().length()/2);
+        replaceText(offset, 0, "\n a b");
+        replaceText(getText().lastIndexOf(";", getEngine().getRules().get(10).end.end), 0, " x ");
+        assertNotSame("new result", previous, getSyntaxEngine().getResult());
+        assertEquals("previous result", description, describe(previous));
+        assertTokensLexedFromScratch();
+
+        // The new result is the same as the result of a parsing from scratch
+        ATESyntaxResult result = getSyntaxEngine().getResult();
+        parseFile(TestConstants.MANTRA);
+        assertNotSame("new result", result, getSyntaxEngine().getResult());
+        replaceText(offset, 0, "\n a b");
+        replaceText(getText().lastIndexOf(";", getEngine().getRules().get(10).end.end), 0, " x ");
+        getSyntaxEngine().processSyntax();
+        assertEquals("result", describe(getSyntaxEngine().getResult()), describe(result));
+    }
+
+    public void testPublishedResultStableDuringParsing() throws Exception {
+        parseFile(TestConstants.MANTRA);
+        final ATESyntaxResult published = getSyntaxEngine().getResult();
+        final String description = describe(published);
+
+        // Edit and parse the grammar in another thread while the published result is read
+        final Random random = new Random(1);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread parsing = new Thread() {
+            public void run() {
+                try {
+                    for(int index=0; index<200; index++) {
+                        int offset = random.nextInt(getText().length());
+                        if(random.nextBoolean()) {
+                            editText(offset, 0, random.nextBoolean() ? " a " : "\n");
+                        } else {
+                            editText(offset, 1, "");
+                        }
+                    }
+                } catch(Throwable e) {
+                    errors.add(e);
+                }
+            }
+        };
+        parsing.start();
+        while(parsing.isAlive()) {
+            assertEquals("published result", description, describe(published));
+        }
+        parsing.join();
+        assertTrue("errors "+errors, errors.isEmpty());
+        assertEquals("published result", description, describe(published));
+        assertTokensLexedFromScratch();
+    }
+
+    public void testStyleRuns() throws Exception {
+        parseFile(TestConstants.MANTRA);
+        assertStyleRuns();
+
+        // Comment the beginning of a rule: the styles of the following tokens change
+        int offset = getText().indexOf("\n", getText().length()/2);
+        replaceText(offset, 0, "\n/* a b");
+        replaceText(getText().indexOf("\n", offset+10), 0, " */");
+        assertStyleRuns();
+    }
+
     /*********************** HELPER ***************************************/
 
+    /** Returns a description of the tokens, the lines and the elements of a result */
+    private String describe(ATESyntaxResult result) {
+        StringBuilder sb = new StringBuilder();
+        for(ATEToken token : result.getTokens()) {
+            sb.append(token.getAttribute()).append(' ').append(token.start).append(' ').append(token.type);
+            sb.append(' ').append(token.index).append(' ').append(token.startLineNumber).append(' ').append(token.startLineIndex);
+            sb.append(' ').append(token.scope == null ? null : token.scope.getClass().getSimpleName()).append('\n');
+        }
+        for(ATELine line : result.getLines()) {
+            sb.append(line.position).append('\n');
+        }
+        GrammarSyntaxParser parser = (GrammarSyntaxParser) result.getParser();
+        for(ElementRule rule : parser.rules) {
+            sb.append(rule.name).append(' ').append(rule.getStartIndex()).append(' ').append(rule.getEndIndex()).append('\n');
+        }
+        for(ElementReference ref : parser.references) {
+            sb.append(ref.rule).append(' ').append(ref.getName()).append(' ').append(ref.getStartIndex()).append('\n');
+        }
+        for(ElementAction action : parser.actions) {
+            sb.append(action.rule).append(' ').append(action.actionNum).append(' ').append(action.start.start).append('\n');
+        }
+        for(ElementBlock block : parser.blocks) {
+            sb.append(block.name).append(' ').append(block.start.start).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private void assertStyleRuns() {
+        ATEStyleRuns runs = getSyntaxEngine().getStyleRuns();
+        ATEStylePalette palette = getSyntaxEngine().getStylePalette();
+
+        int run = 0;
+        for(ATEToken token : getSyntaxEngine().getTokens()) {
+            int style = palette.getStyle(getSyntaxEngine().getAttributeForToken(token));
+            if(style == ATEStylePalette.DEFAULT_STYLE || token.end <= token.start)
+                continue;
+
+            assertEquals("run start", token.start, runs.getStart(run));
+            assertEquals("run end", token.end, runs.getEnd(run));
+            assertEquals("run style", style, runs.getStyle(run));
+            run++;
+        }
+        assertEquals("number of runs", run, runs.getRunCount());
+
+        String text = getText();
+        int line = 0;
+        int position = 0;
+        while(true) {
+            assertEquals("first run of line", runs.findFirstRun(position), runs.findFirstRunOfLine(line++, position));
+            position = text.indexOf('\n', position);
+            if(position == -1) break;
+            position++;
+        }
+        assertEquals("number of lines", line, runs.getLineCount());
+    }
+
+
+    private void assertTokensLexedFromScratch() {
+        GrammarSyntaxLexer lexer = new GrammarSyntaxLexer();
+        lexer.tokenize(getText());
+
+        List<ATEToken> expected = lexer.getTokens();
+        List<ATEToken> tokens = getSyntaxEngine().getTokens();
+        assertEquals("Number of tokens", expected.size(), tokens.size());
+        for(int index=0; index<expected.size(); index++) {
+            ATEToken e = expected.get(index);
+            ATEToken t = tokens.get(index);
+            assertEquals("token", e.getAttribute(), t.getAttribute());
+            assertEquals("token start", e.start, t.start);
+            assertEquals("token end", e.end, t.end);
+            assertEquals("token index", index, t.index);
+            assertEquals("token line", e.startLineNumber, t.startLineNumber);
+            assertEquals("token line index", e.startLineIndex, t.startLineIndex);
+        }
+        assertEquals("Number of lines", lexer.getLines().size(), getSyntaxEngine().getLines().size());
+    }
+
+
+    /** The lexer modifies its tokens and lines in place: they must never be the published ones */
+    private void assertTokensNotShared() {
+        Map<Object,Object> lexed = new IdentityHashMap<Object,Object>();
+        for(ATEToken token : getSyntaxEngine().getLexer().getTokens()) {
+            lexed.put(token, token);
+        }
+        for(ATELine line : getSyntaxEngine().getLexer().getLines()) {
+            lexed.put(line, line);
+        }
+        for(ATEToken token : getSyntaxEngine().getTokens()) {
+            assertFalse("published token", lexed.containsKey(token));
+        }
+        for(ATELine line : getSyntaxEngine().getLines()) {
+            assertFalse("published line", lexed.containsKey(line));
+        }
+    }
+
     private void printParserProperties() {
         System.out.println("Rules="+getEngine().getNumberOfRules());
         System.out.println("Actions="+getEngine().getActions().size());
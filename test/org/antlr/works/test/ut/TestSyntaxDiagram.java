@@ -1,10 +1,32 @@
 package org.antlr.works.test.ut;
 
+import org.antlr.works.grammar.antlr.ANTLRGrammarEngine;
 import org.antlr.works.test.AbstractTest;
 import org.antlr.works.test.TestConstants;
+import org.antlr.works.visualization.fa.FAState;
+import org.antlr.works.visualization.fa.FATransition;
+import org.antlr.works.visualization.graphics.GContext;
+import org.antlr.works.visualization.graphics.GDiskCache;
+import org.antlr.works.visualization.graphics.GFactory;
+import org.antlr.works.visualization.graphics.GRenderer;
+import org.antlr.works.visualization.graphics.graph.GGraph;
+import org.antlr.works.visualization.graphics.primitive.GDimension;
+import org.antlr.works.visualization.graphics.primitive.GPoint;
+import org.antlr.works.visualization.graphics.shape.GLink;
+import org.antlr.works.visualization.graphics.shape.GNode;
+import org.antlr.works.visualization.skin.syntaxdiagram.SDSkin;
+import org.antlr.xjlib.appkit.swing.XJGraphics2DPS;
 import org.antlr.xjlib.foundation.XJUtils;
 
-import java.io.File;/*
+import java.awt.*;
+import java.awt.geom.GeneralPath;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.List;/*
 
 [The "BSD licence"]
 Copyright (c) 2005-07 Jean Bovet
@@ -47,6 +69,280 @@ public class TestSyntaxDiagram extends AbstractTest {
   //      assertSD("expr", "expr");
     }
 
+    public void testDiskCache() throws Exception {
+        File directory = File.createTempFile("sdcache", "");
+        directory.delete();
+        GDiskCache cache = GDiskCache.create(directory, 1024*1024);
+        assertNotNull("cache", cache);
+
+        cache.put("/a.g", "rule", 42, true, createGraph());
+        assertNull("other fingerprint", cache.get("/a.g", "rule", 43, true));
+        assertNull("other optimization", cache.get("/a.g", "rule", 42, false));
+
+        GGraph graph = cache.get("/a.g", "rule", 42, true);
+        assertNotNull("cached graph", graph);
+        assertEquals("name", "rule", graph.name);
+        assertEquals("dimension", "w+1", graph.getLayoutDimension().width);
+        assertEquals("nodes", 2, graph.nodes.size());
+
+        GNode start = graph.nodes.get(0);
+        GLink link = start.links.get(0);
+        assertEquals("position", "x", start.position.x);
+        assertSame("link target", graph.nodes.get(1), link.target);
+        assertSame("link transition", start.state.transitions.get(0), link.transition);
+        assertSame("transition target", graph.nodes.get(1).state, link.transition.target);
+        assertEquals("label", "ID", link.transition.label);
+        assertTrue("accepted state", link.transition.target.acceptedState);
+
+        // A corrupted entry is discarded
+        File entry = directory.listFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(entry, "rw");
+        raf.seek(raf.length()-1);
+        raf.write(raf.read() ^ 0xFF);
+        raf.close();
+        assertNull("corrupted entry", cache.get("/a.g", "rule", 42, true));
+        assertFalse("corrupted entry deleted", entry.exists());
+
+        cache.clear();
+        directory.delete();
+    }
+
+    public void testFactoryDiskCache() throws Exception {
+        parseFile(TestConstants.CALC);
+        ANTLRGrammarEngine engine = getEngine().getANTLRGrammarEngine();
+
+        File directory = File.createTempFile("sdcache", "");
+        directory.delete();
+        GDiskCache cache = GDiskCache.create(directory, 1024*1024);
+        assertNotNull("cache", cache);
+
+        CountingFactory factory = new CountingFactory();
+        factory.setDiskCache(cache, "/calc.g");
+
+        GGraph rendered = factory.buildGraphsForRule(engine, "expr");
+        assertEquals("rendered", 1, factory.getRenderCount());
+        assertEquals("entries", 1, directory.listFiles().length);
+
+        // The second build is served from the disk
+        GGraph cached = factory.buildGraphsForRule(engine, "expr");
+        assertEquals("not rendered", 1, factory.getRenderCount());
+        assertNotSame("cached graph", rendered, cached);
+        assertEquals("name", "expr", cached.name);
+        assertEquals("nodes", rendered.nodes.size(), cached.nodes.size());
+        assertEquals("dimension", rendered.getLayoutDimension().width, cached.getLayoutDimension().width);
+
+        // Another optimization is another entry
+        factory.setOptimize(false);
+        factory.buildGraphsForRule(engine, "expr");
+        assertEquals("rendered without optimization", 2, factory.getRenderCount());
+
+        cache.clear();
+        directory.delete();
+    }
+
+    public void testSpatialIndexAfterRender() throws Exception {
+        FAState s1 = new FAState(1);
+        FAState s2 = new FAState(2);
+        s2.acceptedState = true;
+        FATransition t = new FATransition("ID", s2);
+        s1.addTransition(t);
+
+        GNode n1 = new GNode();
+        n1.setState(s1);
+        n1.setPosition(new GPoint());
+        GNode n2 = new GNode();
+        n2.setState(s2);
+        GPoint p = new GPoint();
+        p.addX(GContext.BOX_WIDTH);
+        n2.setPosition(p);
+        n2.lastNodeOfRule = true;
+        n1.addLink(new GLink(t, n2));
+
+        List<GNode> nodes = new ArrayList<GNode>();
+        nodes.add(n1);
+        nodes.add(n2);
+
+        GGraph graph = new GGraph();
+        graph.setDimension(new GDimension(GContext.BOX_WIDTH, GContext.BOX_UP, GContext.BOX_DOWN));
+        graph.setNodes(nodes);
+        graph.setName("rule");
+        GContext context = new GContext();
+        context.setSkin(new SDSkin());
+        graph.setContext(context);
+
+        graph.render(0, 0);
+        Rectangle before = new Rectangle((int)n2.getX(), (int)n2.getY(), 1, 1);
+        assertTrue("node", graph.getSpatialIndex().query(before).contains(n2));
+
+        // The index follows the new positions of the nodes
+        graph.render(0, 1000);
+        Rectangle after = new Rectangle((int)n2.getX(), (int)n2.getY(), 1, 1);
+        assertFalse("node moved", graph.getSpatialIndex().query(before).contains(n2));
+        assertTrue("node at new position", graph.getSpatialIndex().query(after).contains(n2));
+    }
+
+    public void testEPSOutput() throws Exception {
+        // Program written by the former XJGraphics2DPS (which formatted every number and repeated each change
+        // of color or stroke)
+        String expected = getTextFromFile(TestConstants.PREFIX+"sd/eps/scene.eps");
+
+        XJGraphics2DPS g = new XJGraphics2DPS();
+        g.setMargins(5, 5);
+        drawScene(g);
+        String text = g.getPSText().replace(System.getProperty("line.separator"), "\n");
+
+        assertEquals("header", expected.substring(0, expected.indexOf("%%EndComments")),
+                text.substring(0, text.indexOf("%%EndComments")));
+        assertEquals("operations", getPaintOperations(expected), getPaintOperations(text));
+
+        // The streamed program is the same as the one built in memory
+        XJGraphics2DPS measure = XJGraphics2DPS.createMeasure();
+        measure.setMargins(5, 5);
+        drawScene(measure);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XJGraphics2DPS stream = new XJGraphics2DPS(out, measure.getDrawingBounds());
+        stream.setMargins(5, 5);
+        drawScene(stream);
+        stream.finish();
+        assertEquals("streamed", text, new String(out.toByteArray(), "ISO-8859-1").replace(System.getProperty("line.separator"), "\n"));
+    }
+
+    private static class CountingFactory extends GFactory {
+
+        private int count;
+
+        public CountingFactory() {
+            renderer = new GRenderer() {
+                @Override
+                public synchronized GGraph render(FAState state) {
+                    count++;
+                    return super.render(state);
+                }
+            };
+        }
+
+        public int getRenderCount() {
+            return count;
+        }
+    }
+
+    private GGraph createGraph() {
+        FAState s1 = new FAState(1);
+        FAState s2 = new FAState(2);
+        s2.acceptedState = true;
+        FATransition t = new FATransition("ID", s2);
+        s1.addTransition(t);
+
+        GNode n1 = new GNode();
+        n1.setState(s1);
+        GPoint p = new GPoint();
+        p.x = "x";
+        n1.setPosition(p);
+        GNode n2 = new GNode();
+        n2.setState(s2);
+        n2.setPosition(new GPoint());
+        n2.lastNodeOfRule = true;
+
+        GLink link = new GLink(t, n2);
+        link.setSource(n1);
+        link.setBranchDimension(new GDimension("w", "u", "d"));
+        n1.addLink(link);
+
+        List<GNode> nodes = new ArrayList<GNode>();
+        nodes.add(n1);
+        nodes.add(n2);
+
+        GGraph graph = new GGraph();
+        graph.setDimension(new GDimension("w+1", "u", "d"));
+        graph.setNodes(nodes);
+        graph.setName("rule");
+        return graph;
+    }
+
+    /** Draws the same kind of primitives as the syntax diagrams, with repeated color and stroke changes */
+    private static void drawScene(Graphics2D g) {
+        g.setColor(Color.black);
+        g.setStroke(new BasicStroke(1));
+        g.drawLine(10, 10, 120, 10);
+        g.setColor(Color.black);
+        g.drawRect(20, 20, 60, 30);
+        g.setColor(new Color(255, 128, 0));
+        g.fillRoundRect(30, 60, 50, 20, 8, 8);
+        g.setColor(new Color(255, 128, 0));
+        g.setStroke(new BasicStroke(1));
+        g.drawOval(100, 40, 30, 20);
+        g.setStroke(new BasicStroke(2.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL, 10, new float[] { 4, 2 }, 1));
+        g.drawArc(90, 70, 40, 30, 0, 135);
+        g.setColor(Color.blue);
+        g.fillPolygon(new int[] { 10, 30, 20 }, new int[] { 100, 100, 115 }, 3);
+
+        GeneralPath path = new GeneralPath();
+        path.moveTo(40.333f, 120);
+        path.quadTo(60, 90, 80.005f, 120);
+        path.curveTo(90, 130, 100, 110, 110, 120);
+        g.setStroke(new BasicStroke(1));
+        g.draw(path);
+
+        BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, 0xFF0000);
+        image.setRGB(1, 1, 0x00FF00);
+        g.drawImage(image, 130, 100, null);
+
+        g.setColor(Color.blue);
+        g.translate(-5.5, 3);
+        g.fillRect(0, 0, 10, 10);
+    }
+
+    /**
+     * Replays the program after the header and returns the fill and stroke operations with the color, the stroke
+     * and the path they use. The other operators are returned as they are. Two programs painting the same
+     * drawing return the same operations even if they don't set the color or the stroke the same number of times.
+     */
+    private static List<String> getPaintOperations(String eps) {
+        String body = eps.substring(eps.indexOf("%%EndComments")+"%%EndComments".length());
+        body = body.replaceAll("/\\w+ \\{ \\w+ \\} bind def", "").replace("[", " [ ").replace("]", " ] ");
+
+        List<String> operations = new ArrayList<String>();
+        Stack<String> colors = new Stack<String>();
+        Stack<Map<String, String>> strokes = new Stack<Map<String, String>>();
+        Map<String, String> stroke = new TreeMap<String, String>();
+        String color = null;
+        StringBuilder path = new StringBuilder();
+        StringBuilder operands = new StringBuilder();
+        for(String token : body.trim().split("\\s+")) {
+            if(token.matches("-?[0-9.]+")) {
+                BigDecimal value = new BigDecimal(token);
+                operands.append(value.signum() == 0 ? "0" : value.stripTrailingZeros().toPlainString()).append(' ');
+            } else if(token.equals("[") || token.equals("]")) {
+                operands.append(token).append(' ');
+            } else if(token.equals("rgb")) {
+                color = operands.toString();
+                operands.setLength(0);
+            } else if(token.equals("sw") || token.equals("sm") || token.equals("sj") || token.equals("slc") || token.equals("sd")) {
+                stroke.put(token, operands.toString());
+                operands.setLength(0);
+            } else if(token.equals("m") || token.equals("l") || token.equals("c") || token.equals("cp")) {
+                path.append(operands).append(token).append(' ');
+                operands.setLength(0);
+            } else if(token.equals("f") || token.equals("s")) {
+                operations.add(token+" color="+color+"stroke="+stroke+" path="+path);
+                path.setLength(0);
+            } else if(token.equals("gs")) {
+                colors.push(color);
+                strokes.push(new TreeMap<String, String>(stroke));
+                operations.add(token);
+            } else if(token.equals("gr")) {
+                color = colors.pop();
+                stroke = strokes.pop();
+                operations.add(token);
+            } else {
+                operations.add(operands+token);
+                operands.setLength(0);
+            }
+        }
+        return operations;
+    }
+
     private void assertSD(String folder, String name) throws Exception {
         // Read the grammar file
         String source = getResourceFile(TestConstants.PREFIX+"sd/"+folder+"/"+name+".g");
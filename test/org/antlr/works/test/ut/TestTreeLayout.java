@@ -0,0 +1,232 @@
+package org.antlr.works.test.ut;
+
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.antlr.works.test.AbstractTest;
+import org.antlr.works.utils.awtree.AWTreeGraphView;
+import org.antlr.works.utils.awtree.AWTreeLayout;
+import org.antlr.works.utils.awtree.AWTreeModel;
+import org.antlr.works.utils.awtree.AWTreeNode;
+import org.antlr.xjlib.appkit.gview.object.GElement;
+
+import javax.swing.tree.TreeNode;
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+/*
+
+[The "BSD licence"]
+Copyright (c) 2005-2006 Jean Bovet
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1. Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright
+notice, this list of conditions and the following disclaimer in the
+documentation and/or other materials provided with the distribution.
+3. The name of the author may not be used to endorse or promote products
+derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+public class TestTreeLayout extends AbstractTest {
+
+    public static void main(String[] args) {
+        new TestRunner().doRun(new TestSuite(TestTreeLayout.class));
+    }
+
+    public void testAppend() throws Exception {
+        Random random = new Random(4);
+        Set<TreeNode> collapsed = new HashSet<TreeNode>();
+        Measurer measurer = new Measurer();
+        AWTreeLayout layout = new AWTreeLayout(measurer, 20, 20, 20, 10, collapsed);
+
+        Node root = new Node("root");
+        List<Node> nodes = new ArrayList<Node>();
+        nodes.add(root);
+        layout.build(root);
+
+        for(int i=1; i<=2000; i++) {
+            // Most of the nodes are appended below the last ones, like in a parse tree
+            Node parent = nodes.get(random.nextInt(4) == 0 ? random.nextInt(nodes.size()) : nodes.size()-1-random.nextInt(Math.min(nodes.size(), 8)));
+            Node node = new Node("n"+random.nextInt(1000));
+            parent.add(node);
+            nodes.add(node);
+            assertTrue("append "+i, layout.append(parent, node));
+
+            // Collapse and expand some nodes: the nodes appended below them update their summary
+            if(random.nextInt(50) == 0) {
+                Node n = nodes.get(random.nextInt(nodes.size()));
+                layout.setCollapsed(n, !layout.isCollapsed(n));
+            }
+
+            if(i % 100 == 0) {
+                AWTreeLayout built = new AWTreeLayout(measurer, 20, 20, 20, 10, new HashSet<TreeNode>(collapsed));
+                built.build(root);
+                assertEquals("layout after "+i, describe(built, nodes), describe(layout, nodes));
+            }
+        }
+
+        // A node which is not the last child of its parent cannot be appended
+        Node node = new Node("inserted");
+        root.insert(node, 0);
+        assertFalse("inserted", layout.append(root, node));
+    }
+
+    public void testCollapsedView() throws Exception {
+        View view = new View();
+        AWTreeModel model = new AWTreeModel();
+        view.setModel(model);
+
+        Node root = new Node("root");
+        Node rule = new Node("rule");
+        model.addNode(root, rule);
+        List<Node> tokens = new ArrayList<Node>();
+        for(int i=0; i<500; i++) {
+            Node token = new Node("t"+i);
+            model.addNode(rule, token);
+            tokens.add(token);
+        }
+        Node last = new Node("last");
+        model.addNode(root, last);
+        view.setRoot(root);
+        view.refresh();
+
+        // Only the nodes of the area are materialized
+        view.materialize(new Rectangle2D.Double(0, 0, 200, 200));
+        assertNotNull("first token", view.getGElementForNode(tokens.get(0)));
+        assertNull("token out of the area", view.getGElementForNode(tokens.get(tokens.size()-1)));
+        view.materialize(null);
+        assertNotNull("all the nodes", view.getGElementForNode(tokens.get(tokens.size()-1)));
+
+        // A collapsed node displays a summary instead of its descendants
+        double width = view.getTreeLayout().getWidth();
+        view.toggleCollapsed(rule);
+        view.materialize(null);
+        assertNotNull("collapsed node", view.getGElementForNode(rule));
+        assertNull("hidden token", view.getGElementForNode(tokens.get(0)));
+        AWTreeGraphView.GElementNode summary = view.getSummary();
+        assertEquals("summary", "+ 500 nodes", summary.getLabel());
+        assertSame("summary selects the collapsed node", rule, view.getTreeNodeForElement(summary));
+        assertTrue("narrower", view.getTreeLayout().getWidth() < width);
+
+        // The nodes appended below a collapsed node are counted by its summary
+        for(int i=0; i<10; i++) {
+            Node token = new Node("u"+i);
+            model.addNode(rule, token);
+            tokens.add(token);
+        }
+        view.refresh();
+        view.materialize(null);
+        assertEquals("summary after append", "+ 510 nodes", view.getSummary().getLabel());
+        assertNotNull("node after the collapsed one", view.getGElementForNode(last));
+
+        // Highlighting a hidden node expands its ancestors
+        view.highlightNode(tokens.get(3));
+        view.materialize(null);
+        assertNotNull("expanded token", view.getGElementForNode(tokens.get(3)));
+        assertNull("no summary", view.getSummary());
+
+        // The incremental layout is the one of the whole tree
+        View fresh = new View();
+        fresh.setRoot(root);
+        fresh.refresh();
+        assertEquals("expanded width", fresh.getTreeLayout().getWidth(), view.getTreeLayout().getWidth());
+        assertEquals("last node", fresh.getTreeLayout().getNodeBounds(last), view.getTreeLayout().getNodeBounds(last));
+    }
+
+    /** Returns the bounds of the nodes and the summaries displayed by the layout */
+    private String describe(AWTreeLayout layout, List<Node> nodes) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(layout.getWidth()).append('x').append(layout.getHeight()).append('\n');
+        for(Node node : nodes) {
+            sb.append(node).append(' ').append(layout.getNodeBounds(node)).append('\n');
+        }
+        List<String> visible = new ArrayList<String>();
+        for(AWTreeLayout.Node node : layout.collect(null)) {
+            String s = node.getTreeNode()+" "+node.getX()+" "+node.getDepth();
+            if(node.isCollapsed())
+                s += " summary "+layout.getSummaryLeft(node)+" "+node.getHiddenCount();
+            visible.add(s);
+        }
+        Collections.sort(visible);
+        for(String s : visible) {
+            sb.append(s).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static class Node extends AWTreeNode {
+
+        private final String label;
+
+        public Node(String label) {
+            this.label = label;
+        }
+
+        public String getInfoString() {
+            return label;
+        }
+
+        public Color getColor() {
+            return Color.black;
+        }
+
+        public String toString() {
+            return label;
+        }
+    }
+
+    private static class Measurer implements AWTreeLayout.Measurer {
+
+        public double getNodeWidth(TreeNode node) {
+            return 16+7*node.toString().length();
+        }
+
+        public double getSummaryWidth(int hiddenCount) {
+            return 40+7*String.valueOf(hiddenCount).length();
+        }
+    }
+
+    /** A tree view measuring its nodes without being displayed */
+    private static class View extends AWTreeGraphView {
+
+        public View() {
+            super(null);
+            g2d = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+            g2d.setFont(DEFAULT_FONT);
+            fontMetrics = g2d.getFontMetrics();
+        }
+
+        public AWTreeLayout getTreeLayout() {
+            return layout;
+        }
+
+        /** Returns the summary element displayed, if any */
+        public GElementNode getSummary() {
+            for(GElement element : getRootElement().getElements()) {
+                if(element instanceof GElementNode && ((GElementNode)element).getLabel().startsWith("+ "))
+                    return (GElementNode)element;
+            }
+            return null;
+        }
+    }
+
+}
@@ -2,8 +2,19 @@ package org.antlr.works.test.ut;
 
 import junit.framework.TestSuite;
 import junit.textui.TestRunner;
+import org.antlr.works.ate.syntax.misc.ATETaskScheduler;
 import org.antlr.works.test.AbstractTest;
+import org.antlr.xjlib.appkit.app.XJPreferences;
 import org.antlr.xjlib.foundation.XJUtils;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.prefs.Preferences;
 /*
 
 [The "BSD licence"]
@@ -64,4 +75,157 @@ public class TestUtils extends AbstractTest {
         assertEquals("localize 9", "ab\r\nc\r\ndef\r\nghj", XJUtils.getTextByReplacingEOL("ab\rc\rdef\r\nghj", "\r\n"));
     }
 
-}
\ No newline at end of file
+    public void testTaskSchedulerCoalescing() throws Exception {
+        ATETaskScheduler scheduler = new ATETaskScheduler(1);
+        final AtomicInteger count = new AtomicInteger();
+        final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        // Occupy the single thread of the pool so none of the tasks can start before the last one is scheduled
+        scheduler.schedule("block", ATETaskScheduler.Priority.ANALYSIS, 0, new Runnable() {
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        });
+        assertTrue("blocked", blocked.await(5, TimeUnit.SECONDS));
+
+        for(int i=0; i<10; i++) {
+            final int value = i;
+            scheduler.schedule("key", ATETaskScheduler.Priority.EDITOR, 0, new Runnable() {
+                public void run() {
+                    count.incrementAndGet();
+                    values.add(value);
+                }
+            });
+        }
+        assertEquals("queue depth", 1, scheduler.getQueueDepth());
+        release.countDown();
+
+        assertTrue("executed", scheduler.awaitIdle(5000));
+        assertEquals("executions", 1, count.get());
+        assertEquals("last task", Integer.valueOf(9), values.get(0));
+        assertEquals("executed count", 2, scheduler.getExecutedCount());
+        assertEquals("queue depth", 0, scheduler.getQueueDepth());
+
+        scheduler.shutdown();
+    }
+
+    public void testTaskSchedulerPriority() throws Exception {
+        ATETaskScheduler scheduler = new ATETaskScheduler(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(3);
+
+        // Occupy the single thread of the pool while the other tasks are scheduled
+        scheduler.schedule("block", ATETaskScheduler.Priority.ANALYSIS, 0, new Runnable() {
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        });
+        assertTrue("blocked", blocked.await(5, TimeUnit.SECONDS));
+
+        for(final ATETaskScheduler.Priority priority : new ATETaskScheduler.Priority[] {
+                ATETaskScheduler.Priority.ANALYSIS, ATETaskScheduler.Priority.DIAGRAM, ATETaskScheduler.Priority.EDITOR })
+        {
+            scheduler.schedule(priority, priority, 0, new Runnable() {
+                public void run() {
+                    order.add(priority.name());
+                    done.countDown();
+                }
+            });
+        }
+        scheduler.cancel(ATETaskScheduler.Priority.DIAGRAM);
+        scheduler.schedule(ATETaskScheduler.Priority.DIAGRAM, ATETaskScheduler.Priority.DIAGRAM, 0, new Runnable() {
+            public void run() {
+                order.add("DIAGRAM");
+                done.countDown();
+            }
+        });
+        assertEquals("ready queue depth", 3, scheduler.getReadyQueueDepth());
+        release.countDown();
+
+        assertTrue("executed", done.await(5, TimeUnit.SECONDS));
+        assertEquals("order", "[EDITOR, DIAGRAM, ANALYSIS]", order.toString());
+
+        scheduler.shutdown();
+    }
+
+    public void testTaskSchedulerSameKeyNeverConcurrent() throws Exception {
+        final ATETaskScheduler scheduler = new ATETaskScheduler(4);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final AtomicInteger remaining = new AtomicInteger(5);
+
+        Runnable task = new Runnable() {
+            public void run() {
+                int a = active.incrementAndGet();
+                if(a > maxActive.get()) maxActive.set(a);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                active.decrementAndGet();
+                if(remaining.decrementAndGet() > 0) {
+                    // Rescheduled while running: executed after this one
+                    scheduler.schedule("key", ATETaskScheduler.Priority.DIAGRAM, 0, this);
+                    scheduler.schedule("key", ATETaskScheduler.Priority.DIAGRAM, 0, this);
+                }
+            }
+        };
+        scheduler.schedule("key", ATETaskScheduler.Priority.DIAGRAM, 0, task);
+
+        // The executed count is incremented once the last task has returned
+        assertTrue("executed", scheduler.awaitIdle(5000));
+        assertEquals("concurrent executions", 1, maxActive.get());
+        assertEquals("executed count", 5, scheduler.getExecutedCount());
+
+        scheduler.shutdown();
+    }
+
+    public void testPreferencesCache() throws Exception {
+        XJPreferences prefs = new XJPreferences(TestUtils.class);
+        Preferences store = Preferences.userNodeForPackage(TestUtils.class);
+        try {
+            prefs.setInt("test.int", 42);
+            prefs.setColor("test.color", Color.red);
+            List<String> list = new ArrayList<String>();
+            list.add("a");
+            prefs.setList("test.list", list);
+
+            // the values are visible before being written
+            assertEquals("int", 42, prefs.getInt("test.int", 0));
+            assertEquals("color", Color.red, prefs.getColor("test.color", null));
+            assertSame("cached color", prefs.getColor("test.color", null), prefs.getColor("test.color", null));
+            assertNotSame("list copy", prefs.getList("test.list"), prefs.getList("test.list"));
+
+            prefs.flush();
+            assertEquals("written", 42, store.getInt("test.int", 0));
+
+            store.putInt("test.int", 7);
+            prefs.invalidate();
+            assertEquals("invalidated", 7, prefs.getInt("test.int", 0));
+
+            prefs.remove("test.int");
+            prefs.flush();
+            assertNull("removed", store.get("test.int", null));
+        } finally {
+            store.remove("test.int");
+            store.remove("test.color");
+            store.remove("test.list");
+        }
+    }
+
+}